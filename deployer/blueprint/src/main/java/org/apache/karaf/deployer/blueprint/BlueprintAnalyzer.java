@@ -0,0 +1,209 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.deployer.blueprint;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Collects the packages of the classes referenced by a blueprint xml file in
+ * a single streaming pass, to compute the Import-Package header of the
+ * generated bundle.
+ *
+ * The results are cached by the digest of the file content, and the analyzer
+ * can be used concurrently.
+ */
+public final class BlueprintAnalyzer {
+
+    /** Private constructors to avoid instantiation */
+    private BlueprintAnalyzer() { }
+
+    static final String BLUEPRINT_NAMESPACE = "http://www.osgi.org/xmlns/blueprint/v1.0.0";
+
+    private static final int MAX_ENTRIES = 100;
+
+    private static final Pattern LINES = Pattern.compile("\r\n|\r|\n");
+    private static final Pattern COMMAS = Pattern.compile("\\s*,\\s*");
+
+    private static final Map<String, Set<String>> CACHE = new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static XMLInputFactory xmlInputFactory;
+
+    /**
+     * Returns the packages referenced by the given blueprint xml content,
+     * reusing the result of a previous analysis of the same content.
+     */
+    public static Set<String> analyze(byte[] data) throws Exception {
+        String key = digest(data);
+        synchronized (CACHE) {
+            Set<String> packages = CACHE.get(key);
+            if (packages != null) {
+                return new TreeSet<String>(packages);
+            }
+        }
+        Set<String> packages = analyze(new ByteArrayInputStream(data));
+        synchronized (CACHE) {
+            CACHE.put(key, packages);
+        }
+        return new TreeSet<String>(packages);
+    }
+
+    /**
+     * Returns the packages referenced by the given blueprint xml stream.
+     */
+    public static Set<String> analyze(InputStream is) throws Exception {
+        Set<String> refers = new TreeSet<String>();
+        XMLStreamReader reader = getXmlInputFactory().createXMLStreamReader(is);
+        try {
+            // names of the enclosing elements, with a null local name for other namespaces
+            List<String> elements = new ArrayList<String>();
+            // text of an interface name, collected until the next non text event
+            StringBuilder text = null;
+            int textDepth = -1;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (text != null && elements.size() == textDepth
+                        && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                            || event == XMLStreamConstants.SPACE)) {
+                    text.append(reader.getText());
+                    continue;
+                }
+                if (text != null && text.length() > 0) {
+                    addClasses(refers, text.toString());
+                    text.setLength(0);
+                }
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = BLUEPRINT_NAMESPACE.equals(reader.getNamespaceURI()) ? reader.getLocalName() : null;
+                    if ("bean".equals(name)) {
+                        addClasses(refers, getAttribute(reader, "class"));
+                    } else if ("service".equals(name) || "reference".equals(name) || "reference-list".equals(name)) {
+                        addClasses(refers, getAttribute(reader, "interface"));
+                    } else if ("argument".equals(name) && "bean".equals(getParent(elements, 1))) {
+                        addType(refers, getAttribute(reader, "type"));
+                    } else if ("list".equals(name) || "set".equals(name) || "array".equals(name)) {
+                        addType(refers, getAttribute(reader, "value-type"));
+                    } else if ("map".equals(name)) {
+                        addType(refers, getAttribute(reader, "key-type"));
+                        addType(refers, getAttribute(reader, "value-type"));
+                    } else if ("value".equals(name) && "interfaces".equals(getParent(elements, 1))
+                            && "service".equals(getParent(elements, 2))) {
+                        text = new StringBuilder();
+                        textDepth = elements.size() + 1;
+                    }
+                    elements.add(name);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (elements.size() == textDepth) {
+                        text = null;
+                        textDepth = -1;
+                    }
+                    elements.remove(elements.size() - 1);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return refers;
+    }
+
+    private static String getParent(List<String> elements, int level) {
+        int idx = elements.size() - level;
+        return idx >= 0 ? elements.get(idx) : null;
+    }
+
+    private static String getAttribute(XMLStreamReader reader, String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String ns = reader.getAttributeNamespace(i);
+            if ((ns == null || ns.length() == 0) && name.equals(reader.getAttributeLocalName(i))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the packages of a type, ignoring any array dimension.
+     */
+    private static void addType(Set<String> refers, String type) {
+        if (type != null) {
+            int idx = type.indexOf('[');
+            addClasses(refers, idx >= 0 ? type.substring(0, idx) : type);
+        }
+    }
+
+    /**
+     * Adds the packages of a comma or line separated list of class names.
+     */
+    private static void addClasses(Set<String> refers, String classes) {
+        if (classes == null) {
+            return;
+        }
+        for (String line : LINES.split(classes)) {
+            line = line.trim();
+            if (line.length() > 0) {
+                String parts[] = COMMAS.split(line);
+                for (int i = 0; i < parts.length; i++) {
+                    int n = parts[i].lastIndexOf('.');
+                    if (n > 0) {
+                        String pkg = parts[i].substring(0, n);
+                        if (!pkg.startsWith("java.")) {
+                            refers.add(pkg);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static String digest(byte[] data) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static synchronized XMLInputFactory getXmlInputFactory() {
+        if (xmlInputFactory == null) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            xmlInputFactory = factory;
+        }
+        return xmlInputFactory;
+    }
+
+}
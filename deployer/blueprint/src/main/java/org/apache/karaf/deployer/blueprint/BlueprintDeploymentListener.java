@@ -20,17 +20,13 @@ package org.apache.karaf.deployer.blueprint;
 import java.io.File;
 import java.net.URL;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.namespace.QName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 
 import org.apache.felix.fileinstall.ArtifactUrlTransformer;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXParseException;
-import org.xml.sax.SAXException;
+import org.apache.karaf.util.ArtifactClassifier;
 
 /**
  * A deployment listener that listens for spring xml applications
@@ -40,14 +36,12 @@ public class BlueprintDeploymentListener implements ArtifactUrlTransformer {
 
     private final Logger logger = LoggerFactory.getLogger(BlueprintDeploymentListener.class);
 
-    private DocumentBuilderFactory dbf;
-
     public boolean canHandle(File artifact) {
         try {
             if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
-                Document doc = parse(artifact);
-                String name = doc.getDocumentElement().getLocalName();
-                String uri  = doc.getDocumentElement().getNamespaceURI();
+                QName root = ArtifactClassifier.getRootElement(artifact);
+                String name = root.getLocalPart();
+                String uri  = root.getNamespaceURI();
                 if ("blueprint".equals(name) && "http://www.osgi.org/xmlns/blueprint/v1.0.0".equals(uri)) {
                     return true;
                 }
@@ -67,22 +61,4 @@ public class BlueprintDeploymentListener implements ArtifactUrlTransformer {
         }
     }
 
-    protected Document parse(File artifact) throws Exception {
-        if (dbf == null) {
-            dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-        }
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        db.setErrorHandler(new ErrorHandler() {
-            public void warning(SAXParseException exception) throws SAXException {
-            }
-            public void error(SAXParseException exception) throws SAXException {
-            }
-            public void fatalError(SAXParseException exception) throws SAXException {
-                throw exception;
-            }
-        });
-        return db.parse(artifact);
-    }
-
 }
@@ -24,10 +24,13 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 
+import org.apache.karaf.util.BundleCache;
+import org.osgi.framework.BundleContext;
 import org.osgi.service.url.AbstractURLStreamHandlerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +47,14 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
 
 	private URL blueprintXmlURL;
 
+	private static final BundleCache.Generator GENERATOR = new BundleCache.Generator() {
+	    public void generate(URL url, byte[] data, OutputStream os) throws Exception {
+	        BlueprintTransformer.transform(url, data, os);
+	    }
+	};
+
+	private BundleCache cache;
+
     /**
      * Open the connection for the given URL.
      *
@@ -62,6 +73,20 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
 		return new Connection(url);
 	}
 	
+	/**
+	 * Enables the cache of the generated bundles in the data area of the given bundle.
+	 */
+	public void setBundleContext(BundleContext bundleContext) {
+	    File directory = bundleContext.getDataFile("bundles");
+	    if (directory != null) {
+	        cache = new BundleCache(directory, "blueprint-" + bundleContext.getBundle().getVersion(), BundleCache.DEFAULT_MAX_SIZE);
+	    }
+	}
+
+	public BundleCache getCache() {
+	    return cache;
+	}
+
 	public URL getBlueprintXmlURL() {
 		return blueprintXmlURL;
 	}
@@ -79,8 +104,15 @@ public class BlueprintURLHandler extends AbstractURLStreamHandlerService {
         @Override
         public InputStream getInputStream() throws IOException {
             try {
+                byte[] data = BlueprintTransformer.read(blueprintXmlURL);
+                if (cache != null) {
+                    InputStream is = cache.getBundle(blueprintXmlURL, data, GENERATOR);
+                    if (logger.isDebugEnabled())
+                        logger.debug("Blueprint bundle cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses, " + cache.getEvictions() + " evictions");
+                    return is;
+                }
                 ByteArrayOutputStream os = new ByteArrayOutputStream();
-                BlueprintTransformer.transform(blueprintXmlURL, os);
+                BlueprintTransformer.transform(blueprintXmlURL, data, os);
                 os.close();
                 return new ByteArrayInputStream(os.toByteArray());
             } catch (Exception e) {
@@ -0,0 +1,153 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.deployer.blueprint;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+
+public class BlueprintAnalyzerTest extends TestCase {
+
+    public void testSameAsXslt() throws Exception {
+        URL url = getClass().getClassLoader().getResource("test.xml");
+        byte[] data = BlueprintTransformer.read(url);
+        assertEquals(analyzeWithXslt(data), BlueprintAnalyzer.analyze(data));
+
+        data = createBlueprint(10).getBytes("UTF-8");
+        Set<String> packages = BlueprintAnalyzer.analyze(data);
+        assertEquals(analyzeWithXslt(data), packages);
+        assertTrue(packages.contains("org.test.array0"));
+        // as with xpath, a comment splits the text of a value
+        assertTrue(packages.contains("comment0"));
+        assertFalse(packages.contains("java.util"));
+        assertFalse(packages.contains("org.test.nested0"));
+    }
+
+    public void testLargeFile() throws Exception {
+        byte[] data = createBlueprint(2000).getBytes("UTF-8");
+        Set<String> expected = analyzeWithXslt(data);
+        assertEquals(expected, BlueprintAnalyzer.analyze(new ByteArrayInputStream(data)));
+        // the second analysis of the same content comes from the cache
+        assertEquals(expected, BlueprintAnalyzer.analyze(data));
+        assertEquals(expected, BlueprintAnalyzer.analyze(data));
+    }
+
+    public void testConcurrentDeployments() throws Exception {
+        final List<byte[]> files = new ArrayList<byte[]>();
+        final List<Set<String>> expected = new ArrayList<Set<String>>();
+        for (int i = 0; i < 8; i++) {
+            byte[] data = createBlueprint(500 + i).getBytes("UTF-8");
+            files.add(data);
+            expected.add(analyzeWithXslt(data));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 64; i++) {
+                final int idx = i % files.size();
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        return expected.get(idx).equals(BlueprintAnalyzer.analyze(files.get(idx)));
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String createBlueprint(int beans) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+        sb.append("<blueprint xmlns='http://www.osgi.org/xmlns/blueprint/v1.0.0' xmlns:x='urn:other'>\n");
+        for (int i = 0; i < beans; i++) {
+            sb.append("  <bean id='b").append(i).append("' class='org.test.bean").append(i).append(".Bean'>\n");
+            sb.append("    <argument type='org.test.argument").append(i).append(".Arg[]' value='1'/>\n");
+            sb.append("    <property name='p'><list value-type='org.test.list").append(i).append(".Item'/></property>\n");
+            sb.append("    <property name='q'><array value-type='org.test.array").append(i).append(".Item[][]'/></property>\n");
+            sb.append("    <property name='r'><map key-type='java.util.Date' value-type='org.test.map").append(i).append(".Value'/></property>\n");
+            sb.append("    <property name='s'><bean class='org.test.inner").append(i).append(".Inner'/></property>\n");
+            sb.append("  </bean>\n");
+            sb.append("  <x:bean class='org.test.other").append(i).append(".Other'/>\n");
+            sb.append("  <service ref='b").append(i).append("' interface='org.test.service").append(i).append(".Service'/>\n");
+            sb.append("  <service ref='b").append(i).append("'>\n");
+            sb.append("    <interfaces>\n");
+            sb.append("      <value>org.test.first").append(i).append(".First,\n        org.test.second").append(i).append(".Second</value>\n");
+            sb.append("      <value>org.test.<!-- split -->comment").append(i).append(".C<![CDATA[data]]></value>\n");
+            sb.append("      <value>org.test.outer").append(i).append(".O<x:y>org.test.nested").append(i).append(".N</x:y></value>\n");
+            sb.append("    </interfaces>\n");
+            sb.append("  </service>\n");
+            sb.append("  <reference id='r").append(i).append("' interface='org.test.reference").append(i).append(".Ref'/>\n");
+            sb.append("  <reference-list id='l").append(i).append("' interface='org.test.refs").append(i).append(".Refs, org.test.more").append(i).append(".More'/>\n");
+        }
+        sb.append("</blueprint>\n");
+        return sb.toString();
+    }
+
+    /**
+     * The analysis previously done using an xsl transformation.
+     */
+    private Set<String> analyzeWithXslt(byte[] data) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        DOMSource source = new DOMSource(dbf.newDocumentBuilder().parse(new ByteArrayInputStream(data)));
+        Transformer transformer = TransformerFactory.newInstance().newTransformer(
+                new StreamSource(getClass().getResourceAsStream("extract.xsl")));
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        transformer.transform(source, new StreamResult(bout));
+        Set<String> refers = new TreeSet<String>();
+        InputStream bin = new ByteArrayInputStream(bout.toByteArray());
+        BufferedReader br = new BufferedReader(new InputStreamReader(bin));
+        for (String line = br.readLine(); line != null; line = br.readLine()) {
+            line = line.trim();
+            if (line.length() > 0) {
+                for (String part : line.split("\\s*,\\s*")) {
+                    int n = part.lastIndexOf('.');
+                    if (n > 0 && !part.substring(0, n).startsWith("java.")) {
+                        refers.add(part.substring(0, n));
+                    }
+                }
+            }
+        }
+        return refers;
+    }
+
+}
@@ -25,7 +25,6 @@ import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.jar.JarInputStream;
-import javax.xml.transform.dom.DOMSource;
 
 import junit.framework.TestCase;
 
@@ -34,7 +33,7 @@ public class BlueprintDeploymentListenerTest extends TestCase {
     public void testPackagesExtraction() throws Exception {
         BlueprintDeploymentListener l = new BlueprintDeploymentListener();
         File f = new File(getClass().getClassLoader().getResource("test.xml").toURI());
-        Set<String> pkgs = BlueprintTransformer.analyze(new DOMSource(BlueprintTransformer.parse(f.toURL())));
+        Set<String> pkgs = BlueprintAnalyzer.analyze(new FileInputStream(f));
         assertNotNull(pkgs);
         assertEquals(1, pkgs.size());
         Iterator<String> it = pkgs.iterator();
@@ -21,18 +21,21 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URISyntaxException;
+import java.net.URI;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.namespace.QName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 
 import org.apache.felix.fileinstall.ArtifactUrlTransformer;
+import org.apache.karaf.util.ArtifactClassifier;
 import org.apache.karaf.features.Feature;
 import org.apache.karaf.features.FeaturesService;
 import org.apache.karaf.features.Repository;
@@ -40,22 +43,35 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleListener;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 /**
- * A deployment listener able to hot deploy a feature descriptor
+ * A deployment listener able to hot deploy a feature descriptor.
+ *
+ * The features of the bundles resolved within a short delay are installed
+ * together, so that deploying several descriptors at once only triggers a
+ * single refresh: each resolved bundle postpones the installation by the
+ * delay, up to the maximum delay after the first one.  The repositories
+ * deployed for each bundle are kept in memory and saved once per batch.
  */
 public class FeatureDeploymentListener implements ArtifactUrlTransformer, BundleListener {
 
     public static final String FEATURE_PATH = "org.apache.karaf.shell.features";
 
+    private static final String STATE_FILE = "FeatureDeploymentListener.cfg";
+
     private final Logger logger = LoggerFactory.getLogger(FeatureDeploymentListener.class);
 
-    private DocumentBuilderFactory dbf;
     private FeaturesService featuresService;
     private BundleContext bundleContext;
+    private long delay = 500;
+    private long maxDelay = 5000;
+
+    private ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?> flush;
+    private long firstPending;
+    private boolean closed;
+    private final Map<Long, Bundle> pending = new LinkedHashMap<Long, Bundle>();
+    private final Properties state = new Properties();
 
     public void setFeaturesService(FeaturesService featuresService) {
         this.featuresService = featuresService;
@@ -73,25 +89,94 @@ public class FeatureDeploymentListener implements ArtifactUrlTransformer, Bundle
         this.bundleContext = bundleContext;
     }
 
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * Sets the time, in milliseconds, during which resolved bundles are collected
+     * before installing their features.
+     */
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, between the first resolved bundle
+     * of a batch and the installation of its features.
+     */
+    public void setMaxDelay(long maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
     public void init() throws Exception {
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Karaf features deployer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        synchronized (pending) {
+            closed = false;
+        }
+        loadState();
         bundleContext.addBundleListener(this);
+        Set<String> installed = new HashSet<String>();
         for (Bundle bundle : bundleContext.getBundles()) {
+            installed.add(getPrefix(bundle));
             if (bundle.getState() == Bundle.RESOLVED || bundle.getState() == Bundle.STARTING
                     || bundle.getState() == Bundle.ACTIVE)
             bundleChanged(new BundleEvent(BundleEvent.RESOLVED, bundle));
         }
+        // remove the features of the bundles uninstalled while we were stopped
+        synchronized (state) {
+            for (Object key : state.keySet()) {
+                String name = key.toString();
+                if (name.endsWith(".count")) {
+                    final String prefix = name.substring(0, name.length() - ".count".length());
+                    if (!installed.contains(prefix)) {
+                        execute(new Runnable() {
+                            public void run() {
+                                uninstall(prefix);
+                            }
+                        });
+                    }
+                }
+            }
+        }
     }
 
     public void destroy() throws Exception {
         bundleContext.removeBundleListener(this);
+        // the bundles still pending will be processed again on the next start,
+        // and the features of the bundles uninstalled meanwhile removed then
+        synchronized (pending) {
+            closed = true;
+            pending.clear();
+            if (flush != null) {
+                flush.cancel(false);
+                flush = null;
+            }
+        }
+        executor.shutdown();
+        // let a batch in progress complete while the features service is still there
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("Deployed features are still being installed");
+        }
     }
 
     public boolean canHandle(File artifact) {
         try {
             if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
-                Document doc = parse(artifact);
-                String name = doc.getDocumentElement().getLocalName();
-                String uri  = doc.getDocumentElement().getNamespaceURI();
+                QName root = ArtifactClassifier.getRootElement(artifact);
+                String name = root.getLocalPart();
+                String uri  = root.getNamespaceURI();
                 if ("features".equals(name) && (uri == null || "".equals(uri) || "http://karaf.apache.org/xmlns/features/v1.0.0".equalsIgnoreCase(uri))) {
                     return true;
                 }
@@ -118,131 +203,225 @@ public class FeatureDeploymentListener implements ArtifactUrlTransformer, Bundle
     }
 
     public void bundleChanged(BundleEvent bundleEvent) {
-            Bundle bundle = bundleEvent.getBundle();
-            if (bundleEvent.getType() == BundleEvent.RESOLVED) {
+        final Bundle bundle = bundleEvent.getBundle();
+        if (bundleEvent.getType() == BundleEvent.RESOLVED) {
+            synchronized (pending) {
+                if (closed) {
+                    return;
+                }
+                pending.put(bundle.getBundleId(), bundle);
+                long now = System.currentTimeMillis();
+                if (flush == null) {
+                    firstPending = now;
+                } else {
+                    flush.cancel(false);
+                }
+                long wait = Math.max(0, Math.min(delay, firstPending + maxDelay - now));
+                flush = executor.schedule(new Runnable() {
+                    public void run() {
+                        installPending();
+                    }
+                }, wait, TimeUnit.MILLISECONDS);
+            }
+        } else if (bundleEvent.getType() == BundleEvent.UNINSTALLED) {
+            synchronized (pending) {
+                pending.remove(bundle.getBundleId());
+            }
+            // run after the installations already scheduled
+            execute(new Runnable() {
+                public void run() {
+                    uninstall(getPrefix(bundle));
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs a task on the deployer thread, unless we are stopped.
+     */
+    private void execute(Runnable task) {
+        synchronized (pending) {
+            if (!closed) {
+                executor.execute(task);
+            }
+        }
+    }
+
+    private boolean isClosed() {
+        synchronized (pending) {
+            return closed;
+        }
+    }
+
+    /**
+     * Installs the features of all the bundles resolved since the last batch.
+     */
+    protected void installPending() {
+        List<Bundle> bundles;
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            bundles = new ArrayList<Bundle>(pending.values());
+            pending.clear();
+            flush = null;
+        }
+        if (bundles.isEmpty()) {
+            return;
+        }
+        Map<Bundle, List<URL>> deployed = new LinkedHashMap<Bundle, List<URL>>();
+        Set<URI> uris = new HashSet<URI>();
+        for (Bundle bundle : bundles) {
+            List<URL> urls = new ArrayList<URL>();
+            try {
+                Enumeration featuresUrlEnumeration = bundle.findEntries("/META-INF/" + FEATURE_PATH + "/", "*.xml", false);
+                while (featuresUrlEnumeration != null && featuresUrlEnumeration.hasMoreElements()) {
+                    URL url = (URL) featuresUrlEnumeration.nextElement();
+                    try {
+                        featuresService.addRepository(url.toURI());
+                        uris.add(url.toURI());
+                        urls.add(url);
+                    } catch (Exception e) {
+                        logger.error("Unable to install features", e);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Unable to install deployed features for bundle: " + bundle.getSymbolicName() + " - " + bundle.getVersion(), e);
+            }
+            deployed.put(bundle, urls);
+        }
+
+        Set<Feature> features = new LinkedHashSet<Feature>();
+        for (Repository repo : featuresService.listRepositories()) {
+            if (uris.contains(repo.getURI())) {
                 try {
-                    List<URL> urls = new ArrayList<URL>();
-                    Enumeration featuresUrlEnumeration = bundle.findEntries("/META-INF/" + FEATURE_PATH + "/", "*.xml", false);
-                    while (featuresUrlEnumeration != null && featuresUrlEnumeration.hasMoreElements()) {
-                        URL url = (URL) featuresUrlEnumeration.nextElement();
+                    features.addAll(Arrays.asList(repo.getFeatures()));
+                } catch (Exception e) {
+                    logger.error("Unable to install features: " + repo.getURI(), e);
+                }
+            }
+        }
+        if (!features.isEmpty()) {
+            try {
+                featuresService.installFeatures(features, EnumSet.noneOf(FeaturesService.Option.class));
+            } catch (Exception e) {
+                // install each repository on its own so that a faulty one does not prevent the others
+                logger.warn("Unable to install the features of " + uris.size() + " repositories at once, installing them separately", e);
+                for (Repository repo : featuresService.listRepositories()) {
+                    if (uris.contains(repo.getURI())) {
                         try {
-                            featuresService.addRepository(url.toURI());
-                            for (Repository repo : featuresService.listRepositories()) {
-                                if (repo.getURI().equals(url.toURI())) {
-                                    Set<Feature> features = new HashSet<Feature>(Arrays.asList(repo.getFeatures()));
-                                    featuresService.installFeatures(features, EnumSet.noneOf(FeaturesService.Option.class));
-                                }
-                            }
-                            urls.add(url);
-                        } catch (Exception e) {
-                            logger.error("Unable to install features", e);
+                            Set<Feature> repoFeatures = new HashSet<Feature>(Arrays.asList(repo.getFeatures()));
+                            featuresService.installFeatures(repoFeatures, EnumSet.noneOf(FeaturesService.Option.class));
+                        } catch (Exception e2) {
+                            logger.error("Unable to install features", e2);
                         }
                     }
-                    synchronized (this) {
-                        File file = bundleContext.getDataFile("FeatureDeploymentListener.cfg");
-                        if (file != null) {
-                            Properties props = new Properties();
-                            if (file.exists()) {
-                                InputStream input = new FileInputStream(file);
-                                try {
-                                    props.load(input);
-                                } finally {
-                                    input.close();
-                                }
-                            }
-                            String prefix = bundle.getSymbolicName() + "-" + bundle.getVersion();
-                            props.put(prefix + ".count", Integer.toString(urls.size()));
-                            for (int i = 0; i < urls.size(); i++) {
-                                props.put(prefix + ".url." + i, urls.get(i).toExternalForm());
-                            }
-                            OutputStream output = new FileOutputStream(file);
-                            try {
-                                props.store(output, null);
-                            } finally {
-                                output.close();
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.error("Unable to install deployed features for bundle: " + bundle.getSymbolicName() + " - " + bundle.getVersion(), e);
                 }
-            } else if (bundleEvent.getType() == BundleEvent.UNINSTALLED) {
-                try {
-                    synchronized (this) {
-                        File file = bundleContext.getDataFile("FeatureDeploymentListener.cfg");
-                        if (file != null) {
-                            Properties props = new Properties();
-                            if (file.exists()) {
-                                InputStream input = new FileInputStream(file);
-                                try {
-                                    props.load(input);
-                                } finally {
-                                    input.close();
-                                }
-                            }
-                            String prefix = bundle.getSymbolicName() + "-" + bundle.getVersion();
-                            String countStr = (String) props.get(prefix + ".count");
-                            if (countStr != null) {
-                                int count = Integer.parseInt(countStr);
-                                for (int i = 0; i < count; i++) {
-                                    URL url = new URL((String) props.get(prefix + ".url." + i));
-                                    for (Repository repo : featuresService.listRepositories()) {
-                                        try {
-                                            if (repo.getURI().equals(url.toURI())) {
-                                                for (Feature f : repo.getFeatures()) {
-                                                    try {
-                                                        featuresService.uninstallFeature(f.getName(), f.getVersion());
-                                                    } catch (Exception e) {
-                                                        logger.error("Unable to uninstall feature: " + f.getName(), e);
-                                                    }
-                                                }
-                                            }
-                                        } catch (Exception e) {
-                                            logger.error("Unable to uninstall features: " + url, e);
-                                        }
-                                    }
+            }
+        }
+
+        synchronized (state) {
+            for (Map.Entry<Bundle, List<URL>> entry : deployed.entrySet()) {
+                Bundle bundle = entry.getKey();
+                List<URL> urls = entry.getValue();
+                String prefix = getPrefix(bundle);
+                removeState(prefix);
+                state.put(prefix + ".count", Integer.toString(urls.size()));
+                for (int i = 0; i < urls.size(); i++) {
+                    state.put(prefix + ".url." + i, urls.get(i).toExternalForm());
+                }
+            }
+            saveState();
+        }
+    }
+
+    /**
+     * Removes the features deployed for a bundle, given its state prefix.  Nothing
+     * is done once we are stopped, the state is kept for the next start instead.
+     */
+    protected void uninstall(String prefix) {
+        if (isClosed()) {
+            return;
+        }
+        try {
+            synchronized (state) {
+                String countStr = (String) state.get(prefix + ".count");
+                if (countStr == null) {
+                    return;
+                }
+                int count = Integer.parseInt(countStr);
+                for (int i = 0; i < count; i++) {
+                    URI uri = new URL((String) state.get(prefix + ".url." + i)).toURI();
+                    for (Repository repo : featuresService.listRepositories()) {
+                        try {
+                            if (repo.getURI().equals(uri)) {
+                                for (Feature f : repo.getFeatures()) {
                                     try {
-                                        featuresService.removeRepository(url.toURI());
-                                    } catch (URISyntaxException e) {
-                                        logger.error("Unable to remove repository: " + url, e);
+                                        featuresService.uninstallFeature(f.getName(), f.getVersion());
+                                    } catch (Exception e) {
+                                        logger.error("Unable to uninstall feature: " + f.getName(), e);
                                     }
                                 }
                             }
-                            for (Iterator<Object> it = props.keySet().iterator(); it.hasNext();) {
-                                if (it.next().toString().startsWith(prefix + ".")) {
-                                    it.remove();
-                                }
-                            }
-                            OutputStream output = new FileOutputStream(file);
-                            try {
-                                props.store(output, null);
-                            } finally {
-                                output.close();
-                            }
+                        } catch (Exception e) {
+                            logger.error("Unable to uninstall features: " + uri, e);
                         }
                     }
-                } catch (Exception e) {
-                    logger.error("Unable to uninstall deployed features for bundle: " + bundle.getSymbolicName() + " - " + bundle.getVersion(), e);
+                    featuresService.removeRepository(uri);
                 }
+                removeState(prefix);
+                saveState();
             }
+        } catch (Exception e) {
+            logger.error("Unable to uninstall deployed features for bundle: " + prefix, e);
+        }
     }
 
-    protected Document parse(File artifact) throws Exception {
-        if (dbf == null) {
-            dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-        }
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        db.setErrorHandler(new ErrorHandler() {
-            public void warning(SAXParseException exception) throws SAXException {
+    private static String getPrefix(Bundle bundle) {
+        return bundle.getSymbolicName() + "-" + bundle.getVersion();
+    }
+
+    private void removeState(String prefix) {
+        for (Iterator<Object> it = state.keySet().iterator(); it.hasNext();) {
+            if (it.next().toString().startsWith(prefix + ".")) {
+                it.remove();
             }
-            public void error(SAXParseException exception) throws SAXException {
+        }
+    }
+
+    private void loadState() {
+        synchronized (state) {
+            state.clear();
+            File file = bundleContext.getDataFile(STATE_FILE);
+            if (file != null && file.exists()) {
+                try {
+                    InputStream input = new FileInputStream(file);
+                    try {
+                        state.load(input);
+                    } finally {
+                        input.close();
+                    }
+                } catch (Exception e) {
+                    logger.error("Unable to load the deployed features from " + file, e);
+                }
             }
-            public void fatalError(SAXParseException exception) throws SAXException {
-                throw exception;
+        }
+    }
+
+    private void saveState() {
+        File file = bundleContext.getDataFile(STATE_FILE);
+        if (file != null) {
+            try {
+                OutputStream output = new FileOutputStream(file);
+                try {
+                    state.store(output, null);
+                } finally {
+                    output.close();
+                }
+            } catch (Exception e) {
+                logger.error("Unable to save the deployed features to " + file, e);
             }
-        });
-        return db.parse(artifact);
+        }
     }
 
 }
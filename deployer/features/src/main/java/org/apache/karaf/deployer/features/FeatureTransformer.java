@@ -17,6 +17,7 @@
  */
 package org.apache.karaf.deployer.features;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -35,6 +36,13 @@ import org.osgi.framework.Constants;
 public class FeatureTransformer {
 
     public static void transform(URL url, OutputStream os) throws Exception {
+        transform(url, read(url), os);
+    }
+
+    /**
+     * Transforms the given content of the feature descriptor at the given url.
+     */
+    public static void transform(URL url, byte[] data, OutputStream os) throws Exception {
         // Heuristicly retrieve name and version
         String name = url.getPath();
         int idx = name.lastIndexOf('/');
@@ -61,17 +69,23 @@ public class FeatureTransformer {
         out.closeEntry();
         e = new ZipEntry("META-INF/" + FeatureDeploymentListener.FEATURE_PATH + "/" + name);
         out.putNextEntry(e);
-        InputStream fis = url.openStream();
-        try {
-            copyInputStream(fis, out);
-        } finally {
-            fis.close();
-        }
+        out.write(data);
         out.closeEntry();
         out.close();
         os.close();
     }
 
+    protected static byte[] read(URL url) throws IOException {
+        InputStream is = url.openStream();
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            copyInputStream(is, bout);
+            return bout.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
     private static void copyInputStream(InputStream in, OutputStream out) throws IOException {
         byte[] buffer = new byte[8192];
         int len = in.read(buffer);
@@ -18,12 +18,16 @@ package org.apache.karaf.deployer.features;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 
+import org.apache.karaf.util.BundleCache;
+import org.osgi.framework.BundleContext;
 import org.osgi.service.url.AbstractURLStreamHandlerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +43,14 @@ public class FeatureURLHandler extends AbstractURLStreamHandlerService {
 
     private URL featureXmlURL;
 
+    private static final BundleCache.Generator GENERATOR = new BundleCache.Generator() {
+        public void generate(URL url, byte[] data, OutputStream os) throws Exception {
+            FeatureTransformer.transform(url, data, os);
+        }
+    };
+
+    private BundleCache cache;
+
     /**
      * Open the connection for the given URL.
      *
@@ -57,6 +69,20 @@ public class FeatureURLHandler extends AbstractURLStreamHandlerService {
         return new Connection(url);
     }
 
+    /**
+     * Enables the cache of the generated bundles in the data area of the given bundle.
+     */
+    public void setBundleContext(BundleContext bundleContext) {
+        File directory = bundleContext.getDataFile("bundles");
+        if (directory != null) {
+            cache = new BundleCache(directory, "feature-" + bundleContext.getBundle().getVersion(), BundleCache.DEFAULT_MAX_SIZE);
+        }
+    }
+
+    public BundleCache getCache() {
+        return cache;
+    }
+
     public URL getFeatureXmlURL() {
         return featureXmlURL;
     }
@@ -74,8 +100,15 @@ public class FeatureURLHandler extends AbstractURLStreamHandlerService {
         @Override
         public InputStream getInputStream() throws IOException {
             try {
+                byte[] data = FeatureTransformer.read(featureXmlURL);
+                if (cache != null) {
+                    InputStream is = cache.getBundle(featureXmlURL, data, GENERATOR);
+                    if (logger.isDebugEnabled())
+                        logger.debug("Feature bundle cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses, " + cache.getEvictions() + " evictions");
+                    return is;
+                }
                 ByteArrayOutputStream os = new ByteArrayOutputStream();
-                FeatureTransformer.transform(featureXmlURL, os);
+                FeatureTransformer.transform(featureXmlURL, data, os);
                 os.close();
                 return new ByteArrayInputStream(os.toByteArray());
             } catch (Exception e) {
@@ -0,0 +1,139 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.deployer.features;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import org.apache.karaf.features.FeaturesService;
+import org.apache.karaf.features.Repository;
+import org.easymock.IAnswer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Version;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+public class FeatureDeploymentListenerTest extends TestCase {
+
+    private FeatureDeploymentListener listener;
+    private final AtomicInteger batches = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        // the features are listed once per batch of resolved bundles
+        FeaturesService featuresService = createMock(FeaturesService.class);
+        expect(featuresService.listRepositories()).andAnswer(new IAnswer<Repository[]>() {
+            public Repository[] answer() throws Throwable {
+                batches.incrementAndGet();
+                return new Repository[0];
+            }
+        }).anyTimes();
+        replay(featuresService);
+
+        listener = new FeatureDeploymentListener();
+        listener.setBundleContext(createBundleContext());
+        listener.setFeaturesService(featuresService);
+        listener.setDelay(200);
+        listener.setMaxDelay(5000);
+        listener.init();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        listener.destroy();
+    }
+
+    public void testCoalescing() throws Exception {
+        // a delay much longer than the time between the events, so that a slow machine does not split the batch
+        listener.setDelay(2000);
+        listener.setMaxDelay(20000);
+        // each bundle postpones the batch, which is only installed once they are all resolved
+        for (int i = 1; i <= 5; i++) {
+            listener.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, createBundle(i)));
+            Thread.sleep(100);
+        }
+        assertEquals(0, batches.get());
+        waitForBatches(1);
+        Thread.sleep(400);
+        assertEquals(1, batches.get());
+
+        listener.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, createBundle(6)));
+        waitForBatches(2);
+    }
+
+    public void testMaxDelay() throws Exception {
+        listener.setDelay(10000);
+        listener.setMaxDelay(200);
+        long start = System.currentTimeMillis();
+        listener.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, createBundle(1)));
+        listener.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, createBundle(2)));
+        waitForBatches(1);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    public void testEventsAfterDestroy() throws Exception {
+        listener.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, createBundle(1)));
+        listener.destroy();
+
+        // late events are ignored, and the pending bundles are not installed
+        listener.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, createBundle(2)));
+        listener.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, createBundle(1)));
+        Thread.sleep(400);
+        assertEquals(0, batches.get());
+    }
+
+    public void testUninstallAfterDestroy() throws Exception {
+        listener.destroy();
+        // the features service must not be used any more
+        FeaturesService featuresService = createMock(FeaturesService.class);
+        replay(featuresService);
+        listener.setFeaturesService(featuresService);
+        listener.uninstall("bundle1-1.0.0");
+    }
+
+    private void waitForBatches(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (batches.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, batches.get());
+    }
+
+    private static BundleContext createBundleContext() {
+        BundleContext bundleContext = createNiceMock(BundleContext.class);
+        expect(bundleContext.getBundles()).andReturn(new Bundle[0]).anyTimes();
+        replay(bundleContext);
+        return bundleContext;
+    }
+
+    private static Bundle createBundle(long id) {
+        Bundle bundle = createNiceMock(Bundle.class);
+        expect(bundle.getBundleId()).andReturn(id).anyTimes();
+        expect(bundle.getSymbolicName()).andReturn("bundle" + id).anyTimes();
+        expect(bundle.getVersion()).andReturn(new Version(1, 0, 0)).anyTimes();
+        expect(bundle.getState()).andReturn(Bundle.RESOLVED).anyTimes();
+        replay(bundle);
+        return bundle;
+    }
+
+}
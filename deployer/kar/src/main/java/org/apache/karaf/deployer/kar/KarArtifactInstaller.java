@@ -18,27 +18,35 @@
  */
 package org.apache.karaf.deployer.kar;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.namespace.QName;
 
 import org.apache.felix.fileinstall.ArtifactInstaller;
 import org.apache.karaf.features.FeaturesService;
+import org.apache.karaf.util.ArtifactClassifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 public class KarArtifactInstaller implements ArtifactInstaller {
 
@@ -48,19 +56,18 @@ public class KarArtifactInstaller implements ArtifactInstaller {
 	private static final String KAR_SUFFIX = ".kar";
 	private static final String ZIP_SUFFIX = ".zip";
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+
     private String base = "./";
 	private String localRepoPath = "./target/local-repo";
 
 	private String timestampPath;
 
-	private DocumentBuilderFactory dbf;
+	private int threads = Runtime.getRuntime().availableProcessors();
 
 	private FeaturesService featuresService;
 
 	public void init() {
-		dbf = DocumentBuilderFactory.newInstance();
-		dbf.setNamespaceAware(true);
-
 		timestampPath = localRepoPath + File.separator + ".timestamps";
 		if (new File(timestampPath).mkdirs()) {
 			logger.warn("Unable to create directory for Karaf Archive timestamps. Results may vary...");
@@ -83,7 +90,7 @@ public class KarArtifactInstaller implements ArtifactInstaller {
 		// we don't necessarily want to re-extract all the Karaf Archives!
 		//
 		if (alreadyExtracted(file)) {
-			logger.info("Ignoring '" + file + "'; timestamp indicates it's already been deployed.");
+			logger.info("Ignoring '" + file + "'; index indicates it's already been deployed.");
 			return;
 		}
 
@@ -91,60 +98,142 @@ public class KarArtifactInstaller implements ArtifactInstaller {
 			logger.info("Installing " + file);
 
 		ZipFile zipFile = new ZipFile(file);
+		KarIndex index = new KarIndex(getArchiveTimestampFile(file));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			// resume a previous extraction of the same archive
+			index.load();
+			index.start(file);
+
+			List<Future<?>> extractions = new ArrayList<Future<?>>();
+			Map<String, File> candidates = new LinkedHashMap<String, File>();
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+
+				String repoEntryName = getRepoEntryName(entry);
+				if (repoEntryName != null) {
+					File extract = extract(executor, extractions, zipFile, index, entry, repoEntryName, localRepoPath);
+					if (!entry.isDirectory() && repoEntryName.endsWith(".xml")) {
+						candidates.put(repoEntryName, extract);
+					}
+				}
+				if (entry.getName().startsWith("resource")) {
+					String resourceEntryName = entry.getName().substring("resource/".length());
+					extract(executor, extractions, zipFile, index, entry, resourceEntryName, base);
+				}
+			}
 
-        byte[] buffer = new byte[5 * 1024];
-        Enumeration<ZipEntry> entries = (Enumeration<ZipEntry>) zipFile.entries();
-		while (entries.hasMoreElements()) {
-			ZipEntry entry = entries.nextElement();
-
-            String repoEntryName = getRepoEntryName(entry);
-			if (repoEntryName != null) {
-                File extract = extract(zipFile, buffer, entry, repoEntryName, localRepoPath);
-                if (isFeaturesRepository(extract)) {
-                    addToFeaturesRepositories(repoEntryName);
-                }
+			// wait for all the entries, the first failure aborting the installation
+			for (Future<?> extraction : extractions) {
+				try {
+					extraction.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
 			}
-            if (entry.getName().startsWith("resource")) {
-                String resourceEntryName = entry.getName().substring("resource/".length());
-                extract(zipFile, buffer, entry, resourceEntryName, base);
 
-            }
-		}
+			// register the features repositories which are new or have changed since
+			// they have been registered, even by an interrupted extraction, and
+			// unregister the ones which are not part of the archive anymore
+			Map<String, Long> previous = index.getRepositories();
+			Map<String, Long> repositories = new LinkedHashMap<String, Long>();
+			for (Map.Entry<String, File> candidate : candidates.entrySet()) {
+				if (isFeaturesRepository(candidate.getValue())) {
+					URI uri = pathToMvnUri(candidate.getKey());
+					long crc = index.getCrc(candidate.getValue());
+					repositories.put(uri.toString(), crc);
+					Long registered = previous.remove(uri.toString());
+					if (registered == null) {
+						addToFeaturesRepositories(candidate.getKey());
+					} else if (registered != crc) {
+						removeFromFeaturesRepositories(uri);
+						addToFeaturesRepositories(candidate.getKey());
+					}
+				}
+			}
+			for (String repository : previous.keySet()) {
+				removeFromFeaturesRepositories(URI.create(repository));
+			}
 
-		zipFile.close();
+			deleteFiles(index.getOrphans(), getFilesOfOtherArchives(file));
 
-		updateTimestamp(file);
+			index.complete(repositories);
+		} finally {
+			executor.shutdownNow();
+			index.close();
+			zipFile.close();
+		}
 	}
 
-    private File extract(ZipFile zipFile, byte[] buffer, ZipEntry entry, String repoEntryName, String base) throws IOException {
-        File extract;
-        if (entry.isDirectory()) {
-            extract = new File(base + File.separator + repoEntryName);
-            if (logger.isDebugEnabled())
-                logger.debug("Creating directory '" + extract.getName());
-            extract.mkdirs();
-        } else {
-            extract = new File(base + File.separator + repoEntryName);
-            BufferedOutputStream bos = new BufferedOutputStream(
-                    new FileOutputStream(extract));
-
-            int count = 0;
-            int totalBytes = 0;
-            InputStream inputStream = zipFile.getInputStream(entry);
-            while ((count = inputStream.read(buffer)) > 0) {
-                bos.write(buffer, 0, count);
-                totalBytes += count;
-            }
-
-            if (logger.isDebugEnabled())
-                logger.debug("Extracted " + totalBytes + " bytes to " + extract);
+	private File extract(ExecutorService executor, List<Future<?>> extractions, final ZipFile zipFile,
+						 final KarIndex index, final ZipEntry entry, String entryName, String base) {
+		final File extract = new File(base + File.separator + entryName);
+		if (entry.isDirectory()) {
+			if (logger.isDebugEnabled())
+				logger.debug("Creating directory '" + extract.getName());
+			extract.mkdirs();
+		} else {
+			extractions.add(executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					extract(zipFile, index, entry, extract);
+					return null;
+				}
+			}));
+		}
+		return extract;
+	}
 
-            bos.close();
-            inputStream.close();
+	/**
+	 * Extracts an entry through a temporary file, checking its size and CRC.
+	 */
+	private void extract(ZipFile zipFile, KarIndex index, ZipEntry entry, File extract) throws IOException {
+		if (index.isExtracted(extract, entry)) {
+			if (logger.isDebugEnabled())
+				logger.debug("Skipping " + extract + ", it has already been extracted");
+			return;
+		}
+		File parent = extract.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		File temp = new File(extract.getPath() + ".part");
+		CRC32 crc = new CRC32();
+		long totalBytes = 0;
+		InputStream inputStream = zipFile.getInputStream(entry);
+		try {
+			OutputStream outputStream = new FileOutputStream(temp);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int count;
+				while ((count = inputStream.read(buffer)) > 0) {
+					outputStream.write(buffer, 0, count);
+					crc.update(buffer, 0, count);
+					totalBytes += count;
+				}
+			} finally {
+				outputStream.close();
+			}
+		} finally {
+			inputStream.close();
+		}
+		if ((entry.getSize() >= 0 && totalBytes != entry.getSize())
+				|| (entry.getCrc() >= 0 && crc.getValue() != entry.getCrc())) {
+			temp.delete();
+			throw new IOException("Corrupted entry '" + entry.getName() + "' in Karaf archive '" + zipFile.getName() + "'");
+		}
+		if (extract.exists() && !extract.delete() || !temp.renameTo(extract)) {
+			temp.delete();
+			throw new IOException("Unable to extract '" + entry.getName() + "' to " + extract);
+		}
+		index.add(extract, totalBytes, crc.getValue());
 
-        }
-        return extract;
-    }
+		if (logger.isDebugEnabled())
+			logger.debug("Extracted " + totalBytes + " bytes to " + extract);
+	}
 
     private String getRepoEntryName(ZipEntry entry) {
         String entryName = entry.getName();
@@ -159,36 +248,89 @@ public class KarArtifactInstaller implements ArtifactInstaller {
     }
 
     public void uninstall(File file) throws Exception {
-		logger.warn("Karaf archive '" + file + "' has been removed; however, its feature URLs have not been deregistered, and its bundles are still available in '" + localRepoPath + "'.");
+		KarIndex index = new KarIndex(getArchiveTimestampFile(file));
+		index.load();
+		Set<String> repositories = index.getRepositories().keySet();
+		List<File> files = new ArrayList<File>();
+		for (KarIndex.Entry entry : index.getEntries()) {
+			files.add(new File(entry.path));
+		}
+		if (repositories.isEmpty() && files.isEmpty()) {
+			logger.warn("Karaf archive '" + file + "' has been removed; however, no files have been recorded for it in '" + localRepoPath + "'.");
+			index.delete();
+			return;
+		}
+
+		logger.info("Uninstalling " + file);
+		for (String repository : repositories) {
+			removeFromFeaturesRepositories(URI.create(repository));
+		}
+		deleteFiles(files, getFilesOfOtherArchives(file));
+		index.delete();
 	}
 
 	public void update(File file) throws Exception {
-		logger.warn("Karaf archive " + file + " has been updated; redeploying.");
+		logger.info("Karaf archive " + file + " has been updated; extracting the changed entries.");
 		install(file);
 	}
 
-	protected void updateTimestamp(File karafArchive) throws Exception {
-		File timestamp = getArchiveTimestampFile(karafArchive);
+	/**
+	 * Returns the files recorded in the indexes of the other Karaf archives,
+	 * which must be kept when removing the files of the given archive.
+	 */
+	private Set<String> getFilesOfOtherArchives(File karafArchive) throws IOException {
+		Set<String> paths = new HashSet<String>();
+		File index = getArchiveTimestampFile(karafArchive);
+		File[] files = index.getParentFile().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isFile() && !file.equals(index)) {
+					KarIndex other = new KarIndex(file);
+					other.load();
+					for (KarIndex.Entry entry : other.getEntries()) {
+						paths.add(entry.path);
+					}
+				}
+			}
+		}
+		return paths;
+	}
 
-		if (timestamp.exists()) {
+	/**
+	 * Deletes the given files, unless used by another archive, and the
+	 * directories left empty.
+	 */
+	private void deleteFiles(List<File> files, Set<String> used) {
+		File localRepo = new File(localRepoPath);
+		File baseDir = new File(base);
+		for (File file : files) {
+			if (used.contains(file.getPath())) {
+				if (logger.isDebugEnabled())
+					logger.debug("Keeping " + file + ", it is used by another Karaf archive");
+				continue;
+			}
+			if (file.exists() && !file.delete()) {
+				logger.warn("Unable to delete " + file);
+				continue;
+			}
 			if (logger.isDebugEnabled())
-				logger.debug("Deleting old timestamp file '" + timestamp + "");
-
-			if (!timestamp.delete()) {
-				throw new Exception("Unable to delete archive timestamp '" + timestamp + "'");
+				logger.debug("Deleted " + file);
+			File dir = file.getParentFile();
+			while (dir != null && !dir.equals(localRepo) && !dir.equals(baseDir) && dir.delete()) {
+				dir = dir.getParentFile();
 			}
 		}
-
-		logger.debug("Creating timestamp file '" + timestamp + "'");
-		timestamp.createNewFile();
 	}
 
 	protected boolean alreadyExtracted(File karafArchive) {
-		File timestamp = getArchiveTimestampFile(karafArchive);
-		if (timestamp.exists()) {
-			return timestamp.lastModified() >= karafArchive.lastModified();
+		KarIndex index = new KarIndex(getArchiveTimestampFile(karafArchive));
+		try {
+			index.load();
+		} catch (IOException e) {
+			logger.warn("Unable to read the index of Karaf archive '" + karafArchive + "'", e);
+			return false;
 		}
-		return false;
+		return index.isComplete(karafArchive);
 	}
 
 	protected File getArchiveTimestampFile(File karafArchive) {
@@ -202,9 +344,9 @@ public class KarArtifactInstaller implements ArtifactInstaller {
 	protected boolean isFeaturesRepository(File artifact)  {
         try {
 			if (artifact.isFile() && artifact.getName().endsWith(".xml")) {
-			    Document doc = parse(artifact);
-			    String name = doc.getDocumentElement().getLocalName();
-			    String uri  = doc.getDocumentElement().getNamespaceURI();
+			    QName root = ArtifactClassifier.getRootElement(artifact);
+			    String name = root.getLocalPart();
+			    String uri  = root.getNamespaceURI();
 			    if ("features".equals(name) && (uri == null || "".equals(uri) || uri.startsWith("http://karaf.apache.org/xmlns/features/v"))) {
 			        return true;
 			    }
@@ -216,20 +358,6 @@ public class KarArtifactInstaller implements ArtifactInstaller {
 		return false;
 	}
 
-    protected Document parse(File artifact) throws Exception {
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        db.setErrorHandler(new ErrorHandler() {
-            public void warning(SAXParseException exception) throws SAXException {
-            }
-            public void error(SAXParseException exception) throws SAXException {
-            }
-            public void fatalError(SAXParseException exception) throws SAXException {
-                throw exception;
-            }
-        });
-        return db.parse(artifact);
-    }
-
 	private void addToFeaturesRepositories(String path)  {
         URI mvnUri = pathToMvnUri(path);
 		try {
@@ -241,6 +369,16 @@ public class KarArtifactInstaller implements ArtifactInstaller {
 		}
 	}
 
+	private void removeFromFeaturesRepositories(URI uri) {
+		try {
+			featuresService.removeRepository(uri);
+			if (logger.isInfoEnabled())
+				logger.info("Removed feature repository '" + uri + "'.");
+		} catch (Exception e) {
+			logger.error("Unable to remove repository '" + uri + "'", e);
+		}
+	}
+
     static URI pathToMvnUri(String path) {
         String[] bits = path.split("/");
         String classifier = FEATURE_CLASSIFIER;
@@ -309,6 +447,13 @@ public class KarArtifactInstaller implements ArtifactInstaller {
 		this.localRepoPath = localRepoPath;
 	}
 
+	/**
+	 * Sets the number of threads extracting the entries of an archive.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
 	public void setFeaturesService(FeaturesService featuresService) {
 		this.featuresService = featuresService;
 	}
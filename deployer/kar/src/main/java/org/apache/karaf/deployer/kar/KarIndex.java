@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.deployer.kar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+
+/**
+ * Index of the files extracted from a Karaf archive, with the size and CRC of
+ * the zip entries they have been extracted from, and of the features
+ * repositories registered for the archive, with the CRC of the file they
+ * have been registered from.
+ *
+ * Files are added to the index as soon as they have been extracted and
+ * verified, so that an interrupted extraction can be resumed.  The index is
+ * only marked as complete once the whole archive has been extracted.  As the
+ * files are identified by their content, a new version of the archive only
+ * needs to extract the entries which have changed, and the files which are
+ * not part of the new version anymore are reported as orphans.  Comparing
+ * the CRC of the repositories tells which ones must be reloaded, even when
+ * resuming an extraction which already updated their files.
+ */
+class KarIndex {
+
+    private static final String ARCHIVE = "archive=";
+    private static final String REPOSITORY = "repository=";
+    private static final String COMPLETE = "complete";
+    private static final String ENCODING = "UTF-8";
+
+    private final File file;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private final Map<String, Long> repositories = new LinkedHashMap<String, Long>();
+    private final Set<String> seen = new HashSet<String>();
+    private String archive;
+    private boolean complete;
+    private Writer writer;
+
+    KarIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the index, if any.  Lines which can not be parsed, like the content
+     * of the former timestamp files, are ignored.
+     */
+    synchronized void load() throws IOException {
+        entries.clear();
+        repositories.clear();
+        seen.clear();
+        archive = null;
+        complete = false;
+        if (!file.isFile()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(ARCHIVE)) {
+                    archive = line.substring(ARCHIVE.length());
+                } else if (line.startsWith(REPOSITORY)) {
+                    loadRepository(line.substring(REPOSITORY.length()));
+                } else if (line.equals(COMPLETE)) {
+                    complete = true;
+                } else {
+                    String[] parts = line.split(" ", 3);
+                    if (parts.length == 3) {
+                        try {
+                            Entry entry = new Entry(parts[2], Long.parseLong(parts[1]), Long.parseLong(parts[0], 16));
+                            entries.put(entry.path, entry);
+                        } catch (NumberFormatException e) {
+                            // ignore
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads a repository, written as its CRC followed by its URI.  The
+     * CRC of the repositories recorded by former versions is unknown.
+     */
+    private void loadRepository(String repository) {
+        int idx = repository.indexOf(' ');
+        if (idx > 0) {
+            try {
+                repositories.put(repository.substring(idx + 1), Long.parseLong(repository.substring(0, idx), 16));
+                return;
+            } catch (NumberFormatException e) {
+                // not a CRC
+            }
+        }
+        repositories.put(repository, -1L);
+    }
+
+    /**
+     * Checks if the given archive has been completely extracted.
+     */
+    synchronized boolean isComplete(File karafArchive) {
+        return complete && getArchiveKey(karafArchive).equals(archive);
+    }
+
+    /**
+     * Checks if a zip entry has already been extracted to the given file.
+     */
+    synchronized boolean isExtracted(File extract, ZipEntry zipEntry) {
+        Entry entry = entries.get(extract.getPath());
+        boolean result = entry != null
+                && entry.size == zipEntry.getSize()
+                && entry.crc == zipEntry.getCrc()
+                && extract.isFile() && extract.length() == entry.size;
+        if (result) {
+            seen.add(entry.path);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the CRC of the given extracted file, or <code>-1</code> if it is not recorded.
+     */
+    synchronized long getCrc(File extract) {
+        Entry entry = entries.get(extract.getPath());
+        return entry != null ? entry.crc : -1;
+    }
+
+    synchronized Collection<Entry> getEntries() {
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    /**
+     * Returns the files recorded in the index which are not part of the
+     * archive being extracted.
+     */
+    synchronized List<File> getOrphans() {
+        List<File> orphans = new ArrayList<File>();
+        for (String path : entries.keySet()) {
+            if (!seen.contains(path)) {
+                orphans.add(new File(path));
+            }
+        }
+        return orphans;
+    }
+
+    /**
+     * Returns the URIs of the features repositories registered for the archive,
+     * with the CRC of their file when they have been registered.
+     */
+    synchronized Map<String, Long> getRepositories() {
+        return new LinkedHashMap<String, Long>(repositories);
+    }
+
+    /**
+     * Starts the extraction of the given archive.  The files recorded for
+     * a previous extraction, of this archive or of a former version, are kept
+     * until the extraction completes.
+     */
+    synchronized void start(File karafArchive) throws IOException {
+        archive = getArchiveKey(karafArchive);
+        complete = false;
+        seen.clear();
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        writer = new OutputStreamWriter(new FileOutputStream(file), ENCODING);
+        write(writer, entries.values(), repositories);
+        writer.flush();
+    }
+
+    /**
+     * Records a file extracted and verified.
+     */
+    synchronized void add(File extract, long size, long crc) throws IOException {
+        Entry entry = new Entry(extract.getPath(), size, crc);
+        entries.put(entry.path, entry);
+        seen.add(entry.path);
+        writer.write(entry + "\n");
+        writer.flush();
+    }
+
+    /**
+     * Marks the archive as completely extracted, rewriting the index with the
+     * files of the archive and the given features repositories only.
+     */
+    synchronized void complete(Map<String, Long> repositories) throws IOException {
+        close();
+        entries.keySet().retainAll(seen);
+        this.repositories.clear();
+        this.repositories.putAll(repositories);
+        File temp = new File(file.getPath() + ".tmp");
+        Writer out = new OutputStreamWriter(new FileOutputStream(temp), ENCODING);
+        try {
+            write(out, entries.values(), this.repositories);
+            out.write(COMPLETE + "\n");
+        } finally {
+            out.close();
+        }
+        if (!file.delete() || !temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to write the index " + file);
+        }
+        complete = true;
+    }
+
+    synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Removes the index.
+     */
+    synchronized void delete() throws IOException {
+        close();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete the index " + file);
+        }
+    }
+
+    private void write(Writer out, Collection<Entry> entries, Map<String, Long> repositories) throws IOException {
+        out.write(ARCHIVE + archive + "\n");
+        for (Entry entry : entries) {
+            out.write(entry + "\n");
+        }
+        for (Map.Entry<String, Long> repository : repositories.entrySet()) {
+            if (repository.getValue() < 0) {
+                out.write(REPOSITORY + repository.getKey() + "\n");
+            } else {
+                out.write(REPOSITORY + Long.toHexString(repository.getValue()) + " " + repository.getKey() + "\n");
+            }
+        }
+    }
+
+    private static String getArchiveKey(File karafArchive) {
+        return karafArchive.length() + ":" + karafArchive.lastModified();
+    }
+
+    static class Entry {
+
+        final String path;
+        final long size;
+        final long crc;
+
+        Entry(String path, long size, long crc) {
+            this.path = path;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        public String toString() {
+            return Long.toHexString(crc) + " " + size + " " + path;
+        }
+
+    }
+
+}
@@ -19,11 +19,24 @@
 package org.apache.karaf.deployer.kar;
 
 import static org.easymock.EasyMock.createMock;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.karaf.features.FeaturesService;
 import org.easymock.EasyMock;
@@ -185,7 +198,7 @@ public class KarArtifactInstallerTest {
 	}	
 	
 	@Test
-	public void uninstallShouldDoNothing() throws Exception
+	public void uninstallShouldDoNothingIfNotInstalled() throws Exception
 	{
 		EasyMock.replay(featuresService);
 		
@@ -199,6 +212,246 @@ public class KarArtifactInstallerTest {
 		EasyMock.verify(featuresService);
 	}
 
+	@Test
+	public void shouldResumeInterruptedExtraction() throws Exception {
+		featuresService.addRepository((URI)EasyMock.anyObject());
+		EasyMock.expectLastCall().anyTimes();
+		EasyMock.replay(featuresService);
+
+		File goodKarFile = new File(getClass().getClassLoader().getResource("goodKarFile.kar").getFile());
+		karArtifactInstaller.install(goodKarFile);
+		File index = karArtifactInstaller.getArchiveTimestampFile(goodKarFile);
+		assertTrue(karArtifactInstaller.alreadyExtracted(goodKarFile));
+
+		// simulate an extraction interrupted after the features file
+		List<String> lines = readLines(index);
+		assertEquals("complete", lines.remove(lines.size() - 1));
+		writeLines(index, lines);
+		assertFalse(karArtifactInstaller.alreadyExtracted(goodKarFile));
+		File features = new File("./target/local-repo/org/foo/goodFeaturesXml.xml");
+		assertTrue(features.setLastModified(10000));
+
+		karArtifactInstaller.install(goodKarFile);
+
+		assertTrue(karArtifactInstaller.alreadyExtracted(goodKarFile));
+		assertEquals(10000, features.lastModified());
+		EasyMock.verify(featuresService);
+	}
+
+	@Test
+	public void shouldExtractAgainEntriesNotMatchingTheIndex() throws Exception {
+		featuresService.addRepository((URI)EasyMock.anyObject());
+		EasyMock.expectLastCall().anyTimes();
+		EasyMock.replay(featuresService);
+
+		File goodKarFile = new File(getClass().getClassLoader().getResource("goodKarFile.kar").getFile());
+		karArtifactInstaller.install(goodKarFile);
+		File index = karArtifactInstaller.getArchiveTimestampFile(goodKarFile);
+
+		// wrong CRC for the features file and no complete marker
+		List<String> lines = new ArrayList<String>();
+		for (String line : readLines(index)) {
+			if (line.endsWith("goodFeaturesXml.xml")) {
+				line = "0" + line.substring(line.indexOf(' '));
+			}
+			if (!line.equals("complete")) {
+				lines.add(line);
+			}
+		}
+		writeLines(index, lines);
+		File features = new File("./target/local-repo/org/foo/goodFeaturesXml.xml");
+		assertTrue(features.setLastModified(10000));
+
+		karArtifactInstaller.install(goodKarFile);
+
+		assertTrue(karArtifactInstaller.alreadyExtracted(goodKarFile));
+		assertTrue(features.lastModified() != 10000);
+		assertEquals(122, features.length());
+		assertFalse(new File(features.getPath() + ".part").exists());
+		EasyMock.verify(featuresService);
+	}
+
+	@Test
+	public void shouldIgnoreFormerTimestampFile() throws Exception {
+		featuresService.addRepository((URI)EasyMock.anyObject());
+		EasyMock.replay(featuresService);
+
+		File goodKarFile = new File(getClass().getClassLoader().getResource("goodKarFile.kar").getFile());
+		File index = karArtifactInstaller.getArchiveTimestampFile(goodKarFile);
+		index.createNewFile();
+		assertFalse(karArtifactInstaller.alreadyExtracted(goodKarFile));
+
+		karArtifactInstaller.install(goodKarFile);
+
+		assertTrue(karArtifactInstaller.alreadyExtracted(goodKarFile));
+		EasyMock.verify(featuresService);
+	}
+
+	@Test
+	public void shouldOnlyExtractChangedEntriesOnUpdate() throws Exception {
+		featuresService.addRepository(URI.create("mvn:org.foo/bar/1.0/xml/features"));
+		EasyMock.replay(featuresService);
+
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		entries.put("repository/org/foo/bar/1.0/bar-1.0-features.xml", FEATURES);
+		entries.put("repository/org/foo/a.txt", "a");
+		entries.put("repository/org/foo/b.txt", "b");
+		File kar = createKar("update.kar", entries, 10000);
+		karArtifactInstaller.install(kar);
+
+		File a = new File("./target/local-repo/org/foo/a.txt");
+		File b = new File("./target/local-repo/org/foo/b.txt");
+		File c = new File("./target/local-repo/org/foo/c.txt");
+		assertTrue(a.isFile() && b.isFile());
+		assertTrue(a.setLastModified(10000));
+
+		entries.remove("repository/org/foo/b.txt");
+		entries.put("repository/org/foo/c.txt", "c");
+		createKar("update.kar", entries, 20000);
+		karArtifactInstaller.update(kar);
+
+		assertEquals(10000, a.lastModified());
+		assertFalse(b.exists());
+		assertTrue(c.isFile());
+		assertTrue(karArtifactInstaller.alreadyExtracted(kar));
+		EasyMock.verify(featuresService);
+	}
+
+	@Test
+	public void shouldRemoveFeaturesRepositoryNotPartOfUpdate() throws Exception {
+		URI uri = URI.create("mvn:org.foo/bar/1.0/xml/features");
+		featuresService.addRepository(uri);
+		featuresService.removeRepository(uri);
+		EasyMock.replay(featuresService);
+
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		entries.put("repository/org/foo/bar/1.0/bar-1.0-features.xml", FEATURES);
+		entries.put("repository/org/foo/a.txt", "a");
+		File kar = createKar("update.kar", entries, 10000);
+		karArtifactInstaller.install(kar);
+
+		entries.remove("repository/org/foo/bar/1.0/bar-1.0-features.xml");
+		createKar("update.kar", entries, 20000);
+		karArtifactInstaller.update(kar);
+
+		assertFalse(new File("./target/local-repo/org/foo/bar").exists());
+		assertTrue(new File("./target/local-repo/org/foo/a.txt").isFile());
+		EasyMock.verify(featuresService);
+	}
+
+	@Test
+	public void shouldReloadRepositoryUpdatedByInterruptedExtraction() throws Exception {
+		URI uri = URI.create("mvn:org.foo/bar/1.0/xml/features");
+		featuresService.addRepository(uri);
+		EasyMock.expectLastCall().times(2);
+		featuresService.removeRepository(uri);
+		EasyMock.replay(featuresService);
+
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		entries.put("repository/org/foo/bar/1.0/bar-1.0-features.xml", FEATURES);
+		File kar = createKar("resume.kar", entries, 10000);
+		karArtifactInstaller.install(kar);
+
+		// interrupt the update after the new features file has been extracted
+		entries.put("repository/org/foo/bar/1.0/bar-1.0-features.xml", FEATURES.replace("1.0", "1.1"));
+		createKar("resume.kar", entries, 20000);
+		KarArtifactInstaller interrupted = new KarArtifactInstaller() {
+			@Override
+			protected boolean isFeaturesRepository(File artifact) {
+				throw new IllegalStateException("Interrupted");
+			}
+		};
+		interrupted.setBasePath("./target");
+		interrupted.setLocalRepoPath("./target/local-repo");
+		interrupted.init();
+		try {
+			interrupted.update(kar);
+			Assert.fail("Expected the update to be interrupted");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertFalse(karArtifactInstaller.alreadyExtracted(kar));
+
+		// the features file is up to date, but the repository must still be reloaded
+		karArtifactInstaller.update(kar);
+
+		assertTrue(karArtifactInstaller.alreadyExtracted(kar));
+		EasyMock.verify(featuresService);
+	}
+
+	@Test
+	public void shouldRemoveFilesAndRepositoriesOnUninstall() throws Exception {
+		URI uri = URI.create("mvn:org.foo/bar/1.0/xml/features");
+		featuresService.addRepository(uri);
+		featuresService.removeRepository(uri);
+		EasyMock.replay(featuresService);
+
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		entries.put("repository/org/foo/bar/1.0/bar-1.0-features.xml", FEATURES);
+		entries.put("repository/org/foo/a.txt", "a");
+		File kar = createKar("uninstall.kar", entries, 10000);
+		Map<String, String> otherEntries = new LinkedHashMap<String, String>();
+		otherEntries.put("repository/org/foo/a.txt", "a");
+		File other = createKar("other.kar", otherEntries, 10000);
+		karArtifactInstaller.install(kar);
+		karArtifactInstaller.install(other);
+
+		karArtifactInstaller.uninstall(kar);
+
+		assertFalse(new File("./target/local-repo/org/foo/bar").exists());
+		assertTrue(new File("./target/local-repo/org/foo/a.txt").isFile());
+		assertFalse(karArtifactInstaller.getArchiveTimestampFile(kar).exists());
+
+		karArtifactInstaller.uninstall(other);
+
+		assertFalse(new File("./target/local-repo/org").exists());
+		EasyMock.verify(featuresService);
+	}
+
+	private static final String FEATURES = "<features name='bar'><feature name='bar' version='1.0'/></features>";
+
+	private static File createKar(String name, Map<String, String> entries, long lastModified) throws IOException {
+		File kar = new File("./target/kars/" + name);
+		kar.getParentFile().mkdirs();
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(kar));
+		try {
+			for (Map.Entry<String, String> entry : entries.entrySet()) {
+				zos.putNextEntry(new ZipEntry(entry.getKey()));
+				zos.write(entry.getValue().getBytes("UTF-8"));
+				zos.closeEntry();
+			}
+		} finally {
+			zos.close();
+		}
+		kar.setLastModified(lastModified);
+		return kar;
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	private static void writeLines(File file, List<String> lines) throws IOException {
+		Writer writer = new FileWriter(file);
+		try {
+			for (String line : lines) {
+				writer.write(line + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
     @Test
     public void testPathToMvnUri() throws Exception {
         URI uri = KarArtifactInstaller.pathToMvnUri("org/apache/geronimo/features/org.apache.geronimo.transaction.kar/3.1.1-SNAPSHOT/org.apache.geronimo.transaction.kar-3.1.1-SNAPSHOT-features.xml");
@@ -0,0 +1,213 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.deployer.spring;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Collects the packages of the classes referenced by a spring xml file in
+ * a single streaming pass, to compute the Import-Package header of the
+ * generated bundle.
+ *
+ * The results are cached by the digest of the file content, and the analyzer
+ * can be used concurrently.
+ */
+public final class SpringAnalyzer {
+
+    /** Private constructors to avoid instantiation */
+    private SpringAnalyzer() { }
+
+    static final String SPRING_NAMESPACE_PREFIX = "http://www.springframework.org/schema/";
+
+    private static final String OSGI_SERVICE_FACTORY_BEAN = "org.springframework.osgi.service.exporter.support.OsgiServiceFactoryBean";
+    private static final String OSGI_SERVICE_PROXY_FACTORY_BEAN = "org.springframework.osgi.service.importer.support.OsgiServiceProxyFactoryBean";
+
+    private static final int MAX_ENTRIES = 100;
+
+    private static final Pattern LINES = Pattern.compile("\r\n|\r|\n");
+    private static final Pattern COMMAS = Pattern.compile("\\s*,\\s*");
+
+    private static final Map<String, Set<String>> CACHE = new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static XMLInputFactory xmlInputFactory;
+
+    /**
+     * Returns the packages referenced by the given spring xml content,
+     * reusing the result of a previous analysis of the same content.
+     */
+    public static Set<String> analyze(byte[] data) throws Exception {
+        String key = digest(data);
+        synchronized (CACHE) {
+            Set<String> packages = CACHE.get(key);
+            if (packages != null) {
+                return new TreeSet<String>(packages);
+            }
+        }
+        Set<String> packages = analyze(new ByteArrayInputStream(data));
+        synchronized (CACHE) {
+            CACHE.put(key, packages);
+        }
+        return new TreeSet<String>(packages);
+    }
+
+    /**
+     * Returns the packages referenced by the given spring xml stream.
+     */
+    public static Set<String> analyze(InputStream is) throws Exception {
+        Set<String> refers = new TreeSet<String>();
+        XMLStreamReader reader = getXmlInputFactory().createXMLStreamReader(is);
+        try {
+            // enclosing elements, osgi service beans being flagged as such
+            List<String> elements = new ArrayList<String>();
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    String uri = reader.getNamespaceURI();
+                    String schema = uri != null && uri.startsWith(SPRING_NAMESPACE_PREFIX)
+                            ? uri.substring(SPRING_NAMESPACE_PREFIX.length()) : null;
+                    String name = reader.getLocalName();
+                    String element = null;
+                    if ("beans".equals(schema)) {
+                        if ("bean".equals(name)) {
+                            String clazz = getAttribute(reader, "class");
+                            addClasses(refers, clazz);
+                            if (OSGI_SERVICE_FACTORY_BEAN.equals(clazz) || OSGI_SERVICE_PROXY_FACTORY_BEAN.equals(clazz)) {
+                                element = OSGI_SERVICE_FACTORY_BEAN;
+                            }
+                        } else if ("property".equals(name) && OSGI_SERVICE_FACTORY_BEAN.equals(getParent(elements, 1))
+                                && "interfaces".equals(getAttribute(reader, "name"))) {
+                            addClasses(refers, getAttribute(reader, "value"));
+                        }
+                        addClasses(refers, getAttribute(reader, "value-type"));
+                    } else if ("aop".equals(schema)) {
+                        addClasses(refers, getAttribute(reader, "implement-interface"));
+                        addClasses(refers, getAttribute(reader, "default-impl"));
+                    } else if ("context".equals(schema)) {
+                        if ("load-time-weaver".equals(name)) {
+                            addClasses(refers, getAttribute(reader, "weaver-class"));
+                        }
+                    } else if ("jee".equals(schema)) {
+                        if ("jndi-lookup".equals(name)) {
+                            addClasses(refers, getAttribute(reader, "expected-type"));
+                            addClasses(refers, getAttribute(reader, "proxy-interface"));
+                        } else if ("remote-slsb".equals(name)) {
+                            addClasses(refers, getAttribute(reader, "ejbType"));
+                        }
+                        addClasses(refers, getAttribute(reader, "business-interface"));
+                    } else if ("lang".equals(schema)) {
+                        addClasses(refers, getAttribute(reader, "script-interfaces"));
+                    } else if ("osgi".equals(schema)) {
+                        addClasses(refers, getAttribute(reader, "interface"));
+                    } else if ("util".equals(schema)) {
+                        if ("list".equals(name)) {
+                            addClasses(refers, getAttribute(reader, "list-class"));
+                        } else if ("set".equals(name)) {
+                            addClasses(refers, getAttribute(reader, "set-class"));
+                        } else if ("map".equals(name)) {
+                            addClasses(refers, getAttribute(reader, "map-class"));
+                        }
+                    } else if ("webflow-config".equals(schema)) {
+                        addClasses(refers, getAttribute(reader, "class"));
+                    }
+                    elements.add(element);
+                } else if (reader.getEventType() == XMLStreamConstants.END_ELEMENT) {
+                    elements.remove(elements.size() - 1);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return refers;
+    }
+
+    private static String getParent(List<String> elements, int level) {
+        int idx = elements.size() - level;
+        return idx >= 0 ? elements.get(idx) : null;
+    }
+
+    private static String getAttribute(XMLStreamReader reader, String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String ns = reader.getAttributeNamespace(i);
+            if ((ns == null || ns.length() == 0) && name.equals(reader.getAttributeLocalName(i))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the packages of a comma or line separated list of class names.
+     */
+    private static void addClasses(Set<String> refers, String classes) {
+        if (classes == null) {
+            return;
+        }
+        for (String line : LINES.split(classes)) {
+            line = line.trim();
+            if (line.length() > 0) {
+                String parts[] = COMMAS.split(line);
+                for (int i = 0; i < parts.length; i++) {
+                    int n = parts[i].lastIndexOf('.');
+                    if (n > 0) {
+                        String pkg = parts[i].substring(0, n);
+                        if (!pkg.startsWith("java.")) {
+                            refers.add(pkg);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static String digest(byte[] data) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static synchronized XMLInputFactory getXmlInputFactory() {
+        if (xmlInputFactory == null) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            xmlInputFactory = factory;
+        }
+        return xmlInputFactory;
+    }
+
+}
@@ -17,33 +17,25 @@
  */
 package org.apache.karaf.deployer.spring;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.Properties;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 
 import org.apache.karaf.util.DeployerUtils;
 
@@ -55,14 +47,20 @@ import org.osgi.framework.Constants;
 
 public class SpringTransformer {
 
-    static Transformer transformer;
     static DocumentBuilderFactory dbf;
     static TransformerFactory tf;
 
 
     public static void transform(URL url, OutputStream os) throws Exception {
+        transform(url, read(url), os);
+    }
+
+    /**
+     * Transforms the given content of the xml file at the given url.
+     */
+    public static void transform(URL url, byte[] data, OutputStream os) throws Exception {
         // Build dom document
-        Document doc = parse(url);
+        Document doc = parse(data, url);
         // Heuristicly retrieve name and version
         String name = url.getPath();
         int idx = name.lastIndexOf('/');
@@ -77,7 +75,7 @@ public class SpringTransformer {
         m.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, str[0]);
         m.getMainAttributes().putValue(Constants.BUNDLE_VERSION, str[1]);
         m.getMainAttributes().putValue("Spring-Context", "*;publish-context:=false;create-asynchronously:=true");
-        String importPkgs = getImportPackages(analyze(new DOMSource(doc)));
+        String importPkgs = getImportPackages(SpringAnalyzer.analyze(data));
         if (importPkgs != null && importPkgs.length() > 0) {
             m.getMainAttributes().putValue(Constants.IMPORT_PACKAGE, importPkgs);
         }
@@ -113,55 +111,11 @@ public class SpringTransformer {
         e = new ZipEntry("META-INF/spring/" + name);
         out.putNextEntry(e);
         // Copy the new DOM
-        if (tf == null) {
-            tf = TransformerFactory.newInstance();
-        }
-        tf.newTransformer().transform(new DOMSource(doc), new StreamResult(out));
+        newTransformer().transform(new DOMSource(doc), new StreamResult(out));
         out.closeEntry();
         out.close();
     }
 
-    public static Set<String> analyze(Source source) throws Exception {
-        if (transformer == null) {
-            if (tf == null) {
-                tf = TransformerFactory.newInstance();
-            }
-            Source s = new StreamSource(SpringTransformer.class.getResourceAsStream("extract.xsl"));
-            transformer = tf.newTransformer(s);
-        }
-
-        Set<String> refers = new TreeSet<String>();
-
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        Result r = new StreamResult(bout);
-        transformer.transform(source, r);
-
-        ByteArrayInputStream bin = new ByteArrayInputStream(bout.toByteArray());
-        bout.close();
-
-        BufferedReader br = new BufferedReader(new InputStreamReader(bin));
-
-        String line = br.readLine();
-        while (line != null) {
-            line = line.trim();
-            if (line.length() > 0) {
-                String parts[] = line.split("\\s*,\\s*");
-                for (int i = 0; i < parts.length; i++) {
-                    int n = parts[i].lastIndexOf('.');
-                    if (n > 0) {
-                        String pkg = parts[i].substring(0, n);
-                        if (!pkg.startsWith("java.")) {
-                            refers.add(parts[i].substring(0, n));
-                        }
-                    }
-                }
-            }
-            line = br.readLine();
-        }
-        br.close();
-        return refers;
-    }
-
     protected static String getImportPackages(Set<String> packages) {
         StringBuilder sb = new StringBuilder();
         for (String pkg : packages) {
@@ -173,13 +127,34 @@ public class SpringTransformer {
         return sb.toString();
     }
 
-    protected static Document parse(URL url) throws Exception {
+    protected static byte[] read(URL url) throws Exception {
+        InputStream is = url.openStream();
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            copyInputStream(is, bout);
+            return bout.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    protected static Document parse(byte[] data, URL url) throws Exception {
+        return newDocumentBuilder().parse(new ByteArrayInputStream(data), url.toString());
+    }
+
+    private static synchronized DocumentBuilder newDocumentBuilder() throws Exception {
         if (dbf == null) {
             dbf = DocumentBuilderFactory.newInstance();
             dbf.setNamespaceAware(true);
         }
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        return db.parse(url.toString());
+        return dbf.newDocumentBuilder();
+    }
+
+    private static synchronized Transformer newTransformer() throws Exception {
+        if (tf == null) {
+            tf = TransformerFactory.newInstance();
+        }
+        return tf.newTransformer();
     }
 
     protected static void copyInputStream(InputStream in, OutputStream out) throws Exception {
@@ -0,0 +1,120 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.deployer.spring;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+
+public class SpringAnalyzerTest extends TestCase {
+
+    public void testSameAsXslt() throws Exception {
+        URL url = getClass().getClassLoader().getResource("test.xml");
+        byte[] data = SpringTransformer.read(url);
+        assertEquals(analyzeWithXslt(data), SpringAnalyzer.analyze(data));
+
+        data = createSpring(10).getBytes("UTF-8");
+        Set<String> packages = SpringAnalyzer.analyze(data);
+        assertEquals(analyzeWithXslt(data), packages);
+        assertTrue(packages.contains("org.test.interfaces0"));
+        assertFalse(packages.contains("org.test.ignored0"));
+    }
+
+    public void testLargeFile() throws Exception {
+        byte[] data = createSpring(2000).getBytes("UTF-8");
+        Set<String> expected = analyzeWithXslt(data);
+        assertEquals(expected, SpringAnalyzer.analyze(new ByteArrayInputStream(data)));
+        Set<String> packages = SpringAnalyzer.analyze(data);
+        assertEquals(expected, packages);
+        assertEquals(packages, SpringAnalyzer.analyze(data));
+    }
+
+    private String createSpring(int beans) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+        sb.append("<beans xmlns='http://www.springframework.org/schema/beans'\n");
+        for (String ns : new String[] { "aop", "context", "jee", "lang", "osgi", "util", "webflow-config" }) {
+            sb.append("       xmlns:").append(ns).append("='http://www.springframework.org/schema/").append(ns).append("'\n");
+        }
+        sb.append("       xmlns:x='urn:other'>\n");
+        for (int i = 0; i < beans; i++) {
+            sb.append("  <bean id='b").append(i).append("' class='org.test.bean").append(i).append(".Bean'>\n");
+            sb.append("    <property name='p'><list value-type='java.lang.String'/></property>\n");
+            sb.append("  </bean>\n");
+            sb.append("  <bean class='org.springframework.osgi.service.exporter.support.OsgiServiceFactoryBean'>\n");
+            sb.append("    <property name='interfaces' value='org.test.interfaces").append(i).append(".I, org.test.other").append(i).append(".O'/>\n");
+            sb.append("    <property name='target'><bean><property name='interfaces' value='org.test.ignored").append(i).append(".I'/></bean></property>\n");
+            sb.append("  </bean>\n");
+            sb.append("  <aop:declare-parents implement-interface='org.test.aop").append(i).append(".I' default-impl='org.test.impl").append(i).append(".D'/>\n");
+            sb.append("  <context:load-time-weaver weaver-class='org.test.weaver").append(i).append(".W'/>\n");
+            sb.append("  <jee:jndi-lookup expected-type='org.test.expected").append(i).append(".E' proxy-interface='org.test.proxy").append(i).append(".P'/>\n");
+            sb.append("  <jee:remote-slsb ejbType='org.test.ejb").append(i).append(".E' business-interface='org.test.business").append(i).append(".B'/>\n");
+            sb.append("  <lang:groovy script-interfaces='org.test.script").append(i).append(".S'/>\n");
+            sb.append("  <osgi:reference interface='org.test.reference").append(i).append(".R'/>\n");
+            sb.append("  <util:list list-class='org.test.list").append(i).append(".L'/>\n");
+            sb.append("  <util:map map-class='org.test.map").append(i).append(".M' list-class='org.test.ignored").append(i).append(".L'/>\n");
+            sb.append("  <webflow-config:flow-executor class='org.test.flow").append(i).append(".F'/>\n");
+            sb.append("  <x:bean class='org.test.ignored").append(i).append(".X'/>\n");
+        }
+        sb.append("</beans>\n");
+        return sb.toString();
+    }
+
+    /**
+     * The analysis previously done using an xsl transformation.
+     */
+    private Set<String> analyzeWithXslt(byte[] data) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        DOMSource source = new DOMSource(dbf.newDocumentBuilder().parse(new ByteArrayInputStream(data)));
+        Transformer transformer = TransformerFactory.newInstance().newTransformer(
+                new StreamSource(getClass().getResourceAsStream("extract.xsl")));
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        transformer.transform(source, new StreamResult(bout));
+        Set<String> refers = new TreeSet<String>();
+        InputStream bin = new ByteArrayInputStream(bout.toByteArray());
+        BufferedReader br = new BufferedReader(new InputStreamReader(bin));
+        for (String line = br.readLine(); line != null; line = br.readLine()) {
+            line = line.trim();
+            if (line.length() > 0) {
+                for (String part : line.split("\\s*,\\s*")) {
+                    int n = part.lastIndexOf('.');
+                    if (n > 0 && !part.substring(0, n).startsWith("java.")) {
+                        refers.add(part.substring(0, n));
+                    }
+                }
+            }
+        }
+        return refers;
+    }
+
+}
@@ -25,7 +25,6 @@ import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.jar.JarInputStream;
-import javax.xml.transform.dom.DOMSource;
 
 import junit.framework.TestCase;
 
@@ -34,7 +33,7 @@ public class SpringDeploymentListenerTest extends TestCase {
     public void testPackagesExtraction() throws Exception {
         SpringDeploymentListener l = new SpringDeploymentListener();
         File f = new File(getClass().getClassLoader().getResource("test.xml").toURI());
-        Set<String> pkgs = SpringTransformer.analyze(new DOMSource(SpringTransformer.parse(f.toURL())));
+        Set<String> pkgs = SpringAnalyzer.analyze(new FileInputStream(f));
         assertNotNull(pkgs);
         assertEquals(2, pkgs.size());
         Iterator<String> it = pkgs.iterator();
@@ -19,11 +19,9 @@ package org.apache.karaf.deployer.wrap;
 
 import java.io.File;
 import java.net.URL;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
 
 import org.apache.felix.fileinstall.ArtifactUrlTransformer;
+import org.apache.karaf.util.ArtifactClassifier;
 import org.apache.karaf.util.DeployerUtils;
 
 /**
@@ -37,19 +35,8 @@ public class WrapDeploymentListener implements ArtifactUrlTransformer {
             if (!artifact.getPath().endsWith(".jar")) {
                 return false;
             }
-            JarFile jar = new JarFile(artifact);
-            try {
-                // only handle non OSGi jar
-                Manifest manifest = jar.getManifest();
-                if (manifest != null &&
-                    manifest.getMainAttributes().getValue(new Attributes.Name("Bundle-SymbolicName")) != null &&
-                    manifest.getMainAttributes().getValue(new Attributes.Name("Bundle-Version")) != null) {
-                    return false;
-                }
-                return true;
-            } finally {
-                jar.close();
-            }
+            // only handle non OSGi jar
+            return !ArtifactClassifier.isBundle(artifact);
         } catch (Exception e) {
             return false;
         }
@@ -21,6 +21,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.zip.Deflater;
 
 import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.Command;
@@ -28,6 +29,7 @@ import org.apache.felix.gogo.commands.Option;
 import org.apache.karaf.diagnostic.core.DumpDestination;
 import org.apache.karaf.diagnostic.core.DumpProvider;
 import org.apache.karaf.diagnostic.core.common.DirectoryDumpDestination;
+import org.apache.karaf.diagnostic.core.common.DumpRunner;
 import org.apache.karaf.diagnostic.core.common.ZipDumpDestination;
 import org.apache.karaf.shell.console.OsgiCommandSupport;
 
@@ -53,6 +55,18 @@ public class DumpCommand extends OsgiCommandSupport {
     @Option(name = "-d", aliases = "--directory", description = "Creates dump in a directory in place of a ZIP archive")
     boolean directory;
 
+    /**
+     * Time given to the providers.
+     */
+    @Option(name = "-t", aliases = "--timeout", description = "Time in seconds given to the dump providers to complete (defaults to 60)")
+    long timeout = DumpRunner.DEFAULT_TIMEOUT / 1000;
+
+    /**
+     * Compression level of the archive.
+     */
+    @Option(name = "-l", aliases = "--level", description = "Compression level of the ZIP archive, from 0 (none) to 9 (best)")
+    int level = Deflater.DEFAULT_COMPRESSION;
+
     /**
      * Name of created directory or archive.
      */
@@ -81,13 +95,15 @@ public class DumpCommand extends OsgiCommandSupport {
         if (directory) {
             destination = new DirectoryDumpDestination(target);
         } else {
-            destination = new ZipDumpDestination(target);
+            destination = new ZipDumpDestination(target, level);
         }
 
-        for (DumpProvider provider : providers) {
-            provider.createDump(destination);
+        DumpRunner runner = new DumpRunner(providers);
+        runner.setTimeout(timeout * 1000);
+        List<String> errors = runner.run(destination);
+        for (String error : errors) {
+            session.getConsole().println("Warning: " + error);
         }
-        destination.save();
         session.getConsole().println("Diagnostic dump created.");
 
         return null;
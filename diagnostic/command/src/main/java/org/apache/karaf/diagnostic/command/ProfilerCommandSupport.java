@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.command;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.karaf.diagnostic.core.Profiler;
+import org.apache.karaf.shell.console.OsgiCommandSupport;
+
+/**
+ * Base of the profiler commands, which do not wait for the profiler when it is
+ * not registered.
+ */
+public abstract class ProfilerCommandSupport extends OsgiCommandSupport {
+
+    /**
+     * Registered sampling profilers, usually one.
+     */
+    private List<Profiler> profilers = new LinkedList<Profiler>();
+
+    @Override
+    protected Object doExecute() throws Exception {
+        if (profilers.isEmpty()) {
+            session.getConsole().println("Profiler not available.");
+            return null;
+        }
+        return doExecute(profilers.get(0));
+    }
+
+    protected abstract Object doExecute(Profiler profiler) throws Exception;
+
+    /**
+     * Sets the sampling profilers.
+     * 
+     * @param profilers Profilers.
+     */
+    public void setProfilers(List<Profiler> profilers) {
+        this.profilers = profilers;
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.command;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+import org.apache.karaf.diagnostic.core.Profiler;
+
+@Command(scope = "dev", name = "profiler-status", description = "Displays the state of the profiler and the frames in which the threads were seen the most often.")
+public class ProfilerStatusCommand extends ProfilerCommandSupport {
+
+    @Option(name = "-n", description = "Number of frames to display (defaults to 10)")
+    int max = 10;
+
+    @Override
+    protected Object doExecute(Profiler profiler) throws Exception {
+        PrintStream out = session.getConsole();
+        long runningTime = profiler.getRunningTime();
+        long samplingTime = profiler.getSamplingTime();
+        out.println("Running: " + profiler.isRunning());
+        out.println("Samples: " + profiler.getSamples() + " (" + profiler.getStacks() + " stacks)");
+        out.println(String.format("Sampling time: %d ms (%.2f%% of %d ms)", samplingTime,
+            runningTime > 0 ? samplingTime * 100.0 / runningTime : 0.0, runningTime));
+        Map<String, Long> frames = profiler.getTopFrames(max);
+        if (!frames.isEmpty()) {
+            long stacks = profiler.getStacks();
+            out.println();
+            out.println(String.format("%10s %7s  %s", "Stacks", "%", "Frame"));
+            for (Map.Entry<String, Long> frame : frames.entrySet()) {
+                out.println(String.format("%10d %6.2f%%  %s", frame.getValue(),
+                    frame.getValue() * 100.0 / stacks, frame.getKey()));
+            }
+        }
+        return null;
+    }
+
+}
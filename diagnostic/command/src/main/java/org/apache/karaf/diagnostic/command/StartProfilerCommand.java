@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.diagnostic.command;
+
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+import org.apache.karaf.diagnostic.core.Profiler;
+
+@Command(scope = "dev", name = "profiler-start", description = "Starts sampling the thread stacks, the collected stacks are added to the diagnostic dumps.")
+public class StartProfilerCommand extends ProfilerCommandSupport {
+
+    @Option(name = "-i", aliases = "--interval", description = "Time between two samples in milliseconds (defaults to 20)")
+    long interval = 20;
+
+    @Option(name = "-d", aliases = "--depth", description = "Maximum number of frames captured for each stack (defaults to 128)")
+    int depth = 128;
+
+    @Option(name = "-a", aliases = "--all", description = "Samples all threads, not only the runnable ones")
+    boolean all;
+
+    @Option(name = "-r", aliases = "--reset", description = "Drops the stacks previously collected")
+    boolean reset;
+
+    @Override
+    protected Object doExecute(Profiler profiler) throws Exception {
+        if (reset) {
+            profiler.reset();
+        }
+        profiler.start(interval, depth, all);
+        session.getConsole().println("Profiler started.");
+        return null;
+    }
+
+}
@@ -72,8 +72,8 @@ public class FeaturesDumpProvider extends TextDumpProvider {
             }
         }
 
-        // flush & close stream
-        outputStreamWriter.close();
+        // flush stream, it is closed by the caller
+        outputStreamWriter.flush();
     }
 
 }
@@ -16,13 +16,11 @@
 package org.apache.karaf.diagnostic.common;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.apache.karaf.diagnostic.core.DumpDestination;
 import org.apache.karaf.diagnostic.core.DumpProvider;
+import org.apache.karaf.diagnostic.core.common.CopyUtils;
 
 /**
  * Dump provider which copies log files from data/log directory to
@@ -30,37 +28,40 @@ import org.apache.karaf.diagnostic.core.DumpProvider;
  */
 public class LogDumpProvider implements DumpProvider {
 
+    /**
+     * Directory holding the log files.
+     */
+    private File logDirectory = new File(System.getProperty("karaf.data", "data"), "log");
+
+    /**
+     * Sets the directory holding the log files, <code>${karaf.data}/log</code> by default.
+     * 
+     * @param logDirectory Log directory.
+     */
+    public void setLogDirectory(File logDirectory) {
+        this.logDirectory = logDirectory;
+    }
+
     /**
      * Attach log entries from directory.
      */
     public void createDump(DumpDestination destination) throws Exception {
-        File logDir = new File("data/log");
-        File[] listFiles = logDir.listFiles();
+        File[] listFiles = logDirectory.listFiles();
+        if (listFiles == null) {
+            return;
+        }
 
-        // ok, that's not the best way of doing that..
         for (File file : listFiles) {
-            FileInputStream inputStream = new FileInputStream(file);
-
+            if (!file.isFile()) {
+                continue;
+            }
             OutputStream outputStream = destination.add("log/" + file.getName());
-
-            copy(inputStream, outputStream);
+            try {
+                CopyUtils.copy(file, outputStream);
+            } finally {
+                outputStream.close();
+            }
         }
     }
 
-    /**
-     * Rewrites data from input stream to output stream. This code is very common
-     * but we would avoid additional dependencies in diagnostic stuff.
-     * 
-     * @param inputStream Source stream.
-     * @param outputStream Destination stream.
-     * @throws IOException When IO operation fails.
-     */
-	private void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
-        byte[] buffer = new byte[4096];
-        int n = 0;
-        while (-1 != (n = inputStream.read(buffer))) {
-            outputStream.write(buffer, 0, n);
-        }
-	}
-
 }
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.apache.karaf.diagnostic.core.DumpProvider;
+import org.apache.karaf.diagnostic.core.Profiler;
+
+/**
+ * Profiler sampling the thread stacks from a single daemon thread and
+ * aggregating them in a call tree, so that the memory used does not grow with
+ * the number of samples.  Once the tree reaches its maximum size, the stacks
+ * going through new frames are counted in their deepest known frame.
+ * 
+ * The collected stacks are added to the diagnostic dumps as a flame graph
+ * compatible file.
+ */
+public class SamplingProfiler implements Profiler, DumpProvider {
+
+    /**
+     * Frame standing for the root of the stacks cut by the maximum depth.
+     */
+    static final String TRUNCATED = "[truncated]";
+
+    /**
+     * Name of the dump entry.
+     */
+    private static final String ENTRY = "profile.collapsed";
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Maximum number of frames kept in the call tree.
+     */
+    private int maxNodes = 50000;
+
+    private long interval;
+    private int maxDepth;
+    private boolean allThreads;
+
+    /**
+     * Sampling thread, a thread which is not the current one any more exits.
+     */
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Root of the call tree, guarded by this.
+     */
+    private Node root = new Node(null);
+    private int nodes;
+    private long samples;
+    private long stacks;
+    private long samplingTime;
+    private long runningTime;
+    private long started;
+
+    /**
+     * Sets the maximum number of frames kept in the call tree.
+     * 
+     * @param maxNodes Maximum number of frames.
+     */
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void start(long interval, int maxDepth, boolean allThreads) {
+        if (interval <= 0 || maxDepth <= 0) {
+            throw new IllegalArgumentException("Interval and maximum depth must be positive");
+        }
+        this.interval = interval;
+        this.maxDepth = maxDepth;
+        this.allThreads = allThreads;
+        if (!running) {
+            running = true;
+            started = System.currentTimeMillis();
+            thread = new Thread(new Runnable() {
+                public void run() {
+                    sample();
+                }
+            }, "Karaf profiler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            runningTime += System.currentTimeMillis() - started;
+            t = thread;
+            thread = null;
+        }
+        t.interrupt();
+        try {
+            t.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void reset() {
+        root = new Node(null);
+        nodes = 0;
+        samples = 0;
+        stacks = 0;
+        samplingTime = 0;
+        runningTime = 0;
+        started = System.currentTimeMillis();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    public synchronized long getStacks() {
+        return stacks;
+    }
+
+    public synchronized long getSamplingTime() {
+        return samplingTime / 1000000;
+    }
+
+    public synchronized long getRunningTime() {
+        return runningTime + (running ? System.currentTimeMillis() - started : 0);
+    }
+
+    /**
+     * Samples the threads until stopped.
+     */
+    private void sample() {
+        long self = Thread.currentThread().getId();
+        while (thread == Thread.currentThread()) {
+            long start = System.nanoTime();
+            int depth;
+            boolean all;
+            synchronized (this) {
+                depth = maxDepth;
+                all = allThreads;
+            }
+            // capture outside of the lock, it is the expensive part, with one more
+            // frame to know whether the stacks are cut
+            ThreadInfo[] infos = threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), depth + 1);
+            synchronized (this) {
+                for (ThreadInfo info : infos) {
+                    if (info == null || info.getThreadId() == self
+                            || (!all && info.getThreadState() != Thread.State.RUNNABLE)) {
+                        continue;
+                    }
+                    StackTraceElement[] stack = info.getStackTrace();
+                    if (stack.length > 0) {
+                        add(stack, Math.min(stack.length, depth), stack.length > depth);
+                    }
+                }
+                samples++;
+                samplingTime += System.nanoTime() - start;
+            }
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+    }
+
+    /**
+     * Adds the first frames of a stack to the call tree, from the deepest one,
+     * under {@link #TRUNCATED} if the stack has more frames.
+     */
+    void add(StackTraceElement[] stack, int length, boolean truncated) {
+        Node node = root;
+        if (truncated) {
+            Node child = child(node, TRUNCATED);
+            if (child != null) {
+                node = child;
+            }
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            Node child = child(node, stack[i].getClassName() + "." + stack[i].getMethodName());
+            if (child == null) {
+                break;
+            }
+            node = child;
+        }
+        node.count++;
+        stacks++;
+    }
+
+    private Node child(Node node, String frame) {
+        Node child = node.children != null ? node.children.get(frame) : null;
+        if (child == null && nodes < maxNodes) {
+            child = new Node(frame);
+            if (node.children == null) {
+                node.children = new HashMap<String, Node>();
+            }
+            node.children.put(frame, child);
+            nodes++;
+        }
+        return child;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized Map<String, Long> getTopFrames(int max) {
+        final Map<String, Long> frames = new HashMap<String, Long>();
+        collectFrames(root, frames);
+        List<String> names = new ArrayList<String>(frames.keySet());
+        Collections.sort(names, new Comparator<String>() {
+            public int compare(String n1, String n2) {
+                return frames.get(n2).compareTo(frames.get(n1));
+            }
+        });
+        Map<String, Long> top = new LinkedHashMap<String, Long>();
+        for (String name : names.subList(0, Math.min(max, names.size()))) {
+            top.put(name, frames.get(name));
+        }
+        return top;
+    }
+
+    private void collectFrames(Node node, Map<String, Long> frames) {
+        if (node.count > 0 && node.frame != null) {
+            Long count = frames.get(node.frame);
+            frames.put(node.frame, count == null ? node.count : count + node.count);
+        }
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                collectFrames(child, frames);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void writeCollapsed(Writer writer) throws IOException {
+        // write a copy, the writer may be slow and the sampling must go on
+        Node copy;
+        synchronized (this) {
+            copy = root.copy();
+        }
+        writeCollapsed(copy, new StringBuilder(), writer);
+    }
+
+    private void writeCollapsed(Node node, StringBuilder path, Writer writer) throws IOException {
+        int length = path.length();
+        if (node.frame != null) {
+            if (length > 0) {
+                path.append(';');
+            }
+            path.append(node.frame);
+        }
+        if (node.count > 0 && path.length() > 0) {
+            writer.write(path.toString());
+            writer.write(" " + node.count + "\n");
+        }
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                writeCollapsed(child, path, writer);
+            }
+        }
+        path.setLength(length);
+    }
+
+    /**
+     * Adds the collected stacks to the dump, if any.
+     */
+    public void createDump(DumpDestination destination) throws Exception {
+        if (getStacks() == 0) {
+            return;
+        }
+        OutputStream outputStream = destination.add(ENTRY);
+        try {
+            Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+            writeCollapsed(writer);
+            writer.flush();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Frame of the call tree, with the number of stacks ending in it.
+     */
+    private static class Node {
+
+        final String frame;
+        Map<String, Node> children;
+        long count;
+
+        Node(String frame) {
+            this.frame = frame;
+        }
+
+        Node copy() {
+            Node copy = new Node(frame);
+            copy.count = count;
+            if (children != null) {
+                copy.children = new HashMap<String, Node>(children.size() * 2);
+                for (Node child : children.values()) {
+                    copy.children.put(child.frame, child.copy());
+                }
+            }
+            return copy;
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import org.apache.karaf.diagnostic.core.common.CopyUtils;
+import org.apache.karaf.diagnostic.core.common.DirectoryDumpDestination;
+
+/**
+ * Test cases for {@link SamplingProfiler}
+ */
+public class SamplingProfilerTest extends TestCase {
+
+    private SamplingProfiler profiler;
+
+    @Override
+    protected void setUp() throws Exception {
+        profiler = new SamplingProfiler();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        profiler.stop();
+    }
+
+    public void testCollapsedFormat() throws Exception {
+        profiler.add(stack("C.c", "B.b", "A.a"), 3, false);
+        profiler.add(stack("C.c", "B.b", "A.a"), 3, false);
+        profiler.add(stack("D.d", "A.a"), 2, false);
+        profiler.add(stack("A.a"), 1, false);
+
+        assertEquals(Arrays.asList("A.a 1", "A.a;B.b;C.c 2", "A.a;D.d 1"), collapsed());
+        assertEquals(4, profiler.getStacks());
+        Map<String, Long> frames = profiler.getTopFrames(1);
+        assertEquals(1, frames.size());
+        assertEquals(Long.valueOf(2), frames.get("C.c"));
+    }
+
+    public void testTruncation() throws Exception {
+        // only the first frames are kept, under a common root
+        profiler.add(stack("C.c", "B.b", "A.a"), 2, true);
+        profiler.add(stack("C.c", "B.b"), 2, false);
+
+        assertEquals(Arrays.asList("B.b;C.c 1", SamplingProfiler.TRUNCATED + ";B.b;C.c 1"), collapsed());
+    }
+
+    public void testMaxNodes() throws Exception {
+        profiler.setMaxNodes(2);
+        profiler.add(stack("C.c", "B.b", "A.a"), 3, false);
+        profiler.add(stack("D.d", "A.a"), 2, false);
+
+        // the stacks are counted in their deepest known frame, and nothing is lost
+        assertEquals(Arrays.asList("A.a 1", "A.a;B.b 1"), collapsed());
+        assertEquals(2, profiler.getStacks());
+    }
+
+    public void testSampling() throws Exception {
+        try {
+            profiler.start(0, 10, false);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        profiler.start(5, 4, true);
+        assertTrue(profiler.isRunning());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (profiler.getSamples() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        profiler.stop();
+        assertFalse(profiler.isRunning());
+        long samples = profiler.getSamples();
+        assertTrue(samples >= 3);
+        Thread.sleep(50);
+        assertEquals(samples, profiler.getSamples());
+
+        // this thread was sleeping with a deep stack
+        List<String> lines = collapsed();
+        assertFalse(lines.isEmpty());
+        boolean truncated = false;
+        for (String line : lines) {
+            assertTrue(line, line.matches("\\S+ \\d+"));
+            String path = line.substring(0, line.indexOf(' '));
+            List<String> frames = Arrays.asList(path.split(";"));
+            if (frames.get(0).equals(SamplingProfiler.TRUNCATED)) {
+                truncated = true;
+                assertEquals(line, 5, frames.size());
+            } else {
+                assertTrue(line, frames.size() <= 4);
+            }
+        }
+        assertTrue(truncated);
+
+        profiler.reset();
+        assertEquals(0, profiler.getSamples());
+        assertEquals(0, profiler.getStacks());
+        assertTrue(collapsed().isEmpty());
+    }
+
+    public void testCreateDump() throws Exception {
+        File directory = File.createTempFile("profiler", "");
+        directory.delete();
+        try {
+            profiler.createDump(new DirectoryDumpDestination(directory));
+            assertEquals(0, directory.list().length);
+
+            profiler.add(stack("B.b", "A.a"), 2, false);
+            profiler.createDump(new DirectoryDumpDestination(directory));
+            File file = new File(directory, "profile.collapsed");
+            assertTrue(file.exists());
+            StringWriter writer = new StringWriter();
+            InputStreamReader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            try {
+                char[] buffer = new char[1024];
+                int n;
+                while ((n = reader.read(buffer)) != -1) {
+                    writer.write(buffer, 0, n);
+                }
+            } finally {
+                reader.close();
+            }
+            assertEquals("A.a;B.b 1\n", writer.toString());
+        } finally {
+            CopyUtils.delete(directory);
+        }
+    }
+
+    private List<String> collapsed() throws Exception {
+        StringWriter writer = new StringWriter();
+        profiler.writeCollapsed(writer);
+        List<String> lines = new ArrayList<String>();
+        for (String line : writer.toString().split("\n")) {
+            if (line.length() > 0) {
+                lines.add(line);
+            }
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+
+    /**
+     * Creates a stack from its deepest frame, as returned by the JVM.
+     */
+    private static StackTraceElement[] stack(String... frames) {
+        StackTraceElement[] stack = new StackTraceElement[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            int idx = frames[i].lastIndexOf('.');
+            stack[i] = new StackTraceElement(frames[i].substring(0, idx), frames[i].substring(idx + 1), null, -1);
+        }
+        return stack;
+    }
+
+}
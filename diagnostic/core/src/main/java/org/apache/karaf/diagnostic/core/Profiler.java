@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Sampling profiler periodically capturing the stacks of the threads and
+ * aggregating them into a bounded call tree.
+ */
+public interface Profiler {
+
+    /**
+     * Starts sampling, keeping the samples already collected.
+     * 
+     * @param interval Time between two samples, in milliseconds.
+     * @param maxDepth Maximum number of frames captured for each stack.
+     * @param allThreads Sample all threads instead of only the runnable ones.
+     */
+    void start(long interval, int maxDepth, boolean allThreads);
+
+    /**
+     * Stops sampling, keeping the samples collected.
+     */
+    void stop();
+
+    /**
+     * Drops the samples collected.
+     */
+    void reset();
+
+    boolean isRunning();
+
+    /**
+     * Number of times the threads have been sampled.
+     */
+    long getSamples();
+
+    /**
+     * Number of stacks aggregated in the call tree.
+     */
+    long getStacks();
+
+    /**
+     * Time spent sampling, in milliseconds.
+     */
+    long getSamplingTime();
+
+    /**
+     * Time spent running, in milliseconds.
+     */
+    long getRunningTime();
+
+    /**
+     * Frames in which the threads have been seen the most often, with the
+     * number of stacks ending with them, in decreasing order.
+     * 
+     * @param max Maximum number of frames.
+     */
+    Map<String, Long> getTopFrames(int max);
+
+    /**
+     * Writes the call tree as collapsed stacks: one line per stack, with the
+     * frames from the root separated by semicolons followed by a space and
+     * the number of times the stack has been seen.  This is the input format
+     * of the flame graph tools.
+     * 
+     * @param writer Destination, not closed.
+     */
+    void writeCollapsed(Writer writer) throws IOException;
+
+}
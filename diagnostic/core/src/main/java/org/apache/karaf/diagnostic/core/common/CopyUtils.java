@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Copy helpers shared by the dump providers and destinations.  This code is
+ * very common but we would avoid additional dependencies in diagnostic stuff.
+ */
+public final class CopyUtils {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CopyUtils() {
+    }
+
+    /**
+     * Copies a file to the given stream, using {@link FileChannel#transferTo} so
+     * that large files are not copied through a small heap buffer.  The output
+     * stream is not closed.
+     *
+     * @param file Source file.
+     * @param outputStream Destination stream.
+     * @throws IOException When IO operation fails.
+     */
+    public static void copy(File file, OutputStream outputStream) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel source = inputStream.getChannel();
+            WritableByteChannel target;
+            if (outputStream instanceof FileOutputStream) {
+                // file to file, the copy may not even go through the heap
+                target = ((FileOutputStream) outputStream).getChannel();
+            } else {
+                target = Channels.newChannel(outputStream);
+            }
+            // the file may still grow (logs), only copy what was there when we started
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                long count = source.transferTo(position, size - position, target);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Rewrites data from input stream to output stream.  None of the streams is closed.
+     *
+     * @param inputStream Source stream.
+     * @param outputStream Destination stream.
+     * @throws IOException When IO operation fails.
+     */
+    public static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while (-1 != (n = inputStream.read(buffer))) {
+            outputStream.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * Deletes a file or a directory with its content.
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+}
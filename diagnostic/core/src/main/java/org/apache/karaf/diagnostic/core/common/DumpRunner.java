@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.apache.karaf.diagnostic.core.DumpProvider;
+
+/**
+ * Runs the dump providers concurrently, each one writing into its own
+ * temporary directory, and merges their entries into the destination once
+ * they are all done.  This keeps the time window captured by the dump short
+ * and lets a slow provider only delay the dump up to the timeout.
+ *
+ * Providers failing or still running after the timeout are left out of the
+ * dump, and reported in the {@link #ERRORS_ENTRY} entry.
+ */
+public class DumpRunner {
+
+    /**
+     * Default time given to the providers to complete, in milliseconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 60000;
+
+    /**
+     * Name of the entry listing the providers which did not complete.
+     */
+    public static final String ERRORS_ENTRY = "dump-errors.txt";
+
+    /**
+     * Dump providers.
+     */
+    private final List<DumpProvider> providers;
+
+    /**
+     * Maximum number of providers running at the same time.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Time given to the providers to complete, in milliseconds.
+     */
+    private long timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * Creates new runner.
+     *
+     * @param providers Dump providers, copied so that the list may change while the dump is created.
+     */
+    public DumpRunner(List<DumpProvider> providers) {
+        this.providers = new ArrayList<DumpProvider>(providers);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Creates the dump and saves the destination.
+     *
+     * @param destination Dump destination.
+     * @return Description of the providers which failed or timed out.
+     * @throws Exception When the dump cannot be written.
+     */
+    public List<String> run(DumpDestination destination) throws Exception {
+        List<String> errors = new ArrayList<String>();
+        File tmp = File.createTempFile("karaf-dump", "");
+        tmp.delete();
+        if (!tmp.mkdirs()) {
+            throw new IOException("Unable to create temporary directory " + tmp);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, providers.size())), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Karaf diagnostic dump-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < providers.size(); i++) {
+                final DumpProvider provider = providers.get(i);
+                final File directory = new File(tmp, Integer.toString(i));
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        provider.createDump(new DirectoryDumpDestination(directory));
+                        return null;
+                    }
+                }));
+            }
+            long deadline = System.currentTimeMillis() + timeout;
+            Set<String> names = new HashSet<String>();
+            for (int i = 0; i < providers.size(); i++) {
+                String provider = providers.get(i).getClass().getName();
+                try {
+                    futures.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    File directory = new File(tmp, Integer.toString(i));
+                    merge(directory, "", destination, names, errors);
+                } catch (TimeoutException e) {
+                    futures.get(i).cancel(true);
+                    errors.add(provider + " did not complete within " + timeout + " ms");
+                } catch (ExecutionException e) {
+                    StringWriter trace = new StringWriter();
+                    e.getCause().printStackTrace(new PrintWriter(trace));
+                    errors.add(provider + " failed: " + trace);
+                }
+            }
+            if (!errors.isEmpty()) {
+                OutputStream outputStream = destination.add(ERRORS_ENTRY);
+                PrintWriter writer = new PrintWriter(outputStream);
+                for (String error : errors) {
+                    writer.println(error);
+                }
+                writer.flush();
+                outputStream.close();
+            }
+            destination.save();
+        } finally {
+            executor.shutdownNow();
+            CopyUtils.delete(tmp);
+        }
+        return errors;
+    }
+
+    /**
+     * Copies the files written by a provider to the destination.
+     */
+    private void merge(File directory, String prefix, DumpDestination destination, Set<String> names, List<String> errors) throws Exception {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                merge(file, name + "/", destination, names, errors);
+            } else if (!names.add(name)) {
+                errors.add("Duplicate entry " + name + " has been skipped");
+            } else {
+                OutputStream outputStream = destination.add(name);
+                try {
+                    CopyUtils.copy(file, outputStream);
+                } finally {
+                    outputStream.close();
+                }
+            }
+        }
+    }
+
+}
@@ -45,8 +45,14 @@ public abstract class TextDumpProvider implements DumpProvider {
      */
     public final void createDump(DumpDestination destination) throws Exception {
         OutputStream outputStream = destination.add(name);
-        writeDump(new OutputStreamWriter(outputStream));
-        outputStream.close();
+        try {
+            OutputStreamWriter writer = new OutputStreamWriter(outputStream);
+            writeDump(writer);
+            // providers are not required to flush the writer
+            writer.flush();
+        } finally {
+            outputStream.close();
+        }
     }
 
     /**
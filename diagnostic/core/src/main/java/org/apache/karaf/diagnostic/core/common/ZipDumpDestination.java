@@ -15,10 +15,12 @@
  */
 package org.apache.karaf.diagnostic.core.common;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -29,6 +31,8 @@ import org.apache.karaf.diagnostic.core.DumpDestination;
  */
 public class ZipDumpDestination implements DumpDestination {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * Destination streem.
      */
@@ -50,14 +54,52 @@ public class ZipDumpDestination implements DumpDestination {
      * @param file Destination file.
      */
     public ZipDumpDestination(File file) {
+        this(file, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates new dump in given file (zip archive) with given compression level.
+     * 
+     * @param file Destination file.
+     * @param level Compression level, from 0 (no compression) to 9, or -1 for the default.
+     */
+    public ZipDumpDestination(File file, int level) {
+        checkLevel(level);
         try {
-            outputStream = new ZipOutputStream(new FileOutputStream(
-                file));
+            outputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(
+                file), BUFFER_SIZE));
         } catch (FileNotFoundException e) {
             // sometimes this can occur, but we simply re throw and let 
             // caller handle exception
             throw new RuntimeException("Unable to create dump destination", e);
         }
+        outputStream.setLevel(level);
+    }
+
+    /**
+     * Streams the dump (zip archive) to given output stream, for instance the
+     * response of a remote request.  The stream is closed by {@link #save()}.
+     * 
+     * @param stream Destination stream.
+     * @param level Compression level, from 0 (no compression) to 9, or -1 for the default.
+     */
+    public ZipDumpDestination(OutputStream stream, int level) {
+        checkLevel(level);
+        outputStream = new ZipOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        outputStream.setLevel(level);
+    }
+
+    /**
+     * Checks a compression level.
+     * 
+     * @param level Compression level.
+     * @throws IllegalArgumentException If the level is not -1 or between 0 and 9.
+     */
+    public static void checkLevel(int level) {
+        if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level + ", expected -1 or 0 to 9");
+        }
     }
 
     /**
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link CopyUtils}
+ */
+public class CopyUtilsTest extends TestCase {
+
+    /**
+     * Several times the copy buffer, and not a multiple of it.
+     */
+    private static final int SIZE = 300 * 1024 + 17;
+
+    private File directory;
+    private byte[] data;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("copy", "");
+        directory.delete();
+        directory.mkdirs();
+        data = new byte[SIZE];
+        new Random(42).nextBytes(data);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        CopyUtils.delete(directory);
+    }
+
+    public void testCopyFileToFile() throws Exception {
+        File source = write("source", data);
+        File target = new File(directory, "target");
+        FileOutputStream outputStream = new FileOutputStream(target);
+        try {
+            outputStream.write('#');
+            CopyUtils.copy(source, outputStream);
+        } finally {
+            outputStream.close();
+        }
+
+        // the copy is appended to what was already written
+        byte[] copy = read(target);
+        assertEquals(SIZE + 1, copy.length);
+        assertEquals('#', copy[0]);
+        assertTrue(Arrays.equals(data, Arrays.copyOfRange(copy, 1, copy.length)));
+    }
+
+    public void testCopyFileToStream() throws Exception {
+        File source = write("source", data);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CopyUtils.copy(source, outputStream);
+        assertTrue(Arrays.equals(data, outputStream.toByteArray()));
+    }
+
+    public void testCopyEmptyFile() throws Exception {
+        File source = write("empty", new byte[0]);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CopyUtils.copy(source, outputStream);
+        assertEquals(0, outputStream.size());
+    }
+
+    public void testCopyStream() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CopyUtils.copy(new ByteArrayInputStream(data), outputStream);
+        assertTrue(Arrays.equals(data, outputStream.toByteArray()));
+    }
+
+    public void testDelete() throws Exception {
+        File sub = new File(directory, "a/b");
+        sub.mkdirs();
+        write("a/b/file", data);
+        write("a/file", data);
+        CopyUtils.delete(new File(directory, "a"));
+        assertFalse(new File(directory, "a").exists());
+        assertTrue(directory.exists());
+    }
+
+    private File write(String name, byte[] content) throws Exception {
+        File file = new File(directory, name);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    private static byte[] read(File file) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            CopyUtils.copy(inputStream, outputStream);
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.karaf.diagnostic.core.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.apache.karaf.diagnostic.core.DumpProvider;
+
+/**
+ * Test cases for {@link DumpRunner}
+ */
+public class DumpRunnerTest extends TestCase {
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("dump", "");
+        directory.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        CopyUtils.delete(directory);
+    }
+
+    public void testConcurrentProviders() throws Exception {
+        // each provider only completes once the other one has started
+        final CountDownLatch started = new CountDownLatch(2);
+        DumpProvider provider = new DumpProvider() {
+            public void createDump(DumpDestination destination) throws Exception {
+                started.countDown();
+                if (!started.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Providers not run concurrently");
+                }
+                write(destination, "entry-" + Thread.currentThread().getName(), "ok");
+            }
+        };
+        DumpRunner runner = new DumpRunner(Arrays.<DumpProvider>asList(provider, provider));
+        runner.setThreads(2);
+
+        List<String> errors = runner.run(new DirectoryDumpDestination(directory));
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(2, directory.list().length);
+    }
+
+    public void testTimeout() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        DumpProvider slow = new DumpProvider() {
+            public void createDump(DumpDestination destination) throws Exception {
+                write(destination, "slow.txt", "late");
+                release.await(10, TimeUnit.SECONDS);
+            }
+        };
+        DumpRunner runner = new DumpRunner(Arrays.<DumpProvider>asList(slow, new Provider("fast.txt")));
+        runner.setThreads(2);
+        runner.setTimeout(200);
+
+        long start = System.currentTimeMillis();
+        List<String> errors = runner.run(new DirectoryDumpDestination(directory));
+        release.countDown();
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("did not complete within 200 ms"));
+        assertEquals("fast.txt", read(new File(directory, "fast.txt")));
+        assertFalse(new File(directory, "slow.txt").exists());
+        assertTrue(read(new File(directory, DumpRunner.ERRORS_ENTRY)).contains("did not complete"));
+    }
+
+    public void testFailure() throws Exception {
+        DumpProvider failing = new DumpProvider() {
+            public void createDump(DumpDestination destination) throws Exception {
+                write(destination, "partial.txt", "partial");
+                throw new IllegalStateException("expected failure");
+            }
+        };
+        DumpRunner runner = new DumpRunner(Arrays.<DumpProvider>asList(failing, new Provider("ok.txt")));
+
+        List<String> errors = runner.run(new DirectoryDumpDestination(directory));
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("expected failure"));
+        assertEquals("ok.txt", read(new File(directory, "ok.txt")));
+        assertFalse(new File(directory, "partial.txt").exists());
+    }
+
+    public void testDuplicateEntries() throws Exception {
+        DumpRunner runner = new DumpRunner(Arrays.<DumpProvider>asList(new Provider("dir/same.txt"), new Provider("dir/same.txt")));
+
+        List<String> errors = runner.run(new DirectoryDumpDestination(directory));
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("dir/same.txt"));
+        assertEquals("dir/same.txt", read(new File(directory, "dir/same.txt")));
+    }
+
+    private static void write(DumpDestination destination, String name, String content) throws Exception {
+        OutputStream outputStream = destination.add(name);
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static String read(File file) throws Exception {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int n = 0;
+            while (n < data.length) {
+                n += inputStream.read(data, n, data.length - n);
+            }
+            return new String(data, "UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Writes an entry containing its own name.
+     */
+    private static class Provider implements DumpProvider {
+
+        private final String name;
+
+        Provider(String name) {
+            this.name = name;
+        }
+
+        public void createDump(DumpDestination destination) throws Exception {
+            write(destination, name, name);
+        }
+
+    }
+
+}
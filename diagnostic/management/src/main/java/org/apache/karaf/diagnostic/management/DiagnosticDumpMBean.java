@@ -20,6 +20,26 @@ package org.apache.karaf.diagnostic.management;
  */
 public interface DiagnosticDumpMBean {
 
+    /**
+     * Largest archive returned by {@link #downloadDump()}.
+     */
+    int MAX_DOWNLOAD_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Largest chunk returned by {@link #readDump(String, long, int)}.
+     */
+    int MAX_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Largest number of archives prepared by {@link #prepareDump()} and not released.
+     */
+    int MAX_PREPARED_DUMPS = 4;
+
+    /**
+     * Time after which a prepared archive which is not read is deleted, in milliseconds.
+     */
+    long PREPARED_DUMP_EXPIRY = 10 * 60 * 1000;
+
     /**
      * Creates dump over JMX.
      * 
@@ -37,4 +57,63 @@ public interface DiagnosticDumpMBean {
      */
     void createDump(boolean directory, String name) throws Exception;
 
+    /**
+     * Creates dump as a ZIP archive and returns it.  The archive is written to
+     * a temporary file which is deleted once returned, and archives larger than
+     * {@link #MAX_DOWNLOAD_SIZE} are refused: use {@link #prepareDump()} and
+     * {@link #readDump(String, long, int)} to download them.
+     * 
+     * @return Content of the ZIP archive.
+     * @throws Exception In case of any problems.
+     */
+    byte[] downloadDump() throws Exception;
+
+    /**
+     * Creates dump as a ZIP archive in a temporary file, to be downloaded in
+     * chunks with {@link #readDump(String, long, int)} and deleted with
+     * {@link #releaseDump(String)}.  At most {@link #MAX_PREPARED_DUMPS}
+     * archives can be prepared at once, and archives which are not read for
+     * {@link #PREPARED_DUMP_EXPIRY} milliseconds are deleted.
+     * 
+     * @return Handle of the archive.
+     * @throws IllegalStateException If too many archives are prepared.
+     * @throws Exception In case of any problems.
+     */
+    String prepareDump() throws Exception;
+
+    /**
+     * Reads a chunk of a prepared archive.
+     * 
+     * @param handle Handle returned by {@link #prepareDump()}.
+     * @param offset Position of the chunk in the archive.
+     * @param length Maximum size of the chunk, at most {@link #MAX_CHUNK_SIZE}.
+     * @return Content of the chunk, empty at the end of the archive.
+     * @throws Exception In case of any problems.
+     */
+    byte[] readDump(String handle, long offset, int length) throws Exception;
+
+    /**
+     * Deletes a prepared archive.
+     * 
+     * @param handle Handle returned by {@link #prepareDump()}.
+     */
+    void releaseDump(String handle);
+
+    /**
+     * Time given to the dump providers to complete, in milliseconds.
+     */
+    long getTimeout();
+
+    void setTimeout(long timeout);
+
+    /**
+     * Compression level of the ZIP archives, from 0 to 9, or -1 for the default level.
+     */
+    int getCompressionLevel();
+
+    /**
+     * @throws IllegalArgumentException If the level is not -1 or between 0 and 9.
+     */
+    void setCompressionLevel(int level);
+
 }
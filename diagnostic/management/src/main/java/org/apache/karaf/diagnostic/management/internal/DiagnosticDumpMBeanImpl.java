@@ -14,7 +14,15 @@
 package org.apache.karaf.diagnostic.management.internal;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Deflater;
 
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
@@ -22,6 +30,7 @@ import javax.management.StandardMBean;
 import org.apache.karaf.diagnostic.core.DumpDestination;
 import org.apache.karaf.diagnostic.core.DumpProvider;
 import org.apache.karaf.diagnostic.core.common.DirectoryDumpDestination;
+import org.apache.karaf.diagnostic.core.common.DumpRunner;
 import org.apache.karaf.diagnostic.core.common.ZipDumpDestination;
 import org.apache.karaf.diagnostic.management.DiagnosticDumpMBean;
 
@@ -36,6 +45,26 @@ public class DiagnosticDumpMBeanImpl extends StandardMBean implements
      */
     private List<DumpProvider> providers;
 
+    /**
+     * Time given to the dump providers, in milliseconds.
+     */
+    private long timeout = DumpRunner.DEFAULT_TIMEOUT;
+
+    /**
+     * Compression level of the archives.
+     */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Archives prepared for download, by handle.
+     */
+    private final Map<String, PreparedDump> prepared = new HashMap<String, PreparedDump>();
+
+    /**
+     * Number of archives being prepared, not yet in the map.
+     */
+    private int preparing;
+
     /**
      * Creates new diagnostic mbean.
      * 
@@ -64,14 +93,181 @@ public class DiagnosticDumpMBeanImpl extends StandardMBean implements
         if (directory) {
             destination = new DirectoryDumpDestination(target);
         } else {
-            destination = new ZipDumpDestination(target);
+            destination = new ZipDumpDestination(target, compressionLevel);
+        }
+
+        createRunner().run(destination);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public byte[] downloadDump() throws Exception {
+        File file = createTemporaryDump();
+        try {
+            if (file.length() > MAX_DOWNLOAD_SIZE) {
+                throw new IllegalStateException("The dump is " + file.length() + " bytes large, which exceeds "
+                    + MAX_DOWNLOAD_SIZE + " bytes: download it in chunks or create it on the server");
+            }
+            return read(file, 0, (int) file.length());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String prepareDump() throws Exception {
+        synchronized (prepared) {
+            expireDumps();
+            if (prepared.size() + preparing >= MAX_PREPARED_DUMPS) {
+                throw new IllegalStateException(MAX_PREPARED_DUMPS
+                    + " dumps are already prepared: release them before preparing another one");
+            }
+            preparing++;
+        }
+        try {
+            File file = createTemporaryDump();
+            String handle = UUID.randomUUID().toString();
+            synchronized (prepared) {
+                prepared.put(handle, new PreparedDump(file, currentTimeMillis()));
+            }
+            return handle;
+        } finally {
+            synchronized (prepared) {
+                preparing--;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public byte[] readDump(String handle, long offset, int length) throws Exception {
+        File file;
+        synchronized (prepared) {
+            expireDumps();
+            PreparedDump dump = prepared.get(handle);
+            if (dump == null) {
+                throw new IllegalArgumentException("Unknown dump " + handle);
+            }
+            dump.lastRead = currentTimeMillis();
+            file = dump.file;
+        }
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Offset and length must not be negative");
+        }
+        long size = Math.min(Math.min(length, MAX_CHUNK_SIZE), Math.max(0, file.length() - offset));
+        return read(file, offset, (int) size);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void releaseDump(String handle) {
+        PreparedDump dump;
+        synchronized (prepared) {
+            dump = prepared.remove(handle);
+        }
+        if (dump != null) {
+            dump.file.delete();
+        }
+    }
+
+    /**
+     * Deletes the archives which were not read for too long, with the lock held.
+     */
+    private void expireDumps() {
+        long now = currentTimeMillis();
+        for (Iterator<PreparedDump> it = prepared.values().iterator(); it.hasNext();) {
+            PreparedDump dump = it.next();
+            if (now - dump.lastRead >= PREPARED_DUMP_EXPIRY) {
+                it.remove();
+                dump.file.delete();
+            }
+        }
+    }
+
+    /**
+     * Current time used to expire the prepared archives, overridden by tests.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Deletes the archives which were not released.
+     */
+    public void destroy() {
+        List<String> handles;
+        synchronized (prepared) {
+            handles = new ArrayList<String>(prepared.keySet());
+        }
+        for (String handle : handles) {
+            releaseDump(handle);
+        }
+    }
+
+    private File createTemporaryDump() throws Exception {
+        File file = File.createTempFile("karaf-dump", ".zip");
+        try {
+            createRunner().run(new ZipDumpDestination(file, compressionLevel));
+        } catch (Exception e) {
+            file.delete();
+            throw e;
         }
+        return file;
+    }
+
+    private static byte[] read(File file, long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            input.seek(offset);
+            input.readFully(data);
+        } finally {
+            input.close();
+        }
+        return data;
+    }
+
+    private DumpRunner createRunner() {
+        DumpRunner runner = new DumpRunner(providers);
+        runner.setTimeout(timeout);
+        return runner;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int level) {
+        ZipDumpDestination.checkLevel(level);
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Archive prepared for download.
+     */
+    private static class PreparedDump {
+
+        private final File file;
+        private long lastRead;
 
-        for (DumpProvider provider : providers) {
-            provider.createDump(destination);
+        PreparedDump(File file, long lastRead) {
+            this.file = file;
+            this.lastRead = lastRead;
         }
 
-        destination.save();
     }
 
     /**
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.karaf.diagnostic.management.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import junit.framework.TestCase;
+import org.apache.karaf.diagnostic.core.DumpDestination;
+import org.apache.karaf.diagnostic.core.DumpProvider;
+import org.apache.karaf.diagnostic.management.DiagnosticDumpMBean;
+
+/**
+ * Test cases for {@link DiagnosticDumpMBeanImpl}
+ */
+public class DiagnosticDumpMBeanImplTest extends TestCase {
+
+    private byte[] data;
+    private DiagnosticDumpMBeanImpl mbean;
+    private long time;
+
+    @Override
+    protected void setUp() throws Exception {
+        // random data does not compress, so the archive is larger than a chunk
+        data = new byte[DiagnosticDumpMBean.MAX_CHUNK_SIZE + 1000];
+        new Random(42).nextBytes(data);
+        mbean = new DiagnosticDumpMBeanImpl() {
+            @Override
+            protected long currentTimeMillis() {
+                return time;
+            }
+        };
+        mbean.setProviders(Arrays.<DumpProvider>asList(new DumpProvider() {
+            public void createDump(DumpDestination destination) throws Exception {
+                OutputStream outputStream = destination.add("data.bin");
+                try {
+                    outputStream.write(data);
+                } finally {
+                    outputStream.close();
+                }
+            }
+        }));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mbean.destroy();
+    }
+
+    public void testDownload() throws Exception {
+        assertTrue(Arrays.equals(data, unzip(mbean.downloadDump())));
+    }
+
+    public void testChunkedDownload() throws Exception {
+        String handle = mbean.prepareDump();
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        int chunks = 0;
+        byte[] chunk;
+        while ((chunk = mbean.readDump(handle, archive.size(), Integer.MAX_VALUE)).length > 0) {
+            assertTrue(chunk.length <= DiagnosticDumpMBean.MAX_CHUNK_SIZE);
+            archive.write(chunk);
+            chunks++;
+        }
+        assertEquals(2, chunks);
+        assertTrue(Arrays.equals(data, unzip(archive.toByteArray())));
+
+        mbean.releaseDump(handle);
+        try {
+            mbean.readDump(handle, 0, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testPreparedDumpsLimit() throws Exception {
+        List<String> handles = new ArrayList<String>();
+        for (int i = 0; i < DiagnosticDumpMBean.MAX_PREPARED_DUMPS; i++) {
+            handles.add(mbean.prepareDump());
+        }
+        try {
+            mbean.prepareDump();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        mbean.releaseDump(handles.remove(0));
+        handles.add(mbean.prepareDump());
+    }
+
+    public void testPreparedDumpsExpiry() throws Exception {
+        String read = mbean.prepareDump();
+        String unread = mbean.prepareDump();
+        time += DiagnosticDumpMBean.PREPARED_DUMP_EXPIRY / 2;
+        assertEquals(1, mbean.readDump(read, 0, 1).length);
+        time += DiagnosticDumpMBean.PREPARED_DUMP_EXPIRY / 2;
+        // only the archive which was not read recently expired
+        assertEquals(1, mbean.readDump(read, 1, 1).length);
+        try {
+            mbean.readDump(unread, 0, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testCompressionLevel() throws Exception {
+        mbean.setCompressionLevel(9);
+        mbean.setCompressionLevel(-1);
+        for (int level : new int[] { -2, 10 }) {
+            try {
+                mbean.setCompressionLevel(level);
+                fail("Expected IllegalArgumentException for " + level);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(-1, mbean.getCompressionLevel());
+    }
+
+    private static byte[] unzip(byte[] archive) throws Exception {
+        ZipInputStream inputStream = new ZipInputStream(new ByteArrayInputStream(archive));
+        ZipEntry entry = inputStream.getNextEntry();
+        assertEquals("data.bin", entry.getName());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, n);
+        }
+        assertNull(inputStream.getNextEntry());
+        return outputStream.toByteArray();
+    }
+
+}
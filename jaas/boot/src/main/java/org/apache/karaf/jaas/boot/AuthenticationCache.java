@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.jaas.boot;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.Subject;
+
+/**
+ * A cache of successful JAAS logins, so that clients opening many short
+ * connections do not go through the login modules each time.
+ *
+ * Entries are keyed by realm and user name, and only hold a salted hash of
+ * the password.  They expire after the configured time to live, and are all
+ * invalidated when {@link #invalidateAll()} is called, which the backing
+ * engines do when users or roles are modified.  Failed logins are never
+ * cached.
+ *
+ * The cache is disabled unless a positive time to live is set.
+ */
+public class AuthenticationCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * Incremented each time the users or roles change, shared by all caches.
+     */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private final byte[] salt = new byte[16];
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile long timeToLive;
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    public AuthenticationCache() {
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Invalidate the entries of all the caches.
+     */
+    public static void invalidateAll() {
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * The time in milliseconds a successful login is cached, the cache being disabled if 0.
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+        if (timeToLive <= 0) {
+            clear();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isEnabled() {
+        return timeToLive > 0;
+    }
+
+    /**
+     * Returns a copy of the subject of a cached login with the same password,
+     * or <code>null</code> if there is no such login.
+     */
+    public Subject get(String realm, String user, String password) {
+        if (!isEnabled() || password == null) {
+            return null;
+        }
+        String key = getKey(realm, user);
+        byte[] hash = hash(password);
+        Subject subject = null;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.generation != GENERATION.get() || entry.expiration - System.currentTimeMillis() <= 0) {
+                    entries.remove(key);
+                } else if (MessageDigest.isEqual(entry.hash, hash)) {
+                    subject = entry.subject;
+                }
+            }
+        }
+        if (subject == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(subject);
+    }
+
+    /**
+     * Cache a successful login.
+     */
+    public void put(String realm, String user, String password, Subject subject) {
+        if (!isEnabled() || password == null) {
+            return;
+        }
+        // take the generation first, so that a concurrent change invalidates the entry
+        Entry entry = new Entry(GENERATION.get(), System.currentTimeMillis() + timeToLive, hash(password), copy(subject));
+        synchronized (entries) {
+            entries.put(getKey(realm, user), entry);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static String getKey(String realm, String user) {
+        return realm + '\u0000' + user;
+    }
+
+    private byte[] hash(String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return digest.digest(password.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Subject copy(Subject subject) {
+        return new Subject(false, subject.getPrincipals(), subject.getPublicCredentials(), subject.getPrivateCredentials());
+    }
+
+    private static class Entry {
+
+        final long generation;
+        final long expiration;
+        final byte[] hash;
+        final Subject subject;
+
+        Entry(long generation, long expiration, byte[] hash, Subject subject) {
+            this.generation = generation;
+            this.expiration = expiration;
+            this.hash = hash;
+            this.subject = subject;
+        }
+
+    }
+
+}
@@ -16,6 +16,7 @@
 
 package org.apache.karaf.jaas.modules.jdbc;
 
+import org.apache.karaf.jaas.boot.AuthenticationCache;
 import org.apache.karaf.jaas.modules.BackingEngine;
 import org.apache.karaf.jaas.modules.RolePrincipal;
 import org.apache.karaf.jaas.modules.UserPrincipal;
@@ -97,6 +98,7 @@ public class JDBCBackingEngine implements BackingEngine {
             } catch (SQLException e) {
                 logger.error("Error executiong statement", e);
             } finally {
+                AuthenticationCache.invalidateAll();
                 try {
                     if (statement != null) {
                         statement.close();
@@ -146,6 +148,7 @@ public class JDBCBackingEngine implements BackingEngine {
             } catch (SQLException e) {
                 logger.error("Error executiong statement", e);
             } finally {
+                AuthenticationCache.invalidateAll();
                 try {
                     if (userStatement != null) {
                         userStatement.close();
@@ -288,6 +291,7 @@ public class JDBCBackingEngine implements BackingEngine {
             } catch (SQLException e) {
                 logger.error("Error executiong statement", e);
             } finally {
+                AuthenticationCache.invalidateAll();
                 try {
                     if (statement != null) {
                         statement.close();
@@ -330,6 +334,7 @@ public class JDBCBackingEngine implements BackingEngine {
             } catch (SQLException e) {
                 logger.error("Error executing statement", e);
             } finally {
+                AuthenticationCache.invalidateAll();
                 try {
                     if (statement != null) {
                         statement.close();
@@ -17,6 +17,7 @@
 package org.apache.karaf.jaas.modules.properties;
 
 import org.apache.felix.utils.properties.Properties;
+import org.apache.karaf.jaas.boot.AuthenticationCache;
 import org.apache.karaf.jaas.modules.BackingEngine;
 import org.apache.karaf.jaas.modules.RolePrincipal;
 import org.apache.karaf.jaas.modules.UserPrincipal;
@@ -88,6 +89,7 @@ public class PropertiesBackingEngine implements BackingEngine {
         } catch (Exception ex) {
             LOGGER.error("Cannot update users file,", ex);
         }
+        AuthenticationCache.invalidateAll();
     }
 
     /**
@@ -97,7 +99,7 @@ public class PropertiesBackingEngine implements BackingEngine {
      */
     public void deleteUser(String username) {
         users.remove(username);
-
+        AuthenticationCache.invalidateAll();
     }
 
     /**
@@ -148,6 +150,7 @@ public class PropertiesBackingEngine implements BackingEngine {
         } catch (Exception ex) {
             LOGGER.error("Cannot update users file,", ex);
         }
+        AuthenticationCache.invalidateAll();
     }
 
     /**
@@ -183,6 +186,7 @@ public class PropertiesBackingEngine implements BackingEngine {
         } catch (Exception ex) {
             LOGGER.error("Cannot update users file,", ex);
         }
+        AuthenticationCache.invalidateAll();
     }
 
 }
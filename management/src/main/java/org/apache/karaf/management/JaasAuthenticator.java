@@ -30,10 +30,13 @@ import javax.security.auth.login.FailedLoginException;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 
+import org.apache.karaf.jaas.boot.AuthenticationCache;
+
 public class JaasAuthenticator implements JMXAuthenticator {
 
     private String realm;
     private String role;
+    private final AuthenticationCache cache = new AuthenticationCache();
 
     public String getRealm() {
         return realm;
@@ -51,6 +54,21 @@ public class JaasAuthenticator implements JMXAuthenticator {
         this.role = role;
     }
 
+    /**
+     * The time in milliseconds successful logins are cached, 0 to disable the cache.
+     */
+    public long getCacheTimeToLive() {
+        return cache.getTimeToLive();
+    }
+
+    public void setCacheTimeToLive(long timeToLive) {
+        cache.setTimeToLive(timeToLive);
+    }
+
+    public AuthenticationCache getCache() {
+        return cache;
+    }
+
     public Subject authenticate(Object credentials) throws SecurityException {
         if (!(credentials instanceof String[])) {
             throw new IllegalArgumentException("Expected String[2], got "
@@ -61,21 +79,25 @@ public class JaasAuthenticator implements JMXAuthenticator {
             throw new IllegalArgumentException("Expected String[2] but length was " + params.length);
         }
         try {
-            Subject subject = new Subject();
-            LoginContext loginContext = new LoginContext(realm, subject, new CallbackHandler() {
-                public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
-                    for (int i = 0; i < callbacks.length; i++) {
-                        if (callbacks[i] instanceof NameCallback) {
-                            ((NameCallback) callbacks[i]).setName(params[0]);
-                        } else if (callbacks[i] instanceof PasswordCallback) {
-                            ((PasswordCallback) callbacks[i]).setPassword((params[1].toCharArray()));
-                        } else {
-                            throw new UnsupportedCallbackException(callbacks[i]);
+            Subject subject = cache.get(realm, params[0], params[1]);
+            if (subject == null) {
+                subject = new Subject();
+                LoginContext loginContext = new LoginContext(realm, subject, new CallbackHandler() {
+                    public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                        for (int i = 0; i < callbacks.length; i++) {
+                            if (callbacks[i] instanceof NameCallback) {
+                                ((NameCallback) callbacks[i]).setName(params[0]);
+                            } else if (callbacks[i] instanceof PasswordCallback) {
+                                ((PasswordCallback) callbacks[i]).setPassword((params[1].toCharArray()));
+                            } else {
+                                throw new UnsupportedCallbackException(callbacks[i]);
+                            }
                         }
                     }
-                }
-            });
-            loginContext.login();
+                });
+                loginContext.login();
+                cache.put(realm, params[0], params[1], subject);
+            }
             if (role != null && role.length() > 0) {
                 String clazz = "org.apache.karaf.jaas.modules.RolePrincipal";
                 String name = role;
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.management;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.Subject;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.login.FailedLoginException;
+import javax.security.auth.login.LoginException;
+import javax.security.auth.spi.LoginModule;
+
+import junit.framework.TestCase;
+import org.apache.karaf.jaas.boot.AuthenticationCache;
+
+public class JaasAuthenticatorTest extends TestCase {
+
+    private static final AtomicInteger LOGINS = new AtomicInteger();
+
+    private Configuration previous;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        try {
+            previous = Configuration.getConfiguration();
+        } catch (SecurityException e) {
+            previous = null;
+        }
+        Configuration.setConfiguration(new Configuration() {
+            public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
+                return new AppConfigurationEntry[] {
+                    new AppConfigurationEntry(TestLoginModule.class.getName(),
+                            AppConfigurationEntry.LoginModuleControlFlag.REQUIRED,
+                            Collections.<String, Object>emptyMap())
+                };
+            }
+            public void refresh() {
+            }
+        });
+        LOGINS.set(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Configuration.setConfiguration(previous);
+        super.tearDown();
+    }
+
+    public void testNoCacheByDefault() throws Exception {
+        JaasAuthenticator authenticator = createAuthenticator();
+        authenticator.authenticate(new String[] { "karaf", "karaf" });
+        authenticator.authenticate(new String[] { "karaf", "karaf" });
+        assertEquals(2, LOGINS.get());
+        assertEquals(0, authenticator.getCache().getHits());
+    }
+
+    public void testCachedLogin() throws Exception {
+        JaasAuthenticator authenticator = createAuthenticator();
+        authenticator.setCacheTimeToLive(60000);
+        Subject subject = authenticator.authenticate(new String[] { "karaf", "karaf" });
+        Subject cached = authenticator.authenticate(new String[] { "karaf", "karaf" });
+        assertEquals(1, LOGINS.get());
+        assertEquals(1, authenticator.getCache().getHits());
+        assertEquals(1, authenticator.getCache().getMisses());
+        assertNotSame(subject, cached);
+        assertEquals(subject.getPrincipals(), cached.getPrincipals());
+
+        // a wrong password is never answered from the cache
+        try {
+            authenticator.authenticate(new String[] { "karaf", "wrong" });
+            fail("Authentication should have failed");
+        } catch (SecurityException e) {
+            // expected
+        }
+        assertEquals(2, LOGINS.get());
+
+        // the role is still checked
+        authenticator.setRole(TestPrincipal.class.getName() + ":manager");
+        try {
+            authenticator.authenticate(new String[] { "karaf", "karaf" });
+            fail("Authentication should have failed");
+        } catch (SecurityException e) {
+            // expected
+        }
+    }
+
+    public void testInvalidation() throws Exception {
+        JaasAuthenticator authenticator = createAuthenticator();
+        authenticator.setCacheTimeToLive(60000);
+        authenticator.authenticate(new String[] { "karaf", "karaf" });
+        AuthenticationCache.invalidateAll();
+        authenticator.authenticate(new String[] { "karaf", "karaf" });
+        assertEquals(2, LOGINS.get());
+        authenticator.authenticate(new String[] { "karaf", "karaf" });
+        assertEquals(2, LOGINS.get());
+    }
+
+    public void testExpiration() throws Exception {
+        JaasAuthenticator authenticator = createAuthenticator();
+        authenticator.setCacheTimeToLive(1);
+        authenticator.authenticate(new String[] { "karaf", "karaf" });
+        Thread.sleep(10);
+        authenticator.authenticate(new String[] { "karaf", "karaf" });
+        assertEquals(2, LOGINS.get());
+    }
+
+    private JaasAuthenticator createAuthenticator() {
+        JaasAuthenticator authenticator = new JaasAuthenticator();
+        authenticator.setRealm("karaf");
+        authenticator.setRole(TestPrincipal.class.getName() + ":admin");
+        return authenticator;
+    }
+
+    public static class TestLoginModule implements LoginModule {
+
+        private Subject subject;
+        private CallbackHandler handler;
+        private String user;
+
+        public void initialize(Subject subject, CallbackHandler handler, Map<String, ?> sharedState, Map<String, ?> options) {
+            this.subject = subject;
+            this.handler = handler;
+        }
+
+        public boolean login() throws LoginException {
+            LOGINS.incrementAndGet();
+            NameCallback name = new NameCallback("Username: ");
+            PasswordCallback password = new PasswordCallback("Password: ", false);
+            try {
+                handler.handle(new Callback[] { name, password });
+            } catch (IOException e) {
+                throw new LoginException(e.getMessage());
+            } catch (UnsupportedCallbackException e) {
+                throw new LoginException(e.getMessage());
+            }
+            if (!"karaf".equals(name.getName()) || !"karaf".equals(new String(password.getPassword()))) {
+                throw new FailedLoginException();
+            }
+            user = name.getName();
+            return true;
+        }
+
+        public boolean commit() throws LoginException {
+            subject.getPrincipals().add(new TestPrincipal(user));
+            subject.getPrincipals().add(new TestPrincipal("admin"));
+            return true;
+        }
+
+        public boolean abort() throws LoginException {
+            return true;
+        }
+
+        public boolean logout() throws LoginException {
+            subject.getPrincipals().clear();
+            return true;
+        }
+    }
+
+    public static class TestPrincipal implements Principal {
+
+        private final String name;
+
+        public TestPrincipal(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean equals(Object o) {
+            return o != null && o.getClass() == getClass() && ((Principal) o).getName().equals(name);
+        }
+
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.command;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+import org.apache.karaf.scheduler.core.Histogram;
+import org.apache.karaf.scheduler.core.ScheduledTask;
+import org.apache.karaf.scheduler.core.TaskScheduler;
+import org.apache.karaf.shell.console.OsgiCommandSupport;
+
+/**
+ * Displays the scheduled tasks with their execution statistics.
+ */
+@Command(scope = "scheduler", name = "list", description = "Lists the scheduled tasks with their execution statistics.")
+public class ListTasks extends OsgiCommandSupport {
+
+    static final String HEADER_FORMAT = "%-24s %-24s %8s %8s %8s %8s %8s %8s %8s  %-19s %s";
+    static final String ROW_FORMAT = "%-24s %-24s %8d %8d %8d %8.1f %8d %8d %8d  %-19s %s";
+
+    @Option(name = "--reset", description = "Reset the execution time and lag statistics", required = false, multiValued = false)
+    boolean reset;
+
+    protected TaskScheduler scheduler;
+
+    public TaskScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public void setScheduler(TaskScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    protected Object doExecute() throws Exception {
+        if (reset) {
+            for (ScheduledTask task : scheduler.getTasks()) {
+                task.getExecutionTimes().reset();
+                task.getLags().reset();
+            }
+            return null;
+        }
+        PrintStream out = System.out;
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        out.println(String.format(HEADER_FORMAT, "Id", "Schedule", "Runs", "Failed", "Skipped", "Mean ms", "P99 ms", "Max ms", "Lag P99", "Next", "State"));
+        for (ScheduledTask task : scheduler.getTasks()) {
+            Histogram times = task.getExecutionTimes();
+            out.println(String.format(ROW_FORMAT,
+                    task.getId(),
+                    task.getTask().getSchedule(),
+                    task.getExecutions(),
+                    task.getFailures(),
+                    task.getSkipped(),
+                    times.getMean(),
+                    times.getPercentile(99),
+                    times.getMax(),
+                    task.getLags().getPercentile(99),
+                    task.getNextTime() >= 0 ? format.format(new Date(task.getNextTime())) : "",
+                    task.isRunning() ? "Running" : ""));
+        }
+        return null;
+    }
+
+}
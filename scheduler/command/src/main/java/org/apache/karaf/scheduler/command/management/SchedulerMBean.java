@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.command.management;
+
+import javax.management.openmbean.TabularData;
+
+public interface SchedulerMBean {
+
+    String TASK_ID = "Id";
+    String TASK_SCHEDULE = "Schedule";
+    String TASK_CONCURRENT = "Concurrent";
+    String TASK_RUNNING = "Running";
+    String TASK_EXECUTIONS = "Executions";
+    String TASK_FAILURES = "Failures";
+    String TASK_SKIPPED = "Skipped";
+    String TASK_LAST_FAILURE = "LastFailure";
+    String TASK_LAST_TIME = "LastTime";
+    String TASK_NEXT_TIME = "NextTime";
+    String TASK_MEAN_TIME = "MeanTime";
+    String TASK_P99_TIME = "P99Time";
+    String TASK_MAX_TIME = "MaxTime";
+    String TASK_MEAN_LAG = "MeanLag";
+    String TASK_P99_LAG = "P99Lag";
+    String TASK_MAX_LAG = "MaxLag";
+
+    String[] TASK = { TASK_ID, TASK_SCHEDULE, TASK_CONCURRENT, TASK_RUNNING, TASK_EXECUTIONS, TASK_FAILURES,
+            TASK_SKIPPED, TASK_LAST_FAILURE, TASK_LAST_TIME, TASK_NEXT_TIME, TASK_MEAN_TIME, TASK_P99_TIME,
+            TASK_MAX_TIME, TASK_MEAN_LAG, TASK_P99_LAG, TASK_MAX_LAG };
+
+    // Operations
+    void unschedule(String id) throws Exception;
+    void resetStatistics() throws Exception;
+
+    // Attributes
+    TabularData getTasks() throws Exception;
+    int getThreads() throws Exception;
+    void setThreads(int threads) throws Exception;
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.command.management;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.karaf.scheduler.core.Histogram;
+import org.apache.karaf.scheduler.core.ScheduledTask;
+import org.apache.karaf.scheduler.core.TaskScheduler;
+
+public class SchedulerMBeanImpl extends StandardMBean implements SchedulerMBean {
+
+    static final CompositeType TASK_TYPE;
+    static final TabularType TASK_TABLE;
+
+    static {
+        TASK_TYPE = createTaskType();
+        TASK_TABLE = createTaskTableType();
+    }
+
+    private TaskScheduler scheduler;
+
+    public SchedulerMBeanImpl() throws NotCompliantMBeanException {
+        super(SchedulerMBean.class);
+    }
+
+    public void setScheduler(TaskScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void unschedule(String id) throws Exception {
+        if (scheduler.getTask(id) == null) {
+            throw new IllegalArgumentException("Task " + id + " is not scheduled");
+        }
+        scheduler.unschedule(id);
+    }
+
+    public void resetStatistics() throws Exception {
+        for (ScheduledTask task : scheduler.getTasks()) {
+            task.getExecutionTimes().reset();
+            task.getLags().reset();
+        }
+    }
+
+    public int getThreads() throws Exception {
+        return scheduler.getThreads();
+    }
+
+    public void setThreads(int threads) throws Exception {
+        scheduler.setThreads(threads);
+    }
+
+    public TabularData getTasks() throws Exception {
+        TabularDataSupport table = new TabularDataSupport(TASK_TABLE);
+        for (ScheduledTask task : scheduler.getTasks()) {
+            Histogram times = task.getExecutionTimes();
+            Histogram lags = task.getLags();
+            Object[] itemValues = new Object[TASK.length];
+            itemValues[0] = task.getId();
+            itemValues[1] = task.getTask().getSchedule();
+            itemValues[2] = task.getTask().isConcurrent();
+            itemValues[3] = task.isRunning();
+            itemValues[4] = task.getExecutions();
+            itemValues[5] = task.getFailures();
+            itemValues[6] = task.getSkipped();
+            itemValues[7] = task.getLastFailure();
+            itemValues[8] = task.getLastTime();
+            itemValues[9] = task.getNextTime();
+            itemValues[10] = times.getMean();
+            itemValues[11] = times.getPercentile(99);
+            itemValues[12] = times.getMax();
+            itemValues[13] = lags.getMean();
+            itemValues[14] = lags.getPercentile(99);
+            itemValues[15] = lags.getMax();
+            table.put(new CompositeDataSupport(TASK_TYPE, TASK, itemValues));
+        }
+        return table;
+    }
+
+    private static CompositeType createTaskType() {
+        try {
+            OpenType[] itemTypes = new OpenType[] {
+                    SimpleType.STRING, SimpleType.STRING, SimpleType.BOOLEAN, SimpleType.BOOLEAN,
+                    SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.STRING,
+                    SimpleType.LONG, SimpleType.LONG,
+                    SimpleType.DOUBLE, SimpleType.LONG, SimpleType.LONG,
+                    SimpleType.DOUBLE, SimpleType.LONG, SimpleType.LONG };
+            String[] descriptions = new String[] {
+                    "The id of the task.",
+                    "The schedule of the task.",
+                    "Whether executions of the task may overlap.",
+                    "Whether the task is currently running.",
+                    "The number of executions.",
+                    "The number of failed executions.",
+                    "The number of executions skipped as the previous one was still running.",
+                    "The last error thrown by the task.",
+                    "The start time of the last execution, or -1.",
+                    "The time of the next execution, or -1.",
+                    "The mean execution time in milliseconds.",
+                    "The 99th percentile of the execution time in milliseconds.",
+                    "The maximum execution time in milliseconds.",
+                    "The mean delay in milliseconds between the scheduled and actual start times.",
+                    "The 99th percentile of the delay in milliseconds between the scheduled and actual start times.",
+                    "The maximum delay in milliseconds between the scheduled and actual start times." };
+            return new CompositeType("Task", "This type describes a scheduled task", TASK, descriptions, itemTypes);
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build task type", e);
+        }
+    }
+
+    private static TabularType createTaskTableType() {
+        try {
+            return new TabularType("Tasks", "Table of the scheduled tasks", TASK_TYPE, new String[] { TASK_ID });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build task table type", e);
+        }
+    }
+
+}
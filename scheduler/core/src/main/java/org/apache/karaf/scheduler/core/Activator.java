@@ -23,26 +23,47 @@ import java.util.Properties;
 
 public class Activator implements BundleActivator {
 
-    private TaskScheduler scheduler = new TaskScheduler();
+    /**
+     * Framework property giving the number of threads of the scheduler.
+     */
+    public static final String THREADS_PROPERTY = "org.apache.karaf.scheduler.threads";
+
+    private TaskScheduler scheduler;
     private RunableServiceListener listener;
 
-    private static final String filter = "(&(objectclass=%s)(&(%s >= 0)(%s >= 0)))";
+    private static final String filter = "(&(objectClass=%s)(%s=*)(|(%s=*)(%s=*)(%s=*)))";
 
     @Override
     public void start(BundleContext context) throws Exception {
+        int threads = TaskScheduler.DEFAULT_THREADS;
+        String value = context.getProperty(THREADS_PROPERTY);
+        if (value != null) {
+            threads = Integer.parseInt(value.trim());
+        }
+        scheduler = new TaskScheduler(threads);
         listener = new RunableServiceListener(context, scheduler);
 
         //register scheduler service
         context.registerService(scheduler.getClass().getName(), scheduler, new Properties());
 
         //register service listener
-        context.addServiceListener(listener, String.format(filter, Runnable.class.getName(), KarafTimerTask.ID_PROPERTY, KarafTimerTask.PERIOD_PROPERTY));
+        String f = String.format(filter, Runnable.class.getName(), KarafTimerTask.ID_PROPERTY,
+                KarafTimerTask.PERIOD_PROPERTY, KarafTimerTask.RATE_PROPERTY, KarafTimerTask.CRON_PROPERTY);
+        context.addServiceListener(listener, f);
 
+        //schedule the services registered before this bundle started
+        ServiceReference[] references = context.getServiceReferences((String) null, f);
+        if (references != null) {
+            for (ServiceReference reference : references) {
+                listener.scheduleRunnableService(reference);
+            }
+        }
     }
 
     @Override
     public void stop(BundleContext context) throws Exception {
-
+        context.removeServiceListener(listener);
+        scheduler.shutdown();
     }
 
 }
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * A cron expression, made of five fields (minute, hour, day of month, month
+ * and day of week) or six fields when starting with the second.
+ *
+ * Each field accepts <code>*</code> (or <code>?</code>), single values, ranges
+ * (<code>1-5</code>), steps (<code>*&#47;15</code>, <code>0-30/10</code>) and lists
+ * of them.  Months and days of week can also be given by their three letter
+ * english names, Sunday being either 0 or 7.  As with cron, if both the day of
+ * month and the day of week are restricted, a day matching either is valid.
+ */
+public class CronExpression {
+
+    private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+    private static final String[] DAYS = { "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT" };
+
+    /**
+     * Give up looking for the next time after this number of years, for expressions
+     * like <code>0 0 31 2 *</code> which never match.
+     */
+    private static final int MAX_YEARS = 5;
+
+    private final String expression;
+    private final BitSet seconds;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean allDaysOfMonth;
+    private final boolean allDaysOfWeek;
+
+    /**
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public CronExpression(String expression) {
+        this.expression = expression;
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5 && fields.length != 6) {
+            throw new IllegalArgumentException("Invalid cron expression '" + expression + "': 5 or 6 fields expected");
+        }
+        int i = 0;
+        seconds = fields.length == 6 ? parse(fields[i++], 0, 59, null, 0) : parse("0", 0, 59, null, 0);
+        minutes = parse(fields[i++], 0, 59, null, 0);
+        hours = parse(fields[i++], 0, 23, null, 0);
+        allDaysOfMonth = isAll(fields[i]);
+        daysOfMonth = parse(fields[i++], 1, 31, null, 0);
+        months = parse(fields[i++], 1, 12, MONTHS, 1);
+        allDaysOfWeek = isAll(fields[i]);
+        daysOfWeek = parse(fields[i++], 0, 7, DAYS, 0);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+            daysOfWeek.clear(7);
+        }
+    }
+
+    /**
+     * Returns the first time matching the expression strictly after the given
+     * time, or <code>-1</code> if there is none.
+     */
+    public long getNextTime(long after) {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(after);
+        cal.set(Calendar.MILLISECOND, 0);
+        cal.add(Calendar.SECOND, 1);
+        int maxYear = cal.get(Calendar.YEAR) + MAX_YEARS;
+        while (cal.get(Calendar.YEAR) <= maxYear) {
+            if (!months.get(cal.get(Calendar.MONTH) + 1)) {
+                cal.add(Calendar.MONTH, 1);
+                cal.set(Calendar.DAY_OF_MONTH, 1);
+                cal.set(Calendar.HOUR_OF_DAY, 0);
+                cal.set(Calendar.MINUTE, 0);
+                cal.set(Calendar.SECOND, 0);
+            } else if (!matchesDay(cal)) {
+                cal.add(Calendar.DAY_OF_MONTH, 1);
+                cal.set(Calendar.HOUR_OF_DAY, 0);
+                cal.set(Calendar.MINUTE, 0);
+                cal.set(Calendar.SECOND, 0);
+            } else if (!hours.get(cal.get(Calendar.HOUR_OF_DAY))) {
+                cal.add(Calendar.HOUR_OF_DAY, 1);
+                cal.set(Calendar.MINUTE, 0);
+                cal.set(Calendar.SECOND, 0);
+            } else if (!minutes.get(cal.get(Calendar.MINUTE))) {
+                cal.add(Calendar.MINUTE, 1);
+                cal.set(Calendar.SECOND, 0);
+            } else if (!seconds.get(cal.get(Calendar.SECOND))) {
+                cal.add(Calendar.SECOND, 1);
+            } else {
+                return cal.getTimeInMillis();
+            }
+        }
+        return -1;
+    }
+
+    private boolean matchesDay(Calendar cal) {
+        boolean dayOfMonth = daysOfMonth.get(cal.get(Calendar.DAY_OF_MONTH));
+        boolean dayOfWeek = daysOfWeek.get(cal.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY);
+        if (allDaysOfMonth) {
+            return dayOfWeek;
+        } else if (allDaysOfWeek) {
+            return dayOfMonth;
+        } else {
+            return dayOfMonth || dayOfWeek;
+        }
+    }
+
+    private static boolean isAll(String field) {
+        return "*".equals(field) || "?".equals(field);
+    }
+
+    private BitSet parse(String field, int min, int max, String[] names, int offset) {
+        BitSet bits = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int idx = part.indexOf('/');
+            boolean stepped = idx >= 0;
+            if (stepped) {
+                step = parseValue(part.substring(idx + 1), 1, max - min + 1, null, 0);
+                part = part.substring(0, idx);
+            }
+            int from;
+            int to;
+            if (isAll(part)) {
+                from = min;
+                to = max;
+            } else {
+                idx = part.indexOf('-');
+                if (idx > 0) {
+                    from = parseValue(part.substring(0, idx), min, max, names, offset);
+                    to = parseValue(part.substring(idx + 1), min, max, names, offset);
+                } else {
+                    from = parseValue(part, min, max, names, offset);
+                    // a/n stands for a-max/n
+                    to = stepped ? max : from;
+                }
+                if (from > to) {
+                    throw new IllegalArgumentException("Invalid cron expression '" + expression + "': invalid range " + part);
+                }
+            }
+            // stop before i overflows, even if the step is checked
+            for (int i = from; i <= to && i >= from; i += step) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private int parseValue(String value, int min, int max, String[] names, int offset) {
+        if (names != null) {
+            String upper = value.toUpperCase(Locale.ENGLISH);
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(upper)) {
+                    return i + offset;
+                }
+            }
+        }
+        try {
+            int result = Integer.parseInt(value);
+            if (result < min || result > max) {
+                throw new IllegalArgumentException("Invalid cron expression '" + expression + "': " + value + " is not between " + min + " and " + max);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cron expression '" + expression + "': invalid value " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+}
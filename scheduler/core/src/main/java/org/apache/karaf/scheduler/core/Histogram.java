@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+/**
+ * A thread safe histogram of durations in milliseconds, using power of two
+ * buckets so that recording a value is cheap and the memory is bounded.
+ */
+public class Histogram {
+
+    /**
+     * Bucket <code>i</code> holds the values in <code>[2^(i-1), 2^i)</code>, the first
+     * one holding zero.  The last bucket holds everything above 2^(BUCKETS-2) ms.
+     */
+    static final int BUCKETS = 32;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long min;
+    private long max;
+
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets[bucket(value)]++;
+        if (count == 0 || value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+        count++;
+        total += value;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMin() {
+        return min;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count > 0 ? (double) total / count : 0;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile (between 0 and 100), which is
+     * the upper limit of the bucket holding it, capped by the maximum value.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(max, i == 0 ? 0 : (1L << i) - 1);
+            }
+        }
+        return max;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = 0;
+        }
+        count = 0;
+        total = 0;
+        min = 0;
+        max = 0;
+    }
+
+    static int bucket(long value) {
+        int bucket = 64 - Long.numberOfLeadingZeros(value);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("count=%d min=%d mean=%.1f p99=%d max=%d", count, min, getMean(), getPercentile(99), max);
+    }
+
+}
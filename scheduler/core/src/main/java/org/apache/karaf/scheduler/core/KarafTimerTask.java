@@ -17,16 +17,29 @@
 
 package org.apache.karaf.scheduler.core;
 
-import java.util.TimerTask;
-
-public class KarafTimerTask<R extends Runnable> extends TimerTask {
+/**
+ * The definition of a scheduled task: the {@link Runnable} to execute and when
+ * to execute it.  The period is the delay between the end of an execution and
+ * the start of the next one, the rate the delay between the start of two
+ * executions, and the cron expression gives the execution times.
+ *
+ * Unless allowed, an execution is skipped while the previous one is still
+ * running.
+ */
+public class KarafTimerTask<R extends Runnable> implements Runnable {
 
     public static final String ID_PROPERTY = "org.apache.karaf.scheduler.task.id";
     public static final String PERIOD_PROPERTY = "org.apache.karaf.scheduler.task.period";
+    public static final String RATE_PROPERTY = "org.apache.karaf.scheduler.task.rate";
+    public static final String CRON_PROPERTY = "org.apache.karaf.scheduler.task.cron";
+    public static final String CONCURRENT_PROPERTY = "org.apache.karaf.scheduler.task.concurrent";
 
     protected String id;
     protected R task;
     protected Long schedulePeriod = 0L;
+    protected Long scheduleRate = 0L;
+    protected CronExpression cron;
+    protected boolean concurrent;
 
     /**
      * Constructor
@@ -79,4 +92,45 @@ public class KarafTimerTask<R extends Runnable> extends TimerTask {
         this.schedulePeriod = schedulePeriod;
     }
 
+    public Long getScheduleRate() {
+        return scheduleRate;
+    }
+
+    public void setScheduleRate(Long scheduleRate) {
+        this.scheduleRate = scheduleRate;
+    }
+
+    public CronExpression getCron() {
+        return cron;
+    }
+
+    public void setCron(CronExpression cron) {
+        this.cron = cron;
+    }
+
+    /**
+     * Whether an execution may start while the previous one is still running,
+     * which only happens for fixed rate and cron tasks.
+     */
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    public void setConcurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+    }
+
+    /**
+     * Returns a short description of the schedule.
+     */
+    public String getSchedule() {
+        if (cron != null) {
+            return "cron " + cron;
+        } else if (scheduleRate != null && scheduleRate > 0) {
+            return "rate " + scheduleRate + " ms";
+        } else {
+            return "delay " + schedulePeriod + " ms";
+        }
+    }
+
 }
@@ -17,16 +17,29 @@
 
 package org.apache.karaf.scheduler.core;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class RunableServiceListener implements ServiceListener {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunableServiceListener.class);
+
     private final BundleContext bundleContext;
     private final TaskScheduler scheduler;
 
+    /**
+     * Ids of the tasks scheduled for each service, as the id property may change
+     * or be used by another service.
+     */
+    private final Map<ServiceReference, String> scheduled = new HashMap<ServiceReference, String>();
+
     /**
      * Constructor
      *
@@ -42,10 +55,15 @@ public class RunableServiceListener implements ServiceListener {
     public void serviceChanged(ServiceEvent event) {
         switch (event.getType()) {
             case ServiceEvent.REGISTERED:
-                scheduleRunnableService(event);
+                scheduleRunnableService(event.getServiceReference());
                 break;
+            case ServiceEvent.MODIFIED:
+                unscheduleRunnableService(event.getServiceReference());
+                scheduleRunnableService(event.getServiceReference());
+                break;
+            case ServiceEvent.MODIFIED_ENDMATCH:
             case ServiceEvent.UNREGISTERING: {
-                unscheduleRunnableService(event);
+                unscheduleRunnableService(event.getServiceReference());
             }
             break;
             default:
@@ -54,32 +72,80 @@ public class RunableServiceListener implements ServiceListener {
     }
 
     /**
-     * Schedules the execution of the Runnable Service of the {@link ServiceEvent}.
+     * Schedules the execution of the Runnable Service.
      *
-     * @param event
+     * @param reference
      */
-    protected void scheduleRunnableService(ServiceEvent event) {
-        ServiceReference reference = event.getServiceReference();
+    protected synchronized void scheduleRunnableService(ServiceReference reference) {
+        String id = String.valueOf(reference.getProperty(KarafTimerTask.ID_PROPERTY));
+        if (scheduled.containsKey(reference)) {
+            return;
+        }
+        if (scheduler.getTask(id) != null) {
+            LOGGER.warn("Unable to schedule task " + id + ": a task with the same id is already scheduled");
+            return;
+        }
+        Long period;
+        Long rate;
+        CronExpression cron = null;
+        boolean concurrent;
+        try {
+            period = toLong(reference.getProperty(KarafTimerTask.PERIOD_PROPERTY));
+            rate = toLong(reference.getProperty(KarafTimerTask.RATE_PROPERTY));
+            Object expression = reference.getProperty(KarafTimerTask.CRON_PROPERTY);
+            if (expression != null) {
+                cron = new CronExpression(expression.toString());
+            }
+            Object value = reference.getProperty(KarafTimerTask.CONCURRENT_PROPERTY);
+            concurrent = value != null && Boolean.valueOf(value.toString());
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unable to schedule task " + id + ": " + e.getMessage());
+            return;
+        }
+        if (period == null && rate == null && cron == null) {
+            return;
+        }
         Runnable service = (Runnable) bundleContext.getService(reference);
-        String id = (String) reference.getProperty(KarafTimerTask.ID_PROPERTY);
-        String periodValue = (String) reference.getProperty(KarafTimerTask.PERIOD_PROPERTY);
-
-        if (periodValue != null) {
-            Long period = Long.parseLong(periodValue);
-            KarafTimerTask task = new KarafTimerTask(id, service, period);
+        if (service == null) {
+            return;
+        }
+        KarafTimerTask task = new KarafTimerTask(id, service, period);
+        task.setScheduleRate(rate);
+        task.setCron(cron);
+        task.setConcurrent(concurrent);
+        try {
             scheduler.schedule(task);
+            scheduled.put(reference, id);
+        } catch (IllegalArgumentException e) {
+            bundleContext.ungetService(reference);
+            LOGGER.warn("Unable to schedule task " + id + ": " + e.getMessage());
         }
     }
 
     /**
-     * Unschedules the execution of the Runnable Service of the {@link ServiceEvent}.
+     * Unschedules the execution of the Runnable Service.
      *
-     * @param event
+     * @param reference
      */
-    protected void unscheduleRunnableService(ServiceEvent event) {
-        ServiceReference reference = event.getServiceReference();
-        String id = (String) reference.getProperty(KarafTimerTask.ID_PROPERTY);
-        scheduler.unschedule(id);
+    protected synchronized void unscheduleRunnableService(ServiceReference reference) {
+        String id = scheduled.remove(reference);
+        if (id != null) {
+            scheduler.unschedule(id);
+            bundleContext.ungetService(reference);
+        }
+    }
+
+    /**
+     * Service properties may be given as strings or numbers.
+     */
+    private static Long toLong(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else {
+            return Long.parseLong(value.toString().trim());
+        }
     }
 
 }
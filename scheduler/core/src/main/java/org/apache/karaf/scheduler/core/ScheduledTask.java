@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link KarafTimerTask} scheduled on the pool of the {@link TaskScheduler},
+ * with its execution statistics.
+ *
+ * Each execution schedules the next one: fixed rate and cron tasks before
+ * running, so that a slow execution does not shift the following ones, and
+ * fixed delay tasks once done.  Executions missed while the pool was busy are
+ * not caught up.
+ */
+public class ScheduledTask implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScheduledTask.class);
+
+    private final KarafTimerTask<?> task;
+    private final ScheduledExecutorService executor;
+
+    private ScheduledFuture<?> future;
+    private boolean cancelled;
+    private volatile long nextTime = -1;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private volatile long lastTime = -1;
+    private volatile String lastFailure;
+
+    /**
+     * Time spent in each execution.
+     */
+    private final Histogram executionTimes = new Histogram();
+
+    /**
+     * Delay between the time an execution was scheduled for and its actual start.
+     */
+    private final Histogram lags = new Histogram();
+
+    public ScheduledTask(KarafTimerTask<?> task, ScheduledExecutorService executor) {
+        this.task = task;
+        this.executor = executor;
+    }
+
+    /**
+     * Schedules the first execution, immediately unless it is a cron task.
+     */
+    public void start() {
+        long now = System.currentTimeMillis();
+        if (task.getCron() != null) {
+            scheduleAt(task.getCron().getNextTime(now));
+        } else {
+            scheduleAt(now);
+        }
+    }
+
+    public synchronized void cancel() {
+        cancelled = true;
+        nextTime = -1;
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    private synchronized void scheduleAt(long time) {
+        if (cancelled) {
+            return;
+        }
+        nextTime = time;
+        if (time < 0) {
+            // the cron expression will not match anymore
+            future = null;
+            return;
+        }
+        long delay = Math.max(0, time - System.currentTimeMillis());
+        future = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public void run() {
+        long start = System.currentTimeMillis();
+        long scheduled = nextTime;
+        if (isCancelled()) {
+            return;
+        }
+        Long rate = task.getScheduleRate();
+        if (task.getCron() != null) {
+            scheduleAt(task.getCron().getNextTime(start));
+        } else if (rate != null && rate > 0) {
+            // stay in phase with the first execution, skipping the missed ones
+            scheduleAt(scheduled + rate * ((start - scheduled) / rate + 1));
+        }
+        if (running.incrementAndGet() > 1 && !task.isConcurrent()) {
+            running.decrementAndGet();
+            skipped.incrementAndGet();
+            LOGGER.debug("Skipping execution of task {} as the previous one is still running", task.getId());
+            return;
+        }
+        lags.record(start - scheduled);
+        lastTime = start;
+        try {
+            task.run();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            lastFailure = e.toString();
+            LOGGER.warn("Error executing task " + task.getId(), e);
+        } finally {
+            long end = System.currentTimeMillis();
+            executions.incrementAndGet();
+            executionTimes.record(end - start);
+            running.decrementAndGet();
+            if (task.getCron() == null && (rate == null || rate <= 0)) {
+                scheduleAt(end + task.getSchedulePeriod());
+            }
+        }
+    }
+
+    public KarafTimerTask<?> getTask() {
+        return task;
+    }
+
+    public String getId() {
+        return task.getId();
+    }
+
+    /**
+     * The time of the next execution, or <code>-1</code> if there is none.
+     */
+    public long getNextTime() {
+        return nextTime;
+    }
+
+    /**
+     * The start time of the last execution, or <code>-1</code> if it never ran.
+     */
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public boolean isRunning() {
+        return running.get() > 0;
+    }
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    public Histogram getExecutionTimes() {
+        return executionTimes;
+    }
+
+    public Histogram getLags() {
+        return lags;
+    }
+
+}
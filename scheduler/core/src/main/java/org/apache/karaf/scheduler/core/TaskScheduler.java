@@ -17,23 +17,60 @@
 
 package org.apache.karaf.scheduler.core;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Executes the scheduled tasks on a pool of daemon threads, so that a slow
+ * or failing task does not delay the others.
+ */
 public class TaskScheduler {
 
-    private final Timer timer = new Timer();
-    private final Map<String,KarafTimerTask> tasks = new ConcurrentHashMap<String, KarafTimerTask>();
+    public static final int DEFAULT_THREADS = 4;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<String,ScheduledTask> tasks = new ConcurrentHashMap<String, ScheduledTask>();
+
+    public TaskScheduler() {
+        this(DEFAULT_THREADS);
+    }
+
+    public TaskScheduler(int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Karaf scheduler-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
 
     /**
-     * Schedule a {@link KarafTimerTask}
+     * Schedule a {@link KarafTimerTask}, replacing the task with the same id if any.
      * @param task
+     * @throws IllegalArgumentException if the task has no valid schedule
      */
     public void schedule(KarafTimerTask task) {
         if(task != null) {
-            tasks.put(task.getId(),task);
-            timer.schedule(task,0,task.getSchedulePeriod());
+            if (task.getCron() == null
+                    && (task.getScheduleRate() == null || task.getScheduleRate() <= 0)
+                    && (task.getSchedulePeriod() == null || task.getSchedulePeriod() <= 0)) {
+                throw new IllegalArgumentException("Task " + task.getId() + " has no positive period, rate or cron expression");
+            }
+            ScheduledTask scheduled = new ScheduledTask(task, executor);
+            ScheduledTask previous = tasks.put(task.getId(), scheduled);
+            if (previous != null) {
+                previous.cancel();
+            }
+            scheduled.start();
         }
 
     }
@@ -44,11 +81,50 @@ public class TaskScheduler {
      */
     public void unschedule(String id) {
         if(id != null) {
-            KarafTimerTask task = tasks.remove(id);
+            ScheduledTask task = tasks.remove(id);
             if(task != null) {
                 task.cancel();
             }
         }
     }
 
+    /**
+     * Returns the scheduled task with the given id, or <code>null</code>.
+     */
+    public ScheduledTask getTask(String id) {
+        return id != null ? tasks.get(id) : null;
+    }
+
+    /**
+     * Returns the scheduled tasks, sorted by id.
+     */
+    public List<ScheduledTask> getTasks() {
+        List<ScheduledTask> list = new ArrayList<ScheduledTask>(tasks.values());
+        Collections.sort(list, new Comparator<ScheduledTask>() {
+            public int compare(ScheduledTask t1, ScheduledTask t2) {
+                return t1.getId().compareTo(t2.getId());
+            }
+        });
+        return list;
+    }
+
+    public int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    public void setThreads(int threads) {
+        executor.setCorePoolSize(Math.max(1, threads));
+    }
+
+    /**
+     * Cancels all the tasks and stops the threads, without waiting for the running executions.
+     */
+    public void shutdown() {
+        for (ScheduledTask task : tasks.values()) {
+            task.cancel();
+        }
+        tasks.clear();
+        executor.shutdownNow();
+    }
+
 }
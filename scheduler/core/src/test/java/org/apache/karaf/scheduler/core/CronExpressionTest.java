@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link CronExpression}
+ */
+public class CronExpressionTest extends TestCase {
+
+    private static long time(String date) throws ParseException {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(date).getTime();
+    }
+
+    private static void assertNext(String expression, String after, String expected) throws ParseException {
+        assertEquals(expression + " after " + after, time(expected), new CronExpression(expression).getNextTime(time(after)));
+    }
+
+    public void testAll() throws Exception {
+        assertNext("* * * * *", "2024-03-01 10:07:30", "2024-03-01 10:08:00");
+        assertNext("* * * * * *", "2024-03-01 10:07:30", "2024-03-01 10:07:31");
+        assertNext("0 0 ? * *", "2024-03-01 10:07:30", "2024-03-02 00:00:00");
+    }
+
+    public void testSteps() throws Exception {
+        assertNext("*/15 * * * *", "2024-03-01 10:07:30", "2024-03-01 10:15:00");
+        assertNext("*/15 * * * *", "2024-03-01 10:45:00", "2024-03-01 11:00:00");
+        assertNext("5/20 * * * *", "2024-03-01 10:26:00", "2024-03-01 10:45:00");
+        assertNext("0-30/10 * * * *", "2024-03-01 10:31:00", "2024-03-01 11:00:00");
+        assertNext("0 0/2 * * * *", "2024-03-01 10:07:30", "2024-03-01 10:08:00");
+    }
+
+    public void testRangesAndLists() throws Exception {
+        assertNext("0 9-17 * * *", "2024-03-01 17:30:00", "2024-03-02 09:00:00");
+        assertNext("0,30 8,20 * * *", "2024-03-01 08:30:00", "2024-03-01 20:00:00");
+        assertNext("0 0 1,15 * *", "2024-03-02 00:00:00", "2024-03-15 00:00:00");
+    }
+
+    public void testNames() throws Exception {
+        // 2024-03-01 is a Friday
+        assertNext("0 9 * * MON-FRI", "2024-03-01 10:00:00", "2024-03-04 09:00:00");
+        assertNext("0 0 * * sun", "2024-03-01 10:00:00", "2024-03-03 00:00:00");
+        assertNext("0 0 * * 7", "2024-03-01 10:00:00", "2024-03-03 00:00:00");
+        assertNext("0 0 1 jun *", "2024-03-01 10:00:00", "2024-06-01 00:00:00");
+    }
+
+    public void testDayOfMonthOrDayOfWeek() throws Exception {
+        // both restricted: the 15th or a Monday, whichever comes first
+        assertNext("0 0 15 * MON", "2024-03-01 10:00:00", "2024-03-04 00:00:00");
+        assertNext("0 0 15 * MON", "2024-03-12 10:00:00", "2024-03-15 00:00:00");
+    }
+
+    public void testMonthBoundary() throws Exception {
+        assertNext("0 0 1 * *", "2024-01-31 12:00:00", "2024-02-01 00:00:00");
+        assertNext("0 0 31 * *", "2024-04-01 00:00:00", "2024-05-31 00:00:00");
+        assertNext("0 0 29 2 *", "2024-03-01 00:00:00", "2028-02-29 00:00:00");
+    }
+
+    public void testYearBoundary() throws Exception {
+        assertNext("* * * * * *", "2024-12-31 23:59:59", "2025-01-01 00:00:00");
+        assertNext("0 0 1 1 *", "2024-06-15 12:00:00", "2025-01-01 00:00:00");
+        assertNext("30 59 23 31 12 *", "2024-12-31 23:59:30", "2025-12-31 23:59:30");
+    }
+
+    public void testNeverMatches() throws Exception {
+        assertEquals(-1, new CronExpression("0 0 31 2 *").getNextTime(time("2024-03-01 00:00:00")));
+    }
+
+    public void testInvalid() {
+        String[] invalid = { "* * *", "* * * * * * *", "60 * * * *", "* 24 * * *", "* * 0 * *", "* * * 13 *",
+                "5-2 * * * *", "x * * * *", "*/0 * * * *", "5/2147483647 * * * *", "*/61 * * * *", "1-2-3 * * * *" };
+        for (String expression : invalid) {
+            try {
+                new CronExpression(expression);
+                fail("Expected IllegalArgumentException for " + expression);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+}
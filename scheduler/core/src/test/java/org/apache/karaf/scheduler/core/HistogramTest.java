@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link Histogram}
+ */
+public class HistogramTest extends TestCase {
+
+    public void testEmpty() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    public void testStatistics() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+    }
+
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        // percentiles are the upper bound of their bucket, capped by the maximum
+        assertEquals(1, histogram.getPercentile(1));
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(100));
+
+        histogram.reset();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(2);
+        }
+        histogram.record(5000);
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(3, histogram.getPercentile(99));
+        assertEquals(5000, histogram.getPercentile(100));
+    }
+
+    public void testBuckets() {
+        assertEquals(0, Histogram.bucket(0));
+        assertEquals(1, Histogram.bucket(1));
+        assertEquals(2, Histogram.bucket(2));
+        assertEquals(2, Histogram.bucket(3));
+        assertEquals(3, Histogram.bucket(4));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+    }
+
+    public void testNegativeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import junit.framework.TestCase;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+/**
+ * Test cases for {@link RunableServiceListener}
+ */
+public class RunableServiceListenerTest extends TestCase {
+
+    private TaskScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        scheduler = new TaskScheduler(1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.shutdown();
+    }
+
+    public void testModifiedEndMatch() throws Exception {
+        ServiceReference reference = createReference("task");
+        BundleContext bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getService(reference)).andReturn(new Noop()).once();
+        expect(bundleContext.ungetService(reference)).andReturn(true).once();
+        replay(bundleContext);
+
+        RunableServiceListener listener = new RunableServiceListener(bundleContext, scheduler);
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, reference));
+        assertNotNull(scheduler.getTask("task"));
+
+        // the service properties do not match the listener filter anymore
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.MODIFIED_ENDMATCH, reference));
+        assertNull(scheduler.getTask("task"));
+
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, reference));
+        verify(bundleContext);
+    }
+
+    public void testDuplicateId() throws Exception {
+        ServiceReference first = createReference("task");
+        ServiceReference second = createReference("task");
+        BundleContext bundleContext = createMock(BundleContext.class);
+        expect(bundleContext.getService(first)).andReturn(new Noop()).once();
+        expect(bundleContext.ungetService(first)).andReturn(true).once();
+        replay(bundleContext);
+
+        RunableServiceListener listener = new RunableServiceListener(bundleContext, scheduler);
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, first));
+        ScheduledTask task = scheduler.getTask("task");
+        assertNotNull(task);
+
+        // the second service is neither retrieved nor scheduled
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, second));
+        assertSame(task, scheduler.getTask("task"));
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, second));
+        assertSame(task, scheduler.getTask("task"));
+
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, first));
+        assertNull(scheduler.getTask("task"));
+        verify(bundleContext);
+    }
+
+    public void testInvalidCron() throws Exception {
+        ServiceReference reference = createMock(ServiceReference.class);
+        expect(reference.getProperty(KarafTimerTask.ID_PROPERTY)).andReturn("task").anyTimes();
+        expect(reference.getProperty(KarafTimerTask.PERIOD_PROPERTY)).andReturn(null).anyTimes();
+        expect(reference.getProperty(KarafTimerTask.RATE_PROPERTY)).andReturn(null).anyTimes();
+        expect(reference.getProperty(KarafTimerTask.CRON_PROPERTY)).andReturn("* * *").anyTimes();
+        expect(reference.getProperty(KarafTimerTask.CONCURRENT_PROPERTY)).andReturn(null).anyTimes();
+        replay(reference);
+        BundleContext bundleContext = createMock(BundleContext.class);
+        replay(bundleContext);
+
+        RunableServiceListener listener = new RunableServiceListener(bundleContext, scheduler);
+        listener.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, reference));
+        assertNull(scheduler.getTask("task"));
+        verify(bundleContext);
+    }
+
+    private static ServiceReference createReference(String id) {
+        ServiceReference reference = createMock(ServiceReference.class);
+        expect(reference.getProperty(KarafTimerTask.ID_PROPERTY)).andReturn(id).anyTimes();
+        expect(reference.getProperty(KarafTimerTask.PERIOD_PROPERTY)).andReturn(60000L).anyTimes();
+        expect(reference.getProperty(KarafTimerTask.RATE_PROPERTY)).andReturn(null).anyTimes();
+        expect(reference.getProperty(KarafTimerTask.CRON_PROPERTY)).andReturn(null).anyTimes();
+        expect(reference.getProperty(KarafTimerTask.CONCURRENT_PROPERTY)).andReturn(null).anyTimes();
+        replay(reference);
+        return reference;
+    }
+
+    private static class Noop implements Runnable {
+        public void run() {
+        }
+    }
+
+}
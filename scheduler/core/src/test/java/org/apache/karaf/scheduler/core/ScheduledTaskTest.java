@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.karaf.scheduler.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link ScheduledTask}, running the executions by hand.
+ */
+public class ScheduledTaskTest extends TestCase {
+
+    private RecordingExecutor executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = new RecordingExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    public void testFixedRate() throws Exception {
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("rate", new Sleep(50));
+        task.setScheduleRate(1000L);
+        ScheduledTask scheduled = new ScheduledTask(task, executor);
+        scheduled.start();
+        long first = scheduled.getNextTime();
+
+        scheduled.run();
+        // the next execution is planned from the previous planned time, whatever the execution time
+        assertEquals(first + 1000, scheduled.getNextTime());
+        assertEquals(1, scheduled.getExecutions());
+        assertEquals(2, executor.delays.size());
+    }
+
+    public void testFixedRateSkipsMissedExecutions() throws Exception {
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("rate", new Sleep(0));
+        task.setScheduleRate(100L);
+        ScheduledTask scheduled = new ScheduledTask(task, executor);
+        scheduled.start();
+        long first = scheduled.getNextTime();
+
+        Thread.sleep(350);
+        long before = System.currentTimeMillis();
+        scheduled.run();
+        long next = scheduled.getNextTime();
+        assertTrue(next > before);
+        assertTrue(next <= before + 100);
+        assertEquals(0, (next - first) % 100);
+        assertTrue(scheduled.getLags().getMax() >= 350);
+    }
+
+    public void testFixedDelay() throws Exception {
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("delay", new Sleep(50), 1000L);
+        ScheduledTask scheduled = new ScheduledTask(task, executor);
+        scheduled.start();
+
+        scheduled.run();
+        // the next execution is planned from the end of the previous one
+        assertTrue(scheduled.getNextTime() >= scheduled.getLastTime() + 1050);
+        assertTrue(executor.delays.get(1) >= 1000);
+        assertTrue(scheduled.getExecutionTimes().getMax() >= 50);
+    }
+
+    public void testCron() throws Exception {
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("cron", new Sleep(0));
+        task.setCron(new CronExpression("0 0 1 1 *"));
+        ScheduledTask scheduled = new ScheduledTask(task, executor);
+        long now = System.currentTimeMillis();
+        scheduled.start();
+        assertEquals(task.getCron().getNextTime(now), scheduled.getNextTime());
+
+        scheduled.run();
+        assertEquals(task.getCron().getNextTime(scheduled.getLastTime()), scheduled.getNextTime());
+    }
+
+    public void testSkipWhileRunning() throws Exception {
+        Reentrant reentrant = new Reentrant();
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("skip", reentrant);
+        task.setScheduleRate(1000L);
+        ScheduledTask scheduled = new ScheduledTask(task, executor);
+        reentrant.scheduled = scheduled;
+        scheduled.start();
+
+        scheduled.run();
+        assertEquals(1, reentrant.count);
+        assertEquals(1, scheduled.getExecutions());
+        assertEquals(1, scheduled.getSkipped());
+        assertFalse(scheduled.isRunning());
+    }
+
+    public void testConcurrent() throws Exception {
+        Reentrant reentrant = new Reentrant();
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("concurrent", reentrant);
+        task.setScheduleRate(1000L);
+        task.setConcurrent(true);
+        ScheduledTask scheduled = new ScheduledTask(task, executor);
+        reentrant.scheduled = scheduled;
+        scheduled.start();
+
+        scheduled.run();
+        assertEquals(2, reentrant.count);
+        assertEquals(2, scheduled.getExecutions());
+        assertEquals(0, scheduled.getSkipped());
+    }
+
+    public void testFailure() throws Exception {
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("failure", new Runnable() {
+            public void run() {
+                throw new IllegalStateException("expected");
+            }
+        }, 1000L);
+        ScheduledTask scheduled = new ScheduledTask(task, executor);
+        scheduled.start();
+
+        scheduled.run();
+        assertEquals(1, scheduled.getExecutions());
+        assertEquals(1, scheduled.getFailures());
+        assertTrue(scheduled.getLastFailure().contains("expected"));
+        // a failure does not stop the task
+        assertTrue(scheduled.getNextTime() > 0);
+        assertEquals(2, executor.delays.size());
+    }
+
+    public void testCancel() throws Exception {
+        Reentrant reentrant = new Reentrant();
+        KarafTimerTask<Runnable> task = new KarafTimerTask<Runnable>("cancel", reentrant, 1000L);
+        ScheduledTask scheduled = new ScheduledTask(task, executor);
+        scheduled.start();
+        scheduled.cancel();
+
+        scheduled.run();
+        assertEquals(0, reentrant.count);
+        assertEquals(-1, scheduled.getNextTime());
+        assertEquals(1, executor.delays.size());
+    }
+
+    /**
+     * Records the scheduled executions without running them.
+     */
+    private static class RecordingExecutor extends ScheduledThreadPoolExecutor {
+
+        final List<Long> delays = new ArrayList<Long>();
+
+        RecordingExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            delays.add(unit.toMillis(delay));
+            return null;
+        }
+
+    }
+
+    private static class Sleep implements Runnable {
+
+        private final long millis;
+
+        Sleep(long millis) {
+            this.millis = millis;
+        }
+
+        public void run() {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    /**
+     * Runs the task again from its first execution, as if the pool started the
+     * next one before the previous one ended.
+     */
+    private static class Reentrant implements Runnable {
+
+        ScheduledTask scheduled;
+        int count;
+
+        public void run() {
+            if (++count == 1 && scheduled != null) {
+                scheduled.run();
+            }
+        }
+
+    }
+
+}
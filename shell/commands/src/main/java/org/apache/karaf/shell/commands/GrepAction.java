@@ -19,10 +19,22 @@
 package org.apache.karaf.shell.commands;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,6 +48,18 @@ import org.fusesource.jansi.Ansi;
 @Command(scope = "shell", name="grep", description="Prints lines matching the given pattern.", detailedDescription="classpath:grep.txt")
 public class GrepAction extends AbstractAction {
 
+    /**
+     * Minimum size of the chunks of a file searched in parallel.
+     */
+    static final long MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Size of the blocks read by the searches of chunks.
+     */
+    static final int CHUNK_BUFFER_SIZE = 64 * 1024;
+
+    static final String STANDARD_INPUT = "(standard input)";
+
     public static enum ColorOption {
         never,
         always,
@@ -45,6 +69,9 @@ public class GrepAction extends AbstractAction {
     @Argument(index = 0, name = "pattern", description = "Regular expression", required = true, multiValued = false)
     private String regex;
 
+    @Argument(index = 1, name = "files", description = "Files or URLs to search, the standard input being searched if none is given", required = false, multiValued = true)
+    private List<String> files;
+
     @Option(name = "-n", aliases = { "--line-number" }, description = "Prefixes each line of output with the line number within its input file.", required = false, multiValued = false)
     private boolean lineNumber;
 
@@ -68,6 +95,15 @@ public class GrepAction extends AbstractAction {
     @Option(name = "-c", aliases = { "--count" }, description = "only print a count of matching lines per FILE", required = false, multiValued = false)
     private boolean count;
 
+    @Option(name = "-l", aliases = { "--files-with-matches" }, description = "Only print the name of each input file containing a matching line.", required = false, multiValued = false)
+    private boolean filesWithMatches;
+
+    @Option(name = "-m", aliases = { "--max-count" }, description = "Stop reading a file after NUM matching lines.", required = false, multiValued = false)
+    private int maxCount = -1;
+
+    @Option(name = "--parallel", description = "Search large files in parallel chunks.  Only used with -c or -l, whose output does not depend on the order in which lines are read.", required = false, multiValued = false)
+    private boolean parallel;
+
     @Option(name = "--color", aliases = { "--colour" }, description = "use markers to distinguish the matching string. WHEN may be `always', `never' or `auto'", required = false, multiValued = false)
     private ColorOption color = ColorOption.auto;
 
@@ -80,6 +116,7 @@ public class GrepAction extends AbstractAction {
     @Option(name = "-C", aliases = { "--context" }, description = "Print NUM lines of output context.  Places a line containing -- between contiguous groups of matches.", required = false, multiValued = false)
     private int context = 0;
 
+    private Pattern pattern;
 
     protected Object doExecute() throws Exception {
         if (after < 0) {
@@ -88,100 +125,323 @@ public class GrepAction extends AbstractAction {
         if (before < 0) {
             before = context;
         }
-        List<String> lines = new ArrayList<String>();
-
         String regexp = regex;
         if (wordRegexp) {
-            regexp = "\\b" + regexp + "\\b";
+            regexp = "\\b(?:" + regexp + ")\\b";
         }
         if (lineRegexp) {
-            regexp = "^" + regexp + "$";
-        } else {
-            regexp = ".*" + regexp + ".*";
+            regexp = "^(?:" + regexp + ")$";
         }
-        Pattern p;
-        Pattern p2;
-        if (ignoreCase) {
-            p = Pattern.compile(regexp, Pattern.CASE_INSENSITIVE);
-            p2 = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        pattern = ignoreCase ? Pattern.compile(regexp, Pattern.CASE_INSENSITIVE) : Pattern.compile(regexp);
+
+        PrintStream out = System.out;
+        if (files == null || files.isEmpty()) {
+            try {
+                grep(out, new BufferedReader(new InputStreamReader(System.in)), STANDARD_INPUT, false);
+            } catch (IOException e) {
+                // the input has been closed
+            }
+        } else if (parallel && (count || filesWithMatches)) {
+            grepParallel(out);
         } else {
-            p = Pattern.compile(regexp);
-            p2 = Pattern.compile(regex);
+            for (String name : files) {
+                BufferedReader reader = open(name);
+                try {
+                    grep(out, reader, name, files.size() > 1);
+                } finally {
+                    close(reader);
+                }
+            }
         }
-        try {
-            boolean firstPrint = true;
-            int nb = 0;
-            int lineno = 1;
-            String line;
-            int lineMatch = 0;
-            BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
-            while ((line = r.readLine()) != null) {
-                if (line.length() == 1 && line.charAt(0) == '\n') {
+        return null;
+    }
+
+    /**
+     * Search the lines of a reader, only keeping the lines of leading context
+     * which may still have to be printed.
+     *
+     * @return the number of matching lines
+     */
+    private long grep(PrintStream out, BufferedReader reader, String name, boolean showName) throws IOException {
+        boolean output = !count && !filesWithMatches;
+        String prefix = showName ? name : null;
+        String[] ring = new String[output ? before : 0];
+        int ringStart = 0;
+        int ringSize = 0;
+        long lineno = 0;
+        long matches = 0;
+        long lastPrinted = 0;
+        int afterRemaining = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineno++;
+            if (maxCount >= 0 && matches >= maxCount) {
+                // only print the trailing context of the last match
+                if (!output || afterRemaining == 0) {
                     break;
                 }
-                if (p.matcher(line).matches() ^ invertMatch) {
-
-                    Matcher matcher2 = p2.matcher(line);
-                    StringBuffer sb = new StringBuffer();
-                    while (matcher2.find()) {
-                        if (!invertMatch && color != ColorOption.never) {
-                            matcher2.appendReplacement(sb, Ansi.ansi()
-                                .bg(Ansi.Color.YELLOW)
-                                .fg(Ansi.Color.BLACK)
-                                .a(matcher2.group())
-                                .reset().toString());
-                        } else {
-                            matcher2.appendReplacement(sb, matcher2.group());
-                        }
-                        nb++;
-                    }
-                    matcher2.appendTail(sb);
-                    if (!count && lineNumber) {
-                        lines.add(String.format("%6d  ", lineno) + sb.toString());
-                    } else {
-                        lines.add(sb.toString());
+                print(out, prefix, lineno, false, line, null);
+                lastPrinted = lineno;
+                afterRemaining--;
+                continue;
+            }
+            Matcher matcher = pattern.matcher(line);
+            boolean found = matcher.find();
+            if (found ^ invertMatch) {
+                matches++;
+                if (filesWithMatches) {
+                    break;
+                }
+                if (!output) {
+                    continue;
+                }
+                long first = lineno - ringSize;
+                if (lastPrinted > 0 && first > lastPrinted + 1 && before + after > 0) {
+                    out.println("--");
+                }
+                for (int i = 0; i < ringSize; i++) {
+                    print(out, prefix, first + i, false, ring[(ringStart + i) % ring.length], null);
+                }
+                ringStart = 0;
+                ringSize = 0;
+                print(out, prefix, lineno, true, line, found ? matcher : null);
+                lastPrinted = lineno;
+                afterRemaining = after;
+            } else if (afterRemaining > 0) {
+                print(out, prefix, lineno, false, line, null);
+                lastPrinted = lineno;
+                afterRemaining--;
+            } else if (ring.length > 0) {
+                if (ringSize < ring.length) {
+                    ring[(ringStart + ringSize++) % ring.length] = line;
+                } else {
+                    ring[ringStart] = line;
+                    ringStart = (ringStart + 1) % ring.length;
+                }
+            }
+        }
+        report(out, name, showName, matches);
+        return matches;
+    }
+
+    private void report(PrintStream out, String name, boolean showName, long matches) {
+        if (filesWithMatches) {
+            if (matches > 0) {
+                out.println(name);
+            }
+        } else if (count) {
+            out.println(showName ? name + ":" + matches : Long.toString(matches));
+        }
+    }
+
+    private void print(PrintStream out, String prefix, long lineno, boolean match, String line, Matcher matcher) {
+        StringBuilder sb = new StringBuilder();
+        if (prefix != null) {
+            sb.append(prefix).append(match ? ':' : '-');
+        }
+        if (lineNumber) {
+            sb.append(String.format("%6d  ", lineno));
+        }
+        if (matcher != null && !invertMatch && color != ColorOption.never) {
+            // the matcher is positioned on the first match
+            int last = 0;
+            do {
+                if (matcher.end() > matcher.start()) {
+                    sb.append(line, last, matcher.start());
+                    sb.append(Ansi.ansi()
+                            .bg(Ansi.Color.YELLOW)
+                            .fg(Ansi.Color.BLACK)
+                            .a(matcher.group())
+                            .reset().toString());
+                    last = matcher.end();
+                }
+            } while (matcher.find());
+            sb.append(line, last, line.length());
+        } else {
+            sb.append(line);
+        }
+        out.println(sb);
+    }
+
+    /**
+     * Count the matching lines of the files, searching large files in chunks
+     * on several threads.
+     */
+    private void grepParallel(PrintStream out) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<List<Future<Long>>> results = new ArrayList<List<Future<Long>>>();
+            for (final String name : files) {
+                List<Future<Long>> chunks = new ArrayList<Future<Long>>();
+                final File file = new File(name);
+                long length = file.isFile() ? file.length() : 0;
+                int nb = (int) Math.min(threads * 4, length / MIN_CHUNK_SIZE);
+                if (nb > 1) {
+                    for (int i = 0; i < nb; i++) {
+                        chunks.add(executor.submit(new ChunkSearch(file, length * i / nb, length * (i + 1) / nb)));
                     }
-					lineMatch = lines.size();
                 } else {
-                    if (lineMatch != 0 & lineMatch + after + before <= lines.size()) {
-                        if (!count) {
-                            if (!firstPrint && before + after > 0) {
-                                System.out.println("--");
-                            } else {
-                                firstPrint = false;
+                    chunks.add(executor.submit(new Callable<Long>() {
+                        public Long call() throws Exception {
+                            BufferedReader reader = open(name);
+                            try {
+                                return countMatches(reader);
+                            } finally {
+                                close(reader);
                             }
-                            for (int i = 0; i < lineMatch + after; i++) {
-                                System.out.println(lines.get(i));
-                            }
-                        }
-                        while (lines.size() > before) {
-                            lines.remove(0);
                         }
-                        lineMatch = 0;
-                    }
-                    lines.add(line);
-                    while (lineMatch == 0 && lines.size() > before) {
-                        lines.remove(0);
-                    }
+                    }));
                 }
-                lineno++;
+                results.add(chunks);
             }
-            if (!count && lineMatch > 0) {
-                if (!firstPrint && before + after > 0) {
-                    System.out.println("--");
-                } else {
-                    firstPrint = false;
+            for (int i = 0; i < files.size(); i++) {
+                long matches = 0;
+                for (Future<Long> chunk : results.get(i)) {
+                    try {
+                        matches += chunk.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof Exception) {
+                            throw (Exception) e.getCause();
+                        }
+                        throw e;
+                    }
                 }
-                for (int i = 0; i < lineMatch + after && i < lines.size(); i++) {
-                    System.out.println(lines.get(i));
+                if (maxCount >= 0) {
+                    matches = Math.min(matches, maxCount);
                 }
+                report(out, files.get(i), files.size() > 1, matches);
             }
-            if (count) {
-                System.out.println(nb);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean matches(String line) {
+        return pattern.matcher(line).find() ^ invertMatch;
+    }
+
+    private long countMatches(BufferedReader reader) throws IOException {
+        long matches = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (matches(line) && ++matches >= limit()) {
+                break;
             }
+        }
+        return matches;
+    }
+
+    /**
+     * Number of matching lines after which a file or chunk does not need to be read further.
+     */
+    private long limit() {
+        if (filesWithMatches) {
+            return 1;
+        }
+        return maxCount >= 0 ? maxCount : Long.MAX_VALUE;
+    }
+
+    private BufferedReader open(String name) throws IOException {
+        try {
+            URL url = new URL(name);
+            return new BufferedReader(new InputStreamReader(url.openStream()));
+        } catch (MalformedURLException ignore) {
+            return new BufferedReader(new FileReader(new File(name)));
+        }
+    }
+
+    private static void close(BufferedReader reader) {
+        try {
+            reader.close();
         } catch (IOException e) {
+            // Ignore
         }
-        return null;
+    }
+
+    /**
+     * Counts the matching lines starting in a range of bytes of a file.  Lines
+     * are split on the LF byte, which is safe for the ASCII compatible charsets.
+     */
+    class ChunkSearch implements Callable<Long> {
+
+        private final File file;
+        private final long start;
+        private final long end;
+
+        ChunkSearch(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Long call() throws Exception {
+            Charset charset = Charset.defaultCharset();
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                // a line belongs to the chunk it starts in, so the end of the
+                // line preceding the chunk is skipped
+                boolean skip = start > 0;
+                long pos = skip ? start - 1 : 0;
+                in.seek(pos);
+                byte[] buf = new byte[CHUNK_BUFFER_SIZE];
+                int len = 0;
+                int off = 0;
+                int scan = 0;
+                boolean eof = false;
+                long matches = 0;
+                while (!Thread.currentThread().isInterrupted()) {
+                    int eol = scan;
+                    while (eol < len && buf[eol] != '\n') {
+                        eol++;
+                    }
+                    if (eol == len && !eof) {
+                        // keep the start of the current line and read more
+                        if (off > 0) {
+                            System.arraycopy(buf, off, buf, 0, len - off);
+                            pos += off;
+                            len -= off;
+                            off = 0;
+                        } else if (len == buf.length) {
+                            byte[] b = new byte[buf.length * 2];
+                            System.arraycopy(buf, 0, b, 0, len);
+                            buf = b;
+                        }
+                        scan = len;
+                        int n = in.read(buf, len, buf.length - len);
+                        if (n < 0) {
+                            eof = true;
+                        } else {
+                            len += n;
+                        }
+                        continue;
+                    }
+                    if (skip) {
+                        skip = false;
+                    } else {
+                        if (pos + off >= end || (eof && off == len)) {
+                            break;
+                        }
+                        int l = eol;
+                        if (l > off && buf[l - 1] == '\r') {
+                            l--;
+                        }
+                        if (matches(new String(buf, off, l - off, charset)) && ++matches >= limit()) {
+                            break;
+                        }
+                    }
+                    if (eol == len) {
+                        break;
+                    }
+                    off = eol + 1;
+                    scan = off;
+                }
+                return matches;
+            } finally {
+                in.close();
+            }
+        }
+
     }
 
 }
@@ -19,18 +19,31 @@
 package org.apache.karaf.shell.commands;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -42,11 +55,24 @@ import org.apache.karaf.shell.console.AbstractAction;
 /**
  * Sort lines of text
  *
+ * The sort keys of each line are extracted once.  When the lines read do not
+ * fit in the memory buffer, sorted runs are written to temporary files and
+ * merged at the end.
+ *
  * @version $Rev: 722776 $ $Date: 2008-12-03 05:59:59 +0100 (Wed, 03 Dec 2008) $
  */
 @Command(scope = "shell", name = "sort", description = "Writes sorted concatenation of all files to standard output.")
 public class SortAction extends AbstractAction {
 
+    static final long DEFAULT_BUFFER_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Maximum number of runs merged at once.
+     */
+    static final int MAX_MERGE = 64;
+
+    private static final String ENCODING = "UTF-8";
+
     @Option(name = "-f", aliases = { "-ignore-case" }, description = "fold lower case to upper case characters", required = false, multiValued = false)
     private boolean caseInsensitive;
 
@@ -68,72 +94,396 @@ public class SortAction extends AbstractAction {
     @Option(name = "-n", aliases = { "--numeric-sort" }, description = "compare according to string numerical value", required = false, multiValued = false)
     private boolean numeric;
 
+    @Option(name = "-S", aliases = { "--buffer-size" }, description = "use SIZE bytes of memory (suffixes K, M and G are supported) before writing sorted runs to temporary files", required = false, multiValued = false)
+    private String bufferSize;
+
+    @Option(name = "-T", aliases = { "--temporary-directory" }, description = "use DIR for the temporary files", required = false, multiValued = false)
+    private File temporaryDirectory;
+
+    @Option(name = "--parallel", description = "sort the runs on several threads while reading the input", required = false, multiValued = false)
+    private boolean parallel;
+
     @Argument(index = 0, name = "files", description = "A list of files separated by whitespaces", required = false, multiValued = true)
     private List<String> paths;
 
 
     public Object doExecute() throws Exception {
-        if (paths != null && paths.size() > 0) {
-            List<String> lines = new ArrayList<String>();
-            for (String filename : paths) {
-                BufferedReader reader;
+        Sorter sorter = new Sorter(createComparator(), getBufferSize(), temporaryDirectory,
+                                   parallel ? Runtime.getRuntime().availableProcessors() : 0);
+        try {
+            if (paths != null && paths.size() > 0) {
+                for (String filename : paths) {
+                    BufferedReader reader;
 
-                // First try a URL
-                try {
-                    URL url = new URL(filename);
-                    log.info("Printing URL: " + url);
-                    reader = new BufferedReader(new InputStreamReader(url.openStream()));
-                }
-                catch (MalformedURLException ignore) {
-                    // They try a file
-                    File file = new File(filename);
-                    log.info("Printing file: " + file);
-                    reader = new BufferedReader(new FileReader(file));
-                }
+                    // First try a URL
+                    try {
+                        URL url = new URL(filename);
+                        log.info("Printing URL: " + url);
+                        reader = new BufferedReader(new InputStreamReader(url.openStream()));
+                    }
+                    catch (MalformedURLException ignore) {
+                        // They try a file
+                        File file = new File(filename);
+                        log.info("Printing file: " + file);
+                        reader = new BufferedReader(new FileReader(file));
+                    }
 
-                try {
-                    read(reader, lines);
-                }
-                finally {
                     try {
-                        reader.close();
-                    } catch (IOException e) {
-                        // Ignore
+                        sorter.read(reader);
+                    }
+                    finally {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            // Ignore
+                        }
                     }
                 }
             }
-            sort(lines, System.out);
-        }
-        else {
-            sort(System.in, System.out);
+            else {
+                sorter.read(new BufferedReader(new InputStreamReader(System.in)));
+            }
+            sorter.write(System.out, unique);
+        } finally {
+            sorter.close();
         }
         return null;
     }
 
-    protected void read(BufferedReader r, List<String> lines) throws Exception {
-        for (String s = r.readLine(); s != null; s = r.readLine()) {
-            lines.add(s);
+    protected void sort(InputStream input, PrintStream out) throws Exception {
+        Sorter sorter = new Sorter(createComparator(), getBufferSize(), temporaryDirectory, 0);
+        try {
+            sorter.read(new BufferedReader(new InputStreamReader(input)));
+            sorter.write(out, unique);
+        } finally {
+            sorter.close();
         }
     }
 
-    protected void sort(InputStream input, PrintStream out) throws Exception {
-        List<String> strings = new ArrayList<String>();
-        BufferedReader r = new BufferedReader(new InputStreamReader(input));
-        read(r, strings);
-        sort(strings, out);
+    protected void sort(List<String> strings, PrintStream out) throws Exception {
+        Sorter sorter = new Sorter(createComparator(), Long.MAX_VALUE, null, 0);
+        for (String s : strings) {
+            sorter.add(s);
+        }
+        sorter.write(out, unique);
     }
 
-    protected void sort(List<String> strings, PrintStream out) throws Exception {
+    protected SortComparator createComparator() {
         char sep = (separator == null || separator.length() == 0) ? '\0' : separator.charAt(0);
-        Collections.sort(strings, new SortComparator(caseInsensitive, reverse, ignoreBlanks, numeric, sep, sortFields));
-        String last = null;
-        for (String s : strings) {
-            if (last == null) {
-                last = s;
-            } else if (!unique || !s.equals(last)) {
-                out.println(s);
+        return new SortComparator(caseInsensitive, reverse, ignoreBlanks, numeric, sep, sortFields);
+    }
+
+    protected long getBufferSize() {
+        if (bufferSize == null || bufferSize.length() == 0) {
+            return Math.min(DEFAULT_BUFFER_SIZE, Runtime.getRuntime().maxMemory() / 8);
+        }
+        return parseSize(bufferSize);
+    }
+
+    static long parseSize(String size) {
+        String s = size.trim().toUpperCase();
+        long unit = 1;
+        if (s.endsWith("K")) {
+            unit = 1024;
+        } else if (s.endsWith("M")) {
+            unit = 1024 * 1024;
+        } else if (s.endsWith("G")) {
+            unit = 1024 * 1024 * 1024;
+        }
+        if (unit > 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return Long.parseLong(s) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid buffer size: " + size);
+        }
+    }
+
+    /**
+     * A line with its sort keys.
+     */
+    static class KeyedLine {
+
+        final String line;
+        final Object[] keys;
+
+        KeyedLine(String line, Object[] keys) {
+            this.line = line;
+            this.keys = keys;
+        }
+
+        /**
+         * Rough estimate of the memory used by the line and its keys.
+         */
+        long size() {
+            return 64 + 2 * line.length() * (1 + keys.length);
+        }
+
+    }
+
+    /**
+     * Sorts lines in memory, spilling sorted runs to temporary files when the
+     * memory buffer is full, and merges the runs when writing the result.
+     */
+    static class Sorter {
+
+        private final SortComparator comparator;
+        private final Comparator<KeyedLine> lineComparator;
+        private final long runSize;
+        private final File directory;
+        private final ExecutorService executor;
+        private final int threads;
+        private final LinkedList<Future<File>> pending = new LinkedList<Future<File>>();
+        private final List<File> runs = new ArrayList<File>();
+        private List<KeyedLine> lines = new ArrayList<KeyedLine>();
+        private long size;
+
+        Sorter(SortComparator comparator, long bufferSize, File directory, int threads) {
+            this.comparator = comparator;
+            this.lineComparator = comparator.getKeyedLineComparator();
+            this.directory = directory;
+            this.threads = threads;
+            this.executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+            // the runs being sorted and the one being read share the buffer
+            this.runSize = executor != null ? Math.max(1, bufferSize / (threads + 1)) : bufferSize;
+        }
+
+        void read(BufferedReader reader) throws Exception {
+            for (String s = reader.readLine(); s != null; s = reader.readLine()) {
+                add(s);
+            }
+        }
+
+        void add(String s) throws Exception {
+            KeyedLine line = comparator.getKeyedLine(s);
+            lines.add(line);
+            size += line.size();
+            if (size >= runSize) {
+                spill();
+            }
+        }
+
+        /**
+         * Sort the lines read so far and write them to a temporary file.
+         */
+        private void spill() throws Exception {
+            final List<KeyedLine> run = lines;
+            lines = new ArrayList<KeyedLine>();
+            size = 0;
+            Callable<File> task = new Callable<File>() {
+                public File call() throws Exception {
+                    Collections.sort(run, lineComparator);
+                    return writeRun(run.iterator());
+                }
+            };
+            if (executor != null) {
+                // bound the memory used by the runs being sorted
+                while (pending.size() >= threads) {
+                    runs.add(get(pending.removeFirst()));
+                }
+                pending.add(executor.submit(task));
+            } else {
+                runs.add(task.call());
+            }
+        }
+
+        private File writeRun(Iterator<KeyedLine> it) throws IOException {
+            File file = File.createTempFile("karaf-sort", ".run", directory);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING), 64 * 1024);
+            try {
+                while (it.hasNext()) {
+                    writer.write(it.next().line);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+            return file;
+        }
+
+        void write(PrintStream out, boolean unique) throws Exception {
+            while (!pending.isEmpty()) {
+                runs.add(get(pending.removeFirst()));
+            }
+            Collections.sort(lines, lineComparator);
+            // merge the runs in several passes if there are too many of them
+            while (runs.size() >= MAX_MERGE) {
+                List<File> group = new ArrayList<File>(runs.subList(0, MAX_MERGE));
+                runs.subList(0, MAX_MERGE).clear();
+                List<Iterator<KeyedLine>> sources = new ArrayList<Iterator<KeyedLine>>();
+                for (File run : group) {
+                    sources.add(new RunIterator(run));
+                }
+                File merged;
+                try {
+                    merged = writeRun(new MergeIterator(sources, lineComparator));
+                } finally {
+                    close(sources);
+                    for (File run : group) {
+                        run.delete();
+                    }
+                }
+                runs.add(0, merged);
+            }
+            List<Iterator<KeyedLine>> sources = new ArrayList<Iterator<KeyedLine>>();
+            try {
+                for (File run : runs) {
+                    sources.add(new RunIterator(run));
+                }
+                sources.add(lines.iterator());
+                Iterator<KeyedLine> it = sources.size() == 1 ? sources.get(0) : new MergeIterator(sources, lineComparator);
+                KeyedLine last = null;
+                while (it.hasNext()) {
+                    KeyedLine line = it.next();
+                    if (!unique || last == null || lineComparator.compare(last, line) != 0) {
+                        out.println(line.line);
+                    }
+                    last = line;
+                }
+            } finally {
+                close(sources);
             }
         }
+
+        void close() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Future<File> future : pending) {
+                try {
+                    future.get().delete();
+                } catch (Exception e) {
+                    // Ignore
+                }
+            }
+            pending.clear();
+            for (File run : runs) {
+                run.delete();
+            }
+            runs.clear();
+            lines = new ArrayList<KeyedLine>();
+        }
+
+        private static File get(Future<File> future) throws Exception {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        private static void close(List<Iterator<KeyedLine>> sources) {
+            for (Iterator<KeyedLine> source : sources) {
+                if (source instanceof RunIterator) {
+                    ((RunIterator) source).close();
+                }
+            }
+        }
+
+        /**
+         * Reads back a sorted run, extracting the keys of each line again.
+         */
+        class RunIterator implements Iterator<KeyedLine> {
+
+            private final BufferedReader reader;
+            private KeyedLine next;
+
+            RunIterator(File file) throws IOException {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING), 64 * 1024);
+                advance();
+            }
+
+            private void advance() throws IOException {
+                String s = reader.readLine();
+                next = s != null ? comparator.getKeyedLine(s) : null;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public KeyedLine next() {
+                KeyedLine line = next;
+                try {
+                    advance();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to read sorted run", e);
+                }
+                return line;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            void close() {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Merges sorted sources, equal lines being taken from the first source
+     * so that the sort is stable.
+     */
+    static class MergeIterator implements Iterator<KeyedLine> {
+
+        private final PriorityQueue<Head> queue;
+
+        MergeIterator(List<Iterator<KeyedLine>> sources, final Comparator<KeyedLine> comparator) {
+            queue = new PriorityQueue<Head>(Math.max(1, sources.size()), new Comparator<Head>() {
+                public int compare(Head h1, Head h2) {
+                    int res = comparator.compare(h1.line, h2.line);
+                    return res != 0 ? res : h1.index - h2.index;
+                }
+            });
+            for (int i = 0; i < sources.size(); i++) {
+                Iterator<KeyedLine> source = sources.get(i);
+                if (source.hasNext()) {
+                    queue.add(new Head(i, source));
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        public KeyedLine next() {
+            Head head = queue.poll();
+            KeyedLine line = head.line;
+            if (head.source.hasNext()) {
+                head.line = head.source.next();
+                queue.add(head);
+            }
+            return line;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        static class Head {
+            final int index;
+            final Iterator<KeyedLine> source;
+            KeyedLine line;
+
+            Head(int index, Iterator<KeyedLine> source) {
+                this.index = index;
+                this.source = source;
+                this.line = source.next();
+            }
+        }
+
     }
 
     public static class SortComparator implements Comparator<String> {
@@ -176,58 +526,78 @@ public class SortAction extends AbstractAction {
         }
 
         public int compare(String o1, String o2) {
-            int res = 0;
+            return compareKeys(getKeys(o1), getKeys(o2));
+        }
 
-            List<Integer> fi1 = getFieldIndexes(o1);
-            List<Integer> fi2 = getFieldIndexes(o2);
-            for (Key key : sortKeys) {
-                int[] k1 = getSortKey(o1, fi1, key);
-                int[] k2 = getSortKey(o2, fi2, key);
+        /**
+         * Extract the sort keys of a line: a Double for numeric keys, otherwise
+         * the region of the line, folded if the key ignores the case.
+         */
+        public Object[] getKeys(String str) {
+            List<Integer> fields = getFieldIndexes(str);
+            Object[] keys = new Object[sortKeys.size()];
+            for (int i = 0; i < keys.length; i++) {
+                Key key = sortKeys.get(i);
+                int[] k = getSortKey(str, fields, key);
                 if (key.numeric) {
-                    Double d1 = getDouble(o1, k1[0], k1[1]);
-                    Double d2 = getDouble(o2, k2[0], k2[1]);
-                    res = d1.compareTo(d2);
+                    keys[i] = getDouble(str, k[0], k[1]);
+                } else if (key.caseInsensitive) {
+                    keys[i] = fold(str, k[0], k[1]);
                 } else {
-                    res = compareRegion(o1, k1[0], k1[1], o2, k2[0], k2[1], key.caseInsensitive);
+                    keys[i] = str.substring(k[0], k[1]);
                 }
+            }
+            return keys;
+        }
+
+        @SuppressWarnings("unchecked")
+        public int compareKeys(Object[] k1, Object[] k2) {
+            for (int i = 0; i < k1.length; i++) {
+                int res = ((Comparable<Object>) k1[i]).compareTo(k2[i]);
                 if (res != 0) {
-                    if (key.reverse) {
-                        res = - res;
-                    }
-                    break;
+                    return sortKeys.get(i).reverse ? -res : res;
                 }
             }
-            return res;
+            return 0;
+        }
+
+        KeyedLine getKeyedLine(String str) {
+            return new KeyedLine(str, getKeys(str));
+        }
+
+        Comparator<KeyedLine> getKeyedLineComparator() {
+            return new Comparator<KeyedLine>() {
+                public int compare(KeyedLine l1, KeyedLine l2) {
+                    return compareKeys(l1.keys, l2.keys);
+                }
+            };
         }
 
+        /**
+         * Parse the number at the start of the region, lines without number sorting as 0.
+         */
         protected Double getDouble(String s, int start, int end) {
             Matcher m = fpPattern.matcher(s.substring(start, end));
-            m.find();
-            return new Double(s.substring(0, m.end(1)));
-        }
-
-        protected int compareRegion(String s1, int start1, int end1, String s2, int start2, int end2, boolean caseInsensitive) {
-            int n1 = end1, n2 = end2;
-            for (int i1 = start1, i2 = start2; i1 < end1 && i2 < n2; i1++, i2++) {
-                char c1 = s1.charAt(i1);
-                char c2 = s2.charAt(i2);
-                if (c1 != c2) {
-                    if (caseInsensitive) {
-                        c1 = Character.toUpperCase(c1);
-                        c2 = Character.toUpperCase(c2);
-                        if (c1 != c2) {
-                            c1 = Character.toLowerCase(c1);
-                            c2 = Character.toLowerCase(c2);
-                            if (c1 != c2) {
-                                return c1 - c2;
-                            }
-                        }
-                    } else {
-                        return c1 - c2;
-                    }
+            if (m.matches()) {
+                try {
+                    return Double.valueOf(m.group(1));
+                } catch (NumberFormatException e) {
+                    // not a number
                 }
             }
-            return n1 - n2;
+            return 0.0;
+        }
+
+        /**
+         * Fold the characters of the region so that comparing the folded strings
+         * ignores the case.
+         */
+        protected String fold(String s, int start, int end) {
+            char[] chars = new char[end - start];
+            for (int i = start; i < end; i++) {
+                chars[i - start] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+            }
+            return new String(chars);
         }
 
         protected int[] getSortKey(String str, List<Integer> fields, Key key) {
@@ -259,7 +629,7 @@ public class SortAction extends AbstractAction {
             } else {
                 end = str.length();
             }
-            return new int[] { start, end };
+            return new int[] { start, Math.max(start, end) };
         }
 
         protected List<Integer> getFieldIndexes(String o) {
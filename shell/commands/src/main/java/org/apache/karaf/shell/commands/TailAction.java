@@ -18,12 +18,14 @@ package org.apache.karaf.shell.commands;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.InterruptedIOException;
+import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.LinkedList;
 
 import org.apache.felix.gogo.commands.Argument;
@@ -38,6 +40,11 @@ public class TailAction extends AbstractAction {
 
     private static final int DEFAULT_SLEEP_INTERVAL = 200;
 
+    /**
+     * Size of the blocks read backwards from the end of a file.
+     */
+    static final int BLOCK_SIZE = 8192;
+
     @Option(name = "-n", aliases = {}, description = "The number of lines to display, starting at 1.", required = false, multiValued = false)
     private int numberOfLines;
 
@@ -51,6 +58,13 @@ public class TailAction extends AbstractAction {
     private String path;
 
     protected Object doExecute() throws Exception {
+        if (numberOfLines < 1) {
+            numberOfLines = DEFAULT_NUMBER_OF_LINES;
+        }
+        if (sleepInterval < 1) {
+            sleepInterval = DEFAULT_SLEEP_INTERVAL;
+        }
+
         //If no paths provided assume standar input
         if (path == null || path.trim().length() == 0) {
             if (log.isDebugEnabled()) {
@@ -74,7 +88,8 @@ public class TailAction extends AbstractAction {
                 if (log.isDebugEnabled()) {
                     log.debug("Tailing file: " + file);
                 }
-                reader = new BufferedReader(new FileReader(file));
+                tail(file);
+                return null;
             }
 
             try {
@@ -99,14 +114,6 @@ public class TailAction extends AbstractAction {
      * @throws IOException
      */
     private void tail(final BufferedReader reader) throws InterruptedException, IOException {
-        
-        if (numberOfLines < 1) {
-            numberOfLines = DEFAULT_NUMBER_OF_LINES;
-        }
-        if (sleepInterval < 1) {
-            sleepInterval = DEFAULT_SLEEP_INTERVAL;
-        }
-        
         LinkedList<String> lines = new LinkedList<String>();
         String line;
         while ((line = reader.readLine()) != null) {
@@ -128,4 +135,98 @@ public class TailAction extends AbstractAction {
             }
         }
     }
+
+    /**
+     * Prints the tail of a file, only reading the blocks at its end.  When
+     * following the file, its size is checked at each interval and it is only
+     * read when it has grown.  The file is read again from the start if it has
+     * been truncated or replaced, as when logs are rotated.
+     */
+    private void tail(File file) throws InterruptedException, IOException {
+        PrintStream out = System.out;
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            channel.position(findStart(channel, numberOfLines));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(fis));
+            copy(reader, out);
+            long replacedSize = -1;
+            while (continuous) {
+                Thread.sleep(sleepInterval);
+                long position = channel.position();
+                // check the path before the open file, which can only be larger if it is the same file
+                long length = file.length();
+                long size = channel.size();
+                boolean rotated = length < position || length > size;
+                if (!rotated && length < size) {
+                    // either the file grew between the two checks, or it has been
+                    // replaced by a smaller one: wait until the open file stops growing
+                    rotated = replacedSize == size;
+                    replacedSize = size;
+                } else {
+                    replacedSize = -1;
+                }
+                if (rotated && file.exists()) {
+                    // print what was written to the previous file before reopening
+                    copy(reader, out);
+                    fis.close();
+                    fis = new FileInputStream(file);
+                    channel = fis.getChannel();
+                    reader = new BufferedReader(new InputStreamReader(fis));
+                    replacedSize = -1;
+                    copy(reader, out);
+                } else if (size > position) {
+                    copy(reader, out);
+                }
+            }
+        } finally {
+            try {
+                fis.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static void copy(BufferedReader reader, PrintStream out) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    /**
+     * Find the position of the first of the last lines of a file, reading it
+     * backwards by blocks.  A line feed ending the file does not start a new line.
+     */
+    static long findStart(FileChannel channel, int lines) throws IOException {
+        long length = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        long end = length;
+        int found = 0;
+        while (end > 0) {
+            long start = Math.max(0, end - BLOCK_SIZE);
+            buffer.clear();
+            buffer.limit((int) (end - start));
+            int read = 0;
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, start + read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            for (int i = read - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n' && start + i != length - 1) {
+                    if (++found == lines) {
+                        return start + i + 1;
+                    }
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
 }
@@ -19,8 +19,15 @@
 package org.apache.karaf.shell.commands;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.TestCase;
 import org.apache.felix.gogo.commands.basic.DefaultActionPreparator;
@@ -41,4 +48,99 @@ public class GrepTest extends TestCase {
             System.setIn(input);
         }
     }
+
+    public void testContext() throws Exception {
+        String input = "a\nb\nc\nmatch1\nd\ne\nf\ng\nmatch2\nmatch3\nh\n";
+        assertEquals(Arrays.asList("b", "c", "match1", "d", "--", "f", "g", "match2", "match3", "h"),
+                grepStdin(input, "-B", "2", "-A", "1", "--color", "never", "match"));
+        assertEquals(Arrays.asList("match1", "match2", "match3"),
+                grepStdin(input, "--color", "never", "match"));
+        assertEquals(Arrays.asList("     4  match1", "     9  match2"),
+                grepStdin(input, "-n", "-m", "2", "--color", "never", "match"));
+        assertEquals(Arrays.asList("3"), grepStdin(input, "-c", "mat.h"));
+        assertEquals(Arrays.asList("8"), grepStdin(input, "-c", "-v", "match"));
+        assertEquals(Arrays.asList("match1", "d"), grepStdin(input, "-x", "--color", "never", "match1|d"));
+        assertEquals(Arrays.asList(), grepStdin(input, "-x", "match"));
+        assertEquals(Arrays.asList("e", "match2"), grepStdin(input, "-w", "--color", "never", "match2|e|matc"));
+    }
+
+    public void testFiles() throws Exception {
+        File f1 = createFile("f1", "foo\nbar\nfoo bar\n");
+        File f2 = createFile("f2", "baz\n");
+        try {
+            assertEquals(Arrays.asList(f1.getPath()),
+                    grepStdin("", "-l", "bar", f1.getPath(), f2.getPath()));
+            assertEquals(Arrays.asList(f1.getPath() + ":2", f2.getPath() + ":0"),
+                    grepStdin("", "-c", "bar", f1.getPath(), f2.getPath()));
+            assertEquals(Arrays.asList(f1.getPath() + ":bar", f1.getPath() + ":foo bar"),
+                    grepStdin("", "--color", "never", "bar", f1.getPath(), f2.getPath()));
+        } finally {
+            f1.delete();
+            f2.delete();
+        }
+    }
+
+    public void testParallel() throws Exception {
+        File f1 = File.createTempFile("grep", ".txt");
+        File f2 = createFile("f2", "line 17\n");
+        try {
+            OutputStream os = new FileOutputStream(f1);
+            try {
+                // large enough to be searched in several chunks
+                int lines = 0;
+                for (long size = 0; size < 3 * GrepAction.MIN_CHUNK_SIZE; lines++) {
+                    byte[] b = ("line " + lines + "\r\n").getBytes();
+                    os.write(b);
+                    size += b.length;
+                }
+            } finally {
+                os.close();
+            }
+            List<String> expected = grepStdin("", "-c", "7$", f1.getPath(), f2.getPath());
+            assertEquals(expected, grepStdin("", "--parallel", "-c", "7$", f1.getPath(), f2.getPath()));
+            assertEquals(Arrays.asList(f1.getPath() + ":10", f2.getPath() + ":1"),
+                    grepStdin("", "--parallel", "-c", "-m", "10", "7$", f1.getPath(), f2.getPath()));
+            assertEquals(Arrays.asList(f2.getPath()),
+                    grepStdin("", "--parallel", "-l", "^line 17$", f2.getPath(), f1.getPath()).subList(0, 1));
+        } finally {
+            f1.delete();
+            f2.delete();
+        }
+    }
+
+    private File createFile(String name, String content) throws Exception {
+        File file = File.createTempFile("grep-" + name, ".txt");
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes());
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+
+    private List<String> grepStdin(String input, String... args) throws Exception {
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            System.setIn(new ByteArrayInputStream(input.getBytes()));
+            System.setOut(new PrintStream(baos));
+            GrepAction grep = new GrepAction();
+            DefaultActionPreparator preparator = new DefaultActionPreparator();
+            preparator.prepare(grep, null, new ArrayList<Object>(Arrays.asList(args)));
+            grep.doExecute();
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+        List<String> lines = new ArrayList<String>();
+        for (String line : baos.toString().split("\n")) {
+            if (line.length() > 0) {
+                lines.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+            }
+        }
+        return lines;
+    }
+
 }
@@ -18,11 +18,18 @@
  */
 package org.apache.karaf.shell.commands;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Collections;
+import java.util.Random;
 
 import junit.framework.TestCase;
+import org.apache.felix.gogo.commands.basic.DefaultActionPreparator;
 
 public class SortTest extends TestCase {
 
@@ -60,4 +67,57 @@ public class SortTest extends TestCase {
         assertTrue(Arrays.asList(s2, s1, s0).equals(strings));
     }
 
+    public void testNumericKey() {
+        SortAction.SortComparator comparator = new SortAction.SortComparator(false, false, false, false, '\0', Arrays.asList("2n"));
+        List<String> strings = new ArrayList<String>(Arrays.asList("a 10", "b 9", "c x", "d -1.5"));
+        Collections.sort(strings, comparator);
+        assertEquals(Arrays.asList("d -1.5", "c x", "b 9", "a 10"), strings);
+    }
+
+    public void testUnique() throws Exception {
+        assertEquals(Arrays.asList("a", "b", "c"), sort("c\nb\na\nB\n", "-f", "-u"));
+        assertEquals(Arrays.asList("a", "B", "b", "c"), sort("c\nB\na\nb\n", "-f"));
+    }
+
+    public void testExternalSort() throws Exception {
+        Random random = new Random(0);
+        StringBuilder input = new StringBuilder();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            String line = random.nextInt(1000) + " line " + i;
+            input.append(line).append("\n");
+            expected.add(line);
+        }
+        SortAction.SortComparator comparator = new SortAction.SortComparator(false, false, false, false, '\0', Arrays.asList("1n"));
+        Collections.sort(expected, comparator);
+
+        // with a small buffer, the lines are merged from many runs, in several passes
+        assertEquals(expected, sort(input.toString(), "-n", "-S", "4K"));
+        assertEquals(expected, sort(input.toString(), "-n", "-S", "4K", "--parallel"));
+        assertEquals(expected, sort(input.toString(), "-n"));
+    }
+
+    private List<String> sort(String input, String... args) throws Exception {
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            System.setIn(new ByteArrayInputStream(input.getBytes()));
+            System.setOut(new PrintStream(baos));
+            SortAction sort = new SortAction();
+            new DefaultActionPreparator().prepare(sort, null, new ArrayList<Object>(Arrays.asList(args)));
+            sort.doExecute();
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+        List<String> lines = new ArrayList<String>();
+        for (String line : baos.toString().split("\r?\n")) {
+            if (line.length() > 0) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
 }
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.commands;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.apache.felix.gogo.commands.basic.DefaultActionPreparator;
+
+public class TailTest extends TestCase {
+
+    public void testTail() throws Exception {
+        String[] contents = { "", "\n", "a", "a\n", "a\nb", "a\nb\n", "a\n\nb\n\n", "a\r\nb\r\nc\r\n", "1\n2\n3\n4\n5\n6\n7\n8\n9\n10\n11\n12" };
+        for (String content : contents) {
+            File file = createFile(content);
+            try {
+                for (String n : new String[] { "1", "2", "10" }) {
+                    // the file is read from its end, standard input is read entirely
+                    assertEquals(content, tail(content, "-n", n), tail("", "-n", n, file.getPath()));
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    public void testLargeFile() throws Exception {
+        // a few hundred KB of lines of various lengths, one of them longer than a block,
+        // so that the last lines span several blocks
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            char[] line = new char[i == 190 ? 3 * TailAction.BLOCK_SIZE + 5 : (i * 37) % 3000];
+            Arrays.fill(line, (char) ('a' + i % 26));
+            content.append(line).append('\n');
+            if (i >= 180) {
+                expected.add(new String(line));
+            }
+        }
+        expected.add("");
+        File file = createFile(content.toString());
+        try {
+            assertTrue(file.length() > 32 * TailAction.BLOCK_SIZE);
+            List<String> lines = tail("", "-n", "20", file.getPath());
+            assertEquals(expected, lines);
+            assertEquals(tail(content.toString(), "-n", "20"), lines);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testFollow() throws Exception {
+        final File file = createFile("a\nb\n");
+        PrintStream out = System.out;
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final Exception[] error = new Exception[1];
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    TailAction tail = new TailAction();
+                    DefaultActionPreparator preparator = new DefaultActionPreparator();
+                    preparator.prepare(tail, null, new ArrayList<Object>(Arrays.asList("-f", "-s", "10", "-n", "1", file.getPath())));
+                    tail.doExecute();
+                } catch (InterruptedException e) {
+                    // stopped
+                } catch (Exception e) {
+                    error[0] = e;
+                }
+            }
+        };
+        try {
+            System.setOut(new PrintStream(baos));
+            thread.start();
+            waitFor(baos, "b\n");
+
+            append(file, "c\nd\n");
+            waitFor(baos, "b\nc\nd\n");
+
+            // rotate the file
+            assertTrue(file.delete());
+            append(file, "e\nee\n");
+            waitFor(baos, "b\nc\nd\ne\nee\n");
+
+            // truncate it
+            OutputStream os = new FileOutputStream(file);
+            os.close();
+            append(file, "f\n");
+            waitFor(baos, "b\nc\nd\ne\nee\nf\n");
+        } finally {
+            thread.interrupt();
+            thread.join(5000);
+            System.setOut(out);
+            file.delete();
+        }
+        assertNull(error[0]);
+    }
+
+    private void waitFor(ByteArrayOutputStream baos, String expected) throws InterruptedException {
+        for (int i = 0; i < 500 && !baos.toString().replace("\r", "").equals(expected); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, baos.toString().replace("\r", ""));
+    }
+
+    private File createFile(String content) throws Exception {
+        File file = File.createTempFile("tail", ".txt");
+        append(file, content);
+        return file;
+    }
+
+    private void append(File file, String content) throws Exception {
+        OutputStream os = new FileOutputStream(file, true);
+        try {
+            os.write(content.getBytes());
+        } finally {
+            os.close();
+        }
+    }
+
+    private List<String> tail(String input, String... args) throws Exception {
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            System.setIn(new ByteArrayInputStream(input.getBytes()));
+            System.setOut(new PrintStream(baos));
+            TailAction tail = new TailAction();
+            DefaultActionPreparator preparator = new DefaultActionPreparator();
+            preparator.prepare(tail, null, new ArrayList<Object>(Arrays.asList(args)));
+            tail.doExecute();
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+        return Arrays.asList(baos.toString().replace("\r", "").split("\n", -1));
+    }
+
+}
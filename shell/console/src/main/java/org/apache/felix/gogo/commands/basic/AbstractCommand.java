@@ -28,10 +28,25 @@ import org.apache.felix.service.command.Function;
 
 public abstract class AbstractCommand implements Function {
 
+    /**
+     * Metadata of the last action class, given to the preparator so that
+     * executing the command does not lock the shared metadata cache.
+     */
+    private volatile ActionMetadata metadata;
+
     public Object execute(CommandSession session, List<Object> arguments) throws Exception {
         Action action = createNewAction();
+        ActionMetadata metadata = this.metadata;
+        if (metadata == null || metadata.getActionClass() != action.getClass()) {
+            metadata = ActionMetadata.getMetadata(action.getClass());
+            this.metadata = metadata;
+        }
         try {
-            if (getPreparator().prepare(action, session, arguments)) {
+            ActionPreparator preparator = getPreparator();
+            boolean prepared = preparator instanceof DefaultActionPreparator
+                    ? ((DefaultActionPreparator) preparator).prepare(action, metadata, session, arguments)
+                    : preparator.prepare(action, session, arguments);
+            if (prepared) {
                 return action.execute(session);
             } else {
                 return null;
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.gogo.commands.basic;
+
+import java.lang.annotation.Annotation;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.felix.gogo.commands.Argument;
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+
+/**
+ * The options and arguments of an action class, introspected once per class.
+ *
+ * Instances are immutable and shared between all the invocations of the
+ * commands using the same action class.  As the metadata references its class,
+ * the cache only keeps weak references to both, so that bundles can still be
+ * refreshed: the commands keep the metadata of their action class while they
+ * are registered.
+ */
+public class ActionMetadata {
+
+    private static final Map<Class<?>, Reference<ActionMetadata>> CACHE = new WeakHashMap<Class<?>, Reference<ActionMetadata>>();
+
+    private final Class<?> actionClass;
+    private final Command command;
+    private final Map<Option, Field> options;
+    private final Map<Argument, Field> arguments;
+    private final List<Argument> orderedArguments;
+    private final Map<String, Option> optionsByName;
+    private final IllegalArgumentException error;
+
+    /**
+     * Returns the metadata of the given action class, introspecting it on first use.
+     */
+    public static ActionMetadata getMetadata(Class<?> actionClass) {
+        synchronized (CACHE) {
+            Reference<ActionMetadata> ref = CACHE.get(actionClass);
+            ActionMetadata metadata = ref != null ? ref.get() : null;
+            if (metadata != null) {
+                return metadata;
+            }
+        }
+        // introspect outside of the lock, a concurrent computation is harmless
+        ActionMetadata metadata = new ActionMetadata(actionClass);
+        synchronized (CACHE) {
+            CACHE.put(actionClass, new WeakReference<ActionMetadata>(metadata));
+        }
+        return metadata;
+    }
+
+    ActionMetadata(Class<?> actionClass) {
+        this.actionClass = actionClass;
+        this.command = actionClass.getAnnotation(Command.class);
+        Map<Option, Field> options = new HashMap<Option, Field>();
+        Map<Argument, Field> arguments = new HashMap<Argument, Field>();
+        List<Argument> orderedArguments = new ArrayList<Argument>();
+        Map<String, Option> optionsByName = new HashMap<String, Option>();
+        IllegalArgumentException error = null;
+        for (Class type = actionClass; type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                Option option = field.getAnnotation(Option.class);
+                if (option != null) {
+                    field.setAccessible(true);
+                    options.put(option, field);
+                    // options declared in subclasses take precedence
+                    if (!optionsByName.containsKey(option.name())) {
+                        optionsByName.put(option.name(), option);
+                    }
+                    for (String alias : option.aliases()) {
+                        if (!optionsByName.containsKey(alias)) {
+                            optionsByName.put(alias, option);
+                        }
+                    }
+                }
+                Argument argument = field.getAnnotation(Argument.class);
+                if (argument != null) {
+                    field.setAccessible(true);
+                    if (Argument.DEFAULT.equals(argument.name())) {
+                        argument = new NamedArgument(argument, field.getName());
+                    }
+                    arguments.put(argument, field);
+                    int index = argument.index();
+                    while (orderedArguments.size() <= index) {
+                        orderedArguments.add(null);
+                    }
+                    if (orderedArguments.get(index) != null && error == null) {
+                        error = new IllegalArgumentException("Duplicate argument index: " + index);
+                    }
+                    orderedArguments.set(index, argument);
+                }
+            }
+        }
+        // Check indexes are correct
+        for (int i = 0; i < orderedArguments.size() && error == null; i++) {
+            if (orderedArguments.get(i) == null) {
+                error = new IllegalArgumentException("Missing argument for index: " + i);
+            }
+        }
+        this.options = Collections.unmodifiableMap(options);
+        this.arguments = Collections.unmodifiableMap(arguments);
+        this.orderedArguments = Collections.unmodifiableList(orderedArguments);
+        this.optionsByName = Collections.unmodifiableMap(optionsByName);
+        this.error = error;
+    }
+
+    public Class<?> getActionClass() {
+        return actionClass;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    /**
+     * The options and their accessible fields.
+     */
+    public Map<Option, Field> getOptions() {
+        return options;
+    }
+
+    /**
+     * The arguments and their accessible fields.
+     */
+    public Map<Argument, Field> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * The arguments ordered by index.
+     */
+    public List<Argument> getOrderedArguments() {
+        return orderedArguments;
+    }
+
+    /**
+     * Look up an option by its name or one of its aliases.
+     */
+    public Option getOption(String name) {
+        return optionsByName.get(name);
+    }
+
+    /**
+     * Throws an exception if the argument indexes of the action are not consistent.
+     */
+    public void validate() {
+        if (error != null) {
+            throw new IllegalArgumentException(error.getMessage());
+        }
+    }
+
+    /**
+     * Argument using the field name when the annotation does not define one.
+     */
+    static class NamedArgument implements Argument {
+
+        private final Argument delegate;
+        private final String name;
+
+        NamedArgument(Argument delegate, String name) {
+            this.delegate = delegate;
+            this.name = name;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public String description() {
+            return delegate.description();
+        }
+
+        public boolean required() {
+            return delegate.required();
+        }
+
+        public int index() {
+            return delegate.index();
+        }
+
+        public boolean multiValued() {
+            return delegate.multiValued();
+        }
+
+        public String valueToShowInHelp() {
+            return delegate.valueToShowInHelp();
+        }
+
+        public Class<? extends Annotation> annotationType() {
+            return delegate.annotationType();
+        }
+
+    }
+
+}
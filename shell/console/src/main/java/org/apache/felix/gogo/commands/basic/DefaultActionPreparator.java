@@ -84,63 +84,19 @@ public class DefaultActionPreparator implements ActionPreparator {
 
     public boolean prepare(Action action, CommandSession session, List<Object> params) throws Exception
     {
-        Map<Option, Field> options = new HashMap<Option, Field>();
-        Map<Argument, Field> arguments = new HashMap<Argument, Field>();
-        List<Argument> orderedArguments = new ArrayList<Argument>();
-        // Introspect
-        for (Class type = action.getClass(); type != null; type = type.getSuperclass()) {
-            for (Field field : type.getDeclaredFields()) {
-                Option option = field.getAnnotation(Option.class);
-                if (option != null) {
-                    options.put(option, field);
-                }
-                Argument argument = field.getAnnotation(Argument.class);
-                if (argument != null) {
-                    if (Argument.DEFAULT.equals(argument.name())) {
-                        final Argument delegate = argument;
-                        final String name = field.getName();
-                        argument = new Argument() {
-                            public String name() {
-                                return name;
-                            }
-                            public String description() {
-                                return delegate.description();
-                            }
-                            public boolean required() {
-                                return delegate.required();
-                            }
-                            public int index() {
-                                return delegate.index();
-                            }
-                            public boolean multiValued() {
-                                return delegate.multiValued();
-                            }
-                            public String valueToShowInHelp() {
-                                return delegate.valueToShowInHelp();
-                            }
-                            public Class<? extends Annotation> annotationType() {
-                                return delegate.annotationType();
-                            }
-                        };
-                    }
-                    arguments.put(argument, field);
-                    int index = argument.index();
-                    while (orderedArguments.size() <= index) {
-                        orderedArguments.add(null);
-                    }
-                    if (orderedArguments.get(index) != null) {
-                        throw new IllegalArgumentException("Duplicate argument index: " + index);
-                    }
-                    orderedArguments.set(index, argument);
-                }
-            }
-        }
-        // Check indexes are correct
-        for (int i = 0; i < orderedArguments.size(); i++) {
-            if (orderedArguments.get(i) == null) {
-                throw new IllegalArgumentException("Missing argument for index: " + i);
-            }
-        }
+        return prepare(action, ActionMetadata.getMetadata(action.getClass()), session, params);
+    }
+
+    /**
+     * Prepare an action with the metadata of its class already at hand, without
+     * looking it up in the shared metadata cache.
+     */
+    public boolean prepare(Action action, ActionMetadata metadata, CommandSession session, List<Object> params) throws Exception
+    {
+        metadata.validate();
+        Map<Option, Field> options = metadata.getOptions();
+        Map<Argument, Field> arguments = metadata.getArguments();
+        List<Argument> orderedArguments = metadata.getOrderedArguments();
         // Populate
         Map<Option, Object> optionValues = new HashMap<Option, Object>();
         Map<Argument, Object> argumentValues = new HashMap<Argument, Object>();
@@ -149,7 +105,7 @@ public class DefaultActionPreparator implements ActionPreparator {
         for (Iterator<Object> it = params.iterator(); it.hasNext();) {
             Object param = it.next();
             // Check for help
-            if (HELP.name().equals(param) || Arrays.asList(HELP.aliases()).contains(param)) {
+            if (HELP.name().equals(param)) {
                 printUsage(session, action, options, arguments, System.out);
                 return false;
             }
@@ -163,13 +119,7 @@ public class DefaultActionPreparator implements ActionPreparator {
                 } else {
                     name = (String) param;
                 }
-                Option option = null;
-                for (Option opt : options.keySet()) {
-                    if (name.equals(opt.name()) || Arrays.asList(opt.aliases()).contains(name)) {
-                        option = opt;
-                        break;
-                    }
-                }
+                Option option = metadata.getOption(name);
                 if (option == null) {
                     Command command = action.getClass().getAnnotation(Command.class);
                     throw new CommandException(
@@ -341,7 +291,6 @@ public class DefaultActionPreparator implements ActionPreparator {
                         e
                 );
             }
-            field.setAccessible(true);
             field.set(action, value);
         }
         for (Map.Entry<Argument, Object> entry : argumentValues.entrySet()) {
@@ -375,7 +324,6 @@ public class DefaultActionPreparator implements ActionPreparator {
                         e
                 );
             }
-            field.setAccessible(true);
             field.set(action, value);
         }
         return true;
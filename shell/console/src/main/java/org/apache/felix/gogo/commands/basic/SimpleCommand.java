@@ -18,6 +18,8 @@
  */
 package org.apache.felix.gogo.commands.basic;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Hashtable;
 
 import org.apache.felix.service.command.Function;
@@ -32,6 +34,7 @@ import org.apache.felix.gogo.commands.Command;
 public class SimpleCommand extends AbstractCommand {
 
     private Class<? extends Action> actionClass;
+    private volatile Constructor<? extends Action> constructor;
 
     public SimpleCommand()
     {
@@ -50,11 +53,22 @@ public class SimpleCommand extends AbstractCommand {
     public void setActionClass(Class<? extends Action> actionClass)
     {
         this.actionClass = actionClass;
+        this.constructor = null;
     }
 
     public Action createNewAction() {
         try {
-            return actionClass.newInstance();
+            Constructor<? extends Action> ctor = constructor;
+            if (ctor == null || ctor.getDeclaringClass() != actionClass) {
+                ctor = actionClass.getDeclaredConstructor();
+                ctor.setAccessible(true);
+                constructor = ctor;
+            }
+            return ctor.newInstance();
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e.getTargetException());
         } catch (InstantiationException e) {
             throw new RuntimeException(e);
         } catch (IllegalAccessException e) {
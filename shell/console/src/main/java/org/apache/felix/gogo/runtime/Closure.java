@@ -58,7 +58,7 @@ public class Closure implements Function, Evaluate
 
         try
         {
-            program = new Parser(source).program();
+            program = ProgramCache.getShared().parse(source);
         }
         catch (Exception e)
         {
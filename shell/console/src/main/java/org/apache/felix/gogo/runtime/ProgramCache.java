@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.gogo.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of the programs parsed from command lines, scripts and closure
+ * bodies, keyed by their source text.
+ *
+ * The cache is shared by all the sessions: parsed programs are never modified
+ * when they are executed, and the tokens only record their position relative
+ * to the parsed text, so equal sources can safely use the same program.
+ */
+public class ProgramCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * Longer sources are parsed each time rather than kept in memory.
+     */
+    public static final int MAX_SOURCE_LENGTH = 64 * 1024;
+
+    private static final ProgramCache shared = new ProgramCache(DEFAULT_MAX_ENTRIES);
+
+    private final Map<String, List<List<List<Token>>>> programs;
+    private long hits;
+    private long misses;
+
+    /**
+     * Returns the cache shared by all the sessions.
+     */
+    public static ProgramCache getShared() {
+        return shared;
+    }
+
+    public ProgramCache(final int maxEntries) {
+        this.programs = new LinkedHashMap<String, List<List<List<Token>>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<List<List<Token>>>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the program parsed from the given source, parsing it only if it is
+     * not already cached.  Sources which can not be parsed are never cached.
+     */
+    public List<List<List<Token>>> parse(CharSequence source) throws Exception {
+        String key = source.toString();
+        if (key.length() > MAX_SOURCE_LENGTH) {
+            return new Parser(key).program();
+        }
+        synchronized (this) {
+            List<List<List<Token>>> program = programs.get(key);
+            if (program != null) {
+                hits++;
+                return program;
+            }
+            misses++;
+        }
+        // parse outside of the lock, a concurrent parse of the same source is harmless
+        List<List<List<Token>>> program = new Parser(key).program();
+        synchronized (this) {
+            programs.put(key, program);
+        }
+        return program;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int getSize() {
+        return programs.size();
+    }
+
+    public synchronized void clear() {
+        programs.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+}
@@ -36,6 +36,7 @@ import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.CompleterValues;
 import org.apache.felix.gogo.commands.Option;
 import org.apache.felix.gogo.commands.basic.AbstractCommand;
+import org.apache.felix.gogo.commands.basic.ActionMetadata;
 import org.apache.felix.gogo.commands.basic.DefaultActionPreparator;
 import org.apache.felix.service.command.CommandSession;
 import org.apache.karaf.shell.console.CompletableFunction;
@@ -62,30 +63,26 @@ public class ArgumentCompleter implements Completer {
         // Command name completer
         commandCompleter = new StringsCompleter(getNames(session, command));
         // Build options completer
-        for (Class type = function.getActionClass(); type != null; type = type.getSuperclass()) {
-            for (Field field : type.getDeclaredFields()) {
-                Option option = field.getAnnotation(Option.class);
-                if (option != null) {
-                    fields.put(option, field);
-                    options.put(option.name(), option);
-                    String[] aliases = option.aliases();
-                    if (aliases != null) {
-                        for (String alias : aliases) {
-                            options.put(alias, option);
-                        }
-                    }
-                }
-                Argument argument = field.getAnnotation(Argument.class);
-                if (argument != null) {
-                    Integer key = argument.index();
-                    if (arguments.containsKey(key)) {
-                        LOGGER.warn("Duplicate @Argument annotations on class " + type.getName() + " for index: " + key + " see: " + field);
-                    } else {
-                        arguments.put(key, field);
-                    }
+        ActionMetadata metadata = ActionMetadata.getMetadata(function.getActionClass());
+        for (Map.Entry<Option, Field> entry : metadata.getOptions().entrySet()) {
+            Option option = entry.getKey();
+            fields.put(option, entry.getValue());
+            options.put(option.name(), option);
+            String[] aliases = option.aliases();
+            if (aliases != null) {
+                for (String alias : aliases) {
+                    options.put(alias, option);
                 }
             }
         }
+        for (Map.Entry<Argument, Field> entry : metadata.getArguments().entrySet()) {
+            Integer key = entry.getKey().index();
+            if (arguments.containsKey(key)) {
+                LOGGER.warn("Duplicate @Argument annotations on class " + metadata.getActionClass().getName() + " for index: " + key + " see: " + entry.getValue());
+            } else {
+                arguments.put(key, entry.getValue());
+            }
+        }
         options.put(DefaultActionPreparator.HELP.name(), DefaultActionPreparator.HELP);
         optionsCompleter = new StringsCompleter(options.keySet());
         // Build arguments completers
@@ -170,7 +167,10 @@ public class ArgumentCompleter implements Completer {
         }
     }
 
-    private String[] getNames(CommandSession session, String scopedCommand) {
+    /**
+     * Returns the names which can be used to invoke the given scoped command.
+     */
+    static String[] getNames(CommandSession session, String scopedCommand) {
         String command = NameScoping.getCommandNameWithoutGlobalPrefix(session, scopedCommand);
         String[] s = command.split(":");
         if (s.length == 1) {
@@ -291,6 +291,13 @@ public class ArgumentCompleter implements Completer {
     }
 
     public ArgumentList delimit(final String buffer, final int cursor) {
+        return parseArguments(buffer, cursor);
+    }
+
+    /**
+     *  Split the pipe under the cursor into arguments.
+     */
+    static ArgumentList parseArguments(final String buffer, final int cursor) {
         Parser parser = new Parser(buffer, cursor);
         try {
             List<List<List<String>>> program = parser.program();
@@ -20,9 +20,13 @@ package org.apache.karaf.shell.console.completer;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.felix.gogo.commands.basic.AbstractCommand;
 import org.apache.felix.gogo.runtime.Closure;
@@ -33,49 +37,169 @@ import org.apache.felix.service.command.Function;
 import org.apache.karaf.shell.console.Completer;
 
 /**
- * Like the {@link org.apache.karaf.shell.console.completer.CommandsCompleter} but does not use OSGi but is
- * instead used from the non-OSGi {@link org.apache.karaf.shell.console.Main}
+ * Completes command names using the {@link CommandsIndex} and delegates the
+ * completion of options and arguments to the {@link ArgumentCompleter} of the
+ * command being typed.  Argument completers are only built when first needed.
+ *
+ * The commands of the session which are not in the given index, such as the
+ * gogo builtins or the commands added to the session at runtime, are kept in
+ * a private index.  Without index, as in the non-OSGi
+ * {@link org.apache.karaf.shell.console.Main}, the private index holds all the
+ * commands of the session.  The private index is only synchronized again when
+ * the number of commands of the session changes, so that completing does not
+ * look at every command.
  */
 public class CommandsCompleter implements Completer {
 
     private CommandSession session;
-    private final List<Completer> completers = new ArrayList<Completer>();
-    private final Set<String> commands = new HashSet<String>();
+    private CommandsIndex index;
+    private CommandsIndex local;
+    private int synced = -1;
+    private final Map<String, ArgumentCompleter> completers = new HashMap<String, ArgumentCompleter>();
 
     public CommandsCompleter(CommandSession session) {
         this.session = session;
     }
 
+    public CommandsCompleter(CommandSession session, CommandsIndex index) {
+        this.session = session;
+        this.index = index;
+    }
+
+    /**
+     * Sets the index of the commands registered as services.
+     */
+    public synchronized void setIndex(CommandsIndex index) {
+        this.index = index;
+        this.synced = -1;
+    }
 
     public int complete(String buffer, int cursor, List<String> candidates) {
-        checkData();
-        int res = new AggregateCompleter(completers).complete(buffer, cursor, candidates);
+        List<CommandsIndex> indexes = getIndexes();
+        ArgumentCompleter.ArgumentList list = ArgumentCompleter.parseArguments(buffer, cursor);
+        String[] args = list.getArguments();
+        int res;
+        if (list.getCursorArgumentIndex() <= 0 || args.length == 0) {
+            res = completeCommandName(indexes, list, buffer, cursor, candidates);
+        } else {
+            List<Completer> comps = new ArrayList<Completer>();
+            for (String command : getCommands(indexes, args[0])) {
+                Completer completer = getArgumentCompleter(command);
+                if (completer != null) {
+                    comps.add(completer);
+                }
+            }
+            res = new AggregateCompleter(comps).complete(buffer, cursor, candidates);
+        }
         Collections.sort(candidates);
         return res;
     }
 
-    protected synchronized void checkData() {
-        // Copy the set to avoid concurrent modification exceptions
-        // TODO: fix that in gogo instead
-        Set<String> names = new HashSet<String>((Set<String>) session.get(CommandSessionImpl.COMMANDS));
-        if (!names.equals(commands)) {
-            commands.clear();
-            completers.clear();
-
-            // get command aliases
-            Set<String> aliases = this.getAliases();
-            completers.add(new StringsCompleter(aliases));
-
-            // add argument completers for each command
-            for (String command : names) {
-                Function function = (Function) session.get(command);
-                function = unProxy(function);
-                if (function instanceof AbstractCommand) {
-                    completers.add(new ArgumentCompleter(session, (AbstractCommand) function, command));
+    protected int completeCommandName(List<CommandsIndex> indexes, ArgumentCompleter.ArgumentList list,
+                                      String buffer, int cursor, List<String> candidates) {
+        String arg = list.getCursorArgument();
+        int argpos = list.getArgumentPosition();
+        String prefix = arg != null ? arg.substring(0, Math.min(argpos, arg.length())) : "";
+        Set<String> names = new HashSet<String>();
+        for (String command : getCommands(indexes, prefix)) {
+            for (String name : ArgumentCompleter.getNames(session, command)) {
+                if (name.startsWith(prefix)) {
+                    names.add(name);
                 }
-                commands.add(command);
             }
         }
+        for (String alias : getAliases()) {
+            if (alias.startsWith(prefix)) {
+                names.add(alias);
+            }
+        }
+        int ret = new StringsCompleter(names).complete(arg, argpos, candidates);
+        if (ret == -1) {
+            return -1;
+        }
+        // when completing in the middle of the line, do not add an extra delimiter
+        if (cursor != buffer.length() && Character.isWhitespace(buffer.charAt(cursor))) {
+            for (int i = 0; i < candidates.size(); i++) {
+                String val = candidates.get(i);
+                while (val.length() > 0 && Character.isWhitespace(val.charAt(val.length() - 1))) {
+                    val = val.substring(0, val.length() - 1);
+                }
+                candidates.set(i, val);
+            }
+        }
+        return ret + (list.getBufferPosition() - argpos);
+    }
+
+    /**
+     * Returns the argument completer of the given scoped command, building it
+     * on first use or when the command has been registered again.
+     */
+    protected synchronized Completer getArgumentCompleter(String command) {
+        Object value = session.get(command);
+        if (!(value instanceof Function)) {
+            return null;
+        }
+        Function function = unProxy((Function) value);
+        if (!(function instanceof AbstractCommand)) {
+            completers.remove(command);
+            return null;
+        }
+        ArgumentCompleter completer = completers.get(command);
+        if (completer == null || completer.function != function) {
+            completer = new ArgumentCompleter(session, (AbstractCommand) function, command);
+            completers.put(command, completer);
+        }
+        return completer;
+    }
+
+    /**
+     * Returns the indexes to complete from: the given index, if any, and the
+     * private index of the session commands it does not hold.
+     */
+    protected synchronized List<CommandsIndex> getIndexes() {
+        if (local == null) {
+            local = new CommandsIndex();
+        }
+        Set<String> commands = (Set<String>) session.get(CommandSessionImpl.COMMANDS);
+        int size = commands != null ? commands.size() : 0;
+        if (size != synced && syncLocal(commands)) {
+            synced = size;
+        }
+        List<CommandsIndex> indexes = new ArrayList<CommandsIndex>(2);
+        if (index != null) {
+            indexes.add(index);
+        }
+        indexes.add(local);
+        return indexes;
+    }
+
+    private boolean syncLocal(Set<String> commands) {
+        Set<String> names = new HashSet<String>();
+        if (commands != null) {
+            String[] array;
+            try {
+                // the set is modified by gogo without locking
+                array = commands.toArray(new String[commands.size()]);
+            } catch (ConcurrentModificationException e) {
+                // try again on the next completion
+                return false;
+            }
+            for (String command : array) {
+                if (command != null && (index == null || !index.contains(command))) {
+                    names.add(command);
+                }
+            }
+        }
+        local.sync(names);
+        return true;
+    }
+
+    private static Set<String> getCommands(List<CommandsIndex> indexes, String prefix) {
+        Set<String> commands = new TreeSet<String>();
+        for (CommandsIndex index : indexes) {
+            commands.addAll(index.getCommands(prefix));
+        }
+        return commands;
     }
 
     /**
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.console.completer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Sorted index of the names of the available commands, used to complete
+ * command names without looking at every command.
+ *
+ * When started, the index follows the registration of the command services
+ * and is given to the consoles of the bundle which started it.  Otherwise, it
+ * can be synchronized with the commands of a session.
+ */
+public class CommandsIndex implements ServiceListener {
+
+    public static final String COMMAND_SCOPE = "osgi.command.scope";
+    public static final String COMMAND_FUNCTION = "osgi.command.function";
+
+    private static final String FILTER = "(&(" + COMMAND_SCOPE + "=*)(" + COMMAND_FUNCTION + "=*))";
+
+    private BundleContext bundleContext;
+
+    /**
+     * Completion names (scoped and unscoped) mapped to the scoped names of the commands.
+     */
+    private final SortedMap<String, Set<String>> names = new TreeMap<String, Set<String>>();
+
+    /**
+     * Number of registrations of each scoped command name.
+     */
+    private final Map<String, Integer> commands = new HashMap<String, Integer>();
+
+    private final Map<ServiceReference, List<String>> services = new HashMap<ServiceReference, List<String>>();
+
+    public BundleContext getBundleContext() {
+        return bundleContext;
+    }
+
+    public void setBundleContext(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    public void init() throws InvalidSyntaxException {
+        bundleContext.addServiceListener(this, FILTER);
+        ServiceReference[] references = bundleContext.getServiceReferences((String) null, FILTER);
+        if (references != null) {
+            for (ServiceReference reference : references) {
+                addService(reference);
+            }
+        }
+    }
+
+    public void destroy() {
+        bundleContext.removeServiceListener(this);
+        synchronized (this) {
+            services.clear();
+            commands.clear();
+            names.clear();
+        }
+    }
+
+    public void serviceChanged(ServiceEvent event) {
+        switch (event.getType()) {
+            case ServiceEvent.REGISTERED:
+                addService(event.getServiceReference());
+                break;
+            case ServiceEvent.MODIFIED:
+                removeService(event.getServiceReference());
+                addService(event.getServiceReference());
+                break;
+            case ServiceEvent.UNREGISTERING:
+                removeService(event.getServiceReference());
+                break;
+        }
+    }
+
+    protected synchronized void addService(ServiceReference reference) {
+        if (services.containsKey(reference)) {
+            return;
+        }
+        Object scope = reference.getProperty(COMMAND_SCOPE);
+        Object function = reference.getProperty(COMMAND_FUNCTION);
+        if (scope == null || function == null) {
+            return;
+        }
+        List<String> added = new ArrayList<String>();
+        for (String name : function instanceof String[] ? (String[]) function : new String[] { function.toString() }) {
+            String command = scope + ":" + name;
+            addCommand(command);
+            added.add(command);
+        }
+        services.put(reference, added);
+    }
+
+    protected synchronized void removeService(ServiceReference reference) {
+        List<String> removed = services.remove(reference);
+        if (removed != null) {
+            for (String command : removed) {
+                removeCommand(command);
+            }
+        }
+    }
+
+    /**
+     * Adds a command, given its scoped name.
+     */
+    public synchronized void addCommand(String command) {
+        Integer count = commands.get(command);
+        commands.put(command, count == null ? 1 : count + 1);
+        if (count == null) {
+            for (String name : getNames(command)) {
+                Set<String> set = names.get(name);
+                if (set == null) {
+                    set = new HashSet<String>();
+                    names.put(name, set);
+                }
+                set.add(command);
+            }
+        }
+    }
+
+    /**
+     * Removes a command, given its scoped name.
+     */
+    public synchronized void removeCommand(String command) {
+        Integer count = commands.get(command);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            commands.put(command, count - 1);
+            return;
+        }
+        commands.remove(command);
+        for (String name : getNames(command)) {
+            Set<String> set = names.get(name);
+            if (set != null) {
+                set.remove(command);
+                if (set.isEmpty()) {
+                    names.remove(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the index contain exactly the given scoped command names, only
+     * touching the commands which have been added or removed.
+     */
+    public synchronized void sync(Collection<String> commands) {
+        Set<String> removed = new HashSet<String>(this.commands.keySet());
+        for (String command : commands) {
+            if (!removed.remove(command)) {
+                addCommand(command);
+            }
+        }
+        for (String command : removed) {
+            this.commands.put(command, 1);
+            removeCommand(command);
+        }
+    }
+
+    /**
+     * Returns whether the index holds the given scoped command name.
+     */
+    public synchronized boolean contains(String command) {
+        return commands.containsKey(command);
+    }
+
+    /**
+     * Returns the scoped names of all the commands.
+     */
+    public synchronized SortedSet<String> getCommands() {
+        return new TreeSet<String>(commands.keySet());
+    }
+
+    /**
+     * Returns the scoped names of the commands having a scoped or unscoped name
+     * starting with the given prefix.
+     */
+    public synchronized SortedSet<String> getCommands(String prefix) {
+        SortedSet<String> result = new TreeSet<String>();
+        for (Set<String> set : names.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            result.addAll(set);
+        }
+        return result;
+    }
+
+    private static String[] getNames(String command) {
+        int idx = command.indexOf(':');
+        if (idx < 0) {
+            return new String[] { command };
+        }
+        return new String[] { command, command.substring(idx + 1) };
+    }
+
+}
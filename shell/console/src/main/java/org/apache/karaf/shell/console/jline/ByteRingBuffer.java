@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.console.jline;
+
+/**
+ * Bounded blocking buffer of bytes, used to transfer the keyboard input of
+ * a console without boxing each byte.  Bytes can be written and read one
+ * by one or in blocks.
+ *
+ * Once closed, the remaining bytes can still be read, after which reads
+ * return -1, and writes are ignored.
+ */
+public class ByteRingBuffer {
+
+    private final byte[] buffer;
+    private int head;
+    private int size;
+    private boolean closed;
+
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Write a byte, waiting for space to be available.
+     */
+    public synchronized void put(int b) throws InterruptedException {
+        while (size == buffer.length && !closed) {
+            wait();
+        }
+        if (!closed) {
+            buffer[(head + size) % buffer.length] = (byte) b;
+            size++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Write a block of bytes, waiting for space to be available as needed.
+     */
+    public synchronized void put(byte[] b, int off, int len) throws InterruptedException {
+        while (len > 0 && !closed) {
+            while (size == buffer.length && !closed) {
+                wait();
+            }
+            if (closed) {
+                return;
+            }
+            int tail = (head + size) % buffer.length;
+            int n = Math.min(len, Math.min(buffer.length - size, buffer.length - tail));
+            System.arraycopy(b, off, buffer, tail, n);
+            size += n;
+            off += n;
+            len -= n;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Write a byte if there is space available.
+     *
+     * @return <code>true</code> if the byte has been written
+     */
+    public synchronized boolean offer(int b) {
+        if (closed || size == buffer.length) {
+            return false;
+        }
+        buffer[(head + size) % buffer.length] = (byte) b;
+        size++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Read a byte, waiting for one to be available.
+     *
+     * @return the byte, or -1 if the buffer is closed and empty
+     */
+    public synchronized int take() throws InterruptedException {
+        while (size == 0 && !closed) {
+            wait();
+        }
+        return size > 0 ? remove() : -1;
+    }
+
+    /**
+     * Read a byte if one is available.
+     *
+     * @return the byte, or -1 if the buffer is empty
+     */
+    public synchronized int poll() {
+        return size > 0 ? remove() : -1;
+    }
+
+    /**
+     * Read the available bytes, up to <code>len</code>, optionally waiting
+     * for at least one byte to be available.
+     *
+     * @return the number of bytes read, or -1 if the buffer is closed and empty
+     */
+    public synchronized int read(byte[] b, int off, int len, boolean wait) throws InterruptedException {
+        while (wait && size == 0 && !closed) {
+            wait();
+        }
+        if (size == 0) {
+            return closed ? -1 : 0;
+        }
+        int total = 0;
+        while (size > 0 && total < len) {
+            int n = Math.min(len - total, Math.min(size, buffer.length - head));
+            System.arraycopy(buffer, head, b, off + total, n);
+            head = (head + n) % buffer.length;
+            size -= n;
+            total += n;
+        }
+        notifyAll();
+        return total;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private int remove() {
+        int b = buffer[head] & 0xFF;
+        head = (head + 1) % buffer.length;
+        size--;
+        notifyAll();
+        return b;
+    }
+
+}
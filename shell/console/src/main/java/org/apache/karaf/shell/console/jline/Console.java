@@ -28,10 +28,16 @@ import java.io.InterruptedIOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,13 +47,14 @@ import jline.console.ConsoleReader;
 import jline.console.history.PersistentHistory;
 import org.apache.felix.gogo.commands.CommandException;
 import org.apache.felix.gogo.runtime.CommandNotFoundException;
-import org.apache.felix.gogo.runtime.Parser;
+import org.apache.felix.gogo.runtime.ProgramCache;
 import org.apache.felix.service.command.CommandProcessor;
 import org.apache.felix.service.command.CommandSession;
 import org.apache.felix.service.command.Converter;
 import org.apache.karaf.shell.console.CloseShellException;
 import org.apache.karaf.shell.console.Completer;
 import org.apache.karaf.shell.console.completer.CommandsCompleter;
+import org.apache.karaf.shell.console.completer.CommandsIndex;
 import org.fusesource.jansi.Ansi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,9 +71,19 @@ public class Console implements Runnable
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Console.class);
 
+    /**
+     * Size of the keyboard input buffer, large enough to hold a pasted script.
+     */
+    private static final int INPUT_BUFFER_SIZE = 8192;
+
+    /**
+     * Number of bytes read from the input before being transferred at once to the buffer.
+     */
+    private static final int INPUT_CHUNK_SIZE = 512;
+
     protected CommandSession session;
     private ConsoleReader reader;
-    private BlockingQueue<Integer> queue;
+    private ByteRingBuffer buffer;
     private boolean interrupt;
     private Thread pipe;
     volatile private boolean running;
@@ -78,6 +95,17 @@ public class Console implements Runnable
     private PrintStream out;
     private PrintStream err;
     private Thread thread;
+    private ExecutorService executor;
+    private volatile Thread executing;
+    /**
+     * Guards the state used by the command running on the executor to wake up
+     * the console thread, blocked reading the input, when it completes.
+     */
+    private final Object inputLock = new Object();
+    private boolean readingInput;
+    private boolean completed;
+    private ConsoleStatistics statistics;
+    private Completer completer;
 
     public Console(CommandProcessor processor,
                    InputStream in,
@@ -89,7 +117,7 @@ public class Console implements Runnable
         this.in = in;
         this.out = out;
         this.err = err;
-        this.queue = new ArrayBlockingQueue<Integer>(1024);
+        this.buffer = new ByteRingBuffer(INPUT_BUFFER_SIZE);
         this.terminal = term == null ? new UnsupportedTerminal() : term;
         this.consoleInput = new ConsoleInputStream();
         this.session = processor.createSession(this.consoleInput, this.out, this.err);
@@ -111,16 +139,87 @@ public class Console implements Runnable
 			LOGGER.error("Can not read history from file " + file + ". Using in memory history", e);
 		}
         session.put(".jline.history", reader.getHistory());
-        Completer completer = createCompleter();
+        completer = createCompleter();
         if (completer != null) {
             reader.addCompleter(new CompleterAsCompletor(completer));
         }
         if (Boolean.getBoolean("jline.nobell")) {
             reader.setBellEnabled(false);
         }
-        pipe = new Thread(new Pipe());
-        pipe.setName("gogo shell pipe thread");
-        pipe.setDaemon(true);
+    }
+
+    /**
+     * Run the commands on the given executor instead of the console thread.
+     *
+     * The input is then read by the console thread itself, both when reading
+     * commands and while they run, instead of by a dedicated pipe thread, so
+     * that an idle console only uses one thread.  The input stream must
+     * support {@link InputStream#available()} and be interruptible, the
+     * console thread being interrupted when a command completes.  The output
+     * streams are only flushed when prompting, so buffered streams must flush
+     * the output of long running commands themselves.
+     *
+     * Must be called before the console is started.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Complete the names of the commands registered as services from the given
+     * index, instead of looking at every command of the session.
+     */
+    public void setCommandsIndex(CommandsIndex index) {
+        if (completer instanceof CommandsCompleter) {
+            ((CommandsCompleter) completer).setIndex(index);
+        }
+    }
+
+    /**
+     * Count this console and the threads it uses in the given statistics.
+     *
+     * Must be called before the console is started.
+     */
+    public void setStatistics(ConsoleStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public ConsoleStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Feed keyboard input to a console created without input stream.
+     * This can be called from any thread, and does not need any thread
+     * to be dedicated to the input of the console.
+     */
+    public void processInput(byte[] b, int off, int len) throws IOException {
+        try {
+            transfer(b, off, len);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Transfer keyboard input to the buffer.  The interruption keys are
+     * processed in order: the bytes preceding them are made available first.
+     */
+    private void transfer(byte[] b, int off, int len) throws InterruptedException {
+        int start = off;
+        for (int i = off; i < off + len; i++) {
+            int c = b[i] & 0xFF;
+            if (c == 3 || c == 4) {
+                buffer.put(b, start, i - start);
+                buffer.put(processCharacter(c));
+                start = i + 1;
+            }
+        }
+        buffer.put(b, start, off + len - start);
     }
 
     /**
@@ -146,14 +245,40 @@ public class Console implements Runnable
             }
         }
         running = false;
-        pipe.interrupt();
+        if (pipe != null) {
+            pipe.interrupt();
+        }
+        if (in == null) {
+            // wake up a reader of a console fed with processInput
+            eof = true;
+            buffer.close();
+        }
     }
 
     public void run()
     {
         thread = Thread.currentThread();
         running = true;
-        pipe.start();
+        if (statistics != null) {
+            statistics.sessionStarted();
+        }
+        if (in != null && executor == null) {
+            pipe = new Thread(new Pipe());
+            pipe.setName("gogo shell pipe thread");
+            pipe.setDaemon(true);
+            pipe.start();
+        }
+        try {
+            doRun();
+        } finally {
+            if (statistics != null) {
+                statistics.sessionStopped();
+            }
+        }
+    }
+
+    private void doRun()
+    {
         welcome();
         setSessionProperties();
         String scriptFileName = System.getProperty(SHELL_INIT_SCRIPT);
@@ -165,7 +290,7 @@ public class Console implements Runnable
                     break;
                 }
                 //session.getConsole().println("Executing: " + line);
-                Object result = session.execute(command);
+                Object result = execute(command);
                 if (result != null)
                 {
                     session.getConsole().println(session.format(result, Converter.INSPECT));
@@ -193,6 +318,133 @@ public class Console implements Runnable
         }
     }
 
+    /**
+     * Execute a command, on the executor if any.
+     */
+    protected Object execute(final CharSequence command) throws Exception {
+        if (executor == null) {
+            return session.execute(command);
+        }
+        // keep the subject of the console when running on another thread
+        final AccessControlContext acc = AccessController.getContext();
+        synchronized (inputLock) {
+            completed = false;
+        }
+        Future<Object> future = executor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                executing = Thread.currentThread();
+                if (statistics != null) {
+                    statistics.threadStarted();
+                }
+                try {
+                    return AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
+                        public Object run() throws Exception {
+                            return session.execute(command);
+                        }
+                    }, acc);
+                } catch (PrivilegedActionException e) {
+                    throw e.getException();
+                } finally {
+                    executing = null;
+                    if (statistics != null) {
+                        statistics.threadStopped();
+                    }
+                    synchronized (inputLock) {
+                        completed = true;
+                        if (readingInput) {
+                            thread.interrupt();
+                        }
+                    }
+                    // do not leave a keyboard interruption on a pooled thread
+                    Thread.interrupted();
+                }
+            }
+        });
+        try {
+            if (in != null) {
+                pump();
+            }
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw new InterruptedIOException("Keyboard interruption");
+        }
+    }
+
+    /**
+     * Transfer the input to the buffer while a command is running, until it
+     * completes and interrupts the console thread blocked reading the input.
+     */
+    private void pump() throws InterruptedException {
+        byte[] chunk = new byte[INPUT_CHUNK_SIZE];
+        while (!eof) {
+            synchronized (inputLock) {
+                if (completed) {
+                    return;
+                }
+                readingInput = true;
+            }
+            int c;
+            try {
+                c = terminal.readCharacter(in);
+            } catch (InterruptedIOException e) {
+                // the command completed, unless a spurious wake up
+                continue;
+            } catch (IOException e) {
+                c = -1;
+            } finally {
+                synchronized (inputLock) {
+                    readingInput = false;
+                    // clear the interruption of a command completing after the read
+                    Thread.interrupted();
+                }
+            }
+            // transfer what has been typed or pasted in one go
+            int n = 0;
+            try {
+                while (c != -1) {
+                    chunk[n++] = (byte) c;
+                    if (n == chunk.length || in.available() <= 0) {
+                        break;
+                    }
+                    c = terminal.readCharacter(in);
+                }
+            } catch (IOException e) {
+                c = -1;
+            }
+            transfer(chunk, 0, n);
+            if (c == -1) {
+                eof = true;
+                buffer.close();
+            }
+        }
+    }
+
+    /**
+     * Handle the interruption keys of a character read from the input.
+     */
+    private int processCharacter(int c) {
+        if (c == 4 && !getBoolean(IGNORE_INTERRUPTS))
+        {
+            err.println("^D");
+        }
+        else if (c == 3 && !getBoolean(IGNORE_INTERRUPTS))
+        {
+            err.println("^C");
+            reader.getCursorBuffer().clear();
+            interrupt();
+        }
+        return c;
+    }
+
 	private void logException(Throwable t) {
 		try {
 		    LOGGER.info("Exception caught while executing command", t);
@@ -247,7 +499,8 @@ public class Console implements Runnable
                         reader.getHistory().replace(command);
                     }
 		    try {
-		        new Parser(command).program();
+		        // the parsed program is cached and reused when the command is executed
+		        ProgramCache.getShared().parse(command);
 		        loop = false;
 		    } catch (Exception e) {
 		        loop = true;
@@ -392,7 +645,10 @@ public class Console implements Runnable
 
     private void interrupt() {
         interrupt = true;
-        thread.interrupt();
+        Thread t = executing != null ? executing : thread;
+        if (t != null && t != Thread.currentThread()) {
+            t.interrupt();
+        }
     }
 
     private class ConsoleInputStream extends InputStream
@@ -403,24 +659,53 @@ public class Console implements Runnable
                 return -1;
             }
             checkInterrupt();
-            if (eof && queue.isEmpty()) {
+            if (eof && buffer.isEmpty()) {
                 return -1;
             }
-            Integer i;
+            if (isDirect()) {
+                return readDirect(wait);
+            }
+            int i;
             if (wait) {
                 try {
-                    i = queue.take();
+                    i = buffer.take();
                 } catch (InterruptedException e) {
                     throw new InterruptedIOException();
                 }
                 checkInterrupt();
             } else {
-                i = queue.poll();
+                i = buffer.poll();
+            }
+            return i;
+        }
+
+        private boolean isDirect() {
+            return in != null && pipe == null && Thread.currentThread() == thread;
+        }
+
+        /**
+         * Read from the input in the console thread, when there is no pipe thread.
+         */
+        private int readDirect(boolean wait) throws IOException
+        {
+            int i = buffer.poll();
+            if (i >= 0) {
+                return i;
             }
-            if (i == null) {
+            if (!wait && in.available() <= 0) {
                 return -1;
             }
-            return i;
+            int c = terminal.readCharacter(in);
+            if (c == -1) {
+                eof = true;
+                return -1;
+            }
+            processCharacter(c);
+            if (interrupt) {
+                buffer.offer(c);
+                checkInterrupt();
+            }
+            return c;
         }
 
         @Override
@@ -440,6 +725,21 @@ public class Console implements Runnable
                 return 0;
             }
 
+            if (!isDirect()) {
+                if (!running) {
+                    return -1;
+                }
+                checkInterrupt();
+                int nb;
+                try {
+                    nb = buffer.read(b, off, len, true);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                checkInterrupt();
+                return nb;
+            }
+
             int nb = 1;
             int i = read(true);
             if (i < 0) {
@@ -459,7 +759,7 @@ public class Console implements Runnable
 
         @Override
         public int available() throws IOException {
-            return queue.size();
+            return buffer.size();
         }
     }
 
@@ -467,6 +767,10 @@ public class Console implements Runnable
     {
         public void run()
         {
+            if (statistics != null) {
+                statistics.threadStarted();
+            }
+            byte[] chunk = new byte[INPUT_CHUNK_SIZE];
             try {
                 while (running)
                 {
@@ -477,17 +781,20 @@ public class Console implements Runnable
                         {
                             return;
                         }
-                        else if (c == 4 && !getBoolean(IGNORE_INTERRUPTS))
+                        // transfer what has been typed or pasted in one go
+                        int n = 0;
+                        chunk[n++] = (byte) c;
+                        while (n < chunk.length && in.available() > 0)
                         {
-                            err.println("^D");
+                            c = terminal.readCharacter(in);
+                            if (c == -1)
+                            {
+                                transfer(chunk, 0, n);
+                                return;
+                            }
+                            chunk[n++] = (byte) c;
                         }
-                        else if (c == 3 && !getBoolean(IGNORE_INTERRUPTS))
-                        {
-                            err.println("^C");
-                            reader.getCursorBuffer().clear();
-                            interrupt();
-                        }
-                        queue.put(c);
+                        transfer(chunk, 0, n);
                     }
                     catch (Throwable t) {
                         return;
@@ -496,14 +803,11 @@ public class Console implements Runnable
             }
             finally
             {
-                eof = true;
-                try
-                {
-                    queue.put(-1);
-                }
-                catch (InterruptedException e)
-                {
+                if (statistics != null) {
+                    statistics.threadStopped();
                 }
+                eof = true;
+                buffer.close();
             }
         }
     }
@@ -31,6 +31,7 @@ import org.apache.felix.service.command.CommandProcessor;
 import org.apache.felix.service.command.CommandSession;
 import org.apache.felix.service.command.Function;
 import org.apache.karaf.jaas.modules.UserPrincipal;
+import org.apache.karaf.shell.console.completer.CommandsIndex;
 import org.fusesource.jansi.AnsiConsole;
 import org.osgi.framework.BundleContext;
 
@@ -39,6 +40,8 @@ public class ConsoleFactory {
     private BundleContext bundleContext;
     private CommandProcessor commandProcessor;
     private TerminalFactory terminalFactory;
+    private ConsoleStatistics statistics;
+    private CommandsIndex commandsIndex;
     private Console console;
     private boolean start;
 
@@ -60,6 +63,14 @@ public class ConsoleFactory {
         this.terminalFactory = terminalFactory;
     }
 
+    public void setStatistics(ConsoleStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public void setCommandsIndex(CommandsIndex commandsIndex) {
+        this.commandsIndex = commandsIndex;
+    }
+
     public void setStart(boolean start) {
         this.start = start;
     }
@@ -112,6 +123,8 @@ public class ConsoleFactory {
             }
         });
         session.put(".jline.terminal", terminal);
+        console.setStatistics(statistics);
+        console.setCommandsIndex(commandsIndex);
         new Thread(console, "Karaf Shell Console Thread").start();
     }
 
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.console.jline;
+
+/**
+ * Number of running consoles and of the threads they use.
+ *
+ * The shell console bundle owns one instance, used by the local console
+ * and exported as a service for the ssh and web consoles, so that the shell
+ * MBean reports all the consoles of the container.  Consoles only update the
+ * statistics given by {@link Console#setStatistics(ConsoleStatistics)}.
+ */
+public interface ConsoleStatistics {
+
+    /**
+     * A console started, using the calling thread.
+     */
+    void sessionStarted();
+
+    void sessionStopped();
+
+    /**
+     * An additional thread started working for a console.
+     */
+    void threadStarted();
+
+    void threadStopped();
+
+    int getSessionCount();
+
+    int getPeakSessionCount();
+
+    long getTotalSessionCount();
+
+    /**
+     * Number of threads currently used by the consoles, reading input or running commands.
+     */
+    int getThreadCount();
+
+}
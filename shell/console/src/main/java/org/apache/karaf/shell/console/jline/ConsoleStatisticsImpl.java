@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.console.jline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default {@link ConsoleStatistics}, counting with atomic variables.
+ */
+public class ConsoleStatisticsImpl implements ConsoleStatistics {
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger peakSessions = new AtomicInteger();
+    private final AtomicLong totalSessions = new AtomicLong();
+    private final AtomicInteger threads = new AtomicInteger();
+
+    public void sessionStarted() {
+        int count = sessions.incrementAndGet();
+        for (int peak = peakSessions.get(); count > peak; peak = peakSessions.get()) {
+            if (peakSessions.compareAndSet(peak, count)) {
+                break;
+            }
+        }
+        totalSessions.incrementAndGet();
+        threads.incrementAndGet();
+    }
+
+    public void sessionStopped() {
+        sessions.decrementAndGet();
+        threads.decrementAndGet();
+    }
+
+    public void threadStarted() {
+        threads.incrementAndGet();
+    }
+
+    public void threadStopped() {
+        threads.decrementAndGet();
+    }
+
+    public int getSessionCount() {
+        return sessions.get();
+    }
+
+    public int getPeakSessionCount() {
+        return peakSessions.get();
+    }
+
+    public long getTotalSessionCount() {
+        return totalSessions.get();
+    }
+
+    public int getThreadCount() {
+        return threads.get();
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.console.management;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers an MBean in the MBean server while one is bound.
+ *
+ * The shell bundles use it with an optional MBean server reference instead
+ * of the MBeanRegistrer of the management bundle, so that they neither
+ * depend on the management bundle nor fail without it.
+ */
+public class OptionalMBeanRegistrer {
+
+    private Object mbean;
+    private String name;
+    private MBeanServer mbeanServer;
+
+    public void setMbean(Object mbean) {
+        this.mbean = mbean;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public synchronized void registerMBeanServer(MBeanServer mbeanServer) throws JMException {
+        if (this.mbeanServer == mbeanServer) {
+            return;
+        }
+        unregisterMBeanServer(this.mbeanServer);
+        mbeanServer.registerMBean(mbean, new ObjectName(name));
+        this.mbeanServer = mbeanServer;
+    }
+
+    public synchronized void unregisterMBeanServer(MBeanServer mbeanServer) throws JMException {
+        if (this.mbeanServer != null) {
+            MBeanServer server = this.mbeanServer;
+            this.mbeanServer = null;
+            server.unregisterMBean(new ObjectName(name));
+        }
+    }
+
+    public void destroy() throws JMException {
+        unregisterMBeanServer(null);
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.console.management;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.karaf.shell.console.jline.ConsoleStatistics;
+
+/**
+ * Implementation of the shell MBean.
+ */
+public class ShellMBeanImpl extends StandardMBean implements ShellMBean {
+
+    private final ConsoleStatistics statistics;
+
+    public ShellMBeanImpl(ConsoleStatistics statistics) throws NotCompliantMBeanException {
+        super(ShellMBean.class);
+        this.statistics = statistics;
+    }
+
+    public int getSessionCount() {
+        return statistics.getSessionCount();
+    }
+
+    public int getPeakSessionCount() {
+        return statistics.getPeakSessionCount();
+    }
+
+    public long getTotalSessionCount() {
+        return statistics.getTotalSessionCount();
+    }
+
+    public int getThreadCount() {
+        return statistics.getThreadCount();
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.gogo.commands.basic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import org.apache.felix.gogo.commands.Action;
+import org.apache.felix.gogo.commands.Argument;
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+import org.apache.felix.service.command.CommandSession;
+
+public class ActionMetadataTest extends TestCase {
+
+    public void testIntrospection() throws Exception {
+        ActionMetadata metadata = ActionMetadata.getMetadata(SubAction.class);
+        metadata.validate();
+
+        assertEquals("test", metadata.getCommand().scope());
+        assertEquals(2, metadata.getOptions().size());
+        assertNotNull(metadata.getOption("-v"));
+        assertSame(metadata.getOption("-v"), metadata.getOption("--verbose"));
+        assertNotNull(metadata.getOption("-n"));
+        assertNull(metadata.getOption("--unknown"));
+
+        List<Argument> arguments = metadata.getOrderedArguments();
+        assertEquals(2, arguments.size());
+        assertEquals("name", arguments.get(0).name());
+        assertEquals("values", arguments.get(1).name());
+        assertTrue(metadata.getArguments().get(arguments.get(0)).isAccessible());
+    }
+
+    public void testCache() throws Exception {
+        assertSame(ActionMetadata.getMetadata(SubAction.class), ActionMetadata.getMetadata(SubAction.class));
+    }
+
+    public void testClassNotRetained() throws Exception {
+        ClassLoader loader = new IsolatingClassLoader(InvalidAction.class.getName());
+        Class<?> actionClass = loader.loadClass(InvalidAction.class.getName());
+        assertNotSame(InvalidAction.class, actionClass);
+        assertSame(actionClass, ActionMetadata.getMetadata(actionClass).getActionClass());
+
+        // once the metadata is not used any more, the class loader can be collected
+        WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+        loader = null;
+        actionClass = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+    public void testPrepareWithMetadata() throws Exception {
+        final ActionMetadata metadata = ActionMetadata.getMetadata(SubAction.class);
+        final SubAction action = new SubAction();
+        Field field = ActionMetadata.class.getDeclaredField("CACHE");
+        field.setAccessible(true);
+        Object cache = field.get(null);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // preparing the action must not wait for the locked cache
+            synchronized (cache) {
+                Future<Boolean> prepared = executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        return new DefaultActionPreparator().prepare(action, metadata, null,
+                                new ArrayList<Object>(Arrays.asList("-v", "-n", "3", "foo", "a", "b")));
+                    }
+                });
+                assertTrue(prepared.get(10, TimeUnit.SECONDS));
+            }
+            assertTrue(action.verbose);
+            assertEquals(3, action.number);
+            assertEquals("foo", action.name);
+            assertEquals(Arrays.asList("a", "b"), action.values);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testInvalidIndexes() throws Exception {
+        ActionMetadata metadata = ActionMetadata.getMetadata(InvalidAction.class);
+        try {
+            metadata.validate();
+            fail("Expected an exception because of the missing argument index");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Missing argument for index: 0", e.getMessage());
+        }
+    }
+
+    @Command(scope = "test", name = "base")
+    public static class BaseAction implements Action {
+
+        @Option(name = "-v", aliases = { "--verbose" })
+        boolean verbose;
+
+        @Argument(index = 0)
+        String name;
+
+        public Object execute(CommandSession session) throws Exception {
+            return null;
+        }
+    }
+
+    @Command(scope = "test", name = "sub")
+    public static class SubAction extends BaseAction {
+
+        @Option(name = "-n")
+        int number;
+
+        @Argument(index = 1, name = "values", multiValued = true)
+        private List<String> values;
+    }
+
+    /**
+     * Defines the given class itself, as a bundle would.
+     */
+    static class IsolatingClassLoader extends ClassLoader {
+
+        private final String name;
+
+        IsolatingClassLoader(String name) {
+            super(IsolatingClassLoader.class.getClassLoader());
+            this.name = name;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!this.name.equals(name)) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                try {
+                    InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+                    try {
+                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                        byte[] b = new byte[4096];
+                        int n;
+                        while ((n = is.read(b)) != -1) {
+                            baos.write(b, 0, n);
+                        }
+                        c = defineClass(name, baos.toByteArray(), 0, baos.size());
+                    } finally {
+                        is.close();
+                    }
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+            return c;
+        }
+    }
+
+    @Command(scope = "test", name = "invalid")
+    public static class InvalidAction implements Action {
+
+        @Argument(index = 1)
+        String value;
+
+        public Object execute(CommandSession session) throws Exception {
+            return null;
+        }
+    }
+
+}
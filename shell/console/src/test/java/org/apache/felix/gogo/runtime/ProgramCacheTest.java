@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.gogo.runtime;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.apache.felix.gogo.commands.Context;
+import org.apache.felix.service.command.CommandSession;
+import org.apache.felix.service.command.Function;
+
+public class ProgramCacheTest extends TestCase {
+
+    private int count;
+
+    public void testCache() throws Exception {
+        ProgramCache cache = new ProgramCache(2);
+        List<List<List<Token>>> program = cache.parse("echo a | grep b; echo c");
+        assertEquals(2, program.size());
+        assertSame(program, cache.parse(new StringBuilder("echo a | grep b; echo c")));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.parse("echo d");
+        cache.parse("echo e");
+        assertEquals(2, cache.getSize());
+        assertNotSame(program, cache.parse("echo a | grep b; echo c"));
+    }
+
+    public void testSyntaxError() throws Exception {
+        ProgramCache cache = new ProgramCache(10);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.parse("echo {");
+                fail("Expected a syntax error");
+            } catch (Exception e) {
+                // expected
+            }
+        }
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testClosureLoop() throws Exception {
+        Context c = new Context();
+        c.addCommand("loop", this);
+        c.addCommand("apply", this);
+        c.addCommand("inc", this);
+        ProgramCache cache = ProgramCache.getShared();
+        long misses = cache.getMisses();
+        c.execute("loop 1000 { apply { inc } }");
+        assertEquals(1000, count);
+        // the inner closure is only parsed once
+        assertTrue(cache.getMisses() - misses <= 3);
+    }
+
+    public void loop(CommandSession session, int n, Function function) throws Exception {
+        for (int i = 0; i < n; i++) {
+            function.execute(session, null);
+        }
+    }
+
+    public Object apply(CommandSession session, Function function) throws Exception {
+        return function.execute(session, null);
+    }
+
+    public void inc() {
+        count++;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.console.completer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.felix.gogo.runtime.CommandSessionImpl;
+import org.apache.karaf.shell.console.Completer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CommandsCompleterTest extends CompleterTestSupport {
+
+    @Test
+    public void testIndex() throws Exception {
+        CommandsIndex index = new CommandsIndex();
+        index.addCommand("bundle:list");
+        index.addCommand("bundle:install");
+        index.addCommand("log:display");
+        assertEquals(Arrays.asList("bundle:install", "bundle:list"), Arrays.asList(index.getCommands("bundle:").toArray()));
+        assertEquals(Arrays.asList("bundle:list"), Arrays.asList(index.getCommands("li").toArray()));
+        assertEquals(3, index.getCommands("").size());
+
+        index.addCommand("bundle:list");
+        index.removeCommand("bundle:list");
+        assertEquals(Arrays.asList("bundle:list"), Arrays.asList(index.getCommands("list").toArray()));
+        index.removeCommand("bundle:list");
+        assertTrue(index.getCommands("list").isEmpty());
+
+        index.sync(Arrays.asList("log:display", "log:clear"));
+        assertEquals(Arrays.asList("log:clear", "log:display"), Arrays.asList(index.getCommands().toArray()));
+    }
+
+    @Test
+    public void testCompleteCommands() throws Exception {
+        CommandsIndex index = new CommandsIndex();
+        index.addCommand("my:action");
+        index.addCommand("my:other");
+        final Map<String, Object> variables = new HashMap<String, Object>();
+        variables.put(null, Collections.emptySet());
+        variables.put("my:action", new ArgumentCompleterTest.MyFunction());
+        Completer comp = new CommandsCompleter(new DummyCommandSession() {
+            public Object get(String name) {
+                return variables.get(name);
+            }
+        }, index);
+        assertEquals(Arrays.asList("action "), complete(comp, "acti"));
+        assertEquals(Arrays.asList("my:action", "my:other"), complete(comp, "my:"));
+        assertEquals(Arrays.asList("--check", "--foo", "--help", "-c", "-f"), complete(comp, "action -"));
+        assertEquals(Arrays.asList("bar1", "bar2"), complete(comp, "my:action foo1 "));
+        assertEquals(Arrays.asList(), complete(comp, "other "));
+    }
+
+    @Test
+    public void testCompleteSessionCommands() throws Exception {
+        // commands added to the session, such as the gogo builtins, are not in the index
+        CommandsIndex index = new CommandsIndex();
+        index.addCommand("my:action");
+        final Set<String> commands = new HashSet<String>(Arrays.asList("my:action", "gogo:echo"));
+        final Map<String, Object> variables = new HashMap<String, Object>();
+        variables.put(null, Collections.emptySet());
+        variables.put(CommandSessionImpl.COMMANDS, commands);
+        Completer comp = new CommandsCompleter(new DummyCommandSession() {
+            public Object get(String name) {
+                return variables.get(name);
+            }
+        }, index);
+        assertEquals(Arrays.asList("echo "), complete(comp, "ech"));
+        assertEquals(Arrays.asList("action", "echo", "gogo:echo", "my:action"), complete(comp, ""));
+
+        commands.add("gogo:each");
+        assertEquals(Arrays.asList("each", "echo"), complete(comp, "e"));
+        commands.remove("gogo:echo");
+        assertEquals(Arrays.asList("each "), complete(comp, "e"));
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.console.jline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ByteRingBufferTest {
+
+    private static final int SCRIPT_SIZE = 64 * 1024;
+
+    @Test
+    public void testPutTake() throws Exception {
+        ByteRingBuffer buffer = new ByteRingBuffer(4);
+        assertTrue(buffer.isEmpty());
+        assertEquals(-1, buffer.poll());
+        buffer.put(1);
+        buffer.put(255);
+        assertTrue(buffer.offer(3));
+        assertTrue(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+        assertEquals(4, buffer.size());
+        assertEquals(1, buffer.take());
+        assertEquals(255, buffer.take());
+        buffer.put(new byte[] { 5, 6 }, 0, 2);
+        byte[] b = new byte[8];
+        assertEquals(4, buffer.read(b, 0, b.length, false));
+        assertArrayEquals(new byte[] { 3, 4, 5, 6 }, copy(b, 4));
+        assertEquals(0, buffer.read(b, 0, b.length, false));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        ByteRingBuffer buffer = new ByteRingBuffer(4);
+        buffer.put(1);
+        buffer.close();
+        buffer.put(2);
+        assertFalse(buffer.offer(3));
+        assertEquals(1, buffer.take());
+        assertEquals(-1, buffer.take());
+        assertEquals(-1, buffer.read(new byte[1], 0, 1, true));
+    }
+
+    @Test
+    public void testBlocking() throws Exception {
+        final ByteRingBuffer buffer = new ByteRingBuffer(2);
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    buffer.put(new byte[] { 1, 2, 3, 4, 5 }, 0, 5);
+                    buffer.close();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        producer.start();
+        byte[] b = new byte[8];
+        int n = 0;
+        int i;
+        while ((i = buffer.read(b, n, b.length - n, true)) > 0) {
+            n += i;
+        }
+        producer.join();
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, copy(b, n));
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        final ByteRingBuffer buffer = new ByteRingBuffer(2);
+        final Throwable[] error = new Throwable[1];
+        Thread consumer = new Thread() {
+            public void run() {
+                try {
+                    buffer.take();
+                } catch (Throwable t) {
+                    error[0] = t;
+                }
+            }
+        };
+        consumer.start();
+        consumer.interrupt();
+        consumer.join(5000);
+        assertTrue(error[0] instanceof InterruptedException);
+    }
+
+    /**
+     * Pastes a script several times larger than the buffer, which wraps around
+     * while the reader and the writer wait for each other.
+     */
+    @Test
+    public void testPasteScript() throws Exception {
+        final byte[] script = new byte[SCRIPT_SIZE];
+        for (int i = 0; i < script.length; i++) {
+            script[i] = (byte) (i % 80 == 79 ? '\n' : 'a' + i % 26);
+        }
+        final ByteRingBuffer buffer = new ByteRingBuffer(8192);
+        Thread producer = new Thread() {
+            public void run() {
+                try {
+                    // chunks not dividing the buffer size, to write across its end
+                    for (int off = 0; off < script.length; off += 500) {
+                        buffer.put(script, off, Math.min(500, script.length - off));
+                    }
+                    buffer.close();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        producer.start();
+        byte[] b = new byte[1024];
+        int total = 0;
+        int n;
+        while ((n = buffer.read(b, 0, b.length, true)) > 0) {
+            assertArrayEquals(copy(script, total, n), copy(b, 0, n));
+            total += n;
+        }
+        producer.join();
+        assertEquals(script.length, total);
+    }
+
+    private static byte[] copy(byte[] b, int len) {
+        return copy(b, 0, len);
+    }
+
+    private static byte[] copy(byte[] b, int off, int len) {
+        byte[] r = new byte[len];
+        System.arraycopy(b, off, r, 0, len);
+        return r;
+    }
+
+}
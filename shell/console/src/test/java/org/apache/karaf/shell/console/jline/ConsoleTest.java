@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.console.jline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.felix.service.command.CommandProcessor;
+import org.apache.felix.service.command.CommandSession;
+import org.apache.felix.service.command.Converter;
+import org.easymock.IAnswer;
+import org.junit.Test;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class ConsoleTest {
+
+    @Test
+    public void testExecutorMode() throws Exception {
+        PipedOutputStream keyboard = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(keyboard);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        final AtomicReference<InputStream> sessionInput = new AtomicReference<InputStream>();
+        final AtomicReference<Thread> executing = new AtomicReference<Thread>();
+        final CountDownLatch started = new CountDownLatch(1);
+
+        final CommandSession session = createNiceMock(CommandSession.class);
+        expect(session.getConsole()).andReturn(out).anyTimes();
+        expect(session.format(anyObject(), eq(Converter.INSPECT))).andAnswer(new IAnswer<CharSequence>() {
+            public CharSequence answer() throws Throwable {
+                return getCurrentArguments()[0].toString();
+            }
+        }).anyTimes();
+        // the command reads the input typed while it runs
+        expect(session.execute("read")).andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                executing.set(Thread.currentThread());
+                started.countDown();
+                return "read " + readLine(sessionInput.get());
+            }
+        }).once();
+        CommandProcessor processor = createMock(CommandProcessor.class);
+        expect(processor.createSession(isA(InputStream.class), same(out), same(out))).andAnswer(new IAnswer<CommandSession>() {
+            public CommandSession answer() throws Throwable {
+                sessionInput.set((InputStream) getCurrentArguments()[0]);
+                return session;
+            }
+        });
+        replay(session, processor);
+
+        final File history = File.createTempFile("karaf", ".history");
+        final AtomicBoolean closed = new AtomicBoolean();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            Console console = new Console(processor, in, out, out, null, new Runnable() {
+                public void run() {
+                    closed.set(true);
+                }
+            }) {
+                @Override
+                protected File getHistoryFile() {
+                    return history;
+                }
+            };
+            ConsoleStatistics statistics = new ConsoleStatisticsImpl();
+            console.setExecutor(executor);
+            console.setStatistics(statistics);
+
+            Thread thread = new Thread(console, "console");
+            thread.start();
+            keyboard.write("read\n".getBytes());
+            keyboard.flush();
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertNotSame(thread, executing.get());
+            assertEquals(1, statistics.getSessionCount());
+            assertEquals(2, statistics.getThreadCount());
+
+            keyboard.write("some input\n".getBytes());
+            keyboard.flush();
+            // the console thread is woken up by the completion of the command
+            for (int i = 0; i < 100 && !output.toString().contains("read some input"); i++) {
+                Thread.sleep(100);
+            }
+            assertTrue(output.toString().contains("read some input"));
+            assertTrue(thread.isAlive());
+
+            keyboard.close();
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+            assertTrue(closed.get());
+            assertEquals(0, statistics.getSessionCount());
+            assertEquals(1, statistics.getPeakSessionCount());
+            assertEquals(1, statistics.getTotalSessionCount());
+            assertEquals(0, statistics.getThreadCount());
+            verify(session, processor);
+        } finally {
+            executor.shutdownNow();
+            history.delete();
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int c = in.read(); c >= 0 && c != '\n'; c = in.read()) {
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+}
@@ -24,9 +24,9 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Dictionary;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -44,23 +44,35 @@ import org.osgi.framework.BundleException;
 import org.osgi.framework.BundleListener;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.cm.ConfigurationEvent;
+import org.osgi.service.cm.ConfigurationListener;
+import org.osgi.service.packageadmin.PackageAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A Runnable singleton which watches at the defined location for bundle updates.
+ *
+ * The location of the local repository is only resolved again when the maven
+ * configuration changes, and the artifacts of the watched bundles are only
+ * located again when bundles or watched urls are added or removed, so that
+ * each check only looks at the modification time of the artifacts.  The
+ * bundles updated by a check are refreshed together.
  */
-public class BundleWatcher implements Runnable, BundleListener {
+public class BundleWatcher implements Runnable, BundleListener, ConfigurationListener {
 
     private final Logger logger = LoggerFactory.getLogger(BundleWatcher.class);
 
     private BundleContext bundleContext;
     private ConfigurationAdmin configurationAdmin;
+    private PackageAdmin packageAdmin;
 
     private AtomicBoolean running = new AtomicBoolean(false);
     private long interval = 1000L;
     private List<String> watchURLs = new CopyOnWriteArrayList<String>();
     private AtomicInteger counter = new AtomicInteger(0);
+    private volatile File localRepository;
+    private final Object lock = new Object();
 
 
     /**
@@ -76,48 +88,55 @@ public class BundleWatcher implements Runnable, BundleListener {
         }
     }
 
+    public void configurationEvent(ConfigurationEvent event) {
+        if (ServiceConstants.PID.equals(event.getPid())) {
+            localRepository = null;
+            changed();
+        }
+    }
+
     public void run() {
         if (logger.isDebugEnabled()) {
             logger.debug("Bundle watcher thread started");
         }
         int oldCounter = -1;
-        Set<Bundle> watchedBundles = new HashSet<Bundle>();
+        Map<Bundle, File> watchedBundles = new LinkedHashMap<Bundle, File>();
         while (running.get() && watchURLs.size()>0) {
             if (oldCounter != counter.get()) {
                 oldCounter = counter.get();
-                watchedBundles.clear();
-                for (String bundleURL : watchURLs) {
-                    for (Bundle bundle : getBundlesByURL(bundleURL)) {
-                        watchedBundles.add(bundle);
-                    }
-                }
+                watchedBundles = getWatchedBundles();
             }
-            if (watchedBundles.size()>0) {
-                File localRepository = getLocalRepository();
-                for (Bundle bundle : watchedBundles) {
-                    try {
-                        File location = getBundleExternalLocation(localRepository, bundle);
-                        if (location != null
-                                && location.exists()
-                                && location.lastModified() > bundle.getLastModified())
-                        {
-                            InputStream is = new FileInputStream(location);
-                            try {
-                                System.out.println("[Watch] Updating watched bundle: " + bundle.getSymbolicName() + " (" + bundle.getVersion() + ")");
-                                bundle.update(is);
-                            } finally {
-                                is.close();
-                            }
+            List<Bundle> updated = new ArrayList<Bundle>();
+            for (Map.Entry<Bundle, File> entry : watchedBundles.entrySet()) {
+                Bundle bundle = entry.getKey();
+                File location = entry.getValue();
+                try {
+                    // lastModified() is 0 if the artifact does not exist
+                    if (location.lastModified() > bundle.getLastModified()) {
+                        InputStream is = new FileInputStream(location);
+                        try {
+                            System.out.println("[Watch] Updating watched bundle: " + bundle.getSymbolicName() + " (" + bundle.getVersion() + ")");
+                            bundle.update(is);
+                            updated.add(bundle);
+                        } finally {
+                            is.close();
                         }
-                    } catch (IOException ex) {
-                        logger.error("Error watching bundle.", ex);
-                    } catch (BundleException ex) {
-                        logger.error("Error updating bundle.", ex);
                     }
+                } catch (IOException ex) {
+                    logger.error("Error watching bundle.", ex);
+                } catch (BundleException ex) {
+                    logger.error("Error updating bundle.", ex);
                 }
             }
+            if (!updated.isEmpty() && packageAdmin != null) {
+                packageAdmin.refreshPackages(updated.toArray(new Bundle[updated.size()]));
+            }
             try {
-                Thread.sleep(interval);
+                synchronized (lock) {
+                    if (oldCounter == counter.get()) {
+                        lock.wait(interval);
+                    }
+                }
             } catch (InterruptedException ex) {
                 running.set(false);
             }
@@ -128,6 +147,36 @@ public class BundleWatcher implements Runnable, BundleListener {
         }
     }
 
+    /**
+     * Returns the watched bundles with the location of their artifact.
+     */
+    protected Map<Bundle, File> getWatchedBundles() {
+        Map<Bundle, File> watchedBundles = new LinkedHashMap<Bundle, File>();
+        File localRepository = getLocalRepository();
+        Bundle[] bundles = bundleContext.getBundles();
+        for (String bundleURL : watchURLs) {
+            for (Bundle bundle : getBundlesByURL(bundleURL, bundles)) {
+                if (!watchedBundles.containsKey(bundle)) {
+                    File location = getBundleExternalLocation(localRepository, bundle);
+                    if (location != null) {
+                        watchedBundles.put(bundle, location);
+                    }
+                }
+            }
+        }
+        return watchedBundles;
+    }
+
+    /**
+     * Wakes up the watcher thread to take a change into account.
+     */
+    private void changed() {
+        counter.incrementAndGet();
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
     /**
      * Adds a Bundle URLs to the watch list.
      * @param url
@@ -136,7 +185,7 @@ public class BundleWatcher implements Runnable, BundleListener {
         boolean shouldStart = running.get() && (watchURLs.size()==0);
         if (!watchURLs.contains(url)) {
             watchURLs.add(url);
-            counter.incrementAndGet();
+            changed();
         }
         if (shouldStart) {
             Thread thread = new Thread(this);
@@ -150,7 +199,7 @@ public class BundleWatcher implements Runnable, BundleListener {
      */
     public void remove(String url) {
         watchURLs.remove(url);
-        counter.incrementAndGet();
+        changed();
     }
 
     /**
@@ -169,6 +218,15 @@ public class BundleWatcher implements Runnable, BundleListener {
     }
 
     public File getLocalRepository() {
+        File localRepository = this.localRepository;
+        if (localRepository == null) {
+            localRepository = retrieveLocalRepository();
+            this.localRepository = localRepository;
+        }
+        return localRepository;
+    }
+
+    protected File retrieveLocalRepository() {
         // Attempt to retrieve local repository location from MavenConfiguration
         MavenConfiguration configuration = retrieveMavenConfiguration();
         if (configuration != null) {
@@ -205,6 +263,10 @@ public class BundleWatcher implements Runnable, BundleListener {
      * @return
      */
     public List<Bundle> getBundlesByURL(String url) {
+        return getBundlesByURL(url, bundleContext.getBundles());
+    }
+
+    private List<Bundle> getBundlesByURL(String url, Bundle[] bundles) {
         List<Bundle> bundleList = new ArrayList<Bundle>();
         try {
             Long id = Long.parseLong(url);
@@ -213,8 +275,7 @@ public class BundleWatcher implements Runnable, BundleListener {
                 bundleList.add(bundle);
             }
         } catch (NumberFormatException e) {
-            for (int i = 0; i < bundleContext.getBundles().length; i++) {
-                Bundle bundle = bundleContext.getBundles()[i];
+            for (Bundle bundle : bundles) {
                 if (isMavenSnapshotUrl(bundle.getLocation()) && wildCardMatch(bundle.getLocation(), url)) {
                     bundleList.add(bundle);
                 }
@@ -253,6 +314,9 @@ public class BundleWatcher implements Runnable, BundleListener {
 
     public void start() {
         if (running.compareAndSet(false, true)) {
+            // locate the artifacts again when bundles are installed or uninstalled
+            bundleContext.addBundleListener(this);
+            counter.incrementAndGet();
             if (watchURLs.size()>0) {
                 Thread thread = new Thread(this);
                 thread.start();
@@ -264,7 +328,12 @@ public class BundleWatcher implements Runnable, BundleListener {
      * Stops the execution of the thread and releases the singleton instance
      */
     public void stop() {
-        running.set(false);
+        if (running.compareAndSet(true, false)) {
+            bundleContext.removeBundleListener(this);
+        }
+        synchronized (lock) {
+            lock.notifyAll();
+        }
     }
 
     public ConfigurationAdmin getConfigurationAdmin() {
@@ -275,6 +344,14 @@ public class BundleWatcher implements Runnable, BundleListener {
         this.configurationAdmin = configurationAdmin;
     }
 
+    public PackageAdmin getPackageAdmin() {
+        return packageAdmin;
+    }
+
+    public void setPackageAdmin(PackageAdmin packageAdmin) {
+        this.packageAdmin = packageAdmin;
+    }
+
     public BundleContext getBundleContext() {
         return bundleContext;
     }
@@ -297,6 +374,9 @@ public class BundleWatcher implements Runnable, BundleListener {
 
     public void setInterval(long interval) {
         this.interval = interval;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
     }
 
     public boolean isRunning() {
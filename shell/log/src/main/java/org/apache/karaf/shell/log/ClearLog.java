@@ -26,6 +26,7 @@ import org.apache.karaf.shell.console.OsgiCommandSupport;
 public class ClearLog extends OsgiCommandSupport {
 
     protected LruList events;
+    protected RepeatedEventFilter filter;
    
     public LruList getEvents() {
         return events;
@@ -35,8 +36,19 @@ public class ClearLog extends OsgiCommandSupport {
         this.events = events;
     }
 
+    public RepeatedEventFilter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(RepeatedEventFilter filter) {
+        this.filter = filter;
+    }
+
     protected Object doExecute() throws Exception {
         events.clear();
+        if (filter != null) {
+            filter.clear();
+        }
         return null;
     }
 
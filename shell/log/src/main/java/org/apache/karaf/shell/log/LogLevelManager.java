@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies several log level changes with a single update of the pax logging
+ * configuration, optionally reverting them after a given time.
+ */
+public class LogLevelManager {
+
+    static final String CONFIGURATION_PID  = "org.ops4j.pax.logging";
+    static final String ROOT_LOGGER_PREFIX = "log4j.rootLogger";
+    static final String LOGGER_PREFIX      = "log4j.logger.";
+    static final String ROOT_LOGGER        = "ROOT";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogLevelManager.class);
+
+    private ConfigurationAdmin configAdmin;
+    private volatile boolean configAdminAvailable = true;
+    private ScheduledExecutorService executor;
+
+    /**
+     * Original values of the properties currently changed by a temporary level,
+     * with the revert task which will restore them.
+     */
+    private final Map<String, Revert> pending = new HashMap<String, Revert>();
+
+    public ConfigurationAdmin getConfigAdmin() {
+        return configAdmin;
+    }
+
+    public void setConfigAdmin(ConfigurationAdmin configAdmin) {
+        this.configAdmin = configAdmin;
+    }
+
+    /**
+     * Reference listener callbacks: calls to the blueprint proxy of an unavailable
+     * ConfigurationAdmin block until it comes back or the proxy times out.
+     */
+    public void bindConfigAdmin(ConfigurationAdmin configAdmin) {
+        configAdminAvailable = true;
+    }
+
+    public void unbindConfigAdmin(ConfigurationAdmin configAdmin) {
+        configAdminAvailable = false;
+    }
+
+    public void destroy() {
+        ScheduledExecutorService e;
+        Map<String, Revert> reverts;
+        synchronized (this) {
+            e = executor;
+            executor = null;
+            reverts = new HashMap<String, Revert>(pending);
+        }
+        if (e != null) {
+            e.shutdownNow();
+        }
+        if (reverts.isEmpty()) {
+            return;
+        }
+        if (!configAdminAvailable) {
+            // shutting down, do not wait for ConfigurationAdmin
+            LOGGER.warn("ConfigurationAdmin is not available, temporary log levels are not reverted");
+            return;
+        }
+        // do not leave temporary levels behind
+        for (Revert revert : new HashSet<Revert>(reverts.values())) {
+            revert.run();
+        }
+    }
+
+    /**
+     * Parse <code>logger=LEVEL</code> specifications, ROOT standing for the root logger.
+     *
+     * @return the levels keyed by logger name, the root logger being <code>null</code>
+     */
+    public static Map<String, String> parseLevels(Collection<String> specs) {
+        Map<String, String> levels = new LinkedHashMap<String, String>();
+        for (String spec : specs) {
+            int idx = spec.indexOf('=');
+            if (idx < 0) {
+                throw new IllegalArgumentException("Invalid level specification " + spec + ", expected logger=LEVEL");
+            }
+            levels.put(spec.substring(0, idx).trim(), spec.substring(idx + 1).trim());
+        }
+        return checkLevels(levels);
+    }
+
+    /**
+     * Normalize and validate the given levels.
+     */
+    public static Map<String, String> checkLevels(Map<String, String> levels) {
+        Map<String, String> checked = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> entry : levels.entrySet()) {
+            String logger = entry.getKey();
+            if (logger == null || logger.length() == 0 || ROOT_LOGGER.equalsIgnoreCase(logger)) {
+                logger = null;
+            }
+            // make sure both uppercase and lowercase levels are supported
+            String level = entry.getValue() != null ? entry.getValue().toUpperCase() : null;
+            try {
+                Level.valueOf(level);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("level must be set to TRACE, DEBUG, INFO, WARN or ERROR (or DEFAULT to unset it)");
+            }
+            if (Level.isDefault(level) && logger == null) {
+                throw new IllegalArgumentException("Can not unset the ROOT logger");
+            }
+            checked.put(logger, level);
+        }
+        return checked;
+    }
+
+    public void setLevels(Map<String, String> levels, long ttl) throws IOException {
+        setLevels(getConfiguration(), levels, ttl);
+    }
+
+    /**
+     * Set the given levels with a single configuration update.  If <code>ttl</code> is
+     * positive, the previous levels are restored after <code>ttl</code> milliseconds.
+     */
+    public synchronized void setLevels(Configuration cfg, Map<String, String> levels, long ttl) throws IOException {
+        Dictionary props = cfg.getProperties();
+        Map<String, String> originals = new HashMap<String, String>();
+        for (Map.Entry<String, String> entry : levels.entrySet()) {
+            String prop = entry.getKey() == null ? ROOT_LOGGER_PREFIX : LOGGER_PREFIX + entry.getKey();
+            String val = (String) props.get(prop);
+            Revert previous = pending.get(prop);
+            // keep the value set before the first temporary change
+            originals.put(prop, previous != null ? previous.originals.get(prop) : val);
+            val = getValue(val, entry.getValue());
+            if (val == null) {
+                props.remove(prop);
+            } else {
+                props.put(prop, val);
+            }
+        }
+        cfg.update(props);
+        // the levels are changed, the new revert task now owns their original values
+        Revert revert = ttl > 0 ? new Revert() : null;
+        for (Map.Entry<String, String> entry : originals.entrySet()) {
+            Revert previous = pending.remove(entry.getKey());
+            if (previous != null) {
+                previous.originals.remove(entry.getKey());
+            }
+            if (revert != null) {
+                revert.originals.put(entry.getKey(), entry.getValue());
+                pending.put(entry.getKey(), revert);
+            }
+        }
+        if (revert != null) {
+            getExecutor().schedule(revert, ttl, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Compute the new value of a logger property, keeping the appenders if any.
+     */
+    static String getValue(String val, String level) {
+        if (Level.isDefault(level)) {
+            if (val != null) {
+                val = val.trim();
+                int idx = val.indexOf(",");
+                if (idx < 0) {
+                    val = null;
+                } else {
+                    val = val.substring(idx);
+                }
+            }
+        } else {
+            if (val == null) {
+                val = level;
+            } else {
+                val = val.trim();
+                int idx = val.indexOf(",");
+                if (idx < 0) {
+                    val = level;
+                } else {
+                    val = level + val.substring(idx);
+                }
+            }
+        }
+        return val;
+    }
+
+    protected Configuration getConfiguration() throws IOException {
+        if (configAdmin == null || !configAdminAvailable) {
+            throw new IllegalStateException("ConfigurationAdmin is not available");
+        }
+        return configAdmin.getConfiguration(CONFIGURATION_PID, null);
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Karaf log level reverter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Restores the original values of the properties it still owns.
+     */
+    class Revert implements Runnable {
+
+        final Map<String, String> originals = new HashMap<String, String>();
+
+        public void run() {
+            synchronized (LogLevelManager.this) {
+                if (originals.isEmpty()) {
+                    return;
+                }
+                try {
+                    Configuration cfg = getConfiguration();
+                    Dictionary props = cfg.getProperties();
+                    for (Map.Entry<String, String> entry : originals.entrySet()) {
+                        pending.remove(entry.getKey());
+                        if (entry.getValue() == null) {
+                            props.remove(entry.getKey());
+                        } else {
+                            props.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    originals.clear();
+                    cfg.update(props);
+                } catch (Exception e) {
+                    LOGGER.warn("Unable to revert temporary log levels", e);
+                }
+            }
+        }
+
+    }
+
+}
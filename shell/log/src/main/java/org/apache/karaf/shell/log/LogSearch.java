@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.PrintStream;
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.apache.felix.gogo.commands.Argument;
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+import org.apache.karaf.shell.console.OsgiCommandSupport;
+
+/**
+ * Search the log files on disk, including the rolled ones.
+ */
+@Command(scope = "log", name = "search", description = "Searches the log files on disk, including rolled ones.")
+public class LogSearch extends OsgiCommandSupport {
+
+    static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+    static final String DEFAULT_FILES = ".*\\.log(\\.\\d+)?";
+    static final String[] TIME_FORMATS = { DEFAULT_DATE_FORMAT, "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm", "yyyy-MM-dd" };
+
+    private static final Object END = new Object();
+
+    @Argument(index = 0, name = "regex", description = "Regular expression to search for", required = true, multiValued = false)
+    String regex;
+
+    @Option(name = "-d", aliases = { "--directory" }, description = "Directory containing the log files (defaults to ${karaf.data}/log)", required = false, multiValued = false)
+    String directory;
+
+    @Option(name = "--files", description = "Regular expression the names of the searched files must match", required = false, multiValued = false)
+    String files = DEFAULT_FILES;
+
+    @Option(name = "-f", aliases = { "--from" }, description = "Only display events logged at or after this time (yyyy-MM-dd[ HH:mm[:ss[,SSS]]])", required = false, multiValued = false)
+    String from;
+
+    @Option(name = "-t", aliases = { "--to" }, description = "Only display events logged at or before this time (yyyy-MM-dd[ HH:mm[:ss[,SSS]]])", required = false, multiValued = false)
+    String to;
+
+    @Option(name = "-m", aliases = { "--max-count" }, description = "Stop after NUM matching lines (defaults to 1000)", required = false, multiValued = false)
+    int maxCount = 1000;
+
+    @Option(name = "-i", aliases = { "--ignore-case" }, description = "Ignores case distinctions", required = false, multiValued = false)
+    boolean ignoreCase;
+
+    @Option(name = "--date-format", description = "Format of the timestamp starting each log event", required = false, multiValued = false)
+    String dateFormat = DEFAULT_DATE_FORMAT;
+
+    @Option(name = "--threads", description = "Number of files searched in parallel (defaults to the number of processors)", required = false, multiValued = false)
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    protected Object doExecute() throws Exception {
+        File dir = directory != null ? new File(directory) : new File(System.getProperty("karaf.data"), "log");
+        final Pattern namePattern = Pattern.compile(files);
+        File[] logFiles = dir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && namePattern.matcher(file.getName()).matches();
+            }
+        });
+        if (logFiles == null || logFiles.length == 0) {
+            System.err.println("No log files found in " + dir);
+            return null;
+        }
+        Arrays.sort(logFiles);
+
+        final long fromTime = from != null ? parseTime(from) : Long.MIN_VALUE;
+        final long toTime = to != null ? parseTime(to) : Long.MAX_VALUE;
+        final Pattern pattern = Pattern.compile(regex, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+        final int limit = maxCount > 0 ? maxCount : Integer.MAX_VALUE;
+        final boolean prefix = logFiles.length > 1;
+        final AtomicInteger hits = new AtomicInteger();
+        final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>(1024);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, logFiles.length)));
+        try {
+            for (final File file : logFiles) {
+                executor.submit(new Runnable() {
+                    public void run() {
+                        try {
+                            try {
+                                if (hits.get() < limit) {
+                                    search();
+                                }
+                            } catch (InterruptedException e) {
+                                return;
+                            } catch (Exception e) {
+                                queue.put(e);
+                            }
+                            queue.put(END);
+                        } catch (InterruptedException e) {
+                            // Search has been cancelled
+                        }
+                    }
+
+                    private void search() throws Exception {
+                        DateFormat format = new SimpleDateFormat(dateFormat);
+                        format.setLenient(false);
+                        MappedLogFile logFile = new MappedLogFile(file);
+                        try {
+                            logFile.search(pattern, format, fromTime, toTime, new MappedLogFile.Listener() {
+                                public boolean onMatch(MappedLogFile f, String line) throws InterruptedException {
+                                    if (hits.incrementAndGet() > limit) {
+                                        return false;
+                                    }
+                                    queue.put(prefix ? f.getFile().getName() + ": " + line : line);
+                                    return true;
+                                }
+                            });
+                        } finally {
+                            logFile.close();
+                        }
+                    }
+                });
+            }
+            PrintStream out = System.out;
+            int remaining = logFiles.length;
+            int printed = 0;
+            // once the limit is reached, the searches still running are cancelled
+            while (remaining > 0 && printed < limit) {
+                Object o = queue.take();
+                if (o == END) {
+                    remaining--;
+                } else if (o instanceof Exception) {
+                    System.err.println("Error searching log file: " + ((Exception) o).getMessage());
+                } else {
+                    out.println(o);
+                    printed++;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Ignore
+        } finally {
+            executor.shutdownNow();
+        }
+        return null;
+    }
+
+    static long parseTime(String value) {
+        for (String fmt : TIME_FORMATS) {
+            DateFormat format = new SimpleDateFormat(fmt);
+            format.setLenient(false);
+            ParsePosition position = new ParsePosition(0);
+            Date date = format.parse(value.trim(), position);
+            if (date != null && position.getIndex() == value.trim().length()) {
+                return date.getTime();
+            }
+        }
+        throw new IllegalArgumentException("Invalid time: " + value + " (expected yyyy-MM-dd[ HH:mm[:ss[,SSS]]])");
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.ops4j.pax.logging.spi.PaxLevel;
+
+/**
+ * Per logger and per level counters of the log events, with an exponentially
+ * decaying one minute rate for each of them.
+ *
+ * Recording an event for an already known logger does not allocate anything.
+ */
+public class LogStatistics {
+
+    public static final String[] LEVELS = { "TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL" };
+
+    public static final int TRACE = 0;
+    public static final int DEBUG = 1;
+    public static final int INFO = 2;
+    public static final int WARN = 3;
+    public static final int ERROR = 4;
+    public static final int FATAL = 5;
+
+    static final int TICK_INTERVAL = 5;
+    static final long TICK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(TICK_INTERVAL);
+    static final double ALPHA = 1 - Math.exp(-TICK_INTERVAL / 60.0);
+
+    private final ConcurrentMap<String, LoggerStatistics> loggers = new ConcurrentHashMap<String, LoggerStatistics>();
+    private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+
+    /**
+     * Maps a pax logging level (using the log4j integer values) to one of the level indexes.
+     */
+    public static int levelIndex(PaxLevel level) {
+        int l = level != null ? level.toInt() : 0;
+        if (l >= 50000) {
+            return FATAL;
+        } else if (l >= 40000) {
+            return ERROR;
+        } else if (l >= 30000) {
+            return WARN;
+        } else if (l >= 20000) {
+            return INFO;
+        } else if (l >= 10000) {
+            return DEBUG;
+        } else {
+            return TRACE;
+        }
+    }
+
+    public void record(String logger, int level) {
+        if (logger == null) {
+            logger = "";
+        }
+        LoggerStatistics stats = loggers.get(logger);
+        if (stats == null) {
+            stats = new LoggerStatistics(logger);
+            LoggerStatistics old = loggers.putIfAbsent(logger, stats);
+            if (old != null) {
+                stats = old;
+            }
+        }
+        tickIfNecessary(System.nanoTime());
+        stats.mark(level);
+    }
+
+    public List<LoggerStatistics> getLoggers() {
+        tickIfNecessary(System.nanoTime());
+        return new ArrayList<LoggerStatistics>(loggers.values());
+    }
+
+    /**
+     * Returns the <code>max</code> loggers with the highest rate of events.
+     */
+    public List<LoggerStatistics> getTopLoggers(int max) {
+        List<LoggerStatistics> list = getLoggers();
+        Collections.sort(list, new Comparator<LoggerStatistics>() {
+            public int compare(LoggerStatistics s1, LoggerStatistics s2) {
+                int c = Double.compare(s2.getRate(), s1.getRate());
+                if (c == 0) {
+                    c = s2.getCount() < s1.getCount() ? -1 : (s2.getCount() == s1.getCount() ? 0 : 1);
+                }
+                return c;
+            }
+        });
+        return max >= 0 && max < list.size() ? list.subList(0, max) : list;
+    }
+
+    public void reset() {
+        loggers.clear();
+    }
+
+    void tickIfNecessary(long now) {
+        long last = lastTick.get();
+        long age = now - last;
+        if (age > TICK_INTERVAL_NANOS) {
+            long next = now - age % TICK_INTERVAL_NANOS;
+            if (lastTick.compareAndSet(last, next)) {
+                long ticks = age / TICK_INTERVAL_NANOS;
+                for (LoggerStatistics stats : loggers.values()) {
+                    stats.tick(ticks);
+                }
+            }
+        }
+    }
+
+    /**
+     * Statistics of a single logger.
+     */
+    public static class LoggerStatistics {
+
+        private final String name;
+        private final AtomicLongArray counts = new AtomicLongArray(LEVELS.length);
+        private final AtomicLongArray uncounted = new AtomicLongArray(LEVELS.length);
+        private final AtomicLongArray rates = new AtomicLongArray(LEVELS.length);
+        private volatile boolean initialized;
+
+        LoggerStatistics(String name) {
+            this.name = name;
+        }
+
+        void mark(int level) {
+            counts.incrementAndGet(level);
+            uncounted.incrementAndGet(level);
+        }
+
+        /**
+         * Updates the rates for the given number of elapsed ticks, the events
+         * recorded since the last update counting for the first one.  The
+         * following ticks had no event, so their decay is applied at once.
+         */
+        void tick(long ticks) {
+            double decay = Math.pow(1 - ALPHA, ticks - 1);
+            for (int i = 0; i < LEVELS.length; i++) {
+                double instantRate = uncounted.getAndSet(i, 0) / (double) TICK_INTERVAL;
+                double rate = Double.longBitsToDouble(rates.get(i));
+                rate = initialized ? rate + ALPHA * (instantRate - rate) : instantRate;
+                rates.set(i, Double.doubleToRawLongBits(rate * decay));
+            }
+            initialized = true;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount(int level) {
+            return counts.get(level);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < LEVELS.length; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * One minute rate, in events per second.
+         */
+        public double getRate(int level) {
+            return Double.longBitsToDouble(rates.get(level));
+        }
+
+        public double getRate() {
+            double rate = 0;
+            for (int i = 0; i < LEVELS.length; i++) {
+                rate += getRate(i);
+            }
+            return rate;
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import java.io.PrintStream;
+
+import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
+import org.apache.karaf.shell.console.OsgiCommandSupport;
+
+/**
+ * Displays the loggers producing the highest rate of events.
+ */
+@Command(scope = "log", name = "stats", description = "Displays the loggers with the highest rate of log events.")
+public class LogStats extends OsgiCommandSupport {
+
+    static final String HEADER_FORMAT = "%10s %10s %8s %8s %8s %8s %8s %8s  %s";
+    static final String ROW_FORMAT = "%10.2f %10d %8d %8d %8d %8d %8d %8d  %s";
+
+    @Option(name = "-n", aliases = {}, description = "Number of loggers to display (defaults to 10)", required = false, multiValued = false)
+    int max = 10;
+
+    @Option(name = "--reset", description = "Reset the statistics", required = false, multiValued = false)
+    boolean reset;
+
+    protected LogStatistics statistics;
+
+    public LogStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(LogStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    protected Object doExecute() throws Exception {
+        if (reset) {
+            statistics.reset();
+            return null;
+        }
+        PrintStream out = System.out;
+        out.println(String.format(HEADER_FORMAT, "Rate/s", "Count", "FATAL", "ERROR", "WARN", "INFO", "DEBUG", "TRACE", "Logger"));
+        for (LogStatistics.LoggerStatistics stats : statistics.getTopLoggers(max)) {
+            out.println(String.format(ROW_FORMAT,
+                    stats.getRate(),
+                    stats.getCount(),
+                    stats.getCount(LogStatistics.FATAL),
+                    stats.getCount(LogStatistics.ERROR),
+                    stats.getCount(LogStatistics.WARN),
+                    stats.getCount(LogStatistics.INFO),
+                    stats.getCount(LogStatistics.DEBUG),
+                    stats.getCount(LogStatistics.TRACE),
+                    stats.getName()));
+        }
+        return null;
+    }
+
+}
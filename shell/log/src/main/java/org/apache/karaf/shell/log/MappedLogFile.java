@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+/**
+ * A log file mapped in memory, with a sparse index of timestamps
+ * used to restrict a search to a given time range.
+ *
+ * The file is mapped in segments of up to 1 GB of address space.  Mappings
+ * can not be released explicitly and are only unmapped once garbage
+ * collected, so {@link #close()} drops the references to them as soon as
+ * the file is not needed any more.
+ */
+public class MappedLogFile {
+
+    /**
+     * Callback receiving the lines matched by a search.
+     */
+    public interface Listener {
+
+        /**
+         * @return <code>false</code> to stop the search
+         */
+        boolean onMatch(MappedLogFile file, String line) throws InterruptedException;
+
+    }
+
+    static final int SEGMENT_SHIFT = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    static final int INDEX_INTERVAL = 64 * 1024;
+    static final int INDEX_LOOKAHEAD = 64;
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final long length;
+    private final MappedByteBuffer[] segments;
+
+    private long[] indexOffsets;
+    private long[] indexTimes;
+    private int indexSize;
+
+    private byte[] lineBuffer = new byte[1024];
+
+    public MappedLogFile(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            this.length = channel.size();
+            int nb = (int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            this.segments = new MappedByteBuffer[nb];
+            for (int i = 0; i < nb; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Drop the mapped segments, so that they can be unmapped by the garbage
+     * collector even if this object is still referenced.  The file can not
+     * be searched any more.
+     */
+    public void close() {
+        Arrays.fill(segments, null);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Build the sparse timestamp index: roughly every {@link #INDEX_INTERVAL} bytes,
+     * the first line starting with a date parseable by the given format is recorded.
+     */
+    public void buildIndex(DateFormat format) {
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, length / INDEX_INTERVAL + 1);
+        indexOffsets = new long[capacity];
+        indexTimes = new long[capacity];
+        indexSize = 0;
+        ParsePosition position = new ParsePosition(0);
+        long lastOffset = -1;
+        for (long pos = 0; pos < length && indexSize < capacity; pos += INDEX_INTERVAL) {
+            long start = pos == 0 ? 0 : indexOf('\n', pos) + 1;
+            for (int i = 0; i < INDEX_LOOKAHEAD && start > lastOffset && start < length; i++) {
+                long eol = indexOf('\n', start);
+                long time = parseTime(format, position, start, eol);
+                if (time >= 0) {
+                    indexOffsets[indexSize] = start;
+                    indexTimes[indexSize] = time;
+                    indexSize++;
+                    lastOffset = start;
+                    break;
+                }
+                start = eol + 1;
+            }
+        }
+    }
+
+    /**
+     * Offset of a line that is guaranteed to be before any event logged at or after the given time.
+     */
+    public long getStartOffset(long from) {
+        int low = 0;
+        int high = indexSize - 1;
+        long offset = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexTimes[mid] < from) {
+                offset = indexOffsets[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Offset of a line that is guaranteed to be after any event logged at or before the given time.
+     */
+    public long getEndOffset(long to) {
+        int low = 0;
+        int high = indexSize - 1;
+        long offset = length;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexTimes[mid] > to) {
+                offset = indexOffsets[mid];
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Scan the lines of this file logged between <code>from</code> and <code>to</code>
+     * (inclusive, in milliseconds) and report those matching the given pattern.
+     * Lines without a timestamp, such as stack traces, belong to the previous event.
+     * If no format is given, the whole file is scanned.
+     */
+    public void search(Pattern pattern, DateFormat format, long from, long to, Listener listener) throws InterruptedException {
+        boolean checkTime = format != null && (from > Long.MIN_VALUE || to < Long.MAX_VALUE);
+        long start = 0;
+        long end = length;
+        if (checkTime) {
+            if (indexOffsets == null) {
+                buildIndex(format);
+            }
+            start = getStartOffset(from);
+            end = getEndOffset(to);
+        }
+        ParsePosition position = new ParsePosition(0);
+        long time = Long.MIN_VALUE;
+        long pos = start;
+        while (pos < end) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long eol = indexOf('\n', pos);
+            if (checkTime) {
+                long t = parseTime(format, position, pos, eol);
+                if (t >= 0) {
+                    time = t;
+                    if (time > to) {
+                        break;
+                    }
+                }
+            }
+            if (!checkTime || time >= from) {
+                String line = readLine(pos, eol);
+                if (pattern.matcher(line).find() && !listener.onMatch(this, line)) {
+                    break;
+                }
+            }
+            pos = eol + 1;
+        }
+    }
+
+    private long parseTime(DateFormat format, ParsePosition position, long start, long eol) {
+        if (start >= eol || !Character.isDigit((char) get(start))) {
+            return -1;
+        }
+        position.setIndex(0);
+        position.setErrorIndex(-1);
+        Date date = format.parse(readLine(start, Math.min(eol, start + 64)), position);
+        return date != null ? date.getTime() : -1;
+    }
+
+    private String readLine(long start, long eol) {
+        long end = eol;
+        if (end > start && get(end - 1) == '\r') {
+            end--;
+        }
+        int len = (int) Math.min(end - start, MAX_LINE_LENGTH);
+        if (lineBuffer.length < len) {
+            lineBuffer = new byte[Math.max(len, lineBuffer.length * 2)];
+        }
+        for (int i = 0; i < len; i++) {
+            lineBuffer[i] = get(start + i);
+        }
+        return new String(lineBuffer, 0, len, UTF8);
+    }
+
+    /**
+     * Index of the next occurrence of the given byte, or the length of the file.
+     */
+    private long indexOf(int b, long from) {
+        long pos = from;
+        while (pos < length) {
+            MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_SHIFT)];
+            int limit = segment.limit();
+            for (int i = (int) (pos & SEGMENT_MASK); i < limit; i++) {
+                if (segment.get(i) == b) {
+                    return (pos & ~SEGMENT_MASK) + i;
+                }
+            }
+            pos = (pos & ~SEGMENT_MASK) + limit;
+        }
+        return length;
+    }
+
+    private byte get(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & SEGMENT_MASK));
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+/**
+ * Filter applied to the events before they are kept in the history.
+ *
+ * Identical events (same logger, level, message and exception class) received
+ * within <code>window</code> milliseconds of the first one are collapsed into it,
+ * and a logger producing more than <code>maxRate</code> events in a second has
+ * the events above this rate dropped.  Both stages are disabled when set to 0.
+ */
+public class RepeatedEventFilter {
+
+    static final int MAX_TRACKED = 1024;
+
+    private long window;
+    private int maxRate;
+
+    private final Map<Key, RepeatedLoggingEvent> recent = new LinkedHashMap<Key, RepeatedLoggingEvent>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Key, RepeatedLoggingEvent> eldest) {
+            return size() > MAX_TRACKED;
+        }
+    };
+
+    private final Map<String, Bucket> buckets = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            return size() > MAX_TRACKED;
+        }
+    };
+
+    public long getWindow() {
+        return window;
+    }
+
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    public int getMaxRate() {
+        return maxRate;
+    }
+
+    public void setMaxRate(int maxRate) {
+        this.maxRate = maxRate;
+    }
+
+    public boolean isEnabled() {
+        return window > 0 || maxRate > 0;
+    }
+
+    /**
+     * Returns the event to keep in the history, or <code>null</code> if it has been suppressed.
+     */
+    public synchronized PaxLoggingEvent filter(PaxLoggingEvent event) {
+        long now = event.getTimeStamp();
+        Key key = null;
+        if (window > 0) {
+            key = new Key(event);
+            RepeatedLoggingEvent previous = recent.get(key);
+            if (previous != null && now - previous.getTimeStamp() < window) {
+                previous.repeated();
+                return null;
+            }
+        }
+        int dropped = 0;
+        if (maxRate > 0) {
+            String logger = event.getLoggerName();
+            Bucket bucket = buckets.get(logger);
+            if (bucket == null) {
+                bucket = new Bucket();
+                buckets.put(logger, bucket);
+            }
+            if (now - bucket.start >= 1000) {
+                bucket.start = now;
+                bucket.count = 0;
+            }
+            if (++bucket.count > maxRate) {
+                bucket.dropped++;
+                return null;
+            }
+            dropped = bucket.dropped;
+            bucket.dropped = 0;
+        }
+        if (key == null && dropped == 0) {
+            return event;
+        }
+        RepeatedLoggingEvent repeated = new RepeatedLoggingEvent(event, dropped);
+        if (key != null) {
+            recent.put(key, repeated);
+        }
+        return repeated;
+    }
+
+    public synchronized void clear() {
+        recent.clear();
+        buckets.clear();
+    }
+
+    static class Bucket {
+        long start;
+        int count;
+        int dropped;
+    }
+
+    static class Key {
+
+        private final String logger;
+        private final int level;
+        private final String message;
+        private final String throwable;
+        private final int hash;
+
+        Key(PaxLoggingEvent event) {
+            logger = event.getLoggerName();
+            level = event.getLevel() != null ? event.getLevel().toInt() : 0;
+            message = event.getMessage();
+            throwable = getThrowableClass(event.getThrowableStrRep());
+            int h = logger != null ? logger.hashCode() : 0;
+            h = 31 * h + level;
+            h = 31 * h + (message != null ? message.hashCode() : 0);
+            h = 31 * h + (throwable != null ? throwable.hashCode() : 0);
+            hash = h;
+        }
+
+        private static String getThrowableClass(String[] rep) {
+            if (rep == null || rep.length == 0 || rep[0] == null) {
+                return null;
+            }
+            int idx = rep[0].indexOf(':');
+            return idx >= 0 ? rep[0].substring(0, idx) : rep[0];
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return hash == k.hash && level == k.level
+                    && equal(logger, k.logger) && equal(message, k.message) && equal(throwable, k.throwable);
+        }
+
+        private static boolean equal(String s1, String s2) {
+            return s1 == null ? s2 == null : s1.equals(s2);
+        }
+
+    }
+
+}
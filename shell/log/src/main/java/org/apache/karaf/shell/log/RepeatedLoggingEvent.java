@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ops4j.pax.logging.spi.PaxLevel;
+import org.ops4j.pax.logging.spi.PaxLocationInfo;
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+/**
+ * A logging event standing for several identical events, and possibly
+ * for events of the same logger dropped by sampling before it.
+ * The repeat count keeps growing while the event is already in the history.
+ */
+public class RepeatedLoggingEvent implements PaxLoggingEvent {
+
+    private final PaxLoggingEvent event;
+    private final AtomicInteger count = new AtomicInteger(1);
+    private final int dropped;
+
+    public RepeatedLoggingEvent(PaxLoggingEvent event, int dropped) {
+        this.event = event;
+        this.dropped = dropped;
+    }
+
+    void repeated() {
+        count.incrementAndGet();
+    }
+
+    public int getCount() {
+        return count.get();
+    }
+
+    public int getDropped() {
+        return dropped;
+    }
+
+    public PaxLocationInfo getLocationInformation() {
+        return event.getLocationInformation();
+    }
+
+    public PaxLevel getLevel() {
+        return event.getLevel();
+    }
+
+    public String getLoggerName() {
+        return event.getLoggerName();
+    }
+
+    public String getFQNOfLoggerClass() {
+        return event.getFQNOfLoggerClass();
+    }
+
+    public String getMessage() {
+        return decorate(event.getMessage());
+    }
+
+    public String getRenderedMessage() {
+        return decorate(event.getRenderedMessage());
+    }
+
+    public String getThreadName() {
+        return event.getThreadName();
+    }
+
+    public String[] getThrowableStrRep() {
+        return event.getThrowableStrRep();
+    }
+
+    public boolean locationInformationExists() {
+        return event.locationInformationExists();
+    }
+
+    public long getTimeStamp() {
+        return event.getTimeStamp();
+    }
+
+    public Map getProperties() {
+        return event.getProperties();
+    }
+
+    private String decorate(String message) {
+        int c = count.get();
+        if (c <= 1 && dropped == 0) {
+            return message;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(message);
+        if (c > 1) {
+            sb.append(" [repeated ").append(c).append(" times]");
+        }
+        if (dropped > 0) {
+            sb.append(" [").append(dropped).append(" previous events dropped]");
+        }
+        return sb.toString();
+    }
+
+}
@@ -17,98 +17,115 @@
 package org.apache.karaf.shell.log;
 
 import java.io.IOException;
-import java.util.Dictionary;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.karaf.shell.console.OsgiCommandSupport;
 import org.apache.felix.gogo.commands.Argument;
 import org.apache.felix.gogo.commands.Command;
+import org.apache.felix.gogo.commands.Option;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
 
 /**
- * Set the log level for a given logger
+ * Set the log level for a given logger, or for several loggers at once
  */
 @Command(scope = "log", name = "set", description = "Sets the log level.")
 public class SetLogLevel extends OsgiCommandSupport {
     
-    @Argument(index = 0, name = "level", description = "The log level to set (TRACE, DEBUG, INFO, WARN, ERROR) or DEFAULT to unset", required = true, multiValued = false)
+    @Argument(index = 0, name = "level", description = "The log level to set (TRACE, DEBUG, INFO, WARN, ERROR) or DEFAULT to unset, or a logger=LEVEL pair", required = true, multiValued = false)
     String level;
 
-    @Argument(index = 1, name = "logger", description = "Logger name or ROOT (default)", required = false, multiValued = false)
+    @Argument(index = 1, name = "logger", description = "Logger name or ROOT (default), or a logger=LEVEL pair", required = false, multiValued = false)
     String logger;
 
-    static final String CONFIGURATION_PID  = "org.ops4j.pax.logging";
-    static final String ROOT_LOGGER_PREFIX = "log4j.rootLogger";
-    static final String LOGGER_PREFIX      = "log4j.logger.";
-    static final String ROOT_LOGGER        = "ROOT";
+    @Argument(index = 2, name = "levels", description = "More logger=LEVEL pairs, all applied with a single configuration update", required = false, multiValued = true)
+    List<String> levels;
+
+    @Option(name = "-t", aliases = { "--ttl" }, description = "Revert the levels after the given time (for example 30s, 10m or 1h)", required = false, multiValued = false)
+    String ttl;
+
+    static final String CONFIGURATION_PID  = LogLevelManager.CONFIGURATION_PID;
+    static final String ROOT_LOGGER_PREFIX = LogLevelManager.ROOT_LOGGER_PREFIX;
+    static final String LOGGER_PREFIX      = LogLevelManager.LOGGER_PREFIX;
+    static final String ROOT_LOGGER        = LogLevelManager.ROOT_LOGGER;
+
+    protected LogLevelManager manager;
+
+    public LogLevelManager getManager() {
+        return manager;
+    }
+
+    public void setManager(LogLevelManager manager) {
+        this.manager = manager;
+    }
 
     protected Object doExecute() throws Exception {
-        if (ROOT_LOGGER.equalsIgnoreCase(this.logger)) {
-            this.logger = null;
-        }
-        
-        // make sure both uppercase and lowercase levels are supported
-        level = level.toUpperCase();
-        
+        Map<String, String> levels;
+        long time;
         try {
-            Level.valueOf(level);
+            if (level.indexOf('=') >= 0) {
+                List<String> specs = new ArrayList<String>();
+                specs.add(level);
+                if (logger != null) {
+                    specs.add(logger);
+                }
+                if (this.levels != null) {
+                    specs.addAll(this.levels);
+                }
+                levels = LogLevelManager.parseLevels(specs);
+            } else {
+                if (this.levels != null && !this.levels.isEmpty()) {
+                    System.err.println("Use logger=LEVEL pairs to set several log levels at once");
+                    return null;
+                }
+                levels = new LinkedHashMap<String, String>();
+                levels.put(logger, level);
+                levels = LogLevelManager.checkLevels(levels);
+            }
+            time = ttl != null ? parseTime(ttl) : 0;
         } catch (IllegalArgumentException e) {
-            System.err.println("level must be set to TRACE, DEBUG, INFO, WARN or ERROR (or DEFAULT to unset it)");
+            System.err.println(e.getMessage());
             return null;
         }
-        
-        if (Level.isDefault(level) && logger == null) {
-            System.err.println("Can not unset the ROOT logger");
+
+        if (manager == null && time > 0) {
+            System.err.println("Temporary log levels are not available");
             return null;
         }
+        LogLevelManager manager = this.manager != null ? this.manager : new LogLevelManager();
+        manager.setLevels(getConfiguration(), levels, time);
+        return null;
+    }
 
-        Configuration cfg = getConfiguration();
-        Dictionary props = cfg.getProperties();
-
-        String logger = this.logger;
-        String val;
-        String prop;
-        if (logger == null) {
-            prop = ROOT_LOGGER_PREFIX;
-        } else {
-            prop = LOGGER_PREFIX + logger;
-        }
-        val = (String) props.get(prop);
-        if (Level.isDefault(level)) {
-            if (val != null) {
-                val = val.trim();
-                int idx = val.indexOf(",");
-                if (idx < 0) {
-                    val = null;
-                } else {
-                    val = val.substring(idx);
-                }
-            }
-        } else {
-            if (val == null) {
-                val = level;
-            } else {
-                val = val.trim();
-                int idx = val.indexOf(",");
-                if (idx < 0) {
-                    val = level;
-                } else {
-                    val = level + val.substring(idx);
-                }
-            }
+    /**
+     * Parse a duration such as <code>500ms</code>, <code>30s</code>, <code>10m</code>, <code>1h</code>
+     * or a number of seconds.
+     */
+    static long parseTime(String value) {
+        String v = value.trim().toLowerCase();
+        long unit = 1000;
+        if (v.endsWith("ms")) {
+            unit = 1;
+            v = v.substring(0, v.length() - 2);
+        } else if (v.endsWith("s")) {
+            v = v.substring(0, v.length() - 1);
+        } else if (v.endsWith("m")) {
+            unit = 60 * 1000;
+            v = v.substring(0, v.length() - 1);
+        } else if (v.endsWith("h")) {
+            unit = 60 * 60 * 1000;
+            v = v.substring(0, v.length() - 1);
         }
-        if (val == null) {
-            props.remove(prop);
-        } else {
-            props.put(prop, val);
+        try {
+            return Long.parseLong(v.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid time: " + value);
         }
-        cfg.update(props);
-
-        return null;
     }
-    
-    
 
     protected Configuration getConfiguration() throws IOException {
         Configuration cfg = getConfigAdmin().getConfiguration(CONFIGURATION_PID, null);
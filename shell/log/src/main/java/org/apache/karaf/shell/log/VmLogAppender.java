@@ -27,6 +27,8 @@ import org.ops4j.pax.logging.spi.PaxLoggingEvent;
 public class VmLogAppender implements PaxAppender {
 
     protected LruList events;
+    protected LogStatistics statistics;
+    protected RepeatedEventFilter filter;
 
     public LruList getEvents() {
         return events;
@@ -36,8 +38,33 @@ public class VmLogAppender implements PaxAppender {
         this.events = events;
     }
 
+    public LogStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(LogStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public RepeatedEventFilter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(RepeatedEventFilter filter) {
+        this.filter = filter;
+    }
+
     public void doAppend(PaxLoggingEvent event) {
+        if (statistics != null) {
+            statistics.record(event.getLoggerName(), LogStatistics.levelIndex(event.getLevel()));
+        }
         if (events != null) {
+            if (filter != null && filter.isEnabled()) {
+                event = filter.filter(event);
+                if (event == null) {
+                    return;
+                }
+            }
             event.getProperties(); // ensure MDC properties are copied
             events.add(event);
         }
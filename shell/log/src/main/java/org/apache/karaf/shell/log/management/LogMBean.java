@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.log.management;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * Log MBean exposing the rate of log events per logger and level,
+ * and allowing to change several log levels at once.
+ */
+public interface LogMBean {
+
+    String LOGGER_NAME = "Logger";
+    String LOGGER_RATE = "Rate";
+    String LOGGER_COUNT = "Count";
+    String LOGGER_FATAL = "Fatal";
+    String LOGGER_ERROR = "Error";
+    String LOGGER_WARN = "Warn";
+    String LOGGER_INFO = "Info";
+    String LOGGER_DEBUG = "Debug";
+    String LOGGER_TRACE = "Trace";
+
+    String[] LOGGER = { LOGGER_NAME, LOGGER_RATE, LOGGER_COUNT, LOGGER_FATAL, LOGGER_ERROR,
+            LOGGER_WARN, LOGGER_INFO, LOGGER_DEBUG, LOGGER_TRACE };
+
+    // Operations
+    void setLevel(String logger, String level) throws Exception;
+    void setLevels(String[] levels, long ttl) throws Exception;
+    TabularData getTopLoggers(int max) throws Exception;
+    void resetStatistics() throws Exception;
+
+    // Attributes
+    TabularData getStatistics() throws Exception;
+
+}
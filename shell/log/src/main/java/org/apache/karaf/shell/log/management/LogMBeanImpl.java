@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.log.management;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.karaf.shell.log.LogLevelManager;
+import org.apache.karaf.shell.log.LogStatistics;
+
+/**
+ * Implementation of the log MBean.
+ */
+public class LogMBeanImpl extends StandardMBean implements LogMBean {
+
+    static final CompositeType LOGGER_TYPE;
+    static final TabularType LOGGER_TABLE;
+
+    static {
+        LOGGER_TYPE = createLoggerType();
+        LOGGER_TABLE = createLoggerTableType();
+    }
+
+    private LogStatistics statistics;
+    private LogLevelManager manager;
+
+    public LogMBeanImpl() throws NotCompliantMBeanException {
+        super(LogMBean.class);
+    }
+
+    public void setStatistics(LogStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public void setManager(LogLevelManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Set the level of a single logger, ROOT or an empty name standing for the root logger.
+     */
+    public void setLevel(String logger, String level) throws Exception {
+        manager.setLevels(LogLevelManager.checkLevels(Collections.singletonMap(logger, level)), 0);
+    }
+
+    /**
+     * Set the levels given as <code>logger=LEVEL</code> pairs with a single configuration
+     * update, reverting them after <code>ttl</code> milliseconds if positive.
+     */
+    public void setLevels(String[] levels, long ttl) throws Exception {
+        manager.setLevels(LogLevelManager.parseLevels(Arrays.asList(levels)), ttl);
+    }
+
+    public TabularData getStatistics() throws Exception {
+        return tableFrom(statistics.getLoggers());
+    }
+
+    public TabularData getTopLoggers(int max) throws Exception {
+        return tableFrom(statistics.getTopLoggers(max));
+    }
+
+    public void resetStatistics() throws Exception {
+        statistics.reset();
+    }
+
+    static TabularData tableFrom(List<LogStatistics.LoggerStatistics> loggers) throws OpenDataException {
+        TabularDataSupport table = new TabularDataSupport(LOGGER_TABLE);
+        for (LogStatistics.LoggerStatistics stats : loggers) {
+            Object[] itemValues = new Object[LOGGER.length];
+            itemValues[0] = stats.getName();
+            itemValues[1] = stats.getRate();
+            itemValues[2] = stats.getCount();
+            itemValues[3] = stats.getCount(LogStatistics.FATAL);
+            itemValues[4] = stats.getCount(LogStatistics.ERROR);
+            itemValues[5] = stats.getCount(LogStatistics.WARN);
+            itemValues[6] = stats.getCount(LogStatistics.INFO);
+            itemValues[7] = stats.getCount(LogStatistics.DEBUG);
+            itemValues[8] = stats.getCount(LogStatistics.TRACE);
+            table.put(new CompositeDataSupport(LOGGER_TYPE, LOGGER, itemValues));
+        }
+        return table;
+    }
+
+    private static CompositeType createLoggerType() {
+        try {
+            OpenType[] itemTypes = new OpenType[LOGGER.length];
+            String[] descriptions = new String[LOGGER.length];
+            itemTypes[0] = SimpleType.STRING;
+            descriptions[0] = "The name of the logger.";
+            itemTypes[1] = SimpleType.DOUBLE;
+            descriptions[1] = "The one minute rate of events, in events per second.";
+            itemTypes[2] = SimpleType.LONG;
+            descriptions[2] = "The total number of events.";
+            for (int i = 3; i < LOGGER.length; i++) {
+                itemTypes[i] = SimpleType.LONG;
+                descriptions[i] = "The number of " + LOGGER[i].toUpperCase() + " events.";
+            }
+            return new CompositeType("Logger", "This type describes the statistics of a logger", LOGGER, descriptions, itemTypes);
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build logger type", e);
+        }
+    }
+
+    private static TabularType createLoggerTableType() {
+        try {
+            return new TabularType("Loggers", "Table of the logger statistics", LOGGER_TYPE, new String[] { LOGGER_NAME });
+        } catch (OpenDataException e) {
+            throw new IllegalStateException("Unable to build logger table type", e);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link LogStatistics}
+ */
+public class LogStatisticsTest extends TestCase {
+
+    public void testCounts() {
+        LogStatistics statistics = new LogStatistics();
+        for (int i = 0; i < 10; i++) {
+            statistics.record("org.apache.karaf.a", LogStatistics.INFO);
+        }
+        statistics.record("org.apache.karaf.a", LogStatistics.ERROR);
+        statistics.record("org.apache.karaf.b", LogStatistics.DEBUG);
+
+        List<LogStatistics.LoggerStatistics> loggers = statistics.getLoggers();
+        assertEquals(2, loggers.size());
+        LogStatistics.LoggerStatistics a = loggers.get(0).getName().equals("org.apache.karaf.a") ? loggers.get(0) : loggers.get(1);
+        assertEquals(11, a.getCount());
+        assertEquals(10, a.getCount(LogStatistics.INFO));
+        assertEquals(1, a.getCount(LogStatistics.ERROR));
+
+        statistics.reset();
+        assertTrue(statistics.getLoggers().isEmpty());
+    }
+
+    public void testTopLoggersByRate() {
+        LogStatistics statistics = new LogStatistics();
+        for (int i = 0; i < 100; i++) {
+            statistics.record("flood", LogStatistics.WARN);
+        }
+        statistics.record("quiet", LogStatistics.INFO);
+        statistics.tickIfNecessary(System.nanoTime() + LogStatistics.TICK_INTERVAL_NANOS + 1);
+
+        List<LogStatistics.LoggerStatistics> top = statistics.getTopLoggers(1);
+        assertEquals(1, top.size());
+        assertEquals("flood", top.get(0).getName());
+        assertEquals(100.0 / LogStatistics.TICK_INTERVAL, top.get(0).getRate(LogStatistics.WARN), 0.001);
+    }
+
+    public void testDecay() {
+        LogStatistics.LoggerStatistics stats = new LogStatistics.LoggerStatistics("a");
+        for (int i = 0; i < 100; i++) {
+            stats.mark(LogStatistics.WARN);
+        }
+        stats.tick(1);
+        double rate = 100.0 / LogStatistics.TICK_INTERVAL;
+        assertEquals(rate, stats.getRate(LogStatistics.WARN), 0.001);
+
+        // ten ticks at once decay as much as ten ticks without events
+        stats.tick(10);
+        for (int i = 0; i < 10; i++) {
+            rate -= LogStatistics.ALPHA * rate;
+        }
+        assertEquals(rate, stats.getRate(LogStatistics.WARN), 0.000001);
+
+        // a long time without events
+        stats.tick(Long.MAX_VALUE / LogStatistics.TICK_INTERVAL_NANOS);
+        assertEquals(0.0, stats.getRate(LogStatistics.WARN), 0.0);
+    }
+
+}
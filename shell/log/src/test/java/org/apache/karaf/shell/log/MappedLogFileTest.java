@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link MappedLogFile}
+ */
+public class MappedLogFileTest extends TestCase {
+
+    private File file;
+    private SimpleDateFormat format;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        format = new SimpleDateFormat(LogSearch.DEFAULT_DATE_FORMAT);
+        file = File.createTempFile("karaf", ".log");
+        Writer w = new FileWriter(file);
+        try {
+            long time = format.parse("2012-01-01 00:00:00,000").getTime();
+            for (int i = 0; i < 20000; i++) {
+                w.write(format.format(time + i * 1000L) + " | INFO  | main | Test | event " + i + "\n");
+                if (i % 1000 == 0) {
+                    w.write("java.lang.Exception: failure " + i + "\n");
+                    w.write("\tat Test.main(Test.java:1)\n");
+                }
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testSearchWholeFile() throws Exception {
+        List<String> lines = search("failure", null, null);
+        assertEquals(20, lines.size());
+        assertEquals("java.lang.Exception: failure 0", lines.get(0));
+    }
+
+    public void testSearchTimeRange() throws Exception {
+        List<String> lines = search("event|failure", "2012-01-01 01:00:00,000", "2012-01-01 01:00:09,000");
+        assertEquals(10, lines.size());
+        assertTrue(lines.get(0).endsWith("event 3600"));
+        assertTrue(lines.get(9).endsWith("event 3609"));
+    }
+
+    public void testSearchIncludesContinuationLines() throws Exception {
+        List<String> lines = search("failure", "2012-01-01 00:16:40,000", "2012-01-01 00:16:40,000");
+        assertEquals(1, lines.size());
+        assertEquals("java.lang.Exception: failure 1000", lines.get(0));
+    }
+
+    public void testIndexOffsets() throws Exception {
+        MappedLogFile log = new MappedLogFile(file);
+        log.buildIndex(format);
+        long from = format.parse("2012-01-01 03:00:00,000").getTime();
+        assertTrue(log.getStartOffset(from) > 0);
+        assertTrue(log.getStartOffset(from) < log.getEndOffset(from));
+        assertTrue(log.getEndOffset(from) < log.getLength());
+    }
+
+    private List<String> search(String regex, String from, String to) throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        new MappedLogFile(file).search(Pattern.compile(regex), format,
+                from != null ? LogSearch.parseTime(from) : Long.MIN_VALUE,
+                to != null ? LogSearch.parseTime(to) : Long.MAX_VALUE,
+                new MappedLogFile.Listener() {
+                    public boolean onMatch(MappedLogFile file, String line) {
+                        lines.add(line);
+                        return true;
+                    }
+                });
+        return lines;
+    }
+
+}
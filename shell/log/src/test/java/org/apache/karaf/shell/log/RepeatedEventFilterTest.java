@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.shell.log;
+
+import junit.framework.TestCase;
+
+import org.easymock.EasyMock;
+import org.ops4j.pax.logging.spi.PaxLevel;
+import org.ops4j.pax.logging.spi.PaxLoggingEvent;
+
+/**
+ * Test cases for {@link RepeatedEventFilter}
+ */
+public class RepeatedEventFilterTest extends TestCase {
+
+    public void testDisabled() {
+        RepeatedEventFilter filter = new RepeatedEventFilter();
+        assertFalse(filter.isEnabled());
+        PaxLoggingEvent event = event("logger", "message", 0);
+        assertSame(event, filter.filter(event));
+    }
+
+    public void testCollapseRepeatedEvents() {
+        RepeatedEventFilter filter = new RepeatedEventFilter();
+        filter.setWindow(1000);
+
+        PaxLoggingEvent first = filter.filter(event("logger", "message", 0));
+        assertNotNull(first);
+        assertNull(filter.filter(event("logger", "message", 10)));
+        assertNull(filter.filter(event("logger", "message", 20)));
+        assertNotNull(filter.filter(event("logger", "other message", 30)));
+        assertEquals("message [repeated 3 times]", first.getRenderedMessage());
+
+        PaxLoggingEvent next = filter.filter(event("logger", "message", 1000));
+        assertNotNull(next);
+        assertEquals("message", next.getRenderedMessage());
+    }
+
+    public void testSampleFloods() {
+        RepeatedEventFilter filter = new RepeatedEventFilter();
+        filter.setMaxRate(2);
+
+        assertNotNull(filter.filter(event("logger", "m1", 0)));
+        assertNotNull(filter.filter(event("logger", "m2", 10)));
+        assertNull(filter.filter(event("logger", "m3", 20)));
+        assertNull(filter.filter(event("logger", "m4", 30)));
+        assertNotNull(filter.filter(event("other", "m5", 40)));
+
+        PaxLoggingEvent next = filter.filter(event("logger", "m6", 1000));
+        assertEquals("m6 [2 previous events dropped]", next.getRenderedMessage());
+    }
+
+    private PaxLoggingEvent event(String logger, String message, long timestamp) {
+        PaxLevel level = EasyMock.createMock(PaxLevel.class);
+        EasyMock.expect(level.toInt()).andReturn(20000).anyTimes();
+        PaxLoggingEvent event = EasyMock.createMock(PaxLoggingEvent.class);
+        EasyMock.expect(event.getLoggerName()).andReturn(logger).anyTimes();
+        EasyMock.expect(event.getLevel()).andReturn(level).anyTimes();
+        EasyMock.expect(event.getMessage()).andReturn(message).anyTimes();
+        EasyMock.expect(event.getRenderedMessage()).andReturn(message).anyTimes();
+        EasyMock.expect(event.getThrowableStrRep()).andReturn(null).anyTimes();
+        EasyMock.expect(event.getTimeStamp()).andReturn(timestamp).anyTimes();
+        EasyMock.replay(level, event);
+        return event;
+    }
+
+}
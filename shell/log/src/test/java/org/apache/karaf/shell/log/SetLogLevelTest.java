@@ -19,6 +19,7 @@ package org.apache.karaf.shell.log;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Hashtable;
 
 import junit.framework.TestCase;
@@ -150,6 +151,123 @@ public class SetLogLevelTest extends TestCase {
                    stderr.toString().contains("Can not unset the ROOT logger"));
     }
     
+    public void testSetSeveralLogLevels() throws Exception {
+        properties.put(PACKAGE_LOGGER, "DEBUG, APPENDER1");
+
+        command.level = "org.apache.karaf.test=info";
+        command.logger = "org.apache.karaf.other=TRACE";
+        command.levels = Arrays.asList("ROOT=WARN");
+        command.doExecute();
+
+        assertEquals("INFO, APPENDER1", properties.get(PACKAGE_LOGGER));
+        assertEquals("TRACE", properties.get("log4j.logger.org.apache.karaf.other"));
+        assertEquals("WARN", properties.get(ROOT_LOGGER));
+    }
+
+    public void testInvalidLogLevelPair() throws Exception {
+        command.level = "org.apache.karaf.test=INFO";
+        command.logger = "org.apache.karaf.other";
+        command.doExecute();
+
+        assertFalse(properties.containsKey(PACKAGE_LOGGER));
+        assertTrue("Expected an error message on System.err",
+                   stderr.toString().contains("expected logger=LEVEL"));
+    }
+
+    public void testTemporaryLogLevel() throws Exception {
+        properties.put(PACKAGE_LOGGER, "INFO");
+
+        final Configuration configuration = EasyMock.createMock(Configuration.class);
+        EasyMock.expect(configuration.getProperties()).andReturn(properties).times(2);
+        configuration.update(properties);
+        EasyMock.expectLastCall().times(2);
+        EasyMock.replay(configuration);
+        LogLevelManager manager = new LogLevelManager() {
+            @Override
+            protected Configuration getConfiguration() throws IOException {
+                return configuration;
+            }
+        };
+        command = new SetLogLevel() {
+            @Override
+            protected Configuration getConfiguration() throws IOException {
+                return configuration;
+            }
+        };
+        command.setManager(manager);
+        command.ttl = "100ms";
+        runCommand("log:set DEBUG org.apache.karaf.test");
+
+        assertEquals("DEBUG", properties.get(PACKAGE_LOGGER));
+        for (int i = 0; i < 50 && "DEBUG".equals(properties.get(PACKAGE_LOGGER)); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("INFO", properties.get(PACKAGE_LOGGER));
+        manager.destroy();
+    }
+
+    public void testFailedTemporaryLogLevel() throws Exception {
+        properties.put(PACKAGE_LOGGER, "INFO");
+        final Hashtable current = new Hashtable();
+        current.put(PACKAGE_LOGGER, "WARN");
+
+        Configuration failing = EasyMock.createMock(Configuration.class);
+        EasyMock.expect(failing.getProperties()).andReturn(properties);
+        failing.update(properties);
+        EasyMock.expectLastCall().andThrow(new IOException("failed"));
+        final Configuration configuration = EasyMock.createMock(Configuration.class);
+        EasyMock.expect(configuration.getProperties()).andReturn(current).anyTimes();
+        EasyMock.replay(failing, configuration);
+        LogLevelManager manager = new LogLevelManager() {
+            @Override
+            protected Configuration getConfiguration() throws IOException {
+                return configuration;
+            }
+        };
+        try {
+            manager.setLevels(failing, LogLevelManager.parseLevels(Arrays.asList("org.apache.karaf.test=DEBUG")), 60000);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // the level has not been changed, so there is nothing to revert
+        manager.destroy();
+        assertEquals("WARN", current.get(PACKAGE_LOGGER));
+        EasyMock.verify(failing, configuration);
+    }
+
+    public void testDestroyWithoutConfigAdmin() throws Exception {
+        properties.put(PACKAGE_LOGGER, "INFO");
+
+        final Configuration configuration = EasyMock.createMock(Configuration.class);
+        EasyMock.expect(configuration.getProperties()).andReturn(properties);
+        configuration.update(properties);
+        EasyMock.replay(configuration);
+        LogLevelManager manager = new LogLevelManager() {
+            @Override
+            protected Configuration getConfiguration() throws IOException {
+                return configuration;
+            }
+        };
+        manager.setLevels(LogLevelManager.parseLevels(Arrays.asList("org.apache.karaf.test=DEBUG")), 60000);
+        assertEquals("DEBUG", properties.get(PACKAGE_LOGGER));
+
+        // ConfigurationAdmin went away first, do not block on it
+        manager.unbindConfigAdmin(null);
+        manager.destroy();
+        assertEquals("DEBUG", properties.get(PACKAGE_LOGGER));
+        EasyMock.verify(configuration);
+    }
+
+    public void testParseTime() throws Exception {
+        assertEquals(500, SetLogLevel.parseTime("500ms"));
+        assertEquals(30000, SetLogLevel.parseTime("30s"));
+        assertEquals(30000, SetLogLevel.parseTime("30"));
+        assertEquals(600000, SetLogLevel.parseTime("10m"));
+        assertEquals(3600000, SetLogLevel.parseTime("1h"));
+    }
+
     /*
      * Simulate running the log:set command
      */
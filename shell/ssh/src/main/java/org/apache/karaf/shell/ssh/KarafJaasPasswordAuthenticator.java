@@ -30,6 +30,7 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.security.auth.login.FailedLoginException;
 import javax.security.auth.login.LoginContext;
 
+import org.apache.karaf.jaas.boot.AuthenticationCache;
 import org.apache.sshd.common.Session;
 import org.apache.sshd.server.PasswordAuthenticator;
 import org.apache.sshd.server.session.ServerSession;
@@ -43,6 +44,7 @@ public class KarafJaasPasswordAuthenticator implements PasswordAuthenticator {
 
     private String realm;
     private String role;
+    private final AuthenticationCache cache = new AuthenticationCache();
 
     public String getRealm() {
         return realm;
@@ -60,23 +62,42 @@ public class KarafJaasPasswordAuthenticator implements PasswordAuthenticator {
         this.role = role;
     }
 
+    /**
+     * The time in milliseconds successful logins are cached, 0 to disable the cache.
+     */
+    public long getCacheTimeToLive() {
+        return cache.getTimeToLive();
+    }
+
+    public void setCacheTimeToLive(long timeToLive) {
+        cache.setTimeToLive(timeToLive);
+    }
+
+    public AuthenticationCache getCache() {
+        return cache;
+    }
+
     public boolean authenticate(final String username, final String password, final ServerSession session) {
         try {
-            Subject subject = new Subject();
-            LoginContext loginContext = new LoginContext(realm, subject, new CallbackHandler() {
-                public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
-                    for (Callback callback : callbacks) {
-                        if (callback instanceof NameCallback) {
-                            ((NameCallback) callback).setName(username);
-                        } else if (callback instanceof PasswordCallback) {
-                            ((PasswordCallback) callback).setPassword(password.toCharArray());
-                        } else {
-                            throw new UnsupportedCallbackException(callback);
+            Subject subject = cache.get(realm, username, password);
+            if (subject == null) {
+                subject = new Subject();
+                LoginContext loginContext = new LoginContext(realm, subject, new CallbackHandler() {
+                    public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                        for (Callback callback : callbacks) {
+                            if (callback instanceof NameCallback) {
+                                ((NameCallback) callback).setName(username);
+                            } else if (callback instanceof PasswordCallback) {
+                                ((PasswordCallback) callback).setPassword(password.toCharArray());
+                            } else {
+                                throw new UnsupportedCallbackException(callback);
+                            }
                         }
                     }
-                }
-            });
-            loginContext.login();
+                });
+                loginContext.login();
+                cache.put(realm, username, password, subject);
+            }
             if (role != null && role.length() > 0) {
                 String clazz = "org.apache.karaf.jaas.modules.RolePrincipal";
                 String name = role;
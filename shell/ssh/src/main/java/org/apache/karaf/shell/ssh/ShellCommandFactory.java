@@ -25,6 +25,17 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.security.auth.Subject;
 
 import org.apache.felix.service.command.CommandProcessor;
@@ -35,20 +46,180 @@ import org.apache.sshd.server.Environment;
 import org.apache.sshd.server.ExitCallback;
 import org.apache.sshd.server.SessionAware;
 import org.apache.sshd.server.session.ServerSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Executes the commands of ssh exec channels.
+ *
+ * Commands are not run in the sshd callback but on a bounded thread pool,
+ * so that long running commands do not hold the sshd threads.  The number
+ * of commands running or queued can be limited for each user.
+ */
 public class ShellCommandFactory implements CommandFactory {
 
+    public static final int EXIT_SUCCESS = 0;
+    public static final int EXIT_FAILURE = 1;
+    public static final int EXIT_REJECTED = 2;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShellCommandFactory.class);
+
     private CommandProcessor commandProcessor;
+    private int threads;
+    private int queueSize = 64;
+    private int maxPerUser;
+
+    private ThreadPoolExecutor executor;
+    /**
+     * Number of commands running or queued for each user having some.
+     */
+    private final Map<String, Integer> users = new HashMap<String, Integer>();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
 
     public void setCommandProcessor(CommandProcessor commandProcessor) {
         this.commandProcessor = commandProcessor;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Maximum number of commands executed concurrently, defaults to twice the number of processors.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Maximum number of commands waiting for a thread before new ones are rejected.
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getMaxPerUser() {
+        return maxPerUser;
+    }
+
+    /**
+     * Maximum number of commands running or waiting for each user, unlimited if not positive.
+     */
+    public void setMaxPerUser(int maxPerUser) {
+        this.maxPerUser = maxPerUser;
+    }
+
     public Command createCommand(String command) {
         return new ShellCommand(command);
     }
 
-    public class ShellCommand implements Command, SessionAware {
+    public void destroy() {
+        ThreadPoolExecutor e;
+        synchronized (this) {
+            e = executor;
+            executor = null;
+        }
+        if (e != null) {
+            e.shutdownNow();
+        }
+    }
+
+    public int getActiveCount() {
+        ThreadPoolExecutor e = executor;
+        return e != null ? e.getActiveCount() : 0;
+    }
+
+    public int getQueuedCount() {
+        ThreadPoolExecutor e = executor;
+        return e != null ? e.getQueue().size() : 0;
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Average time spent by the commands waiting for a thread, in milliseconds.
+     */
+    public long getAverageWaitTime() {
+        long count = completed.get() + failed.get();
+        return count > 0 ? TimeUnit.NANOSECONDS.toMillis(waitTime.get() / count) : 0;
+    }
+
+    protected synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors() * 2;
+            executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "Karaf ssh command " + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // do not keep idle threads around, the factory is not always destroyed
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    boolean acquire(String user) {
+        if (maxPerUser <= 0 || user == null) {
+            return true;
+        }
+        synchronized (users) {
+            Integer count = users.get(user);
+            int n = count != null ? count : 0;
+            if (n >= maxPerUser) {
+                return false;
+            }
+            users.put(user, n + 1);
+            return true;
+        }
+    }
+
+    void release(String user) {
+        if (maxPerUser <= 0 || user == null) {
+            return;
+        }
+        synchronized (users) {
+            Integer count = users.get(user);
+            if (count == null) {
+                return;
+            }
+            // forget the users without commands, there may be many of them
+            if (count > 1) {
+                users.put(user, count - 1);
+            } else {
+                users.remove(user);
+            }
+        }
+    }
+
+    int getUserCount() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    public class ShellCommand implements Command, SessionAware, Runnable {
 
         private String command;
         private InputStream in;
@@ -56,6 +227,10 @@ public class ShellCommandFactory implements CommandFactory {
         private OutputStream err;
         private ExitCallback callback;
         private ServerSession session;
+        private String user;
+        private long submitted;
+        private volatile Future<?> future;
+        private final AtomicBoolean started = new AtomicBoolean();
 
         public ShellCommand(String command) {
             this.command = command;
@@ -82,8 +257,34 @@ public class ShellCommandFactory implements CommandFactory {
         }
 
         public void start(final Environment env) throws IOException {
+            if (started.get()) {
+                // already destroyed
+                return;
+            }
+            user = session != null ? session.getUsername() : null;
+            if (!acquire(user)) {
+                reject("Too many commands running for user " + user);
+                return;
+            }
+            submitted = System.nanoTime();
+            try {
+                future = getExecutor().submit(this);
+            } catch (RejectedExecutionException e) {
+                release(user);
+                reject("Too many commands running, try again later");
+            }
+        }
+
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                // destroyed before being started
+                return;
+            }
+            waitTime.addAndGet(System.nanoTime() - submitted);
+            int exitValue = EXIT_SUCCESS;
+            PrintStream errStream = new PrintStream(err, true);
             try {
-                final CommandSession session = commandProcessor.createSession(in, new PrintStream(out), new PrintStream(err));
+                final CommandSession session = commandProcessor.createSession(in, new PrintStream(out, true), errStream);
                 Subject subject = this.session != null ? this.session.getAttribute(KarafJaasPasswordAuthenticator.SUBJECT_ATTRIBUTE_KEY) : null;
                 if (subject != null) {
                     try {
@@ -99,23 +300,52 @@ public class ShellCommandFactory implements CommandFactory {
                 } else {
                     session.execute(command);
                 }
-            } catch (Exception e) {
-                throw (IOException) new IOException("Unable to start shell").initCause(e);
+                completed.incrementAndGet();
+            } catch (Throwable t) {
+                failed.incrementAndGet();
+                exitValue = EXIT_FAILURE;
+                LOGGER.debug("Error executing command " + command, t);
+                errStream.println("Error executing command: " + (t.getMessage() != null ? t.getMessage() : t.getClass().getName()));
             } finally {
+                release(user);
+                errStream.flush();
                 close(in, out, err);
-                callback.onExit(0);
+                callback.onExit(exitValue);
             }
         }
 
+        private void reject(String message) {
+            started.set(true);
+            rejected.incrementAndGet();
+            PrintStream errStream = new PrintStream(err, true);
+            errStream.println(message);
+            close(in, out, err);
+            callback.onExit(EXIT_REJECTED);
+        }
+
         public void destroy() {
-		}
+            Future<?> f = future;
+            if (f != null) {
+                f.cancel(true);
+            }
+            if (started.compareAndSet(false, true)) {
+                // still queued, the command will not run
+                release(user);
+                close(in, out, err);
+                if (callback != null) {
+                    callback.onExit(EXIT_FAILURE);
+                }
+            }
+        }
 
     }
 
     private static void close(Closeable... closeables) {
         for (Closeable c : closeables) {
             try {
-                c.close();
+                if (c != null) {
+                    c.close();
+                }
             } catch (IOException e) {
                 // Ignore
             }
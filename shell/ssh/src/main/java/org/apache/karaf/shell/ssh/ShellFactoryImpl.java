@@ -28,13 +28,23 @@ import java.io.PrintStream;
 import java.security.PrivilegedAction;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.security.auth.Subject;
 
 import jline.Terminal;
 import org.apache.felix.service.command.CommandProcessor;
 import org.apache.felix.service.command.CommandSession;
 import org.apache.felix.service.command.Function;
+import org.apache.karaf.shell.console.completer.CommandsIndex;
 import org.apache.karaf.shell.console.jline.Console;
+import org.apache.karaf.shell.console.jline.ConsoleStatistics;
 import org.apache.sshd.common.Factory;
 import org.apache.sshd.server.Command;
 import org.apache.sshd.server.Environment;
@@ -46,16 +56,58 @@ import org.osgi.service.blueprint.container.ReifiedType;
 /**
  * SSHD {@link org.apache.sshd.server.Command} factory which provides access to Shell.
  *
+ * The consoles and the commands they execute share a pool of threads: an
+ * idle session only uses the thread waiting for its input, commands using
+ * another pooled thread while they run.
+ *
  * @version $Rev: 731517 $ $Date: 2009-01-05 11:25:19 +0100 (Mon, 05 Jan 2009) $
  */
 public class ShellFactoryImpl implements Factory<Command>
 {
     private CommandProcessor commandProcessor;
+    private ExecutorService executor;
+    private ConsoleStatistics statistics;
+    private CommandsIndex commandsIndex;
 
     public void setCommandProcessor(CommandProcessor commandProcessor) {
         this.commandProcessor = commandProcessor;
     }
 
+    public void setStatistics(ConsoleStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public void setCommandsIndex(CommandsIndex commandsIndex) {
+        this.commandsIndex = commandsIndex;
+    }
+
+    public void destroy() {
+        ExecutorService e;
+        synchronized (this) {
+            e = executor;
+            executor = null;
+        }
+        if (e != null) {
+            e.shutdownNow();
+        }
+    }
+
+    protected synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "Karaf ssh shell " + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return executor;
+    }
+
     public Command create() {
         return new ShellImpl();
     }
@@ -72,6 +124,10 @@ public class ShellFactoryImpl implements Factory<Command>
 
         private ServerSession session;
 
+        private PrintStream consoleOut;
+
+        private PrintStream consoleErr;
+
         private boolean closed;
 
         public void setInputStream(final InputStream in) {
@@ -97,10 +153,14 @@ public class ShellFactoryImpl implements Factory<Command>
         public void start(final Environment env) throws IOException {
             try {
                 final Terminal terminal = new SshTerminal(env);
-                Console console = new Console(commandProcessor,
+                // the output is flushed by the console when prompting and shortly
+                // after commands write to it, errors are still flushed on each line
+                consoleOut = new PrintStream(new LfToCrLfFilterOutputStream(out, getExecutor()), false);
+                consoleErr = new PrintStream(new LfToCrLfFilterOutputStream(err), true);
+                final Console console = new Console(commandProcessor,
                                               in,
-                                              new PrintStream(new LfToCrLfFilterOutputStream(out), true),
-                                              new PrintStream(new LfToCrLfFilterOutputStream(err), true),
+                                              consoleOut,
+                                              consoleErr,
                                               terminal,
                                               new Runnable() {
                                                   public void run() {
@@ -123,8 +183,10 @@ public class ShellFactoryImpl implements Factory<Command>
                     }
                 });
                 session.put(".jline.terminal", terminal);
-                new Thread(console) {
-                    @Override
+                console.setExecutor(getExecutor());
+                console.setStatistics(statistics);
+                console.setCommandsIndex(commandsIndex);
+                getExecutor().execute(new Runnable() {
                     public void run() {
                         Subject subject = ShellImpl.this.session != null ? ShellImpl.this.session.getAttribute(KarafJaasPasswordAuthenticator.SUBJECT_ATTRIBUTE_KEY) : null;
                         if (subject != null) {
@@ -139,9 +201,9 @@ public class ShellFactoryImpl implements Factory<Command>
                         }
                     }
                     protected void doRun() {
-                        super.run();
+                        console.run();
                     }
-                }.start();
+                });
             } catch (Exception e) {
                 throw (IOException) new IOException("Unable to start shell").initCause(e);
             }
@@ -150,7 +212,7 @@ public class ShellFactoryImpl implements Factory<Command>
         public void destroy() {
             if (!closed) {
                 closed = true;
-                ShellFactoryImpl.flush(out, err);
+                ShellFactoryImpl.flush(consoleOut, consoleErr, out, err);
                 ShellFactoryImpl.close(in, out, err);
                 callback.onExit(0);
             }
@@ -161,7 +223,9 @@ public class ShellFactoryImpl implements Factory<Command>
     private static void flush(OutputStream... streams) {
         for (OutputStream s : streams) {
             try {
-                s.flush();
+                if (s != null) {
+                    s.flush();
+                }
             } catch (IOException e) {
                 // Ignore
             }
@@ -196,23 +260,134 @@ public class ShellFactoryImpl implements Factory<Command>
     }
 
     // TODO: remove this class when sshd use lf->crlf conversion by default
-    public class LfToCrLfFilterOutputStream extends FilterOutputStream {
-
+    /**
+     * Converts LF to CRLF, buffering the converted output so that it reaches
+     * the channel in blocks rather than byte by byte.  The output is only
+     * written when the buffer is full or when the stream is flushed.
+     *
+     * When given an executor, the stream also flushes itself a short delay
+     * after output has been buffered, so that the output of long running
+     * commands shows progressively without flushing on each line.
+     */
+    public static class LfToCrLfFilterOutputStream extends FilterOutputStream {
+
+        public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+        /**
+         * Delay in milliseconds between buffering output and flushing it.
+         */
+        public static final long FLUSH_DELAY = 20;
+
+        private final byte[] buf;
+        private final Executor flusher;
+        private int count;
         private boolean lastWasCr;
+        private boolean flushScheduled;
 
         public LfToCrLfFilterOutputStream(OutputStream out) {
+            this(out, DEFAULT_BUFFER_SIZE, null);
+        }
+
+        public LfToCrLfFilterOutputStream(OutputStream out, int size) {
+            this(out, size, null);
+        }
+
+        public LfToCrLfFilterOutputStream(OutputStream out, Executor flusher) {
+            this(out, DEFAULT_BUFFER_SIZE, flusher);
+        }
+
+        public LfToCrLfFilterOutputStream(OutputStream out, int size, Executor flusher) {
             super(out);
+            if (size < 2) {
+                throw new IllegalArgumentException("Buffer size must be at least 2: " + size);
+            }
+            this.buf = new byte[size];
+            this.flusher = flusher;
         }
 
         @Override
-        public void write(int b) throws IOException {
+        public synchronized void write(int b) throws IOException {
+            if (count > buf.length - 2) {
+                flushBuffer();
+            }
             if (!lastWasCr && b == '\n') {
-                out.write('\r');
-                out.write('\n');
-            } else {
-                out.write(b);
+                buf[count++] = '\r';
             }
+            buf[count++] = (byte) b;
             lastWasCr = b == '\r';
+            scheduleFlush();
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            byte[] buf = this.buf;
+            int limit = buf.length - 2;
+            int count = this.count;
+            boolean lastWasCr = this.lastWasCr;
+            for (int i = off, end = off + len; i < end; i++) {
+                byte c = b[i];
+                if (count > limit) {
+                    this.count = count;
+                    flushBuffer();
+                    count = 0;
+                }
+                if (c == '\n' && !lastWasCr) {
+                    buf[count++] = '\r';
+                }
+                buf[count++] = c;
+                lastWasCr = c == '\r';
+            }
+            this.count = count;
+            this.lastWasCr = lastWasCr;
+            scheduleFlush();
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            flushScheduled = false;
+            flushBuffer();
+            out.flush();
+        }
+
+        /**
+         * Flush the buffered output after a delay, unless a flush is already pending.
+         */
+        private void scheduleFlush() {
+            if (flusher == null || flushScheduled || count == 0) {
+                return;
+            }
+            flushScheduled = true;
+            try {
+                flusher.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            Thread.sleep(FLUSH_DELAY);
+                            synchronized (LfToCrLfFilterOutputStream.this) {
+                                if (flushScheduled) {
+                                    flush();
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            // the shell is being destroyed
+                        } catch (IOException e) {
+                            // the channel is closed
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled = false;
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (count > 0) {
+                int n = count;
+                count = 0;
+                out.write(buf, 0, n);
+            }
         }
 
     }
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh.management;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.karaf.shell.ssh.KarafJaasPasswordAuthenticator;
+import org.apache.karaf.shell.ssh.ShellCommandFactory;
+
+/**
+ * Implementation of the SSH MBean.
+ */
+public class SshMBeanImpl extends StandardMBean implements SshMBean {
+
+    private ShellCommandFactory commandFactory;
+    private KarafJaasPasswordAuthenticator passwordAuthenticator;
+
+    public SshMBeanImpl() throws NotCompliantMBeanException {
+        super(SshMBean.class);
+    }
+
+    public void setCommandFactory(ShellCommandFactory commandFactory) {
+        this.commandFactory = commandFactory;
+    }
+
+    public void setPasswordAuthenticator(KarafJaasPasswordAuthenticator passwordAuthenticator) {
+        this.passwordAuthenticator = passwordAuthenticator;
+    }
+
+    public int getExecActiveCount() {
+        return commandFactory.getActiveCount();
+    }
+
+    public int getExecQueuedCount() {
+        return commandFactory.getQueuedCount();
+    }
+
+    public long getExecCompletedCount() {
+        return commandFactory.getCompletedCount();
+    }
+
+    public long getExecFailedCount() {
+        return commandFactory.getFailedCount();
+    }
+
+    public long getExecRejectedCount() {
+        return commandFactory.getRejectedCount();
+    }
+
+    public long getExecAverageWaitTime() {
+        return commandFactory.getAverageWaitTime();
+    }
+
+    public long getAuthenticationCacheHits() {
+        return passwordAuthenticator.getCache().getHits();
+    }
+
+    public long getAuthenticationCacheMisses() {
+        return passwordAuthenticator.getCache().getMisses();
+    }
+
+    public int getAuthenticationCacheSize() {
+        return passwordAuthenticator.getCache().getSize();
+    }
+
+    public void clearAuthenticationCache() {
+        passwordAuthenticator.getCache().clear();
+    }
+
+}
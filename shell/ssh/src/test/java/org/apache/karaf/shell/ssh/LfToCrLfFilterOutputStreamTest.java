@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import org.apache.karaf.shell.ssh.ShellFactoryImpl.LfToCrLfFilterOutputStream;
+
+/**
+ * Test cases for {@link LfToCrLfFilterOutputStream}
+ */
+public class LfToCrLfFilterOutputStreamTest extends TestCase {
+
+    public void testConversion() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        LfToCrLfFilterOutputStream os = new LfToCrLfFilterOutputStream(baos);
+        os.write("a\nb\r\nc".getBytes());
+        os.write('\n');
+        os.write('\r');
+        os.write("\nd\n".getBytes());
+        assertEquals(0, baos.size());
+        os.flush();
+        assertEquals("a\r\nb\r\nc\r\n\r\nd\r\n", baos.toString());
+    }
+
+    public void testSmallBuffer() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("line ").append(i).append(i % 7 == 0 ? "\r\n" : "\n");
+        }
+        String expected = sb.toString().replace("\r\n", "\n").replace("\n", "\r\n");
+        for (int size = 2; size < 12; size++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            LfToCrLfFilterOutputStream os = new LfToCrLfFilterOutputStream(baos, size);
+            byte[] b = sb.toString().getBytes();
+            // split the output so that some CR LF pairs are written separately
+            for (int off = 0; off < b.length; off += 5) {
+                os.write(b, off, Math.min(5, b.length - off));
+            }
+            os.close();
+            assertEquals(expected, baos.toString());
+        }
+    }
+
+    /**
+     * Large outputs reach the channel in a few large writes instead of one
+     * write per byte.
+     */
+    public void testBufferedWrites() throws Exception {
+        byte[] line = "    123 | Active   |  80 | 3.0.0.SNAPSHOT   | Apache Karaf :: Shell :: SSH\n".getBytes();
+        int lines = 1000;
+        CountingOutputStream channel = new CountingOutputStream();
+        PrintStream ps = new PrintStream(new LfToCrLfFilterOutputStream(channel), false);
+        for (int i = 0; i < lines; i++) {
+            ps.write(line);
+        }
+        ps.flush();
+        assertEquals((long) lines * (line.length + 1), channel.bytes);
+        assertTrue(channel.writes <= channel.bytes / LfToCrLfFilterOutputStream.DEFAULT_BUFFER_SIZE + 1);
+    }
+
+    /**
+     * Buffered output is flushed shortly after being written when the stream
+     * has an executor, without flushing it explicitly.
+     */
+    public void testFlushOnOutput() throws Exception {
+        CountingOutputStream channel = new CountingOutputStream();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            PrintStream ps = new PrintStream(new LfToCrLfFilterOutputStream(channel, executor), false);
+            ps.println("some progress");
+            for (int i = 0; i < 100 && channel.getBytes() == 0; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals("some progress\r\n".length(), channel.getBytes());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts the bytes and the write calls reaching the channel.
+     */
+    static class CountingOutputStream extends OutputStream {
+        long bytes;
+        long writes;
+
+        public synchronized void write(int b) {
+            bytes++;
+            writes++;
+        }
+
+        public synchronized void write(byte[] b, int off, int len) {
+            bytes += len;
+            writes++;
+        }
+
+        public synchronized long getBytes() {
+            return bytes;
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.shell.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import org.apache.felix.service.command.CommandProcessor;
+import org.apache.felix.service.command.CommandSession;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.ExitCallback;
+
+/**
+ * Test cases for {@link ShellCommandFactory}
+ */
+public class ShellCommandFactoryTest extends TestCase {
+
+    private ShellCommandFactory factory;
+    private CountDownLatch release;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        release = new CountDownLatch(0);
+        factory = new ShellCommandFactory();
+        factory.setCommandProcessor(createProcessor());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        factory.destroy();
+        super.tearDown();
+    }
+
+    public void testCommandsRunConcurrently() throws Exception {
+        factory.setThreads(8);
+        int count = 16;
+        Exit exit = new Exit(count);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            start(factory.createCommand("sleep 200"), exit, new ByteArrayOutputStream());
+        }
+        assertTrue(exit.latch.await(10, TimeUnit.SECONDS));
+        long duration = System.currentTimeMillis() - start;
+        // run serially, the commands would take 3.2 seconds
+        assertTrue("Took " + duration + " ms", duration < 1600);
+        assertEquals(count, exit.success.get());
+        assertEquals(count, factory.getCompletedCount());
+    }
+
+    public void testFailureExitCode() throws Exception {
+        Exit exit = new Exit(1);
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        start(factory.createCommand("fail"), exit, err);
+        assertTrue(exit.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(ShellCommandFactory.EXIT_FAILURE, exit.value.get());
+        assertTrue(err.toString().contains("Command failed"));
+        assertEquals(1, factory.getFailedCount());
+    }
+
+    public void testRejectedWhenQueueIsFull() throws Exception {
+        release = new CountDownLatch(1);
+        factory.setThreads(1);
+        factory.setQueueSize(1);
+        Exit exit = new Exit(3);
+        start(factory.createCommand("block"), exit, new ByteArrayOutputStream());
+        start(factory.createCommand("block"), exit, new ByteArrayOutputStream());
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        start(factory.createCommand("block"), exit, err);
+        assertEquals(ShellCommandFactory.EXIT_REJECTED, exit.value.get());
+        assertEquals(1, factory.getRejectedCount());
+        assertTrue(err.size() > 0);
+        release.countDown();
+        assertTrue(exit.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(2, exit.success.get());
+    }
+
+    public void testDestroyQueuedCommand() throws Exception {
+        release = new CountDownLatch(1);
+        factory.setThreads(1);
+        Exit exit = new Exit(2);
+        start(factory.createCommand("block"), exit, new ByteArrayOutputStream());
+        Command queued = factory.createCommand("block");
+        start(queued, exit, new ByteArrayOutputStream());
+        queued.destroy();
+        assertEquals(ShellCommandFactory.EXIT_FAILURE, exit.value.get());
+        assertEquals(1, exit.latch.getCount());
+        release.countDown();
+        assertTrue(exit.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, exit.success.get());
+    }
+
+    public void testUsersAreForgotten() throws Exception {
+        factory.setMaxPerUser(2);
+        assertTrue(factory.acquire("karaf"));
+        assertTrue(factory.acquire("karaf"));
+        assertFalse(factory.acquire("karaf"));
+        assertTrue(factory.acquire("other"));
+        assertEquals(2, factory.getUserCount());
+        factory.release("karaf");
+        factory.release("other");
+        assertEquals(1, factory.getUserCount());
+        factory.release("karaf");
+        assertEquals(0, factory.getUserCount());
+        assertTrue(factory.acquire("karaf"));
+    }
+
+    private void start(Command command, ExitCallback callback, ByteArrayOutputStream err) throws Exception {
+        command.setInputStream(new ByteArrayInputStream(new byte[0]));
+        command.setOutputStream(new ByteArrayOutputStream());
+        command.setErrorStream(err);
+        command.setExitCallback(callback);
+        command.start(null);
+    }
+
+    private CommandProcessor createProcessor() {
+        final CommandSession session = (CommandSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { CommandSession.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("execute".equals(method.getName())) {
+                            String command = args[0].toString();
+                            if (command.startsWith("sleep")) {
+                                Thread.sleep(Long.parseLong(command.substring(6)));
+                            } else if (command.equals("block")) {
+                                release.await();
+                            } else if (command.equals("fail")) {
+                                throw new IllegalStateException("Command failed");
+                            }
+                        }
+                        return null;
+                    }
+                });
+        return (CommandProcessor) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { CommandProcessor.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return "createSession".equals(method.getName()) ? session : null;
+                    }
+                });
+    }
+
+    static class Exit implements ExitCallback {
+
+        final CountDownLatch latch;
+        final AtomicInteger success = new AtomicInteger();
+        final AtomicInteger value = new AtomicInteger(-1);
+
+        Exit(int count) {
+            latch = new CountDownLatch(count);
+        }
+
+        public void onExit(int exitValue) {
+            onExit(exitValue, null);
+        }
+
+        public void onExit(int exitValue, String exitMessage) {
+            if (exitValue == ShellCommandFactory.EXIT_SUCCESS) {
+                success.incrementAndGet();
+            } else {
+                value.set(exitValue);
+            }
+            latch.countDown();
+        }
+
+    }
+
+}
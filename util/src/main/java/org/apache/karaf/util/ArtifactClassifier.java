@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Classifies deployed artifacts by only reading the root element of xml files
+ * or the manifest of jar files.
+ *
+ * The results are cached by path, size and modification time, so that
+ * deployers can be asked again about an unchanged artifact without reading it.
+ */
+public final class ArtifactClassifier {
+
+    /** Private constructors to avoid instantiation */
+    private ArtifactClassifier() { }
+
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final Map<String, Entry> CACHE = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static XMLInputFactory xmlInputFactory;
+
+    /**
+     * Returns the qualified name of the root element of an xml file, the namespace
+     * being empty if the element has none.
+     *
+     * @throws Exception if the file is not well formed up to its root element
+     */
+    public static QName getRootElement(File artifact) throws Exception {
+        Entry entry = getEntry(artifact, true);
+        if (entry.error != null) {
+            throw entry.error;
+        }
+        return entry.root;
+    }
+
+    /**
+     * Returns the manifest of a jar file, or <code>null</code> if it has none.
+     *
+     * @throws Exception if the file is not a valid jar
+     */
+    public static Manifest getManifest(File artifact) throws Exception {
+        Entry entry = getEntry(artifact, false);
+        if (entry.error != null) {
+            throw entry.error;
+        }
+        return entry.manifest;
+    }
+
+    /**
+     * Checks if a jar file is an OSGi bundle, i.e. its manifest defines both
+     * the symbolic name and the version of the bundle.
+     */
+    public static boolean isBundle(File artifact) throws Exception {
+        Manifest manifest = getManifest(artifact);
+        return manifest != null
+                && manifest.getMainAttributes().getValue(new Attributes.Name("Bundle-SymbolicName")) != null
+                && manifest.getMainAttributes().getValue(new Attributes.Name("Bundle-Version")) != null;
+    }
+
+    /**
+     * Removes all the cached results.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static Entry getEntry(File artifact, boolean xml) {
+        String path = artifact.getAbsolutePath();
+        long size = artifact.length();
+        long lastModified = artifact.lastModified();
+        synchronized (CACHE) {
+            Entry entry = CACHE.get(path);
+            if (entry != null && entry.xml == xml && entry.size == size && entry.lastModified == lastModified) {
+                return entry;
+            }
+        }
+        // read the file outside of the lock, a concurrent classification is harmless
+        Entry entry = new Entry(xml, size, lastModified);
+        try {
+            if (xml) {
+                entry.root = readRootElement(artifact);
+            } else {
+                entry.manifest = readManifest(artifact);
+            }
+        } catch (Exception e) {
+            entry.error = e;
+        }
+        synchronized (CACHE) {
+            CACHE.put(path, entry);
+        }
+        return entry;
+    }
+
+    static QName readRootElement(File artifact) throws Exception {
+        InputStream is = new BufferedInputStream(new FileInputStream(artifact));
+        try {
+            XMLStreamReader reader = getXmlInputFactory().createXMLStreamReader(is);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                        String uri = reader.getNamespaceURI();
+                        return new QName(uri != null ? uri : "", reader.getLocalName());
+                    }
+                }
+                throw new IOException("No root element in " + artifact);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    static Manifest readManifest(File artifact) throws IOException {
+        // the manifest is usually the first entry and read without looking at the rest of the jar
+        JarInputStream jis = new JarInputStream(new BufferedInputStream(new FileInputStream(artifact)));
+        try {
+            Manifest manifest = jis.getManifest();
+            if (manifest != null) {
+                return manifest;
+            }
+        } finally {
+            jis.close();
+        }
+        JarFile jar = new JarFile(artifact);
+        try {
+            return jar.getManifest();
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static synchronized XMLInputFactory getXmlInputFactory() {
+        if (xmlInputFactory == null) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            // only the root element is needed, do not load any external dtd
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            xmlInputFactory = factory;
+        }
+        return xmlInputFactory;
+    }
+
+    private static class Entry {
+
+        final boolean xml;
+        final long size;
+        final long lastModified;
+        QName root;
+        Manifest manifest;
+        Exception error;
+
+        Entry(boolean xml, long size, long lastModified) {
+            this.xml = xml;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+}
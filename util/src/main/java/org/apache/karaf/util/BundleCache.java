@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk cache of the bundles generated by the deployers from the content of
+ * an artifact, so that opening the url of an unchanged artifact again only
+ * reads a file.
+ *
+ * Bundles are keyed by a SHA-1 digest of the url and content of the artifact,
+ * and of a prefix identifying the generator.  The least recently used bundles
+ * are evicted once the cache exceeds its maximum size.  Failures to write the
+ * cache are ignored, the generated bundle being returned anyway.
+ */
+public class BundleCache {
+
+    public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    private static final String SUFFIX = ".jar";
+
+    /**
+     * Generates a bundle from the content of an artifact.
+     */
+    public interface Generator {
+
+        void generate(URL url, byte[] data, OutputStream os) throws Exception;
+
+    }
+
+    private final File directory;
+    private final String prefix;
+    private final long maxSize;
+
+    private long size = -1;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public BundleCache(File directory, String prefix, long maxSize) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the bundle generated from the given artifact, generating it
+     * if it is not in the cache yet.
+     */
+    public InputStream getBundle(URL url, byte[] data, Generator generator) throws Exception {
+        File file = new File(directory, getKey(url, data) + SUFFIX);
+        if (file.isFile()) {
+            try {
+                InputStream is = new FileInputStream(file);
+                file.setLastModified(System.currentTimeMillis());
+                synchronized (this) {
+                    hits++;
+                }
+                return is;
+            } catch (FileNotFoundException e) {
+                // evicted in the meantime
+            }
+        }
+        synchronized (this) {
+            misses++;
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        generator.generate(url, data, os);
+        os.close();
+        byte[] bundle = os.toByteArray();
+        store(file, bundle);
+        return new ByteArrayInputStream(bundle);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the total size of the cached bundles.
+     */
+    public synchronized long getSize() {
+        return computeSize();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Removes all the cached bundles.
+     */
+    public synchronized void clear() {
+        File[] files = listFiles();
+        for (File file : files) {
+            file.delete();
+        }
+        size = 0;
+    }
+
+    private void store(File file, byte[] bundle) {
+        File temp = null;
+        try {
+            directory.mkdirs();
+            temp = File.createTempFile("bundle", ".tmp", directory);
+            OutputStream os = new FileOutputStream(temp);
+            try {
+                os.write(bundle);
+            } finally {
+                os.close();
+            }
+            synchronized (this) {
+                file.delete();
+                if (temp.renameTo(file)) {
+                    temp = null;
+                }
+                // recompute the size, the same bundle may have been stored concurrently
+                size = -1;
+                computeSize();
+                evict();
+            }
+        } catch (IOException e) {
+            // the cache is only an optimization
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used bundles until the cache fits in its maximum size.
+     */
+    private void evict() {
+        if (size <= maxSize) {
+            return;
+        }
+        File[] files = listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : m1 > m2 ? 1 : 0;
+            }
+        });
+        for (int i = 0; i < files.length && size > maxSize; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+                evictions++;
+            }
+        }
+    }
+
+    private long computeSize() {
+        if (size < 0) {
+            size = 0;
+            for (File file : listFiles()) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private File[] listFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(SUFFIX)) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    private String getKey(URL url, byte[] data) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(prefix.getBytes("UTF-8"));
+        digest.update((byte) 0);
+        digest.update(url.toExternalForm().getBytes("UTF-8"));
+        digest.update((byte) 0);
+        digest.update(data);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.karaf.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+public class ArtifactClassifierTest extends TestCase {
+
+    public void testRootElement() throws Exception {
+        File file = createFile("<?xml version='1.0'?>\n<!DOCTYPE beans SYSTEM 'http://localhost:1/none.dtd'>\n"
+                + "<!-- comment --><blueprint xmlns='http://www.osgi.org/xmlns/blueprint/v1.0.0'><bean");
+        try {
+            // the rest of the file, even if not well formed, is never read
+            assertEquals(new QName("http://www.osgi.org/xmlns/blueprint/v1.0.0", "blueprint"), ArtifactClassifier.getRootElement(file));
+
+            write(file, "<features/>");
+            assertEquals(new QName("", "features"), ArtifactClassifier.getRootElement(file));
+
+            write(file, "not xml");
+            try {
+                ArtifactClassifier.getRootElement(file);
+                fail("Expected an exception");
+            } catch (Exception e) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testCache() throws Exception {
+        File file = createFile("<a:features xmlns:a='urn:a'/>");
+        try {
+            assertEquals(new QName("urn:a", "features"), ArtifactClassifier.getRootElement(file));
+            // an unchanged file is not read again
+            long lastModified = file.lastModified();
+            OutputStream os = new FileOutputStream(file);
+            os.write("<a:beans    xmlns:a='urn:a'/>".getBytes());
+            os.close();
+            file.setLastModified(lastModified);
+            assertEquals(new QName("urn:a", "features"), ArtifactClassifier.getRootElement(file));
+            // but it is when its modification time changes
+            file.setLastModified(lastModified + 2000);
+            assertEquals(new QName("urn:a", "beans"), ArtifactClassifier.getRootElement(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testManifest() throws Exception {
+        File file = File.createTempFile("classifier", ".jar");
+        try {
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+            manifest.getMainAttributes().putValue("Bundle-SymbolicName", "test");
+            createJar(file, manifest);
+            assertFalse(ArtifactClassifier.isBundle(file));
+
+            manifest.getMainAttributes().putValue("Bundle-Version", "1.0");
+            createJar(file, manifest);
+            file.setLastModified(file.lastModified() + 2000);
+            assertTrue(ArtifactClassifier.isBundle(file));
+
+            createJar(file, null);
+            file.setLastModified(file.lastModified() + 4000);
+            assertNull(ArtifactClassifier.getManifest(file));
+            assertFalse(ArtifactClassifier.isBundle(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private File createFile(String content) throws Exception {
+        File file = File.createTempFile("classifier", ".xml");
+        write(file, content);
+        return file;
+    }
+
+    private void write(File file, String content) throws Exception {
+        long lastModified = file.lastModified();
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes());
+        } finally {
+            os.close();
+        }
+        // make sure the change is seen even with a coarse modification time
+        file.setLastModified(lastModified + 2000);
+    }
+
+    private void createJar(File file, Manifest manifest) throws Exception {
+        OutputStream os = new FileOutputStream(file);
+        JarOutputStream jos = manifest != null ? new JarOutputStream(os, manifest) : new JarOutputStream(os);
+        try {
+            jos.putNextEntry(new ZipEntry("test.txt"));
+            jos.write("test".getBytes());
+            jos.closeEntry();
+        } finally {
+            jos.close();
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.karaf.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+public class BundleCacheTest extends TestCase {
+
+    private File directory;
+    private int generated;
+
+    private final BundleCache.Generator generator = new BundleCache.Generator() {
+        public void generate(URL url, byte[] data, OutputStream os) throws Exception {
+            generated++;
+            os.write(url.toExternalForm().getBytes("UTF-8"));
+            os.write(data);
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = new File("target/bundle-cache-" + System.currentTimeMillis());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new BundleCache(directory, "test", 0).clear();
+        directory.delete();
+    }
+
+    public void testCache() throws Exception {
+        BundleCache cache = new BundleCache(directory, "test", BundleCache.DEFAULT_MAX_SIZE);
+        URL url = new URL("file:/foo.xml");
+
+        assertEquals("file:/foo.xml<a/>", read(cache.getBundle(url, "<a/>".getBytes(), generator)));
+        assertEquals("file:/foo.xml<a/>", read(cache.getBundle(url, "<a/>".getBytes(), generator)));
+        assertEquals(1, generated);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(17, cache.getSize());
+
+        // changed content and other url
+        assertEquals("file:/foo.xml<b/>", read(cache.getBundle(url, "<b/>".getBytes(), generator)));
+        assertEquals("file:/bar.xml<a/>", read(cache.getBundle(new URL("file:/bar.xml"), "<a/>".getBytes(), generator)));
+        assertEquals(3, generated);
+
+        // bundles survive a restart, but not a new version of the generator
+        cache = new BundleCache(directory, "test", BundleCache.DEFAULT_MAX_SIZE);
+        assertEquals("file:/foo.xml<a/>", read(cache.getBundle(url, "<a/>".getBytes(), generator)));
+        assertEquals(3, generated);
+        assertEquals(51, cache.getSize());
+        cache = new BundleCache(directory, "test2", BundleCache.DEFAULT_MAX_SIZE);
+        assertEquals("file:/foo.xml<a/>", read(cache.getBundle(url, "<a/>".getBytes(), generator)));
+        assertEquals(4, generated);
+    }
+
+    public void testEviction() throws Exception {
+        BundleCache cache = new BundleCache(directory, "test", 40);
+        URL url = new URL("file:/foo.xml");
+        cache.getBundle(url, "<a/>".getBytes(), generator);
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].setLastModified(System.currentTimeMillis() - 10000));
+        cache.getBundle(url, "<b/>".getBytes(), generator);
+        assertEquals(34, cache.getSize());
+
+        // the least recently used bundle is evicted
+        cache.getBundle(url, "<c/>".getBytes(), generator);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(34, cache.getSize());
+        assertEquals(2, directory.listFiles().length);
+        cache.getBundle(url, "<b/>".getBytes(), generator);
+        assertEquals(1, cache.getHits());
+        assertEquals(3, generated);
+    }
+
+    private static String read(InputStream is) throws Exception {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = is.read(buffer)) >= 0) {
+                os.write(buffer, 0, len);
+            }
+            return new String(os.toByteArray(), "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+}
@@ -22,16 +22,19 @@
 
 package org.apache.karaf.webconsole.gogo;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletException;
@@ -40,7 +43,9 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.felix.service.command.CommandProcessor;
 import org.apache.felix.service.command.CommandSession;
+import org.apache.karaf.shell.console.completer.CommandsIndex;
 import org.apache.karaf.shell.console.jline.Console;
+import org.apache.karaf.shell.console.jline.ConsoleStatistics;
 import org.apache.felix.webconsole.AbstractWebConsolePlugin;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
@@ -69,6 +74,10 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
 
     private CommandProcessor commandProcessor;
 
+    private ConsoleStatistics statistics;
+
+    private CommandsIndex commandsIndex;
+
     public void setBundleContext(BundleContext bundleContext)
     {
         this.bundleContext = bundleContext;
@@ -79,6 +88,16 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
         this.commandProcessor = commandProcessor;
     }
 
+    public void setStatistics(ConsoleStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    public void setCommandsIndex(CommandsIndex commandsIndex)
+    {
+        this.commandsIndex = commandsIndex;
+    }
+
     /*
     * Blueprint lifecycle callback methods
     */
@@ -182,34 +201,41 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
     }
 
 
-    public class SessionTerminal implements Runnable {
+    /**
+     * A console session displayed in a browser.  The keys sent by the browser
+     * are fed directly to the console and its output is decoded directly into
+     * the terminal emulator, so that a session only uses the console thread.
+     */
+    public class SessionTerminal {
 
         private Terminal terminal;
         private Console console;
-        private PipedOutputStream in;
-        private PipedInputStream out;
-        private boolean closed;
+        private volatile boolean closed;
 
         public SessionTerminal() throws IOException {
             try {
                 this.terminal = new Terminal(TERM_WIDTH, TERM_HEIGHT);
                 terminal.write("\u001b\u005B20\u0068"); // set newline mode on
 
-                in = new PipedOutputStream();
-                out = new PipedInputStream();
-                PrintStream pipedOut = new PrintStream(new PipedOutputStream(out), true);
+                PrintStream out = new PrintStream(new TerminalOutputStream(), true);
 
                 console = new Console(commandProcessor,
-                                      new PipedInputStream(in),
-                                      pipedOut,
-                                      pipedOut,
+                                      null,
+                                      out,
+                                      out,
                                       new WebTerminal(TERM_WIDTH, TERM_HEIGHT),
-                                      null);
+                                      new Runnable() {
+                                          public void run() {
+                                              closed = true;
+                                          }
+                                      });
                 CommandSession session = console.getSession();
                 session.put("APPLICATION", System.getProperty("karaf.name", "root"));
                 session.put("USER", "karaf");
                 session.put("COLUMNS", Integer.toString(TERM_WIDTH));
                 session.put("LINES", Integer.toString(TERM_HEIGHT));
+                console.setStatistics(statistics);
+                console.setCommandsIndex(commandsIndex);
             } catch (IOException e) {
                 e.printStackTrace();
                 throw e;
@@ -217,8 +243,7 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
                 e.printStackTrace();
                 throw (IOException) new IOException().initCause(e);
             }
-            new Thread(console).start();
-            new Thread(this).start();
+            new Thread(console, "Karaf web console").start();
         }
 
         public boolean isClosed() {
@@ -228,11 +253,8 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
         public String handle(String str, boolean forceDump) throws IOException {
             try {
                 if (str != null && str.length() > 0) {
-                    String d = terminal.pipe(str);
-                    for (byte b : d.getBytes()) {
-                        in.write(b);
-                    }
-                    in.flush();
+                    byte[] d = terminal.pipe(str).getBytes();
+                    console.processInput(d, 0, d.length);
                 }
             } catch (IOException e) {
                 closed = true;
@@ -245,34 +267,60 @@ public class GogoPlugin extends AbstractWebConsolePlugin {
             }
         }
 
-        public void run() {
-            try {
+        /**
+         * Decodes the output of the console into the terminal emulator.
+         */
+        private class TerminalOutputStream extends OutputStream {
+
+            private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            private final CharBuffer chars = CharBuffer.allocate(8192);
+            private ByteBuffer pending;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer bytes;
+                if (pending != null) {
+                    bytes = ByteBuffer.allocate(pending.remaining() + len);
+                    bytes.put(pending).put(b, off, len);
+                    bytes.flip();
+                } else {
+                    bytes = ByteBuffer.wrap(b, off, len);
+                }
+                StringBuilder sb = new StringBuilder();
                 for (;;) {
-                    byte[] buf = new byte[8192];
-                    int l = out.read(buf);
-                    InputStreamReader r = new InputStreamReader(new ByteArrayInputStream(buf, 0, l));
-                    StringBuilder sb = new StringBuilder();
-                    for (;;) {
-                        int c = r.read();
-                        if (c == -1) {
-                            break;
-                        }
-                        sb.append((char) c);
-                    }
-                    if (sb.length() > 0) {
-                        terminal.write(sb.toString());
-                    }
-                    String s = terminal.read();
-                    if (s != null && s.length() > 0) {
-                        for (byte b : s.getBytes()) {
-                            in.write(b);
-                        }
+                    CoderResult result = decoder.decode(bytes, chars, false);
+                    chars.flip();
+                    sb.append(chars);
+                    chars.clear();
+                    if (!result.isOverflow()) {
+                        break;
                     }
                 }
-            } catch (IOException e) {
-                closed = true;
-                e.printStackTrace();
+                // keep the bytes of an incomplete character for the next write
+                if (bytes.hasRemaining()) {
+                    pending = ByteBuffer.allocate(bytes.remaining());
+                    pending.put(bytes);
+                    pending.flip();
+                } else {
+                    pending = null;
+                }
+                if (sb.length() > 0) {
+                    terminal.write(sb.toString());
+                }
+                String s = terminal.read();
+                if (s != null && s.length() > 0) {
+                    byte[] d = s.getBytes();
+                    console.processInput(d, 0, d.length);
+                }
             }
+
         }
 
     }